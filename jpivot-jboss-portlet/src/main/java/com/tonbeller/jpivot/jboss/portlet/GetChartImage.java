@@ -29,6 +29,7 @@ import org.jboss.portal.portlet.impl.ActionResponseImpl;
 import org.jboss.portal.server.WindowContext;
 import org.jboss.portlet.JBossActionResponse;
 
+import com.tonbeller.jpivot.chart.ChartImageCache;
 import com.tonbeller.jpivot.chart.GetChart;
 
 public class GetChartImage {
@@ -51,6 +52,14 @@ public class GetChartImage {
             throw new PortletException("Parameter 'filename' must be supplied");
         }
 
+        // charts rendered by ChartComponent are kept in memory
+        ChartImageCache.Image image = ChartImageCache.instance().get(filename);
+        if (image != null) {
+            JBossActionResponse responseImpl = (JBossActionResponse) portletResponse;
+            responseImpl.sendBytes("image/png", image.getPng());
+            return;
+        }
+
         //  Replace ".." with ""
         //  This is to prevent access to the rest of the file system
         filename = GetChart.searchReplace(filename, "..", "");
@@ -14,6 +14,30 @@
 <!-- Tabelle:  -->
 <xsl:param name="maxColHdrLen" select="20"/>
 
+<xsl:template match="mdxtable[progress]">
+  <xsl:apply-templates select="progress"/>
+</xsl:template>
+
+<!-- placeholder while the query is executed in background -->
+<xsl:template match="progress">
+  <div class="table-message" id="{$renderId}">
+    <xsl:value-of select="@message"/>
+    <xsl:text>&#160;</xsl:text>
+    <input type="submit" name="{@id}" value="{@label}"/>
+  </div>
+  <xsl:if test="@refresh">
+    <script type="text/javascript">
+      setTimeout(function() {
+        var elem = document.getElementById('<xsl:value-of select="$renderId"/>');
+        while (elem &amp;&amp; elem.tagName != 'FORM')
+          elem = elem.parentNode;
+        if (elem)
+          elem.submit();
+      }, 2000);
+    </script>
+  </xsl:if>
+</xsl:template>
+
 <xsl:template match="mdxtable">
   <xsl:if test="@message">
     <div class="table-message"><xsl:value-of select="@message"/></div>
@@ -22,6 +46,21 @@
     <xsl:apply-templates select="head"/>
     <xsl:apply-templates select="body"/>
   </table>
+  <xsl:apply-templates select="window"/>
+</xsl:template>
+
+<!-- buttons that move the visible window of a large table -->
+<xsl:template match="window">
+  <div class="table-window">
+    <xsl:for-each select="rows | columns">
+      <xsl:value-of select="@message"/>
+      <xsl:text>&#160;</xsl:text>
+      <xsl:for-each select="button">
+        <input type="submit" name="{@id}" value="{@label}"/>
+      </xsl:for-each>
+      <br/>
+    </xsl:for-each>
+  </div>
 </xsl:template>
 
 <xsl:template match="head | body">
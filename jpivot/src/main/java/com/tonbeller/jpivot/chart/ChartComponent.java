@@ -12,12 +12,10 @@ package com.tonbeller.jpivot.chart;
 
 import java.awt.Color;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.StringWriter;
 import java.io.Writer;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
@@ -27,6 +25,7 @@ import javax.xml.parsers.DocumentBuilder;
 
 import org.apache.log4j.Logger;
 import org.jfree.chart.ChartRenderingInfo;
+import org.jfree.chart.ChartUtilities;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.CategoryLabelPosition;
 import org.jfree.chart.axis.CategoryLabelPositions;
@@ -39,7 +38,6 @@ import org.jfree.chart.plot.PiePlot;
 import org.jfree.chart.plot.PiePlot3D;
 import org.jfree.chart.plot.Plot;
 import org.jfree.chart.plot.PlotOrientation;
-import org.jfree.chart.servlet.ServletUtilities;
 import org.jfree.chart.title.LegendTitle;
 import org.jfree.chart.title.TextTitle;
 import org.jfree.chart.title.Title;
@@ -67,6 +65,7 @@ import com.tonbeller.jpivot.olap.model.Member;
 import com.tonbeller.jpivot.olap.model.OlapModel;
 import com.tonbeller.jpivot.olap.model.Position;
 import com.tonbeller.jpivot.olap.model.Result;
+import com.tonbeller.jpivot.olap.navi.AncestorCache;
 import com.tonbeller.jpivot.olap.navi.DrillThrough;
 import com.tonbeller.jpivot.olap.navi.MemberTree;
 import com.tonbeller.wcf.component.Component;
@@ -101,6 +100,7 @@ public class ChartComponent extends ComponentSupport implements ModelChangeListe
 	int dimCount;
 	Element rootElement;
 	int colCount;
+	ChartDatasetBuilder datasetBuilder;
 
 	// servlet mapping - optionally can be set as a servlet context parameter
 	// with name "chartServlet"
@@ -111,12 +111,13 @@ public class ChartComponent extends ComponentSupport implements ModelChangeListe
 	  <param-value>/path/to/chartServlet</param-value>
 	</context-param>
 	*/
-	String CHART_SERVLET = "/DisplayChart";
+	String CHART_SERVLET = "/GetChart";
 	final String CHART_SERVLET_KEY = "chartServlet";
     boolean baseDisplayURLSet = false;
     String webControllerURL = "";
 
 	String filename = null;
+	String imageMap = null;
 	// chart properties
 	final int DEFAULT_CHART_WIDTH = 500;
 	final int DEFAULT_CHART_HEIGHT = 300;
@@ -206,12 +207,14 @@ public class ChartComponent extends ComponentSupport implements ModelChangeListe
 	/**
 	 * Entry point for producing charts, called by wcf render tag.
 	 * Produces a jfreechart dataset from olap model, then creates a chart and
-	 * writes it to the servlet container temp directory.
+	 * puts it into the {@link ChartImageCache}.
 	 * Returns a DOM document for Renderer to transform into html.
-	 * Requires that jfreechart servlet is installed in this application context.
+	 * Requires that the GetChart servlet is installed in this application context.
 	 */
 	public Document render(RequestContext context) throws Exception {
 		// check if we need to produce a new chart
+		if (dirty)
+			findCachedImage();
 		if (dirty) {
 			// clear old listeners
 			dispatcher.clear();
@@ -624,25 +627,26 @@ public class ChartComponent extends ComponentSupport implements ModelChangeListe
 					chart.addSubtitle(slicer);
                                      }
 				info = new ChartRenderingInfo(new StandardEntityCollection());
-				//  Write the chart image to the temporary directory
-				HttpSession session = context.getSession();
-				filename = ServletUtilities.saveChartAsPNG(
-						chart,
-						chartWidth,
-						chartHeight,
-						info,
-						session);
+				//  Keep the chart image in memory, GetChart serves it from there
+				ByteArrayOutputStream png = new ByteArrayOutputStream();
+				ChartUtilities.writeChartAsPNG(png, chart, chartWidth, chartHeight, info);
+				ChartImageCache cache = ChartImageCache.instance();
+				filename = cache.createName();
+				imageMap = writeImageMap(filename, info, false);
+				cache.pin(this, cache.put(result, getConfig(), filename, png.toByteArray(), imageMap));
 
 			}
 			catch (Exception e) {
 				filename = "public_error_500x300.png";
+				imageMap = "<map name=\"" + filename + "\"></map>";
+				ChartImageCache.instance().pin(this, null);
 				dirty = true;
 			}
 		}
 		// new DOM document
 		DocumentBuilder parser = XmlUtils.getParser();
-		// get an image map for the chart, wrap it in xchart tags
-		String xchart = "<xchart>" + writeImageMap(filename, info, false) + "</xchart>";
+		// wrap the image map of the chart in xchart tags
+		String xchart = "<xchart>" + imageMap + "</xchart>";
 /*
 		if (logger.isDebugEnabled()) {
 			logger.debug("Chart XML");
@@ -680,6 +684,47 @@ public class ChartComponent extends ComponentSupport implements ModelChangeListe
         return graphURL;
     }
 
+	/**
+	 * takes the chart from the cache, if the result and the configuration did not change.
+	 * The drill through urls are registered with the dispatcher of this component,
+	 * so these charts are always rendered again.
+	 */
+	private void findCachedImage() throws Exception {
+		if (drillThroughEnabled)
+			return;
+		Result newResult = olapModel.getResult();
+		ChartImageCache.Image image = ChartImageCache.instance().lookup(newResult, getConfig());
+		if (image == null)
+			return;
+		ChartImageCache.instance().pin(this, image);
+		dispatcher.clear();
+		result = newResult;
+		filename = image.getName();
+		imageMap = image.getImageMap();
+		dirty = false;
+	}
+
+	/**
+	 * @return the properties, that change the chart image
+	 */
+	String getConfig() {
+		StringBuffer sb = new StringBuffer();
+		Object[] config = new Object[] { new Integer(chartType), new Integer(chartWidth),
+				new Integer(chartHeight), chartTitle, fontName, new Integer(fontStyle),
+				new Integer(fontSize), slicerFontName, new Integer(slicerFontStyle),
+				new Integer(slicerFontSize), axisFontName, new Integer(axisFontStyle),
+				new Integer(axisFontSize), axisTickFontName, new Integer(axisTickFontStyle),
+				new Integer(axisTickFontSize), legendFontName, new Integer(legendFontStyle),
+				new Integer(legendFontSize), new Integer(legendPosition), new Integer(slicerPosition),
+				new Integer(slicerAlignment), new Integer(bgColorR), new Integer(bgColorG),
+				new Integer(bgColorB), horizAxisLabel, vertAxisLabel, new Boolean(showLegend),
+				new Boolean(showSlicer), new Boolean(showTooltips), new Boolean(drillThroughEnabled),
+				new Integer(tickLabelRotate), webControllerURL, locale };
+		for (int i = 0; i < config.length; i++)
+			sb.append(config[i]).append('|');
+		return sb.toString();
+	}
+
 	/**
 	 * Writes an image map as a String
 	 * This function has been requested to be added to jfreechart
@@ -749,145 +794,24 @@ public class ChartComponent extends ComponentSupport implements ModelChangeListe
 	 *
 	 */
 	private DefaultCategoryDataset build1dimDataset() {
-		DefaultCategoryDataset dataset = new DefaultCategoryDataset();
-
-		// column axis
-		List columnPositions = result.getAxes()[0].getPositions();
-		colCount = columnPositions.size();
-		// cells
-		List cells = result.getCells();
-
-		String series = "Series";
-
-		// loop on column positions
-		for (int i = 0; i < colCount; i++) {
-			Member[] colMembers = ((Position) columnPositions.get(i)).getMembers();
-
-			StringBuffer key = new StringBuffer();
-			// loop on col position members
-			for (int j = 0; j < colMembers.length; j++) {
-				// build up composite name for this row
-				key.append(colMembers[j].getLabel() + ".");
-			}
-			dataset.addValue(getNumberValue((Cell)cells.get(i)), series, key.toString());
-		}
-		return dataset;
+		colCount = result.getAxes()[0].getPositions().size();
+		datasetBuilder = new ChartDatasetBuilder(null);
+		return datasetBuilder.build1dimDataset(result);
 	}
 
-	/**
-	 * Get cell value as a Number. Parses the cell value string
-	 * using the locale set in this.locale.
-	 * @param cell
-	 * @return value as Number (can be null)
-	 */
-	private Number getNumberValue(Cell cell) {
-            //**** HACK AR 2004.01.10
-		//String value = cell.getFormattedValue();
-                Object value = cell.getValue();
-
-		DecimalFormatSymbols dfs = new DecimalFormatSymbols(locale);
-		DecimalFormat formatter = new DecimalFormat();
-		formatter.setDecimalFormatSymbols(dfs);
-		Number number = null;
-		try {
-			number = (Number)value;
-                        //number = formatter.parse(value, new ParsePosition(0));
-		}
-		catch (Exception e) {
-			number = null;
-		}
-		return number;
-	}
-        /**
-	 * Get a unique name string for a dataitem derived from the member chain
-	 *
-	 * @param myTree  (full member tree)
-         * @param members - the list to be processed (either X/Y axis)
-	 * @return retValue as String
-	 */
-        private String buildName( MemberTree myTree, Member [] members){
-            String retValue = new String();
-            HashMap levelMap = new HashMap();
-            HashMap hierarchyMap = new HashMap();
-            for (int j=members.length-1;j>=0;j--){
-                Member member = members[j];
-                while (member!=null){
-                    // only process if no other items from this level processed - should not be duplicates!
-                    if (!levelMap.containsValue(member.getLevel())){
-                        levelMap.put(member.getLevel().toString(),member.getLevel());
-                        if (member.getRootDistance()==0){
-                            // if root member, only add to name if no other members of the hierarchy are already added
-                            if (!hierarchyMap.containsValue(member.getLevel().getHierarchy())
-                            || myTree.getRootMembers(member.getLevel().getHierarchy()).length>1){
-                                hierarchyMap.put(member.getLevel().getHierarchy().toString(),member.getLevel().getHierarchy());
-                                retValue=member.getLabel()+"."+retValue;
-                            }
-                        } else{
-                            hierarchyMap.put(member.getLevel().getHierarchy().toString(),member.getLevel().getHierarchy());
-                            retValue=member.getLabel()+"."+retValue;
-                        }
-                    }
-                    member = myTree.getParent(member);
-                }
-            }
-            return retValue;
-        }
 	/**
 	 * Build a jfreechart CategoryDataset with multiple series
 	 *
 	 */
-        private DefaultCategoryDataset build2dimDataset() {
-
-            DefaultCategoryDataset dataset = new DefaultCategoryDataset();
-
-            // column axis
-
-            List columnPositions = result.getAxes()[0].getPositions();//ladX.getPositions();
-            colCount = columnPositions.size();
-
-            // row axis
-
-            List rowPositions = result.getAxes()[1].getPositions();//ladY.getPositions();
-            int rowCount = rowPositions.size();
-            List cells = result.getCells();
-
-            // get the full member tree
-            MemberTree myTree = ((MemberTree) olapModel.getExtension(MemberTree.ID));
-
-            // for each column, starting with the bottom member, progress up the mmeber chain until the root is reached
-            // keep track of the levels and hierarchies to avoid duplicates on level or hierarchys.
-            //      *note: keeping track of the levels might be just extra work, I don't know if they CAN be repeated.
-            //          if not, that logic can be easily removed (see buildName - above)
-            // For each hierarchy, If a root member is reached (getRootDistance()=0), then only include it if there have been no other
-            // lower level members already added:
-            //       ie. All_dim1.dim1_lvl1.dim1_lvl2.All_dim2.dim2_lvl1 renders as dim1_lvl1.dim1_lvl2.dim2_lvl1
-            //          whereas All_dim1.All_dim2 renders as the same.
-            // The important part is that we include each parent on the way up, to ensure a unique name to
-            // place in the map for the dataset (no longer overwriting each other)
-
-
-            for(int i=0;i<colCount;i++){
-                Position p= (Position) columnPositions.get(i);
-                Member colMembers[] =p.getMembers();
-
-                // build the label name for this column
-                String label=buildName(myTree, colMembers);
-
-                // For each row, use the same logic to build a unique key for each data item
-                for(int k=0;k<rowCount;k++){
-                    Position rp= (Position) rowPositions.get(k);
-                    Member rowMembers[] =rp.getMembers();
-
-                    // build key name
-                    String key=buildName(myTree, rowMembers);
-
-                    Cell cell = (Cell) cells.get((k * colCount) + i);
-                    dataset.addValue(getNumberValue(cell), label.toString(), key.toString());
-                }
-
-            }
-            return dataset;
-        }
+	private DefaultCategoryDataset build2dimDataset() {
+		colCount = result.getAxes()[0].getPositions().size();
+		// get the full member tree
+		MemberTree myTree = ((MemberTree) olapModel.getExtension(MemberTree.ID));
+		// parents are looked up once per member, shared with the table
+		AncestorCache ancestors = AncestorCache.instance(result, myTree);
+		datasetBuilder = new ChartDatasetBuilder(ancestors);
+		return datasetBuilder.build2dimDataset(result);
+	}
 
 	/**
 	 * @return
@@ -1177,12 +1101,12 @@ public class ChartComponent extends ComponentSupport implements ModelChangeListe
 
                         int cellpos;
                         if (order == TableOrder.BY_COLUMN){
-                            cellpos = (pieIndex*rowCount)+index;
+                            cellpos = datasetBuilder.getCellIndex(index, pieIndex);
                         } else {
-                            cellpos = pieIndex+(rowCount*index);
+                            cellpos = datasetBuilder.getCellIndex(pieIndex, index);
                         }
 
-			if ( canDrillThrough((Cell) cells.get(cellpos)) && (!((Cell) cells.get(cellpos)).isNull()) ) {
+			if ( cellpos >= 0 && canDrillThrough((Cell) cells.get(cellpos)) && (!((Cell) cells.get(cellpos)).isNull()) ) {
 				String id = DomUtils.randomId();
 				dispatcher.addRequestListener(
 					id,
@@ -1241,8 +1165,8 @@ public class ChartComponent extends ComponentSupport implements ModelChangeListe
 			// convert col, row into ordinal
 			// series is col, category is row
 			// (reverse terminology to jfreechart, that way series on measures which is more logical)
-			int cellpos = (category * colCount) + series;
-			if ( canDrillThrough((Cell) cells.get(cellpos)) && (!((Cell) cells.get(cellpos)).isNull()) ) {
+			int cellpos = datasetBuilder.getCellIndex(series, category);
+			if ( cellpos >= 0 && canDrillThrough((Cell) cells.get(cellpos)) && (!((Cell) cells.get(cellpos)).isNull()) ) {
 				String id = DomUtils.randomId();
 				dispatcher.addRequestListener(
 					id,
@@ -0,0 +1,277 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.tonbeller.jpivot.chart;
+
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.jfree.data.category.DefaultCategoryDataset;
+
+import com.tonbeller.jpivot.olap.model.Cell;
+import com.tonbeller.jpivot.olap.model.Member;
+import com.tonbeller.jpivot.olap.model.Position;
+import com.tonbeller.jpivot.olap.model.Result;
+import com.tonbeller.jpivot.olap.navi.AncestorCache;
+
+/**
+ * builds the jfreechart dataset from a result in a single pass over the cells.
+ * The labels of the rows and columns are computed once. Large results are reduced
+ * to a maximum number of series (columns) and categories (rows), either by sampling
+ * every n-th position or by summing up the remaining positions into "Others".
+ */
+public class ChartDatasetBuilder {
+
+  /**
+   * maximum number of series, 0 = unlimited
+   */
+  public static final String MAX_SERIES_PROP = "com.tonbeller.jpivot.chart.maxSeries";
+
+  /**
+   * maximum number of categories, 0 = unlimited
+   */
+  public static final String MAX_CATEGORIES_PROP = "com.tonbeller.jpivot.chart.maxCategories";
+
+  /**
+   * "sample" (default) or "aggregate"
+   */
+  public static final String REDUCE_PROP = "com.tonbeller.jpivot.chart.reduce";
+
+  public static final String OTHERS = "Others";
+
+  static Logger logger = Logger.getLogger(ChartDatasetBuilder.class);
+
+  private AncestorCache ancestors;
+  private int maxSeries;
+  private int maxCategories;
+  private boolean aggregate;
+
+  // index in the dataset -> index of the position, -1 for "Others"
+  private int[] seriesPositions;
+  private int[] categoryPositions;
+  private int colCount;
+
+  /**
+   * creates a builder configured by the system properties
+   * @param ancestors the parents of the members, used for the labels
+   */
+  public ChartDatasetBuilder(AncestorCache ancestors) {
+    this.ancestors = ancestors;
+    this.maxSeries = intProperty(MAX_SERIES_PROP);
+    this.maxCategories = intProperty(MAX_CATEGORIES_PROP);
+    this.aggregate = "aggregate".equals(System.getProperty(REDUCE_PROP));
+  }
+
+  private static int intProperty(String name) {
+    String s = System.getProperty(name);
+    if (s == null)
+      return 0;
+    try {
+      return Integer.parseInt(s);
+    } catch (NumberFormatException e) {
+      logger.error("invalid value for " + name + ": " + s);
+      return 0;
+    }
+  }
+
+  /**
+   * Build a jfreechart CategoryDataset with a single series.
+   * The columns are the categories.
+   */
+  public DefaultCategoryDataset build1dimDataset(Result result) {
+    List columnPositions = result.getAxes()[0].getPositions();
+    int colCount = columnPositions.size();
+    String[] keys = new String[colCount];
+    for (int i = 0; i < colCount; i++) {
+      Member[] colMembers = ((Position) columnPositions.get(i)).getMembers();
+      StringBuffer key = new StringBuffer();
+      // build up composite name for this column
+      for (int j = 0; j < colMembers.length; j++)
+        key.append(colMembers[j].getLabel()).append('.');
+      keys[i] = key.toString();
+    }
+    return build(result.getCells(), new String[] { "Series"}, keys, 1);
+  }
+
+  /**
+   * Build a jfreechart CategoryDataset with multiple series.
+   * The columns are the series, the rows are the categories.
+   */
+  public DefaultCategoryDataset build2dimDataset(Result result) {
+    List columnPositions = result.getAxes()[0].getPositions();
+    List rowPositions = result.getAxes()[1].getPositions();
+    String[] labels = new String[columnPositions.size()];
+    for (int i = 0; i < labels.length; i++)
+      labels[i] = buildName(((Position) columnPositions.get(i)).getMembers());
+    String[] keys = new String[rowPositions.size()];
+    for (int i = 0; i < keys.length; i++)
+      keys[i] = buildName(((Position) rowPositions.get(i)).getMembers());
+    return build(result.getCells(), labels, keys, labels.length);
+  }
+
+  /**
+   * @param cells the cells, series vary fastest
+   * @param series the labels of the series
+   * @param categories the labels of the categories
+   * @param colCount number of cells per category
+   */
+  private DefaultCategoryDataset build(List cells, String[] series, String[] categories,
+      int colCount) {
+    int[] seriesIndexes = reduce(series.length, maxSeries);
+    int[] categoryIndexes = reduce(categories.length, maxCategories);
+    if (logger.isDebugEnabled() && (seriesIndexes != null || categoryIndexes != null))
+      logger.debug("reducing " + series.length + " series and " + categories.length
+          + " categories");
+
+    DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+    // series outer, to add the series and categories in the order of the positions
+    for (int i = 0; i < series.length; i++) {
+      String label = label(series, seriesIndexes, i, maxSeries);
+      if (label == null)
+        continue;
+      for (int k = 0; k < categories.length; k++) {
+        String key = label(categories, categoryIndexes, k, maxCategories);
+        if (key == null)
+          continue;
+        Number value = getNumberValue((Cell) cells.get(k * colCount + i));
+        if (label == OTHERS || key == OTHERS)
+          value = add(dataset, label, key, value);
+        dataset.addValue(value, label, key);
+      }
+    }
+
+    this.colCount = colCount;
+    seriesPositions = new int[dataset.getRowCount()];
+    for (int i = 0; i < series.length; i++) {
+      String label = label(series, seriesIndexes, i, maxSeries);
+      if (label != null)
+        seriesPositions[dataset.getRowIndex(label)] = label == OTHERS ? -1 : i;
+    }
+    categoryPositions = new int[dataset.getColumnCount()];
+    for (int k = 0; k < categories.length; k++) {
+      String key = label(categories, categoryIndexes, k, maxCategories);
+      if (key != null)
+        categoryPositions[dataset.getColumnIndex(key)] = key == OTHERS ? -1 : k;
+    }
+    return dataset;
+  }
+
+  /**
+   * @param series the row index in the dataset
+   * @param category the column index in the dataset
+   * @return the index of the cell in the result, -1 if the value was aggregated
+   * from several cells
+   */
+  public int getCellIndex(int series, int category) {
+    int col = seriesPositions[series];
+    int row = categoryPositions[category];
+    if (col < 0 || row < 0)
+      return -1;
+    return row * colCount + col;
+  }
+
+  /**
+   * @return the label of the i-th position in the reduced dataset or null, if the
+   * position is skipped
+   */
+  private String label(String[] labels, int[] indexes, int i, int max) {
+    if (indexes == null)
+      return labels[i];
+    if (indexes[i] < 0)
+      return null;
+    return aggregate && indexes[i] == max - 1 ? OTHERS : labels[i];
+  }
+
+  /**
+   * maps the positions to their index in the reduced dataset
+   * @return null, if the positions are not reduced. Otherwise -1 for the positions
+   * that are skipped
+   */
+  private int[] reduce(int count, int max) {
+    if (max <= 0 || count <= max)
+      return null;
+    int[] indexes = new int[count];
+    if (aggregate) {
+      // the last one collects the remaining positions
+      for (int i = 0; i < count; i++)
+        indexes[i] = Math.min(i, max - 1);
+    } else {
+      // every n-th position, starting with the first
+      for (int i = 0; i < count; i++)
+        indexes[i] = -1;
+      for (int j = 0; j < max; j++)
+        indexes[(int) ((long) j * count / max)] = j;
+    }
+    return indexes;
+  }
+
+  /**
+   * @return value plus the value that is already stored in the dataset
+   */
+  private Number add(DefaultCategoryDataset dataset, String series, String category, Number value) {
+    if (dataset.getRowIndex(series) < 0 || dataset.getColumnIndex(category) < 0)
+      return value;
+    Number sum = dataset.getValue(series, category);
+    if (sum == null)
+      return value;
+    if (value == null)
+      return sum;
+    return new Double(sum.doubleValue() + value.doubleValue());
+  }
+
+  /**
+   * Get cell value as a Number
+   * @return value as Number (can be null)
+   */
+  static Number getNumberValue(Cell cell) {
+    Object value = cell.getValue();
+    return value instanceof Number ? (Number) value : null;
+  }
+
+  /**
+   * Get a unique name string for a dataitem derived from the member chain.
+   * For each hierarchy, a root member is only included, if there are no
+   * lower level members: All_dim1.dim1_lvl1.All_dim2.dim2_lvl1 renders
+   * as dim1_lvl1.dim2_lvl1, whereas All_dim1.All_dim2 renders as the same.
+   *
+   * @param members the members of a position
+   */
+  String buildName(Member[] members) {
+    String retValue = new String();
+    HashMap levelMap = new HashMap();
+    HashMap hierarchyMap = new HashMap();
+    for (int j = members.length - 1; j >= 0; j--) {
+      Member[] path = ancestors.getAncestors(members[j]);
+      for (int k = 0; k < path.length; k++) {
+        Member member = path[k];
+        // only process if no other items from this level processed - should not be duplicates!
+        if (!levelMap.containsValue(member.getLevel())) {
+          levelMap.put(member.getLevel().toString(), member.getLevel());
+          if (member.getRootDistance() == 0) {
+            // if root member, only add to name if no other members of the hierarchy are already added
+            if (!hierarchyMap.containsValue(member.getLevel().getHierarchy())
+                || ancestors.getRootMembers(member.getLevel().getHierarchy()).length > 1) {
+              hierarchyMap.put(member.getLevel().getHierarchy().toString(), member.getLevel()
+                  .getHierarchy());
+              retValue = member.getLabel() + "." + retValue;
+            }
+          } else {
+            hierarchyMap.put(member.getLevel().getHierarchy().toString(), member.getLevel()
+                .getHierarchy());
+            retValue = member.getLabel() + "." + retValue;
+          }
+        }
+      }
+    }
+    return retValue;
+  }
+
+}
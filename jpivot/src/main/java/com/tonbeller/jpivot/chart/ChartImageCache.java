@@ -0,0 +1,253 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.tonbeller.jpivot.chart;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * keeps the rendered chart images in memory, so they are served by {@link GetChart}
+ * without temp files. An image is found by its name or by the result and the
+ * configuration of the chart. The least recently used images are removed, when
+ * the images exceed the configured size. The image, that a chart component
+ * currently shows, is pinned and never removed, because the page in the browser
+ * still refers to it.
+ */
+public class ChartImageCache {
+
+  /**
+   * maximum size of all images in bytes
+   */
+  public static final String SIZE_PROP = "com.tonbeller.jpivot.chart.cache.size";
+
+  static final long DEFAULT_SIZE = 16 * 1024 * 1024;
+
+  static Logger logger = Logger.getLogger(ChartImageCache.class);
+
+  private static ChartImageCache instance;
+
+  private long maxSize;
+  private long size = 0;
+  private Random random = new SecureRandom();
+
+  // name -> Image, in access order
+  private LinkedHashMap images = new LinkedHashMap(16, 0.75f, true);
+
+  // Result -> Map(configuration -> name), removed when the result is garbage collected
+  private Map names = new WeakHashMap();
+
+  // owner -> pinned Image, removed when the owner is garbage collected
+  private Map pins = new WeakHashMap();
+
+  ChartImageCache(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * returns the cache that is shared by all charts
+   */
+  public static synchronized ChartImageCache instance() {
+    if (instance == null) {
+      long maxSize = DEFAULT_SIZE;
+      String s = System.getProperty(SIZE_PROP);
+      if (s != null) {
+        try {
+          maxSize = Long.parseLong(s);
+        } catch (NumberFormatException e) {
+          logger.error("invalid value for " + SIZE_PROP + ": " + s);
+        }
+      }
+      instance = new ChartImageCache(maxSize);
+    }
+    return instance;
+  }
+
+  /**
+   * @return the image or null, if it has been removed or never existed
+   */
+  public synchronized Image get(String name) {
+    return (Image) images.get(name);
+  }
+
+  /**
+   * @return the image, that was rendered for result and config or null
+   */
+  public synchronized Image lookup(Object result, String config) {
+    Map map = (Map) names.get(result);
+    if (map == null)
+      return null;
+    String name = (String) map.get(config);
+    return name == null ? null : get(name);
+  }
+
+  /**
+   * @return a new, unguessable image name
+   */
+  public synchronized String createName() {
+    String name;
+    do {
+      name = "chart-" + Long.toHexString(random.nextLong() & Long.MAX_VALUE) + ".png";
+    } while (images.containsKey(name));
+    return name;
+  }
+
+  /**
+   * adds an image
+   * @param result the result, the chart was rendered from
+   * @param config the configuration of the chart
+   * @param name the name from {@link #createName()}
+   * @param png the PNG encoded image
+   * @param imageMap the image map of the chart
+   */
+  public synchronized Image put(Object result, String config, String name, byte[] png,
+      String imageMap) {
+    Image image = new Image(name, png, imageMap);
+    images.put(name, image);
+    size += png.length;
+
+    Map map = (Map) names.get(result);
+    if (map == null) {
+      map = new HashMap();
+      names.put(result, map);
+    }
+    map.put(config, name);
+
+    evict(image);
+    return image;
+  }
+
+  /**
+   * keeps the image, that is currently shown by the owner, until the owner
+   * pins another image or is garbage collected. An image, that has been removed
+   * meanwhile, is added again.
+   * @param owner e.g. the chart component
+   * @param image the image or null to release the pinned image
+   */
+  public synchronized void pin(Object owner, Image image) {
+    if (image == null) {
+      pins.remove(owner);
+      return;
+    }
+    pins.put(owner, image);
+    if (!images.containsKey(image.name)) {
+      images.put(image.name, image);
+      size += image.png.length;
+      evict(image);
+    }
+  }
+
+  /**
+   * removes the least recently used images, but keeps the pinned ones and <code>keep</code>
+   */
+  private void evict(Image keep) {
+    if (size <= maxSize)
+      return;
+    Set pinned = new HashSet(pins.values());
+    for (Iterator it = images.values().iterator(); size > maxSize && it.hasNext();) {
+      Image eldest = (Image) it.next();
+      if (eldest == keep || pinned.contains(eldest))
+        continue;
+      it.remove();
+      size -= eldest.png.length;
+    }
+  }
+
+  /**
+   * @return the size of all images in bytes
+   */
+  public synchronized long getSize() {
+    return size;
+  }
+
+  /**
+   * writes the image into a new temp file, for components that need a file.
+   * The caller deletes the file when it is done.
+   * @return the file or null, if there is no image with this name
+   */
+  public File getFile(String name) throws IOException {
+    Image image = get(name);
+    if (image == null)
+      return null;
+    File file = File.createTempFile("chart-", ".png");
+    boolean written = false;
+    try {
+      OutputStream os = new FileOutputStream(file);
+      try {
+        os.write(image.png);
+      } finally {
+        os.close();
+      }
+      written = true;
+    } finally {
+      if (!written)
+        file.delete();
+    }
+    return file;
+  }
+
+  /**
+   * a rendered chart
+   */
+  public static class Image {
+    private String name;
+    private byte[] png;
+    private String imageMap;
+    private long lastModified;
+
+    Image(String name, byte[] png, String imageMap) {
+      this.name = name;
+      this.png = png;
+      this.imageMap = imageMap;
+      // HTTP dates have a resolution of seconds
+      this.lastModified = System.currentTimeMillis() / 1000 * 1000;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * the PNG encoded image. The array must not be modified.
+     */
+    public byte[] getPng() {
+      return png;
+    }
+
+    public String getImageMap() {
+      return imageMap;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    /**
+     * the image never changes, so its name is a strong entity tag
+     */
+    public String getETag() {
+      return "\"" + name + "\"";
+    }
+  }
+
+}
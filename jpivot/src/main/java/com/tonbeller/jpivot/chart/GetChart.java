@@ -16,6 +16,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
@@ -26,12 +27,15 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+
+import org.apache.log4j.Logger;
 /**
  *
  * @author  arosselet
  * @version
  */
 public class GetChart extends HttpServlet {
+    static Logger logger = Logger.getLogger(GetChart.class);
     String basePath;
     /** Initializes the servlet.
      */
@@ -55,11 +59,19 @@ public class GetChart extends HttpServlet {
 
         HttpSession session = request.getSession();
         String filename = request.getParameter("filename");
-        System.out.println("GetChart called: filename="+filename);
+        if (logger.isDebugEnabled())
+            logger.debug("GetChart called: filename="+filename);
         if (filename == null) {
             throw new ServletException("Parameter 'filename' must be supplied");
         }
 
+        // charts rendered by ChartComponent are kept in memory
+        ChartImageCache.Image image = ChartImageCache.instance().get(filename);
+        if (image != null) {
+            sendImage(image, request, response);
+            return;
+        }
+
         //  Replace ".." with ""
         //  This is to prevent access to the rest of the file system
         filename = searchReplace(filename, "..", "");
@@ -75,6 +87,49 @@ public class GetChart extends HttpServlet {
         return;
 
     }
+    /**
+     * Sends a chart image from the {@link ChartImageCache}.
+     * Answers with "304 Not Modified", if the browser has the image already.
+     *
+     * @param image the chart image
+     * @param request the HTTP request object.
+     * @param response the HTTP response object.
+     *
+     * @throws IOException  if there is an I/O problem.
+     */
+    public static void sendImage(ChartImageCache.Image image, HttpServletRequest request,
+                                 HttpServletResponse response) throws IOException {
+
+        response.setHeader("ETag", image.getETag());
+        response.setDateHeader("Last-Modified", image.getLastModified());
+        // the chart shows the data of a session
+        response.setHeader("Cache-Control", "private");
+        if (isNotModified(image, request)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] png = image.getPng();
+        response.setContentType("image/png");
+        response.setContentLength(png.length);
+        OutputStream os = response.getOutputStream();
+        os.write(png);
+        os.flush();
+    }
+
+    private static boolean isNotModified(ChartImageCache.Image image, HttpServletRequest request) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null)
+            return ifNoneMatch.trim().equals("*") || ifNoneMatch.indexOf(image.getETag()) >= 0;
+        try {
+            long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+            return ifModifiedSince >= image.getLastModified();
+        } catch (IllegalArgumentException e) {
+            // not a date
+            return false;
+        }
+    }
+
     public static void sendTempFile(File file, HttpServletResponse response)
             throws IOException, FileNotFoundException {
 
@@ -0,0 +1,90 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ *
+ */
+package com.tonbeller.jpivot.mondrian;
+
+import mondrian.mdx.UnresolvedFunCall;
+import mondrian.olap.AxisOrdinal;
+import mondrian.olap.Exp;
+import mondrian.olap.Id;
+import mondrian.olap.Literal;
+import mondrian.olap.MemberProperty;
+import mondrian.olap.Query;
+import mondrian.olap.QueryAxis;
+import mondrian.olap.Syntax;
+import mondrian.olap.Util;
+
+import com.tonbeller.jpivot.olap.query.AxisPagingBase;
+
+/**
+ * Implementation of the AxisPaging Extension for Mondrian Data Source.
+ * The rows are counted by a calculated measure <code>Count(rows)</code>,
+ * that is the only column of the count query. The empty rows of a NON EMPTY
+ * axis are removed by <code>Filter(rows, Count(columns, EXCLUDEEMPTY) &gt; 0)</code>.
+ */
+public class MondrianAxisPaging extends AxisPagingBase {
+
+  static final String COUNT_MEMBER = "[Measures].[JPivot Row Count]";
+
+  private Query getMonQuery() {
+    MondrianModel model = (MondrianModel) getModel();
+    return ((MondrianQueryAdapter) model.getQueryAdapter()).getMonQuery();
+  }
+
+  protected String getUnpagedQuery() {
+    return getMonQuery().toString();
+  }
+
+  protected boolean isNonEmptyRows() {
+    return getMonQuery().getAxes()[1].isNonEmpty();
+  }
+
+  protected int countRows(boolean nonEmpty) throws Exception {
+    Query countQuery = getMonQuery().safeClone();
+    Exp rows = getRows(countQuery, nonEmpty);
+    Id id = new Id(Util.parseIdentifier(COUNT_MEMBER));
+    Exp columns = new UnresolvedFunCall("{}", Syntax.Braces, new Exp[] { id});
+    countQuery.axes = new QueryAxis[] { new QueryAxis(false, columns,
+        AxisOrdinal.StandardAxisOrdinal.COLUMNS, QueryAxis.SubtotalVisibility.Undefined)};
+    countQuery.addFormula(id, new UnresolvedFunCall("Count", new Exp[] { rows}),
+        new MemberProperty[0]);
+
+    MondrianModel model = (MondrianModel) getModel();
+    mondrian.olap.Result result = model.getConnection().execute(countQuery);
+    Object value = result.getCell(new int[] { 0}).getValue();
+    return ((Number) value).intValue();
+  }
+
+  protected void addSubsetToRows(int start, int count, boolean nonEmpty) {
+    Query query = getMonQuery();
+    Exp rows = getRows(query, nonEmpty);
+    query.getAxes()[1].setSet(new UnresolvedFunCall("Subset", new Exp[] { rows,
+        Literal.create(new Integer(start)), Literal.create(new Integer(count))}));
+  }
+
+  /**
+   * @return the set of the row axis, without the rows whose cells are all empty
+   * if nonEmpty is true
+   */
+  private Exp getRows(Query query, boolean nonEmpty) {
+    Exp rows = query.getAxes()[1].getSet();
+    if (!nonEmpty)
+      return rows;
+    Exp columns = (Exp) query.getAxes()[0].getSet().clone();
+    Exp nonEmptyColumns = new UnresolvedFunCall("Count", new Exp[] { columns,
+        Literal.createSymbol("EXCLUDEEMPTY")});
+    Exp condition = new UnresolvedFunCall(">", Syntax.Infix, new Exp[] { nonEmptyColumns,
+        Literal.create(new Integer(0))});
+    return new UnresolvedFunCall("Filter", new Exp[] { rows, condition});
+  }
+
+}
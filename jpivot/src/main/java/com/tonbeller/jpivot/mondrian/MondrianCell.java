@@ -82,10 +82,10 @@ public class MondrianCell extends CellBase {
    * @see com.tonbeller.jpivot.olap.model.Cell#getFormat()
    */
   public NumberFormat getFormat() {
-    if (monCell.isNull())
+    if (isNull())
       return null;
 
-    Object o = monCell.getValue();
+    Object o = getValue();
     if (o instanceof Number) {
       // continue
     } else
@@ -12,7 +12,10 @@
  */
 package com.tonbeller.jpivot.mondrian;
 
+import javax.sql.DataSource;
+
 import mondrian.olap.Util.PropertyList;
+import mondrian.rolap.RolapConnection;
 import mondrian.rolap.RolapConnectionProperties;
 
 import com.tonbeller.jpivot.core.ExtensionSupport;
@@ -63,7 +66,12 @@ public class MondrianDrillThrough extends ExtensionSupport implements DrillThrou
     dtm.setJdbcUser(jdbcUser);
     dtm.setJdbcPassword(jdbcPassword);
     dtm.setDataSourceName(dataSourceName);
-    dtm.setExternalDataSource(((MondrianModel)getModel()).getExternalDataSource());
+    // reuse the (pooled) data source of the mondrian connection
+    MondrianModel model = (MondrianModel) getModel();
+    DataSource dataSource = model.getExternalDataSource();
+    if (dataSource == null && model.getConnection() instanceof RolapConnection)
+      dataSource = ((RolapConnection) model.getConnection()).getDataSource();
+    dtm.setExternalDataSource(dataSource);
     return dtm;
   }
 
@@ -19,7 +19,9 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -33,6 +35,7 @@ import mondrian.util.MemoryMonitorFactory;
 
 import org.apache.log4j.Logger;
 
+import com.tonbeller.jpivot.olap.navi.DrillThroughRows;
 import com.tonbeller.wcf.table.AbstractTableModel;
 import com.tonbeller.wcf.table.DefaultTableRow;
 import com.tonbeller.wcf.table.TableRow;
@@ -40,10 +43,26 @@ import com.tonbeller.wcf.table.TableRow;
 /**
  * A wcf table model for drill through data,
  * requires an sql query and connection information to be set.
+ * <p>
+ * The rows are read page by page, when the table asks for them, and only a few
+ * pages are kept in memory. The total row count is computed on demand.
+ * If the system property {@link #PAGE_SIZE_PROP} is 0, the whole result is read at once.
  */
 
-public class MondrianDrillThroughTableModel extends AbstractTableModel {
+public class MondrianDrillThroughTableModel extends AbstractTableModel implements DrillThroughRows {
     private static Logger logger = Logger.getLogger(MondrianDrillThroughTableModel.class);
+
+    /**
+     * system property for the number of rows, that are fetched with one query, default 200.
+     * 0 reads all rows at once.
+     */
+    public static final String PAGE_SIZE_PROP = "com.tonbeller.jpivot.mondrian.drillthrough.pagesize";
+    
+    /**
+     * system property for the number of pages kept in memory, default 5
+     */
+    public static final String PAGE_CACHE_PROP = "com.tonbeller.jpivot.mondrian.drillthrough.pagecache";
+
     private String title = "Drill Through Table";
     private String caption = "";
     private String sql = "";
@@ -61,6 +80,11 @@ public class MondrianDrillThroughTableModel extends AbstractTableModel {
     private TableRow[] rows = new TableRow[0];
     private String [] columnTitles = new String[0];
 
+    private int pageSize = Integer.getInteger(PAGE_SIZE_PROP, 200).intValue();
+    private boolean paged;
+    private int rowCount = -1;
+    private Map pageCache;
+
     public MondrianDrillThroughTableModel() {
     }
     
@@ -68,13 +92,30 @@ public class MondrianDrillThroughTableModel extends AbstractTableModel {
         if ( !ready ) {
             executeQuery();
         }
-        return rows.length;
+        if ( paged && rowCount < 0 ) {
+            countRows();
+        }
+        return paged ? rowCount : rows.length;
     }
 
     public TableRow getRow(int rowIndex) {
         if ( !ready ) {
             executeQuery();
         }
+        if ( paged ) {
+            TableRow[] page = getPage(rowIndex / pageSize);
+            if ( page != null ) {
+                int i = rowIndex % pageSize;
+                if ( i < page.length ) {
+                    return page[i];
+                }
+                // the data changed since the rows were counted, rowCount has been
+                // corrected by getPage(), this row is shown empty
+                return new DefaultTableRow(new Object[columnTitles.length]);
+            }
+            // the error row
+            return rows[0];
+        }
         return rows[rowIndex];
     }
 
@@ -127,6 +168,17 @@ public class MondrianDrillThroughTableModel extends AbstractTableModel {
      * @throws Exception
      */    
     private void executeQuery() {
+        if ( pageSize > 0 ) {
+            // read the first page only
+            paged = true;
+            rowCount = -1;
+            pageCache = new PageCache(Integer.getInteger(PAGE_CACHE_PROP, 5).intValue());
+            columnTitles = null;
+            if ( getPage(0) != null ) {
+                ready = true;
+            }
+            return;
+        }
         Connection con=null;
         class Listener implements MemoryMonitor.Listener {
             String oomMsg;
@@ -163,17 +215,12 @@ public class MondrianDrillThroughTableModel extends AbstractTableModel {
             ResultSet rs = s.executeQuery(sql);
             ResultSetMetaData md = rs.getMetaData();
             int numCols = md.getColumnCount();
-            columnTitles = new String[numCols];
 
             // check for OutOfMemory
             listener.check();
 
             // set column headings
-            for ( int i = 0; i < numCols; i++ ) {
-                //    columns are 1 based
-                columnTitles[i] = md.getColumnName(i+1);
-            }
-            title = title.concat(" for "+columnTitles[columnTitles.length-1]);
+            setColumnTitles(md);
             // loop through rows
             List tempRows = new ArrayList();
             while (rs.next()) {
@@ -190,16 +237,7 @@ public class MondrianDrillThroughTableModel extends AbstractTableModel {
             rs.close();
             rows = (TableRow[]) tempRows.toArray(new TableRow[0]);
         } catch (Exception e) {
-            e.printStackTrace();
-            logger.error("?", e);
-            // problem occured, set table model to zero size
-            rows = new TableRow[1];
-            columnTitles = new String[1];
-            columnTitles[0] = "An error occured";
-            Object[] row = new Object[1];
-            row[0] = e.toString();
-            rows[0] = new DefaultTableRow(row);
-            ready=false;
+            setError(e);
             return;
         } finally {
             try {
@@ -211,6 +249,177 @@ public class MondrianDrillThroughTableModel extends AbstractTableModel {
         }
         ready = true;
     }
+
+    /**
+     * problem occured, show the error in a single row table
+     */
+    private void setError(Exception e) {
+        logger.error("?", e);
+        paged = false;
+        rows = new TableRow[1];
+        columnTitles = new String[1];
+        columnTitles[0] = "An error occured";
+        Object[] row = new Object[1];
+        row[0] = e.toString();
+        rows[0] = new DefaultTableRow(row);
+        ready=false;
+    }
+
+    private void setColumnTitles(ResultSetMetaData md) throws SQLException {
+        int numCols = md.getColumnCount();
+        columnTitles = new String[numCols];
+        for ( int i = 0; i < numCols; i++ ) {
+            //    columns are 1 based
+            columnTitles[i] = md.getColumnName(i+1);
+        }
+        title = title.concat(" for "+columnTitles[columnTitles.length-1]);
+    }
+
+    /**
+     * returns the rows of a page from the cache or reads them from the database.
+     * The statement stops after the last row of the page (max rows) and
+     * transfers the rows in chunks of one page (fetch size), the rows
+     * before the page are skipped without being copied.
+     * @return null if the query failed, the model shows the error then
+     */
+    private TableRow[] getPage(int pageIndex) {
+        Integer key = new Integer(pageIndex);
+        TableRow[] page = (TableRow[]) pageCache.get(key);
+        if ( page != null ) {
+            return page;
+        }
+        Connection con = null;
+        try {
+            con = getConnection();
+            Statement s = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            int first = pageIndex * pageSize;
+            s.setMaxRows(first + pageSize);
+            s.setFetchSize(pageSize);
+            ResultSet rs = s.executeQuery(sql);
+            if ( columnTitles == null ) {
+                setColumnTitles(rs.getMetaData());
+            }
+            int numCols = columnTitles.length;
+            for ( int i = 0; i < first && rs.next(); i++ ) {
+                // skip
+            }
+            List tempRows = new ArrayList(pageSize);
+            while (rs.next()) {
+                Object[] row = new Object[numCols];
+                // loop on columns, 1 based
+                for ( int i = 0; i < numCols; i++ ) {
+                    row[i] = rs.getObject(i+1);
+                }
+                tempRows.add(new DefaultTableRow(row));
+            }
+            rs.close();
+            s.close();
+            // a short page is the last one, so the row count is known. This corrects
+            // the count, if rows have been deleted since count(*).
+            if ( tempRows.size() < pageSize ) {
+                rowCount = first + tempRows.size();
+            }
+            page = (TableRow[]) tempRows.toArray(new TableRow[tempRows.size()]);
+            pageCache.put(key, page);
+            return page;
+        } catch (Exception e) {
+            setError(e);
+            return null;
+        } finally {
+            try {
+                con.close();
+            } catch (Exception e1) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * streams all rows of the query to <code>writer</code>, reading them
+     * in chunks of one page.
+     */
+    public void writeRows(RowWriter writer) throws Exception {
+        Connection con = getConnection();
+        Statement s = null;
+        ResultSet rs = null;
+        try {
+            s = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            s.setFetchSize(pageSize > 0 ? pageSize : 200);
+            rs = s.executeQuery(sql);
+            ResultSetMetaData md = rs.getMetaData();
+            int numCols = md.getColumnCount();
+            String[] titles = new String[numCols];
+            for ( int i = 0; i < numCols; i++ ) {
+                titles[i] = md.getColumnName(i+1);
+            }
+            writer.writeHeader(titles);
+            Object[] row = new Object[numCols];
+            while (rs.next()) {
+                for ( int i = 0; i < numCols; i++ ) {
+                    row[i] = rs.getObject(i+1);
+                }
+                writer.writeRow(row);
+            }
+        } finally {
+            // the writer fails, when the client disconnects. A pooled connection
+            // does not reliably close its statements, so close them here.
+            try {
+                if ( rs != null ) {
+                    rs.close();
+                }
+            } catch (Exception e1) {
+                // ignore
+            }
+            try {
+                if ( s != null ) {
+                    s.close();
+                }
+            } catch (Exception e1) {
+                // ignore
+            }
+            con.close();
+        }
+    }
+
+    /**
+     * computes the total number of rows with select count(*) from (sql).
+     * If the database does not support that, the rows are counted
+     * without being copied.
+     */
+    private void countRows() {
+        Connection con = null;
+        try {
+            con = getConnection();
+            Statement s = con.createStatement();
+            try {
+                ResultSet rs = s.executeQuery("select count(*) from (" + sql + ") drill");
+                rs.next();
+                rowCount = rs.getInt(1);
+                rs.close();
+            } catch (SQLException e) {
+                logger.info("count(*) failed, counting drill through rows: " + e.getMessage());
+                s.close();
+                s = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                s.setFetchSize(pageSize);
+                ResultSet rs = s.executeQuery(sql);
+                int n = 0;
+                while (rs.next()) {
+                    n++;
+                }
+                rs.close();
+                rowCount = n;
+            }
+            s.close();
+        } catch (Exception e) {
+            setError(e);
+        } finally {
+            try {
+                con.close();
+            } catch (Exception e1) {
+                // ignore
+            }
+        }
+    }
     
     /**
      * get sql connection
@@ -346,5 +555,36 @@ public class MondrianDrillThroughTableModel extends AbstractTableModel {
     public void setExternalDataSource(DataSource externalDataSource) {
     	this.dataSource = externalDataSource;
     }
+
+    /**
+     * @return the number of rows fetched with one query, 0 if all rows are read at once
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @param pageSize the number of rows fetched with one query, 0 reads all rows at once
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+        this.ready = false;
+    }
+
+    /**
+     * least recently used pages
+     */
+    static class PageCache extends LinkedHashMap {
+        private int maxPages;
+
+        PageCache(int maxPages) {
+            super(16, 0.75f, true);
+            this.maxPages = Math.max(1, maxPages);
+        }
+
+        protected boolean removeEldestEntry(Map.Entry eldest) {
+            return size() > maxPages;
+        }
+    }
     
 }
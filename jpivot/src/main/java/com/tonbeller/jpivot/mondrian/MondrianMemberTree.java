@@ -13,10 +13,10 @@
 package com.tonbeller.jpivot.mondrian;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import mondrian.olap.ResultLimitExceededException;
 import mondrian.olap.SchemaReader;
@@ -30,6 +30,7 @@ import com.tonbeller.jpivot.olap.model.Member;
 import com.tonbeller.jpivot.olap.model.Position;
 import com.tonbeller.jpivot.olap.model.Result;
 import com.tonbeller.jpivot.olap.navi.MemberTree;
+import com.tonbeller.jpivot.olap.query.OccurrenceOrder;
 import com.tonbeller.jpivot.olap.query.Quax;
 
 /**
@@ -68,12 +69,16 @@ public class MondrianMemberTree extends ExtensionSupport implements MemberTree {
     SchemaReader scr = model.getSchemaReader();
     List<mondrian.olap.Member> monMembers = scr.getHierarchyRootMembers(monHier);
     ArrayList aMem = new ArrayList();
-    final List visibleRootMembers = new ArrayList();
+    Set memSet = new HashSet();
+    // visible root members by first occurrence in result
+    OccurrenceOrder visibleRootMembers = new OccurrenceOrder();
     int k = monMembers.size();
     for (int i = 0; i < k; i++) {
       mondrian.olap.Member monMember = (mondrian.olap.Member) monMembers.get(i);
       if (isVisible(monMember)) {
-        aMem.add(model.addMember(monMember));
+        Member m = model.addMember(monMember);
+        aMem.add(m);
+        memSet.add(m);
       }
     }
 
@@ -99,7 +104,7 @@ public class MondrianMemberTree extends ExtensionSupport implements MemberTree {
           // find the parent for this member
           if (monMem.getParentMember()== null){
               Member m = model.addMember(monMem);
-              if (!aMem.contains(m))
+              if (memSet.add(m))
                 aMem.add(m);
           }
         }
@@ -131,11 +136,10 @@ public class MondrianMemberTree extends ExtensionSupport implements MemberTree {
               if (mem.getMonMember().getHierarchy().equals(monHier)) {             
                 if (!(mem.getMonMember().getParentMember() == null))
                   continue; // ignore, not root
-                if (!visibleRootMembers.contains(mem))
-                  visibleRootMembers.add(mem);
+                visibleRootMembers.add(mem);
   
                 // Check if the result axis contains invisible members
-                if (!aMem.contains(mem)) {
+                if (memSet.add(mem)) {
                     aMem.add(mem);
                 }
               }
@@ -146,21 +150,8 @@ public class MondrianMemberTree extends ExtensionSupport implements MemberTree {
     Member[] members = (Member[]) aMem.toArray(new Member[0]);
 
     // If there is no query result, do not sort
-    if (!visibleRootMembers.isEmpty()) {
-        Arrays.sort(members, new Comparator() {
-          public int compare(Object arg0, Object arg1) {
-            Member m1 = (Member) arg0;
-            Member m2 = (Member) arg1;
-            int index1 = visibleRootMembers.indexOf(m1);
-            int index2 = visibleRootMembers.indexOf(m2);
-            if (index2 == -1)
-              return -1; // m2 is higher, unvisible to the end
-            if (index1 == -1)
-              return 1; // m1 is higher, unvisible to the end
-            return index1 - index2;
-          }
-        });
-    }
+    if (!visibleRootMembers.isEmpty())
+      visibleRootMembers.sort(members);
 
     return members;
   }
@@ -225,10 +216,13 @@ public class MondrianMemberTree extends ExtensionSupport implements MemberTree {
     List<mondrian.olap.Member> monChildren = scr.getMemberChildren(monMember);
 
     List list = new ArrayList(monChildren.size());
+    Set memSet = new HashSet();
     for (int i = 0; i < monChildren.size(); i++) {
         mondrian.olap.Member m = (mondrian.olap.Member)monChildren.get(i);
         if (MondrianUtil.isVisible(scr, m)) {
-            list.add(model.addMember(m));
+            Member child = model.addMember(m);
+            list.add(child);
+            memSet.add(child);
         }
     }
 
@@ -256,7 +250,7 @@ public class MondrianMemberTree extends ExtensionSupport implements MemberTree {
           //  add it to the child list
           if ( monMem.getParentMember().equals(monMember)){
               Member m = model.addMember(monMem);
-              if (!list.contains(m))
+              if (memSet.add(m))
                 list.add(m);
           }
         }
@@ -266,7 +260,8 @@ public class MondrianMemberTree extends ExtensionSupport implements MemberTree {
     // order the children by order of appearance in Query result
     //  if there is no result available, do not sort
     Result res = model.currentResult();
-    final List visibleChildMembers = new ArrayList();
+    // visible child members by first occurrence in result
+    OccurrenceOrder visibleChildMembers = new OccurrenceOrder();
     if (res != null) {
         // locate the appropriate result axis
         // find the Quax for this hier
@@ -296,7 +291,7 @@ public class MondrianMemberTree extends ExtensionSupport implements MemberTree {
                     visibleChildMembers.add(mem);
 
                     // Check if the result axis contains invisible members
-                    if (!list.contains(mem)) {
+                    if (memSet.add(mem)) {
                         list.add(mem);
                     }
                  }
@@ -306,21 +301,8 @@ public class MondrianMemberTree extends ExtensionSupport implements MemberTree {
     }
     Member[] children = (Member[]) list.toArray(new Member[list.size()]);
 
-    if (res!=null){  //turned off
-        Arrays.sort(children, new Comparator() {
-          public int compare(Object arg0, Object arg1) {
-            Member m1 = (Member) arg0;
-            Member m2 = (Member) arg1;
-            int index1 = visibleChildMembers.indexOf(m1);
-            int index2 = visibleChildMembers.indexOf(m2);
-            if (index2 == -1)
-              return -1; // m2 is higher, unvisible to the end
-            if (index1 == -1)
-              return 1; // m1 is higher, unvisible to the end
-            return index1 - index2;
-          }
-        });
-    }
+    if (res!=null)
+      visibleChildMembers.sort(children);
     
     return children;
   }
@@ -67,6 +67,7 @@ import org.apache.log4j.Logger;
 import com.tonbeller.jpivot.core.Extension;
 import com.tonbeller.jpivot.core.ModelChangeEvent;
 import com.tonbeller.jpivot.core.ModelChangeListener;
+import com.tonbeller.jpivot.olap.model.Cancelable;
 import com.tonbeller.jpivot.olap.model.Dimension;
 import com.tonbeller.jpivot.olap.model.Member;
 import com.tonbeller.jpivot.olap.model.OlapException;
@@ -84,7 +85,7 @@ import com.tonbeller.wcf.bookmarks.Bookmarkable;
  * The Model represents all (meta-)data for an MDX query.
  */
 public class MondrianModel extends MdxOlapModel implements OlapModel,
-    QueryAdapter.QueryAdapterHolder {
+    QueryAdapter.QueryAdapterHolder, Cancelable {
 
   static Logger logger = Logger.getLogger(MondrianModel.class);
 
@@ -118,6 +119,23 @@ public class MondrianModel extends MdxOlapModel implements OlapModel,
    */
   public static final Integer CELL_LIMIT_DEFAULT = new Integer(0);
 
+  /**
+   * If true, the result cells are not created when the query was executed,
+   * but on first access by ordinal. Only the cells of the page, that is
+   * actually rendered, get wrapped then.
+   */
+  public static final String LAZY_CELLS_PROP = "com.tonbeller.jpivot.mondrian.lazy.cells";
+
+  /**
+   * The maximum number of wrapped cells, that are kept by a lazy result.
+   */
+  public static final String LAZY_CELLS_CACHE_PROP = "com.tonbeller.jpivot.mondrian.lazy.cells.cache";
+
+  /**
+   * The default size of the lazy cell cache.
+   */
+  public static final Integer LAZY_CELLS_CACHE_DEFAULT = new Integer(10000);
+
   /*
    * sample value
    * provider=Mondrian;Jdbc=jdbc:odbc:MondrianFoodMart;Catalog=file:///c:/dev/mondrian/demo/FoodMart.xml
@@ -140,6 +158,11 @@ public class MondrianModel extends MdxOlapModel implements OlapModel,
 
   private String currentMdx;
   private MondrianResult result = null;
+
+  // the query, that is currently executed
+  private volatile mondrian.olap.Query runningQuery = null;
+  // the execution of runningQuery through the result cache
+  private volatile MondrianResultCache.Execution runningExecution = null;
   private HashMap hDimensions = new HashMap();
   private HashMap hHierarchies = new HashMap();
   private HashMap hLevels = new HashMap();
@@ -275,16 +298,35 @@ public class MondrianModel extends MdxOlapModel implements OlapModel,
         }
         // check for OutOfMemory
         this.listener.check();
-  
-        long t1 = System.currentTimeMillis();
-        monResult = monConnection.execute(queryAdapter.getMonQuery());
 
-        // check for OutOfMemory
-        this.listener.check();
-  
-        if (logger.isInfoEnabled()) {
-          long t2 = System.currentTimeMillis();
-          logger.info("query execution time " + (t2 - t1) + " ms");
+        // identical queries of other sessions share their result
+        MondrianResultCache cache = MondrianResultCache.instance();
+        if (cache.isShared()) {
+          Util.PropertyList properties = getConnectProperties();
+          // the role set by the application has no name
+          Object roleKey = (role != null) ? (Object) role : properties
+              .get(RolapConnectionProperties.Role.name());
+          Object cacheKey = MondrianResultCache.createKey(String.valueOf(properties), roleKey,
+              monConnection.getLocale(), queryAdapter.getMonQuery().toString());
+          MondrianResultCache.Execution execution = new MondrianResultCache.Execution() {
+            public mondrian.olap.Result execute() {
+              return executeMonQuery();
+            }
+
+            public void cancel() {
+              cancelMonQuery();
+            }
+          };
+          runningExecution = execution;
+          try {
+            monResult = cache.execute(cacheKey, execution);
+          } finally {
+            runningExecution = null;
+          }
+          // check for OutOfMemory
+          this.listener.check();
+        } else {
+          monResult = executeMonQuery();
         }
   
       } catch (MondrianException ex) {
@@ -351,6 +393,49 @@ public class MondrianModel extends MdxOlapModel implements OlapModel,
     return result;
   }
 
+  /**
+   * execute the current query
+   */
+  private mondrian.olap.Result executeMonQuery() {
+    long t1 = System.currentTimeMillis();
+    mondrian.olap.Result monResult;
+    runningQuery = queryAdapter.getMonQuery();
+    try {
+      monResult = monConnection.execute(runningQuery);
+    } finally {
+      runningQuery = null;
+    }
+
+    // check for OutOfMemory
+    this.listener.check();
+
+    if (logger.isInfoEnabled()) {
+      long t2 = System.currentTimeMillis();
+      logger.info("query execution time " + (t2 - t1) + " ms");
+    }
+    return monResult;
+  }
+
+  /**
+   * aborts the query, that is currently executed by getResult(). If other sessions
+   * wait for the same query, only this session stops waiting.
+   * @see Cancelable#cancel()
+   */
+  public void cancel() {
+    MondrianResultCache.Execution execution = runningExecution;
+    if (execution != null && MondrianResultCache.instance().cancel(execution))
+      return;
+    cancelMonQuery();
+  }
+
+  private void cancelMonQuery() {
+    mondrian.olap.Query query = runningQuery;
+    if (query != null) {
+      logger.info("cancel query");
+      query.cancel();
+    }
+  }
+
   /**
    * get the result variable without any action
    *
@@ -115,7 +115,8 @@ public class MondrianQueryAdapter extends QueryAdapter implements QuaxChangeList
    * - the original query
    * - adding the drilldown groups
    * - apply pending swap axes
-   * - apply pending sorts.
+   * - apply pending sorts
+   * - apply the page of the rows.
    *
    * Called from MondrianModel.getResult before the query is executed.
    */
@@ -163,6 +164,10 @@ public class MondrianQueryAdapter extends QueryAdapter implements QuaxChangeList
       sortMan.addSortToQuery();
     }
 
+    // page the rows after they were sorted
+    if (pagingMan != null)
+      pagingMan.addPagingToQuery(isPagingPossible());
+
     long t1 = System.currentTimeMillis();
     String mdx = monQuery.toString();
     long t2 = System.currentTimeMillis();
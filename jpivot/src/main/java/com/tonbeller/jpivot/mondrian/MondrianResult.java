@@ -18,7 +18,10 @@ import java.util.Iterator;
 import java.util.List;
 
 import com.tonbeller.jpivot.olap.model.Axis;
+import com.tonbeller.jpivot.olap.model.Cell;
 import com.tonbeller.jpivot.olap.model.impl.FormatStringParser;
+import com.tonbeller.jpivot.olap.query.CellStore;
+import com.tonbeller.jpivot.olap.query.LazyCellList;
 import com.tonbeller.jpivot.olap.query.ResultBase;
 import mondrian.olap.Position;
 import mondrian.olap.Query;
@@ -188,11 +191,32 @@ public class MondrianResult extends ResultBase {
     for (int i = 0; i < monAxes.length; i++) {
       iar[i] = 0;
     }
+    if (Boolean.getBoolean(MondrianModel.LAZY_CELLS_PROP)) {
+      // cells are wrapped on first access
+      int cacheSize = Integer.getInteger(MondrianModel.LAZY_CELLS_CACHE_PROP,
+          MondrianModel.LAZY_CELLS_CACHE_DEFAULT).intValue();
+      aCells = new MondrianLazyCellList(nCells, cacheSize);
+      return;
+    }
+
+    MondrianCellStore store = null;
+    if (isCompactCells()) {
+      store = new MondrianCellStore(nCells);
+      aCells = store;
+    }
     for (int i = 0; i < nCells; i++) {
-      mondrian.olap.Cell monCell = monResult.getCell(iar);
-      MondrianCell cell = new MondrianCell(monCell, mmodel);
-      cell.setFormattedValue(monCell.getFormattedValue(), formatStringParser);
-      aCells.add(cell);
+      mondrian.olap.Cell monCell = getMonCell(iar);
+      if (store != null) {
+        store.setValue(i, monCell.isNull() ? null : monCell.getValue());
+        FormatStringParser.Result res = formatStringParser.parse((Cell) store.get(i), monCell
+            .getFormattedValue());
+        store.setFormattedValue(i, res.getFormattedValue());
+        store.addProperties(i, res.getProperties());
+      } else {
+        MondrianCell cell = new MondrianCell(monCell, mmodel);
+        cell.setFormattedValue(monCell.getFormattedValue(), formatStringParser);
+        aCells.add(cell);
+      }
       if (nCells > 1) {
         // not for 0-dimensional case
         increment(iar); 
@@ -230,6 +254,95 @@ public class MondrianResult extends ResultBase {
     }
   }
 
+  /**
+   * convert a cell ordinal to the cell coordinates,
+   *  first index changes fastest
+   */
+  private int[] coordinates(int ordinal) {
+    int[] iar = new int[posize.length];
+    for (int i = 0; i < posize.length; i++) {
+      iar[i] = ordinal % posize[i];
+      ordinal = ordinal / posize[i];
+    }
+    return iar;
+  }
+
+  /**
+   * reads a cell of the Mondrian result, that may be shared by several sessions
+   * @see MondrianResultCache
+   */
+  private mondrian.olap.Cell getMonCell(int[] coordinates) {
+    synchronized (monResult) {
+      return monResult.getCell(coordinates);
+    }
+  }
+
+  /**
+   * wrap a single Mondrian cell
+   */
+  private MondrianCell createCell(int ordinal) {
+    mondrian.olap.Cell monCell = getMonCell(coordinates(ordinal));
+    MondrianCell cell = new MondrianCell(monCell, (MondrianModel) model);
+    cell.setFormattedValue(monCell.getFormattedValue(), formatStringParser);
+    return cell;
+  }
+
+  /**
+   * Cell list, that retrieves and wraps the Mondrian cells on first access.
+   */
+  private class MondrianLazyCellList extends LazyCellList {
+    MondrianLazyCellList(int size, int cacheSize) {
+      super(size, cacheSize);
+    }
+
+    protected Object createCell(int ordinal) {
+      return MondrianResult.this.createCell(ordinal);
+    }
+  }
+
+  /**
+   * columnar cell storage, the cells are MondrianCell flyweights
+   */
+  private class MondrianCellStore extends CellStore {
+    MondrianCellStore(int size) {
+      super(size, "");
+    }
+
+    protected Cell createCell(int index) {
+      return new CompactCell(this, index);
+    }
+  }
+
+  /**
+   * MondrianCell reading its data from the cell store.
+   * The Mondrian cell is retrieved from the result only on demand,
+   * e.g. for drill through.
+   */
+  private class CompactCell extends MondrianCell {
+    private final CellStore store;
+    private final int index;
+
+    CompactCell(CellStore store, int index) {
+      super(null, (MondrianModel) model);
+      this.store = store;
+      this.index = index;
+      formattedValue = store.getFormattedValue(index);
+      setPropertyList(store.getProperties(index));
+    }
+
+    public Object getValue() {
+      return store.getValue(index);
+    }
+
+    public boolean isNull() {
+      return store.isNull(index);
+    }
+
+    public mondrian.olap.Cell getMonCell() {
+      return MondrianResult.this.getMonCell(coordinates(store.getSourceOrdinal(index)));
+    }
+  }
+
   /**
    * Returns the axes.
    * @return Axis[]
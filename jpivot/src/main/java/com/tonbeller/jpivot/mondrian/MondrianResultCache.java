@@ -0,0 +1,486 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ *
+ */
+package com.tonbeller.jpivot.mondrian;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import com.tonbeller.jpivot.olap.model.OlapException;
+
+/**
+ * Server wide cache of Mondrian query results, shared by all sessions.
+ * <p>
+ * The Mondrian result is cached, not the MondrianResult, because the latter
+ * is changed by the session (hierarchize, query adapter). An entry is
+ * keyed by the connect string, the role names, the locale and the normalized
+ * MDX of the query. The role is compared by name, because Mondrian creates
+ * a new (union) role for every connection. An external data source is not
+ * part of the key, its connect string must identify the database.
+ * <p>
+ * Several sessions read a shared Mondrian result concurrently. After the
+ * execution its axes are not changed anymore, the cells are read by
+ * MondrianResult under the lock of the Mondrian result.
+ * <p>
+ * The cache is bounded by the number of entries, the least recently
+ * used entry is evicted first. Entries expire after a time to live.
+ * A data source change can be propagated by {@link #invalidate()}
+ * or by {@link ResultCacheChangeListener}.
+ * <p>
+ * If {@link #COALESCE_PROP} is true, concurrent executions of the same query
+ * are coalesced: the first session executes the query, the others wait for
+ * its result. Coalescing is off by default, because the sessions then share
+ * the Mondrian result of the first session, including its exceptions. The
+ * result belongs to the connection of the first session and must remain
+ * usable after that session has been closed. A session, that cancels its
+ * query, only stops waiting; the query itself is cancelled when no other
+ * session waits for it.
+ *
+ * @see #SIZE_PROP
+ * @see #TTL_PROP
+ * @see #COALESCE_PROP
+ */
+public class MondrianResultCache {
+
+  /**
+   * max number of cached results, 0 (default) disables the cache
+   */
+  public static final String SIZE_PROP = "com.tonbeller.jpivot.mondrian.result.cache.size";
+
+  /**
+   * time to live of a cached result in seconds
+   */
+  public static final String TTL_PROP = "com.tonbeller.jpivot.mondrian.result.cache.ttl";
+
+  /**
+   * default time to live in seconds
+   */
+  public static final Integer TTL_DEFAULT = new Integer(300);
+
+  /**
+   * if "true", concurrent identical queries are coalesced, default false
+   */
+  public static final String COALESCE_PROP = "com.tonbeller.jpivot.mondrian.result.coalesce";
+
+  /**
+   * executes a query on behalf of {@link MondrianResultCache#execute(Object, Execution)}
+   */
+  public interface Execution {
+    mondrian.olap.Result execute();
+
+    /**
+     * aborts the query, that is running in execute()
+     */
+    void cancel();
+  }
+
+  private static Logger logger = Logger.getLogger(MondrianResultCache.class);
+
+  private static MondrianResultCache instance = new MondrianResultCache(Integer.getInteger(
+      SIZE_PROP, 0).intValue(), 1000L * Integer.getInteger(TTL_PROP, TTL_DEFAULT).intValue(),
+      Boolean.getBoolean(COALESCE_PROP));
+
+  private int maxSize;
+  private long ttl;
+  private boolean coalesce;
+  private Map entries;
+  private Map inFlight = new HashMap();
+  private Map flightByExecution = new HashMap();
+
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+  private long expirations = 0;
+  private long invalidations = 0;
+  private long executions = 0;
+  private long coalesced = 0;
+
+  /**
+   * @return the cache shared by all sessions
+   */
+  public static MondrianResultCache instance() {
+    return instance;
+  }
+
+  /**
+   * c'tor
+   * @param maxSize max number of entries, 0 disables the cache
+   * @param ttl time to live of an entry in milliseconds
+   * @param coalesce true to coalesce concurrent identical queries
+   */
+  MondrianResultCache(int maxSize, long ttl, boolean coalesce) {
+    this.maxSize = maxSize;
+    this.ttl = ttl;
+    this.coalesce = coalesce;
+    this.entries = new LinkedHashMap(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry eldest) {
+        if (size() > MondrianResultCache.this.maxSize) {
+          ++evictions;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * @return true, if results are cached
+   */
+  public boolean isEnabled() {
+    return maxSize > 0;
+  }
+
+  /**
+   * @return true, if results are cached or concurrent queries are coalesced
+   */
+  public boolean isShared() {
+    return maxSize > 0 || coalesce;
+  }
+
+  /**
+   * returns the cached result or executes the query. If the same query is
+   * already executed by another thread, waits for its result instead.
+   * Exceptions of the execution are thrown in all waiting threads.
+   * @throws OlapException if the thread was interrupted while waiting or
+   * the execution was cancelled by {@link #cancel(Execution)}
+   */
+  public mondrian.olap.Result execute(Object key, Execution execution) throws OlapException {
+    Flight flight;
+    boolean leader = false;
+    synchronized (this) {
+      mondrian.olap.Result result = get(key);
+      if (result != null)
+        return result;
+      flight = coalesce ? (Flight) inFlight.get(key) : null;
+      if (flight != null) {
+        ++coalesced;
+      } else {
+        flight = new Flight(key, execution);
+        if (coalesce)
+          inFlight.put(key, flight);
+        ++executions;
+        leader = true;
+      }
+      flight.join(execution);
+      flightByExecution.put(execution, flight);
+    }
+
+    try {
+      if (!leader) {
+        if (logger.isInfoEnabled())
+          logger.info("waiting for concurrent execution of the same query");
+        return flight.await(execution);
+      }
+      mondrian.olap.Result result;
+      try {
+        result = execution.execute();
+        put(key, result);
+        flight.done(result, null);
+      } catch (RuntimeException e) {
+        flight.done(null, e);
+        throw e;
+      } catch (Error e) {
+        flight.done(null, e);
+        throw e;
+      }
+      // the result was computed for the other sessions
+      if (flight.isDetached(execution))
+        throw new OlapException("Query was cancelled");
+      return result;
+    } finally {
+      synchronized (this) {
+        flightByExecution.remove(execution);
+        if (leader && inFlight.get(key) == flight)
+          inFlight.remove(key);
+      }
+    }
+  }
+
+  /**
+   * detaches an execution from its query. If the execution waits for the result
+   * of another session, execute() throws an OlapException. The query itself is
+   * cancelled only, if no other session waits for its result.
+   * @return false, if the execution is not running in execute()
+   */
+  public boolean cancel(Execution execution) {
+    Flight flight;
+    synchronized (this) {
+      flight = (Flight) flightByExecution.get(execution);
+      if (flight == null)
+        return false;
+      if (!flight.detach(execution))
+        return true;
+      // the next session executes the query again
+      if (inFlight.get(flight.key) == flight)
+        inFlight.remove(flight.key);
+    }
+    flight.leader.cancel();
+    return true;
+  }
+
+  /**
+   * create the key of a query
+   * @param connection identifies connection and data source, e.g. the connect properties
+   * @param role the role names of the connection, or a role object, that is
+   * compared by equals(), or null
+   * @param locale the locale of the connection or null
+   * @param mdx the query
+   */
+  public static Object createKey(String connection, Object role, Object locale, String mdx) {
+    return new Key(connection, role, locale, normalize(mdx));
+  }
+
+  /**
+   * collapses white space outside of quoted identifiers and strings
+   */
+  static String normalize(String mdx) {
+    StringBuffer sb = new StringBuffer(mdx.length());
+    char quote = 0;
+    boolean space = false;
+    for (int i = 0; i < mdx.length(); i++) {
+      char c = mdx.charAt(i);
+      if (quote != 0) {
+        sb.append(c);
+        if (c == quote)
+          quote = 0;
+        continue;
+      }
+      if (Character.isWhitespace(c)) {
+        space = true;
+        continue;
+      }
+      if (space && sb.length() > 0)
+        sb.append(' ');
+      space = false;
+      if (c == '[')
+        quote = ']';
+      else if (c == '"' || c == '\'')
+        quote = c;
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return the cached result or null
+   */
+  public synchronized mondrian.olap.Result get(Object key) {
+    if (!isEnabled())
+      return null;
+    Entry entry = (Entry) entries.get(key);
+    if (entry != null && System.currentTimeMillis() - entry.created > ttl) {
+      entries.remove(key);
+      ++expirations;
+      entry = null;
+    }
+    if (entry == null) {
+      ++misses;
+      return null;
+    }
+    ++hits;
+    return entry.result;
+  }
+
+  /**
+   * caches a result
+   */
+  public synchronized void put(Object key, mondrian.olap.Result result) {
+    if (!isEnabled())
+      return;
+    entries.put(key, new Entry(result));
+  }
+
+  /**
+   * removes all cached results
+   */
+  public synchronized void invalidate() {
+    if (logger.isInfoEnabled())
+      logger.info("invalidating " + entries.size() + " cached results");
+    invalidations += entries.size();
+    entries.clear();
+  }
+
+  /**
+   * removes all cached results of a connection
+   * @param connection the connection as passed to createKey
+   */
+  public synchronized void invalidate(String connection) {
+    for (Iterator it = entries.keySet().iterator(); it.hasNext();) {
+      Key key = (Key) it.next();
+      if (connection.equals(key.connection)) {
+        it.remove();
+        ++invalidations;
+      }
+    }
+  }
+
+  /**
+   * @return number of cached results
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  public synchronized long getExpirations() {
+    return expirations;
+  }
+
+  public synchronized long getInvalidations() {
+    return invalidations;
+  }
+
+  /**
+   * @return number of queries, that were executed by {@link #execute(Object, Execution)}
+   */
+  public synchronized long getExecutions() {
+    return executions;
+  }
+
+  /**
+   * @return number of executions, that were saved by waiting for a concurrent one
+   */
+  public synchronized long getCoalesced() {
+    return coalesced;
+  }
+
+  public synchronized String toString() {
+    return "MondrianResultCache size=" + entries.size() + " maxSize=" + maxSize + " ttl=" + ttl
+        + " hits=" + hits + " misses=" + misses + " evictions=" + evictions + " expirations="
+        + expirations + " invalidations=" + invalidations + " executions=" + executions
+        + " coalesced=" + coalesced;
+  }
+
+  /**
+   * a query in execution. The sessions, that wait for the result, are
+   * counted, so one session can not cancel the query for the others.
+   */
+  private static class Flight {
+    Object key;
+    Execution leader;
+    Set waiting = new HashSet();
+    Set detached = new HashSet();
+    boolean done = false;
+    mondrian.olap.Result result;
+    Throwable error;
+
+    Flight(Object key, Execution leader) {
+      this.key = key;
+      this.leader = leader;
+    }
+
+    synchronized void join(Execution execution) {
+      waiting.add(execution);
+    }
+
+    /**
+     * @return true, if no session waits for the result anymore
+     */
+    synchronized boolean detach(Execution execution) {
+      if (done || !waiting.remove(execution))
+        return false;
+      detached.add(execution);
+      notifyAll();
+      return waiting.isEmpty();
+    }
+
+    synchronized boolean isDetached(Execution execution) {
+      return detached.contains(execution);
+    }
+
+    synchronized void done(mondrian.olap.Result result, Throwable error) {
+      this.result = result;
+      this.error = error;
+      this.done = true;
+      notifyAll();
+    }
+
+    synchronized mondrian.olap.Result await(Execution execution) throws OlapException {
+      while (!done) {
+        if (detached.contains(execution))
+          throw new OlapException("Query was cancelled");
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new OlapException("interrupted while waiting for query result", e);
+        }
+      }
+      if (error instanceof RuntimeException)
+        throw (RuntimeException) error;
+      if (error instanceof Error)
+        throw (Error) error;
+      return result;
+    }
+  }
+
+  private static class Entry {
+    mondrian.olap.Result result;
+    long created = System.currentTimeMillis();
+
+    Entry(mondrian.olap.Result result) {
+      this.result = result;
+    }
+  }
+
+  private static class Key {
+    String connection;
+    Object role;
+    Object locale;
+    String mdx;
+
+    Key(String connection, Object role, Object locale, String mdx) {
+      this.connection = connection;
+      this.role = role;
+      this.locale = locale;
+      this.mdx = mdx;
+    }
+
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key))
+        return false;
+      Key that = (Key) obj;
+      return eq(this.connection, that.connection) && eq(this.role, that.role)
+          && eq(this.locale, that.locale) && this.mdx.equals(that.mdx);
+    }
+
+    public int hashCode() {
+      int h = mdx.hashCode();
+      h = 31 * h + (connection == null ? 0 : connection.hashCode());
+      h = 31 * h + (locale == null ? 0 : locale.hashCode());
+      h = 31 * h + (role == null ? 0 : role.hashCode());
+      return h;
+    }
+
+    private static boolean eq(Object o1, Object o2) {
+      return o1 == null ? o2 == null : o1.equals(o2);
+    }
+  }
+
+} // MondrianResultCache
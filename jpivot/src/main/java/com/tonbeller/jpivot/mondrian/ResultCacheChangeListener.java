@@ -0,0 +1,71 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ *
+ */
+package com.tonbeller.jpivot.mondrian;
+
+import org.apache.log4j.Logger;
+
+import mondrian.rolap.RolapHierarchy;
+import mondrian.rolap.agg.AggregationKey;
+import mondrian.spi.DataSourceChangeListener;
+
+/**
+ * DataSourceChangeListener, that flushes the {@link MondrianResultCache}
+ * whenever the decorated listener reports a change to Mondrian.
+ * <p>
+ * Configure this class as <code>dataSourceChangeListener</code> of the model
+ * and the application's listener class with {@link #DELEGATE_PROP}.
+ * Mondrian consults the listener only when it executes a query, so
+ * the time to live of the result cache limits how long a cached
+ * result may be stale.
+ */
+public class ResultCacheChangeListener implements DataSourceChangeListener {
+
+  /**
+   * class name of the decorated DataSourceChangeListener
+   */
+  public static final String DELEGATE_PROP = "com.tonbeller.jpivot.mondrian.result.cache.listener";
+
+  private static Logger logger = Logger.getLogger(ResultCacheChangeListener.class);
+
+  private DataSourceChangeListener delegate;
+
+  public ResultCacheChangeListener() {
+    String className = System.getProperty(DELEGATE_PROP);
+    if (className != null && className.length() > 0) {
+      try {
+        delegate = (DataSourceChangeListener) Class.forName(className).newInstance();
+      } catch (Exception e) {
+        logger.error("could not create DataSourceChangeListener " + className, e);
+      }
+    }
+  }
+
+  public ResultCacheChangeListener(DataSourceChangeListener delegate) {
+    this.delegate = delegate;
+  }
+
+  public boolean isHierarchyChanged(RolapHierarchy hierarchy) {
+    return changed(delegate != null && delegate.isHierarchyChanged(hierarchy));
+  }
+
+  public boolean isAggregationChanged(AggregationKey aggregation) {
+    return changed(delegate != null && delegate.isAggregationChanged(aggregation));
+  }
+
+  private boolean changed(boolean changed) {
+    if (changed)
+      MondrianResultCache.instance().invalidate();
+    return changed;
+  }
+
+} // ResultCacheChangeListener
@@ -0,0 +1,455 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ *
+ */
+package com.tonbeller.jpivot.olap.model;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+
+import com.tonbeller.jpivot.core.Extension;
+import com.tonbeller.jpivot.core.Model;
+import com.tonbeller.jpivot.core.ModelChangeEvent;
+import com.tonbeller.jpivot.core.ModelChangeListener;
+
+/**
+ * An OlapModel decorator that executes the query in a background thread.
+ * <p>
+ * A query is started with {@link #submit(String)}, its state is polled with
+ * {@link #isRunning()} and it is aborted with {@link #cancel()}. Once the query
+ * is done, {@link #getResult()} returns its result. If no query was submitted,
+ * getResult() executes the query synchronously as before.
+ * <p>
+ * The model is not thread safe. A cancelled query may still run in its
+ * worker thread, so cancel(), submit() and getResult() wait until the worker
+ * has left the model. The navigation changes the model through the extensions,
+ * so the extensions are returned behind a proxy, that cancels the running query
+ * and waits for its worker before the extension is called, see
+ * {@link #getExtension(String)}. A model change event cancels the query too.
+ * <p>
+ * The queries of all sessions share a bounded thread pool and every user may
+ * run a limited number of queries at the same time. The decorator is registered as
+ * extension with id {@link #ID} and is active only if the system property
+ * {@link #ENABLED_PROP} is true.
+ *
+ * @see Cancelable
+ */
+public class AsyncOlapModel extends OlapModelDecorator implements ModelChangeListener {
+
+  /**
+   * the extension id
+   */
+  public static final String ID = "asyncExecution";
+
+  /**
+   * if true, the table component executes queries asynchronously
+   */
+  public static final String ENABLED_PROP = "com.tonbeller.jpivot.olap.async";
+
+  /**
+   * number of threads, that execute queries
+   */
+  public static final String THREADS_PROP = "com.tonbeller.jpivot.olap.async.threads";
+  public static final Integer THREADS_DEFAULT = new Integer(4);
+
+  /**
+   * max number of queries, that wait for a thread
+   */
+  public static final String QUEUE_PROP = "com.tonbeller.jpivot.olap.async.queue";
+  public static final Integer QUEUE_DEFAULT = new Integer(50);
+
+  /**
+   * max number of queries, that one user may run at the same time
+   */
+  public static final String USER_LIMIT_PROP = "com.tonbeller.jpivot.olap.async.user.limit";
+  public static final Integer USER_LIMIT_DEFAULT = new Integer(2);
+
+  /**
+   * milliseconds the table component waits for the query, before it
+   * shows the progress placeholder
+   */
+  public static final String WAIT_PROP = "com.tonbeller.jpivot.olap.async.wait";
+  public static final Integer WAIT_DEFAULT = new Integer(1000);
+
+  private static Logger logger = Logger.getLogger(AsyncOlapModel.class);
+
+  private static ThreadPoolExecutor executor = null;
+  private static Map runningByUser = new HashMap();
+
+  private Job job = null;
+  private long startTime;
+  private Map guardedExtensions = new HashMap();
+
+  /**
+   * @return true if asynchronous execution is enabled
+   */
+  public static boolean isEnabled() {
+    return Boolean.getBoolean(ENABLED_PROP);
+  }
+
+  private static synchronized ThreadPoolExecutor executor() {
+    if (executor == null) {
+      int threads = Integer.getInteger(THREADS_PROP, THREADS_DEFAULT).intValue();
+      int queue = Integer.getInteger(QUEUE_PROP, QUEUE_DEFAULT).intValue();
+      executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue(queue), new ThreadFactory() {
+            int count = 0;
+
+            public synchronized Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "jpivot-query-" + (++count));
+              t.setDaemon(true);
+              return t;
+            }
+          });
+      executor.allowCoreThreadTimeOut(true);
+    }
+    return executor;
+  }
+
+  private static void acquire(String user) throws OlapException {
+    synchronized (runningByUser) {
+      int limit = Integer.getInteger(USER_LIMIT_PROP, USER_LIMIT_DEFAULT).intValue();
+      int[] count = (int[]) runningByUser.get(user);
+      if (count == null) {
+        count = new int[1];
+        runningByUser.put(user, count);
+      }
+      if (limit > 0 && count[0] >= limit)
+        throw new OlapException("User " + user + " already runs " + count[0] + " queries");
+      ++count[0];
+    }
+  }
+
+  private static void release(String user) {
+    synchronized (runningByUser) {
+      int[] count = (int[]) runningByUser.get(user);
+      if (count != null && --count[0] <= 0)
+        runningByUser.remove(user);
+    }
+  }
+
+  /**
+   * starts the query in a background thread. Does nothing if a query
+   * has been submitted already.
+   * @param user the user, that started the query, for the per-user limit
+   * @throws OlapException if the user or the server runs too many queries
+   */
+  public void submit(String user) throws OlapException {
+    Job j;
+    synchronized (this) {
+      j = job;
+    }
+    // the worker of a cancelled query may still use the model
+    if (j != null && j.task.isCancelled())
+      awaitWorker(j);
+
+    synchronized (this) {
+      if (job != null)
+        return;
+      acquire(user);
+      j = new Job(user);
+      try {
+        executor().execute(j.task);
+      } catch (RejectedExecutionException e) {
+        release(user);
+        throw new OlapException("Too many queries are running, please try again later");
+      }
+      job = j;
+      startTime = System.currentTimeMillis();
+    }
+    if (logger.isInfoEnabled())
+      logger.info("query submitted by " + user);
+  }
+
+  /**
+   * @return true if a query has been submitted and is not done yet
+   */
+  public synchronized boolean isRunning() {
+    return job != null && !job.task.isDone();
+  }
+
+  /**
+   * @return true if a submitted query is done and its result may be fetched
+   * with getResult()
+   */
+  public synchronized boolean isDone() {
+    return job != null && job.task.isDone() && !job.task.isCancelled();
+  }
+
+  /**
+   * waits until the submitted query is done, but no longer than <code>millis</code>
+   * @return true if the query is done
+   */
+  public boolean waitFor(long millis) {
+    Job j;
+    synchronized (this) {
+      j = job;
+    }
+    if (j == null || j.task.isCancelled())
+      return false;
+    try {
+      j.task.get(millis, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (Exception e) {
+      // will be thrown by getResult()
+    }
+    return true;
+  }
+
+  /**
+   * @return milliseconds since the running query was submitted
+   */
+  public synchronized long getElapsedTime() {
+    if (job == null)
+      return 0;
+    return System.currentTimeMillis() - startTime;
+  }
+
+  /**
+   * aborts the running query and discards the result of a finished one.
+   * Returns when the worker thread has left the model, so the caller may
+   * change or execute the model afterwards.
+   */
+  public void cancel() {
+    Job j;
+    synchronized (this) {
+      j = job;
+    }
+    // the query changes its own model, e.g. on rollback
+    if (j == null || j.worker == Thread.currentThread())
+      return;
+    if (!j.task.isDone()) {
+      logger.info("cancel query");
+      Model root = getRootModel();
+      if (root instanceof Cancelable)
+        ((Cancelable) root).cancel();
+      j.task.cancel(true);
+    }
+    awaitWorker(j);
+  }
+
+  /**
+   * waits until the worker of a job has left the model and forgets the job
+   */
+  private void awaitWorker(Job j) {
+    j.awaitFinished();
+    synchronized (this) {
+      if (job == j)
+        job = null;
+    }
+  }
+
+  /**
+   * returns the result of the submitted query, waits if necessary.
+   * Executes the query synchronously, if none was submitted.
+   */
+  public Result getResult() throws OlapException {
+    Job j;
+    synchronized (this) {
+      j = job;
+    }
+    if (j == null)
+      return super.getResult();
+    try {
+      return (Result) j.task.get();
+    } catch (ExecutionException e) {
+      Throwable t = e.getCause();
+      if (t instanceof OlapException)
+        throw (OlapException) t;
+      if (t instanceof RuntimeException)
+        throw (RuntimeException) t;
+      if (t instanceof Error)
+        throw (Error) t;
+      throw new OlapException(t);
+    } catch (CancellationException e) {
+      // the result is obsolete, execute the current query
+      awaitWorker(j);
+      return super.getResult();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OlapException(e);
+    } finally {
+      synchronized (this) {
+        if (job == j && !j.task.isCancelled())
+          job = null;
+      }
+    }
+  }
+
+  /**
+   * returns the extension behind a proxy, that cancels a running query and
+   * waits until its worker has left the model, before a method is called,
+   * that may change the model. Methods named get..., is..., can... and
+   * has... only read the model, they do not cancel the query.
+   * Extensions that decorate the model are returned as they are.
+   */
+  public Extension getExtension(String id) {
+    Extension ext = super.getExtension(id);
+    if (ext == null || ext instanceof Model)
+      return ext;
+    synchronized (guardedExtensions) {
+      Extension guarded = (Extension) guardedExtensions.get(ext);
+      if (guarded == null) {
+        guarded = guard(ext);
+        guardedExtensions.put(ext, guarded);
+      }
+      return guarded;
+    }
+  }
+
+  private Extension guard(final Extension ext) {
+    List interfaces = new ArrayList();
+    for (Class c = ext.getClass(); c != null; c = c.getSuperclass()) {
+      Class[] ifs = c.getInterfaces();
+      for (int i = 0; i < ifs.length; i++) {
+        if (!interfaces.contains(ifs[i]))
+          interfaces.add(ifs[i]);
+      }
+    }
+    InvocationHandler handler = new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (!isReadOnly(method))
+          cancelRunning();
+        try {
+          return method.invoke(ext, args);
+        } catch (InvocationTargetException e) {
+          throw e.getTargetException();
+        }
+      }
+    };
+    return (Extension) Proxy.newProxyInstance(ext.getClass().getClassLoader(),
+        (Class[]) interfaces.toArray(new Class[interfaces.size()]), handler);
+  }
+
+  /**
+   * cancels the query, if it is running or its cancelled worker may still
+   * use the model. The result of a finished query is kept.
+   */
+  private void cancelRunning() {
+    Job j;
+    synchronized (this) {
+      j = job;
+    }
+    if (j != null && (!j.task.isDone() || j.task.isCancelled()))
+      cancel();
+  }
+
+  static boolean isReadOnly(Method method) {
+    if (method.getDeclaringClass() == Object.class)
+      return true;
+    String name = method.getName();
+    return name.startsWith("get") || name.startsWith("is") || name.startsWith("can")
+        || name.startsWith("has");
+  }
+
+  /**
+   * the result of a running query is obsolete, cancel it
+   */
+  public void modelChanged(ModelChangeEvent e) {
+    cancel();
+  }
+
+  public void structureChanged(ModelChangeEvent e) {
+    cancel();
+  }
+
+  public void destroy() {
+    cancel();
+    super.destroy();
+  }
+
+  /**
+   * a submitted query. The slot of the user is released when the worker
+   * thread leaves the model, or when the query is cancelled before a
+   * worker has started it.
+   */
+  private class Job implements Callable {
+    final FutureTask task;
+    private final String user;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final CountDownLatch finished = new CountDownLatch(1);
+    volatile Thread worker = null;
+
+    Job(String user) {
+      this.user = user;
+      this.task = new FutureTask(this) {
+        protected void done() {
+          // cancelled before the worker started
+          if (started.compareAndSet(false, true))
+            finish();
+        }
+      };
+    }
+
+    public Object call() throws Exception {
+      if (!started.compareAndSet(false, true))
+        return null;
+      worker = Thread.currentThread();
+      try {
+        return AsyncOlapModel.super.getResult();
+      } finally {
+        worker = null;
+        finish();
+      }
+    }
+
+    private void finish() {
+      release(user);
+      finished.countDown();
+    }
+
+    void awaitFinished() {
+      boolean interrupted = false;
+      while (finished.getCount() > 0) {
+        try {
+          finished.await();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted)
+        Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @see com.tonbeller.jpivot.core.Extension#decorate(Model)
+   */
+  public Model decorate(Model modelToDecorate) {
+    modelToDecorate.addModelChangeListener(this);
+    return super.decorate(modelToDecorate);
+  }
+
+}
@@ -0,0 +1,28 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ *
+ */
+package com.tonbeller.jpivot.olap.model;
+
+/**
+ * implemented by an OlapModel, whose running query can be aborted
+ * from another thread.
+ *
+ * @see AsyncOlapModel
+ */
+public interface Cancelable {
+
+  /**
+   * aborts the query, that is currently executed by getResult().
+   * Does nothing if no query is running.
+   */
+  void cancel();
+}
@@ -84,6 +84,15 @@ public abstract class CellBase implements Cell {
     return null;
   }
 
+  /**
+   * share the property list, used by cells that are flyweights
+   * of a columnar cell store.
+   * @param properties List of Property or null
+   */
+  protected void setPropertyList(List properties) {
+    this.properties = properties;
+  }
+
   /**
    * @see com.tonbeller.jpivot.olap.model.Visitable#accept(Visitor)
    */
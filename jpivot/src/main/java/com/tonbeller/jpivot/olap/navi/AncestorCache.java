@@ -0,0 +1,111 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ * 
+ */
+package com.tonbeller.jpivot.olap.navi;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.tonbeller.jpivot.olap.model.Hierarchy;
+import com.tonbeller.jpivot.olap.model.Member;
+import com.tonbeller.jpivot.olap.model.Result;
+
+/**
+ * caches the parents of members, so the MemberTree is asked once per member only.
+ * Table and chart share an instance per result, see {@link #instance(Result, MemberTree)}.
+ */
+public class AncestorCache {
+
+  // Result -> AncestorCache, removed when the result is garbage collected
+  private static Map instances = new WeakHashMap();
+
+  private MemberTree tree;
+
+  // Member -> Member[] containing the member, its parent ... the root member
+  private Map ancestors = new HashMap();
+
+  // Hierarchy -> Member[]
+  private Map rootMembers = new HashMap();
+
+  /**
+   * creates a cache that is not shared
+   */
+  public AncestorCache(MemberTree tree) {
+    this.tree = tree;
+  }
+
+  /**
+   * returns the cache for <code>result</code>
+   */
+  public static AncestorCache instance(Result result, MemberTree tree) {
+    if (result == null)
+      return new AncestorCache(tree);
+    synchronized (instances) {
+      AncestorCache cache = (AncestorCache) instances.get(result);
+      if (cache == null) {
+        cache = new AncestorCache(tree);
+        instances.put(result, cache);
+      }
+      return cache;
+    }
+  }
+
+  /**
+   * returns the member followed by its parent, grandparent etc. up to the root member.
+   * The array must not be modified.
+   */
+  public synchronized Member[] getAncestors(Member member) {
+    Member[] path = (Member[]) ancestors.get(member);
+    if (path == null) {
+      Member parent = tree.getParent(member);
+      if (parent == null)
+        path = new Member[] { member};
+      else {
+        Member[] parentPath = getAncestors(parent);
+        path = new Member[parentPath.length + 1];
+        path[0] = member;
+        System.arraycopy(parentPath, 0, path, 1, parentPath.length);
+      }
+      ancestors.put(member, path);
+    }
+    return path;
+  }
+
+  /**
+   * returns the parent of member or null, if this is a root member
+   */
+  public Member getParent(Member member) {
+    Member[] path = getAncestors(member);
+    return path.length > 1 ? path[1] : null;
+  }
+
+  /**
+   * returns the root members of a hierarchy. The array must not be modified.
+   */
+  public synchronized Member[] getRootMembers(Hierarchy hier) {
+    Member[] roots = (Member[]) rootMembers.get(hier);
+    if (roots == null) {
+      roots = tree.getRootMembers(hier);
+      rootMembers.put(hier, roots);
+    }
+    return roots;
+  }
+
+  /**
+   * returns the underlying member tree
+   */
+  public MemberTree getMemberTree() {
+    return tree;
+  }
+
+}
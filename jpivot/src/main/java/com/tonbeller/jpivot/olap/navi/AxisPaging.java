@@ -0,0 +1,57 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ *
+ */
+package com.tonbeller.jpivot.olap.navi;
+
+import com.tonbeller.jpivot.core.Extension;
+
+/**
+ * pages the rows of a query on the server. Only the positions and cells
+ * of the current page are computed, the number of rows is found by a separate
+ * count query.
+ */
+public interface AxisPaging extends Extension {
+  /**
+   * name of the Extension for lookup
+   */
+  public static final String ID = "axisPaging";
+
+  /**
+   * @return the number of rows of a page, 0 if the rows are not paged
+   */
+  int getPageSize();
+
+  /**
+   * sets the number of rows of a page, 0 turns paging off
+   */
+  void setPageSize(int pageSize);
+
+  /**
+   * @return 0-based index of the current page
+   */
+  int getPageIndex();
+
+  /**
+   * changes the current page. An index beyond the last page selects the last page.
+   */
+  void setPageIndex(int pageIndex);
+
+  /**
+   * @return the number of rows of the whole axis or -1, if unknown
+   */
+  int getRowCount();
+
+  /**
+   * @return the page of the current result or null, if the result was not paged
+   */
+  PageInfo getPageInfo();
+}
@@ -0,0 +1,37 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ * 
+ */
+package com.tonbeller.jpivot.olap.navi;
+
+import java.io.IOException;
+
+/**
+ * Implemented by drill through table models, that can write all of their rows
+ * without keeping them in memory, e.g. for an export.
+ */
+public interface DrillThroughRows {
+
+  /**
+   * receives the rows one by one. The values array may be reused for the next row.
+   */
+  public interface RowWriter {
+    void writeHeader(String[] columnTitles) throws IOException;
+
+    void writeRow(Object[] values) throws IOException;
+  }
+
+  /**
+   * writes the column titles and then all rows to <code>writer</code>
+   */
+  void writeRows(RowWriter writer) throws Exception;
+
+}
@@ -0,0 +1,196 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ *
+ */
+package com.tonbeller.jpivot.olap.query;
+
+import org.apache.log4j.Logger;
+
+import com.tonbeller.jpivot.core.ExtensionSupport;
+import com.tonbeller.jpivot.core.ModelSupport;
+import com.tonbeller.jpivot.olap.navi.AxisPaging;
+import com.tonbeller.jpivot.olap.navi.PageInfo;
+
+/**
+ * Implementation base of the AxisPaging Extension.
+ * The QueryAdapter calls {@link #addPagingToQuery(boolean)} after the sort
+ * was added, so the page is taken from the sorted rows. The rows are counted
+ * only when the unpaged query changes, not when another page is selected.
+ * <p>
+ * NON EMPTY filters the rows after the page was cut. So for a NON EMPTY row
+ * axis, the empty rows are removed from the set before the page is taken and
+ * before the rows are counted.
+ */
+public abstract class AxisPagingBase extends ExtensionSupport implements AxisPaging {
+
+  /**
+   * system property, initial page size of the rows, default 0 = not paged
+   */
+  public static final String PAGE_SIZE_PROP = "com.tonbeller.jpivot.olap.query.pageSize";
+
+  static Logger logger = Logger.getLogger(AxisPagingBase.class);
+
+  private int pageSize = Integer.getInteger(PAGE_SIZE_PROP, 0).intValue();
+  private int pageIndex = 0;
+
+  private String countedQuery = null; // the unpaged query, rowCount belongs to
+  private int rowCount = -1;
+  private boolean paged = false; // the current query was paged
+
+  public AxisPagingBase() {
+    super.setId(AxisPaging.ID);
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  public void setPageSize(int pageSize) {
+    if (pageSize == this.pageSize)
+      return;
+    this.pageSize = pageSize;
+    this.pageIndex = 0;
+    ((ModelSupport) getModel()).fireModelChanged();
+  }
+
+  public int getPageIndex() {
+    return pageIndex;
+  }
+
+  public void setPageIndex(int pageIndex) {
+    if (pageIndex < 0)
+      pageIndex = 0;
+    if (pageIndex == this.pageIndex)
+      return;
+    this.pageIndex = pageIndex;
+    ((ModelSupport) getModel()).fireModelChanged();
+  }
+
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * @return the number of pages, valid after the rows were counted
+   */
+  private int getPageCount() {
+    return (rowCount + pageSize - 1) / pageSize;
+  }
+
+  public PageInfo getPageInfo() {
+    if (!paged)
+      return null;
+    return new Page(pageIndex, getPageCount(), pageIndex * pageSize, Math.min(
+        (pageIndex + 1) * pageSize, rowCount) - 1);
+  }
+
+  /**
+   * wraps the rows of the query into the current page
+   * @param possible false, if the rows depend on the unpaged result, e.g. because
+   * of an unknown function. The query is not paged then.
+   */
+  public void addPagingToQuery(boolean possible) {
+    paged = false;
+    if (pageSize <= 0 || !possible)
+      return;
+
+    String query = getUnpagedQuery();
+    if (!query.equals(countedQuery)) {
+      countedQuery = query;
+      long t1 = System.currentTimeMillis();
+      try {
+        rowCount = countRows(isNonEmptyRows());
+      } catch (Exception e) {
+        // the query is executed without paging
+        logger.error("could not count the rows", e);
+        rowCount = -1;
+      }
+      if (logger.isInfoEnabled())
+        logger.info("counting " + rowCount + " rows took "
+            + (System.currentTimeMillis() - t1) + " millisec");
+    }
+    if (rowCount <= pageSize)
+      return;
+
+    // the axis may have shrunk since the page was selected
+    pageIndex = Math.min(pageIndex, getPageCount() - 1);
+    addSubsetToRows(pageIndex * pageSize, pageSize, isNonEmptyRows());
+    paged = true;
+  }
+
+  /**
+   * @return the MDX of the query before the page is added. Identifies the row count.
+   */
+  protected abstract String getUnpagedQuery();
+
+  /**
+   * @return true, if the row axis is NON EMPTY
+   */
+  protected abstract boolean isNonEmptyRows();
+
+  /**
+   * runs a query that counts the tuples of the row axis
+   * @param nonEmpty true to count the non empty tuples only
+   */
+  protected abstract int countRows(boolean nonEmpty) throws Exception;
+
+  /**
+   * replaces the set of the row axis by Subset(set, start, count)
+   * @param nonEmpty true to remove the empty tuples from the set first
+   */
+  protected abstract void addSubsetToRows(int start, int count, boolean nonEmpty);
+
+  /**
+   * the current page, the items are the 1-based row numbers
+   */
+  static class Page implements PageInfo {
+    private int pageIndex;
+    private int pageCount;
+    private int first;
+    private int last;
+
+    Page(int pageIndex, int pageCount, int first, int last) {
+      this.pageIndex = pageIndex;
+      this.pageCount = pageCount;
+      this.first = first;
+      this.last = last;
+    }
+
+    public int getPageIndex() {
+      return pageIndex;
+    }
+
+    public int getPageNo() {
+      return pageIndex + 1;
+    }
+
+    public int getPageCount() {
+      return pageCount;
+    }
+
+    public String getFirstShort() {
+      return String.valueOf(first + 1);
+    }
+
+    public String getFirstLong() {
+      return getFirstShort();
+    }
+
+    public String getLastShort() {
+      return String.valueOf(last + 1);
+    }
+
+    public String getLastLong() {
+      return getLastShort();
+    }
+  }
+
+}
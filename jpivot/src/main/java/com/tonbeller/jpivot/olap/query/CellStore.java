@@ -0,0 +1,317 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ *
+ */
+package com.tonbeller.jpivot.olap.query;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import com.tonbeller.jpivot.olap.model.Cell;
+import com.tonbeller.jpivot.olap.model.Property;
+import com.tonbeller.jpivot.olap.model.impl.PropertyImpl;
+
+/**
+ * Compact, columnar storage of the cells of a result.
+ * <p>
+ * Instead of one Cell object per cell, the values are kept in a
+ * <code>double[]</code> column with a null bitmap, the formatted values
+ * are indexes into a dictionary of distinct strings and the properties
+ * are stored only for the few cells, that have some.
+ * <p>
+ * The store is a read only <code>List</code>, so it can be used
+ * as cell list of a result. <code>get(i)</code> returns a flyweight Cell,
+ * that is created by the subclass and reads its data from the store.
+ *
+ * @see ResultBase#COMPACT_CELLS_PROP
+ */
+public abstract class CellStore extends AbstractList implements RandomAccess,
+    PermutableCellList {
+
+  // values, that are exactly representable as double
+  private static final double MAX_EXACT = 9007199254740992d; // 2^53
+
+  private final int size;
+
+  private double[] values;
+  private BitSet nulls;
+  private BitSet longs = new BitSet();
+  private BitSet ints = new BitSet();
+  private Map otherValues = new HashMap();
+
+  private int[] fmtIndex;
+  private List fmtDictionary = new ArrayList();
+  private Map fmtLookup = new HashMap();
+  private String defaultFmtValue;
+
+  private Map properties = new HashMap();
+
+  // cell ordinals before permute() was called, null = identity
+  private int[] sourceOrdinals = null;
+
+  /**
+   * c'tor
+   * @param size number of cells
+   * @param defaultFmtValue formatted value of a cell, that was never set
+   */
+  protected CellStore(int size, String defaultFmtValue) {
+    this.size = size;
+    this.defaultFmtValue = defaultFmtValue;
+    values = new double[size];
+    nulls = new BitSet(size);
+    nulls.set(0, size);
+    fmtIndex = new int[size];
+    for (int i = 0; i < size; i++)
+      fmtIndex[i] = -1;
+  }
+
+  /**
+   * create the flyweight for cell <code>index</code>
+   */
+  protected abstract Cell createCell(int index);
+
+  /**
+   * @see java.util.List#get(int)
+   */
+  public Object get(int index) {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    return createCell(index);
+  }
+
+  /**
+   * @see java.util.Collection#size()
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the value of cell <code>index</code>, null for an empty cell
+   */
+  public Object getValue(int index) {
+    if (nulls.get(index))
+      return null;
+    if (longs.get(index))
+      return new Long((long) values[index]);
+    if (ints.get(index))
+      return new Integer((int) values[index]);
+    Object o = otherValues.get(new Integer(index));
+    if (o != null)
+      return o;
+    return new Double(values[index]);
+  }
+
+  /**
+   * @return the numeric value of cell <code>index</code>, NaN for an empty or non numeric cell
+   */
+  public double getDoubleValue(int index) {
+    if (nulls.get(index))
+      return Double.NaN;
+    Object o = otherValues.get(new Integer(index));
+    if (o != null)
+      return (o instanceof Number) ? ((Number) o).doubleValue() : Double.NaN;
+    return values[index];
+  }
+
+  /**
+   * @return true, if cell <code>index</code> is empty
+   */
+  public boolean isNull(int index) {
+    return nulls.get(index);
+  }
+
+  /**
+   * set the value of cell <code>index</code>
+   */
+  public void setValue(int index, Object value) {
+    Integer key = new Integer(index);
+    otherValues.remove(key);
+    longs.clear(index);
+    ints.clear(index);
+    if (value == null) {
+      nulls.set(index);
+      values[index] = 0;
+      return;
+    }
+    nulls.clear(index);
+    if (value instanceof Double) {
+      values[index] = ((Double) value).doubleValue();
+    } else if (value instanceof Integer) {
+      values[index] = ((Integer) value).intValue();
+      ints.set(index);
+    } else if (value instanceof Long && Math.abs(((Long) value).longValue()) <= MAX_EXACT) {
+      values[index] = ((Long) value).longValue();
+      longs.set(index);
+    } else {
+      // anything else is kept as object
+      values[index] = 0;
+      otherValues.put(key, value);
+    }
+  }
+
+  /**
+   * @return the formatted value of cell <code>index</code>
+   */
+  public String getFormattedValue(int index) {
+    int k = fmtIndex[index];
+    if (k < 0)
+      return defaultFmtValue;
+    return (String) fmtDictionary.get(k);
+  }
+
+  /**
+   * set the formatted value of cell <code>index</code>.
+   * Equal strings are stored only once.
+   */
+  public void setFormattedValue(int index, String fmtValue) {
+    if (fmtValue == null) {
+      fmtIndex[index] = -1;
+      return;
+    }
+    Integer k = (Integer) fmtLookup.get(fmtValue);
+    if (k == null) {
+      k = new Integer(fmtDictionary.size());
+      fmtDictionary.add(fmtValue);
+      fmtLookup.put(fmtValue, k);
+    }
+    fmtIndex[index] = k.intValue();
+  }
+
+  /**
+   * @return number of distinct formatted values
+   */
+  public int getFormattedValueCount() {
+    return fmtDictionary.size();
+  }
+
+  /**
+   * @return the properties of cell <code>index</code> or null, if it has none
+   */
+  public List getProperties(int index) {
+    return (List) properties.get(new Integer(index));
+  }
+
+  /**
+   * add properties to cell <code>index</code>
+   * @param props List of Property
+   */
+  public void addProperties(int index, List props) {
+    if (props == null || props.size() == 0)
+      return;
+    List list = propertyList(index);
+    list.addAll(props);
+  }
+
+  /**
+   * add property to cell <code>index</code>, an existing property with the
+   * same name is overwritten.
+   */
+  public void addProperty(int index, String prop, String value) {
+    List list = propertyList(index);
+    for (Iterator iter = list.iterator(); iter.hasNext();) {
+      Property p = (Property) iter.next();
+      if (p.getName().equalsIgnoreCase(prop)) {
+        ((PropertyImpl) p).setValue(value);
+        return;
+      }
+    }
+    PropertyImpl pi = new PropertyImpl();
+    pi.setName(prop);
+    pi.setLabel(prop);
+    pi.setValue(value);
+    list.add(pi);
+  }
+
+  private List propertyList(int index) {
+    Integer key = new Integer(index);
+    List list = (List) properties.get(key);
+    if (list == null) {
+      list = new ArrayList();
+      properties.put(key, list);
+    }
+    return list;
+  }
+
+  /**
+   * @return the ordinal, that cell <code>index</code> had before the cells were rearranged
+   * @see #permute(int[])
+   */
+  public int getSourceOrdinal(int index) {
+    if (sourceOrdinals == null)
+      return index;
+    return sourceOrdinals[index];
+  }
+
+  /**
+   * rearrange the cells, after the call cell <code>i</code> holds
+   * the data of cell <code>source[i]</code>. A source index beyond the
+   * store denotes a cell, that was not kept due to the cell limit,
+   * the cell becomes empty.
+   * @param source permutation of the cell indexes
+   */
+  public void permute(int[] source) {
+    if (source.length != size)
+      throw new IllegalArgumentException("permutation size " + source.length + " != " + size);
+
+    double[] newValues = new double[size];
+    BitSet newNulls = new BitSet(size);
+    BitSet newLongs = new BitSet();
+    BitSet newInts = new BitSet();
+    int[] newFmtIndex = new int[size];
+    int[] newSourceOrdinals = new int[size];
+    Map newOtherValues = new HashMap();
+    Map newProperties = new HashMap();
+    for (int i = 0; i < size; i++) {
+      int k = source[i];
+      if (k >= size) {
+        newNulls.set(i);
+        newFmtIndex[i] = -1;
+        newSourceOrdinals[i] = k;
+        continue;
+      }
+      newValues[i] = values[k];
+      if (nulls.get(k))
+        newNulls.set(i);
+      if (longs.get(k))
+        newLongs.set(i);
+      if (ints.get(k))
+        newInts.set(i);
+      newFmtIndex[i] = fmtIndex[k];
+      newSourceOrdinals[i] = getSourceOrdinal(k);
+      if (!otherValues.isEmpty()) {
+        Object o = otherValues.get(new Integer(k));
+        if (o != null)
+          newOtherValues.put(new Integer(i), o);
+      }
+      if (!properties.isEmpty()) {
+        Object o = properties.get(new Integer(k));
+        if (o != null)
+          newProperties.put(new Integer(i), o);
+      }
+    }
+    values = newValues;
+    nulls = newNulls;
+    longs = newLongs;
+    ints = newInts;
+    fmtIndex = newFmtIndex;
+    sourceOrdinals = newSourceOrdinals;
+    otherValues = newOtherValues;
+    properties = newProperties;
+  }
+
+} // CellStore
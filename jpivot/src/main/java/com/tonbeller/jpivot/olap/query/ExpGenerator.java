@@ -30,11 +30,16 @@ public class ExpGenerator {
 
   QuaxUti uti;
 
+  // null, if the generated MDX is not compacted
+  SetCompactor compactor;
+
   /**
    * c'tor
    */
   public ExpGenerator(QuaxUti uti) {
     this.uti = uti;
+    if (SetCompactor.isEnabled())
+      compactor = new SetCompactor(uti);
   }
 
   /**
@@ -111,6 +116,8 @@ public class ExpGenerator {
       openSet.clear();
     }
 
+    if (compactor != null)
+      exp = compactor.compact(exp);
     return exp;
   }
 
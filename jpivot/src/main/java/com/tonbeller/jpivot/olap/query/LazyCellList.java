@@ -0,0 +1,91 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ *
+ */
+package com.tonbeller.jpivot.olap.query;
+
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Cell list, that creates the cells on first access.
+ * The most recently used cells are kept in a LRU cache,
+ * so a page of the table is not created twice.
+ */
+public abstract class LazyCellList extends AbstractList implements RandomAccess,
+    PermutableCellList {
+  private final int size;
+  private final Map cache;
+  private int[] sourceOrdinals = null;
+
+  /**
+   * c'tor
+   * @param size number of cells
+   * @param cacheSize max number of cached cells
+   */
+  protected LazyCellList(int size, final int cacheSize) {
+    this.size = size;
+    this.cache = new LinkedHashMap(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  /**
+   * create the cell with the ordinal <code>ordinal</code> of the result.
+   * The ordinal may be beyond the size of the list, if the cells were truncated
+   * by the cell limit and rearranged by hierarchize.
+   */
+  protected abstract Object createCell(int ordinal);
+
+  public synchronized Object get(int index) {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    Integer key = new Integer(index);
+    Object cell = cache.get(key);
+    if (cell == null) {
+      cell = createCell(getSourceOrdinal(index));
+      cache.put(key, cell);
+    }
+    return cell;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return number of cells in the cache
+   */
+  synchronized int getCacheSize() {
+    return cache.size();
+  }
+
+  public synchronized int getSourceOrdinal(int index) {
+    if (sourceOrdinals == null)
+      return index;
+    return sourceOrdinals[index];
+  }
+
+  public synchronized void permute(int[] source) {
+    int[] newSourceOrdinals = new int[size];
+    for (int i = 0; i < size; i++) {
+      // the result holds the cells beyond the cell limit
+      int k = source[i];
+      newSourceOrdinals[i] = k < size ? getSourceOrdinal(k) : k;
+    }
+    sourceOrdinals = newSourceOrdinals;
+    cache.clear();
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ *
+ */
+package com.tonbeller.jpivot.olap.query;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * orders the members of a member tree by their first occurrence in the query result.
+ * Members, that do not occur in the result, go to the end in their original order.
+ */
+public class OccurrenceOrder implements Comparator {
+  // member -> index of first occurrence
+  private Map occurrence = new HashMap();
+
+  /**
+   * records the occurrence of a member, only the first one counts
+   */
+  public void add(Object member) {
+    if (!occurrence.containsKey(member))
+      occurrence.put(member, new Integer(occurrence.size()));
+  }
+
+  /**
+   * @return true if no member has been recorded
+   */
+  public boolean isEmpty() {
+    return occurrence.isEmpty();
+  }
+
+  /**
+   * sorts the members by occurrence, the sort is stable
+   */
+  public void sort(Object[] members) {
+    Arrays.sort(members, this);
+  }
+
+  public int compare(Object arg0, Object arg1) {
+    int index0 = index(arg0);
+    int index1 = index(arg1);
+    return index0 < index1 ? -1 : (index0 == index1 ? 0 : 1);
+  }
+
+  private int index(Object member) {
+    Integer index = (Integer) occurrence.get(member);
+    return index == null ? Integer.MAX_VALUE : index.intValue();
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ *
+ */
+package com.tonbeller.jpivot.olap.query;
+
+/**
+ * A cell list, that does not hold Cell objects and therefore
+ * cannot be rearranged by <code>List.set()</code>.
+ * Used by ResultBase.hierarchize.
+ */
+public interface PermutableCellList {
+
+  /**
+   * rearrange the cells, after the call cell <code>i</code> is
+   * the cell, that was <code>source[i]</code> before. A source index
+   * <code>&gt;= size()</code> denotes a cell of the complete result,
+   * that was not kept due to the cell limit.
+   * @param source permutation of the cell indexes
+   */
+  void permute(int[] source);
+
+  /**
+   * @return the ordinal, that cell <code>index</code> had before any call to permute
+   */
+  int getSourceOrdinal(int index);
+
+}
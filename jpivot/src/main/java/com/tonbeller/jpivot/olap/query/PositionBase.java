@@ -12,7 +12,6 @@
  */
 package com.tonbeller.jpivot.olap.query;
 
-import java.util.List;
 
 import com.tonbeller.jpivot.olap.model.Member;
 import com.tonbeller.jpivot.olap.model.Position;
@@ -25,8 +24,7 @@ public class PositionBase implements Position {
 
   protected Member[] members;
 
-  // cellList, parent and number are temp variables used by hierarchize sort
-  public List cellList = null;
+  // parent and number are temp variables used by hierarchize sort
   public PositionBase parent = null;
   public int number; 
 
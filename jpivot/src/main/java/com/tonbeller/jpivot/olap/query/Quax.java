@@ -36,6 +36,12 @@ import com.tonbeller.jpivot.util.TreeNodeCallback;
 
 public class Quax {
 
+  /**
+   * if "false", the expand/collapse checks walk the position tree
+   * instead of using the position tree index
+   */
+  public static final String INDEX_PROP = "com.tonbeller.jpivot.olap.query.quax.index";
+
   static Logger logger = Logger.getLogger(Quax.class);
 
   protected int nDimension;
@@ -71,6 +77,7 @@ public class Quax {
   private Map canExpandPosMap = new HashMap();
   private Map canCollapseMemberMap = new HashMap();
   private Map canCollapsePosMap = new HashMap();
+  private PosTreeIndex posTreeIndex = null;
 
   /**
    * c'tor
@@ -117,7 +124,7 @@ public class Quax {
     canExpandPosMap.clear();
     canCollapseMemberMap.clear();
     canCollapsePosMap.clear();
-
+    posTreeIndex = null;
   }
 
   /**
@@ -194,6 +201,7 @@ public class Quax {
     // no positions - no tree
     if (aPosMemStart.length == 0) {
       posTreeRoot = null;
+      posTreeIndex = null;
       return;
     }
 
@@ -205,6 +213,7 @@ public class Quax {
 
     // init position tree
     posTreeRoot = new TreeNode(null); // root
+    posTreeIndex = null;
     int iEnd = addToPosTree(aPosMemStart, 0, aPosMemStart.length, 0, posTreeRoot);
     while (iEnd < aPosMemStart.length) {
       iEnd = addToPosTree(aPosMemStart, iEnd, aPosMemStart.length, 0, posTreeRoot);
@@ -329,6 +338,7 @@ public class Quax {
       generateIndex = 0;
       generateMode = 0;
     }
+    posTreeIndex = null;
     if (posTreeRoot == null)
       return;
     posTreeRoot.getChildren().clear();
@@ -427,7 +437,7 @@ public class Quax {
 
     // loop over Position Tree
     //  reject expansion, if the axis already contains child-positions
-    boolean childFound = checkChildPosition(pathMembers);
+    boolean childFound = hasChildPosition(pathMembers);
 
     // cache the result
     Boolean bool = new Boolean(!childFound);
@@ -552,7 +562,7 @@ public class Quax {
 
     // loop over Position Tree
     //  reject expansion, if the axis already contains children of member
-    boolean b = !findMemberChild(member);
+    boolean b = !hasMemberChild(member);
 
     // cache the result
     Boolean bool = new Boolean(b);
@@ -662,7 +672,7 @@ public class Quax {
 
     // loop over Position Tree
     //  collapse is possible, if the axis already contains child-positions
-    boolean childFound = checkChildPosition(pathMembers);
+    boolean childFound = hasChildPosition(pathMembers);
 
     // cache the result
     Boolean bool = new Boolean(childFound);
@@ -892,7 +902,7 @@ public class Quax {
 
     // loop over Position Tree
     //  can collapse, if we find a descendant of member
-    boolean b = findMemberChild(member);
+    boolean b = hasMemberChild(member);
 
     // cache the result
     Boolean bool = new Boolean(b);
@@ -1336,6 +1346,34 @@ public class Quax {
   /**
    * @return true if child position can be found
    */
+  private boolean hasChildPosition(Member[] mPath) {
+    if ("false".equals(System.getProperty(INDEX_PROP)))
+      return checkChildPosition(mPath);
+    return posTreeIndex().hasChildPosition(mPath);
+  }
+
+  /**
+   * @return true if a child of member can be found
+   */
+  private boolean hasMemberChild(Member member) {
+    if ("false".equals(System.getProperty(INDEX_PROP)))
+      return findMemberChild(member);
+    return posTreeIndex().hasMemberChild(member);
+  }
+
+  /**
+   * @return the index of the position tree, created on demand
+   */
+  private PosTreeIndex posTreeIndex() {
+    if (posTreeIndex == null)
+      posTreeIndex = new PosTreeIndex();
+    return posTreeIndex;
+  }
+
+  /**
+   * walk the position tree
+   * @return true if child position can be found
+   */
   private boolean checkChildPosition(final Member[] mPath) {
 
     int ret = posTreeRoot.walkChildren(new TreeNodeCallback() {
@@ -1423,6 +1461,7 @@ public class Quax {
 
     // unions and sets are resolved, now resolve crossjoins
     posTreeRoot = new TreeNode(null);
+    posTreeIndex = null;
     crossJoinTree(setLists, posTreeRoot, 0);
 
     qubonMode = false;
@@ -2102,6 +2141,7 @@ public class Quax {
    */
   public void setPosTreeRoot(TreeNode posTreeRoot, boolean hiersChanged) {
     this.posTreeRoot = posTreeRoot;
+    this.posTreeIndex = null;
     if (hiersChanged) {
       // count dimensions, set hierarchies
       TreeNode firstNode = posTreeRoot;
@@ -2351,7 +2391,7 @@ public class Quax {
     } else if (uti.isFunCallTo(oFun, "Union")) {
       Object[] uargs = new Object[2];
       uargs[0] = removeDescendantsFromFunCall(uti.funCallArg(oFun, 0), member);
-      uargs[1] = removeDescendantsFromFunCall(uti.funCallArg(oFun, 0), member);
+      uargs[1] = removeDescendantsFromFunCall(uti.funCallArg(oFun, 1), member);
       if (uargs[0] == null && uargs[1] == null)
         return null;
       if (uargs[1] == null)
@@ -2608,4 +2648,176 @@ public class Quax {
     }
   } // CannotHandleException
 
+  /**
+   * Index of the position tree. Answers the questions of canExpand and canCollapse
+   * without walking the whole tree for every member on the axis.
+   * The child nodes of every node and all nodes of a dimension are indexed
+   * by the unique name of their member and of its parent, Children FunCalls
+   * by the unique name of their argument. Other FunCalls are not indexed,
+   * they are checked like before.
+   */
+  private class PosTreeIndex {
+    private Map nodeIndexes = new HashMap(); // TreeNode -> NodeIndex of its children
+    private List dimIndexes = new ArrayList(); // NodeIndex of all nodes of a dimension
+
+    PosTreeIndex() {
+      if (posTreeRoot == null)
+        return;
+      posTreeRoot.walkChildren(new TreeNodeCallback() {
+        public int handleTreeNode(TreeNode node) {
+          int iDimNode = node.getLevel() - 1;
+          NodeIndex nodeIndex = (NodeIndex) nodeIndexes.get(node.getParent());
+          if (nodeIndex == null) {
+            nodeIndex = new NodeIndex();
+            nodeIndexes.put(node.getParent(), nodeIndex);
+          }
+          nodeIndex.add(node);
+          while (dimIndexes.size() <= iDimNode)
+            dimIndexes.add(new NodeIndex());
+          ((NodeIndex) dimIndexes.get(iDimNode)).add(node);
+          return TreeNodeCallback.CONTINUE;
+        }
+      });
+    }
+
+    /**
+     * @see Quax#checkChildPosition(Member[])
+     */
+    boolean hasChildPosition(Member[] mPath) {
+      if (posTreeRoot == null)
+        return false;
+      return hasChildPosition(posTreeRoot, mPath);
+    }
+
+    private boolean hasChildPosition(TreeNode node, Member[] mPath) {
+      NodeIndex nodeIndex = (NodeIndex) nodeIndexes.get(node);
+      if (nodeIndex == null)
+        return false;
+      int iDimNode = node.getLevel(); // dimension of the child nodes
+      int iDim = mPath.length - 1;
+      if (iDimNode == iDim)
+        return nodeIndex.containsChildOf(mPath[iDim], iDim);
+
+      // node Exp must match member[iDimNode]
+      Member member = mPath[iDimNode];
+      List nodes = (List) nodeIndex.members.get(uniqueName(member));
+      if (nodes != null) {
+        for (Iterator iter = nodes.iterator(); iter.hasNext();) {
+          TreeNode child = (TreeNode) iter.next();
+          if (uti.equalMember(child.getReference(), member) && hasChildPosition(child, mPath))
+            return true;
+        }
+      }
+      List funCalls = nodeIndex.funCalls;
+      if (!nodeIndex.children.isEmpty()) {
+        // member can only be in the children of its parent
+        Member parent = uti.getParentMember(uti.objForMember(member));
+        if (parent == null) {
+          funCalls = new ArrayList(funCalls);
+          for (Iterator iter = nodeIndex.children.values().iterator(); iter.hasNext();)
+            funCalls.addAll((List) iter.next());
+        } else {
+          nodes = (List) nodeIndex.children.get(uniqueName(parent));
+          if (nodes != null && hasChildPosition(nodes, member, iDimNode, mPath))
+            return true;
+        }
+      }
+      return hasChildPosition(funCalls, member, iDimNode, mPath);
+    }
+
+    private boolean hasChildPosition(List funCalls, Member member, int iDimNode, Member[] mPath) {
+      for (Iterator iter = funCalls.iterator(); iter.hasNext();) {
+        TreeNode child = (TreeNode) iter.next();
+        if (isMemberInFunCall(child.getReference(), member, iDimNode)
+            && hasChildPosition(child, mPath))
+          return true;
+      }
+      return false;
+    }
+
+    /**
+     * @see Quax#findMemberChild(Member)
+     */
+    boolean hasMemberChild(Member member) {
+      int iDim = dimIdx(uti.dimForMember(member));
+      if (iDim < 0 || iDim >= dimIndexes.size())
+        return false;
+      return ((NodeIndex) dimIndexes.get(iDim)).containsChildOf(member, iDim);
+    }
+  } // PosTreeIndex
+
+  /**
+   * index of a list of tree nodes
+   */
+  private class NodeIndex {
+    private Map members = new HashMap(); // unique name -> member nodes
+    private Map parents = new HashMap(); // unique name of parent -> member nodes
+    private List unresolved = new ArrayList(); // member nodes without known parent
+    private Map children = new HashMap(); // unique name of argument -> Children FunCall nodes
+    private List funCalls = new ArrayList(); // other FunCall nodes
+
+    void add(TreeNode node) {
+      Object oExp = node.getReference();
+      if (!uti.isMember(oExp)) {
+        if (uti.isFunCallTo(oExp, "Children") && uti.isMember(uti.funCallArg(oExp, 0)))
+          addNode(children, uti.getMemberUniqueName(uti.funCallArg(oExp, 0)), node);
+        else
+          funCalls.add(node);
+        return;
+      }
+      addNode(members, uti.getMemberUniqueName(oExp), node);
+      Member parent = uti.getParentMember(oExp);
+      if (parent != null && uti.checkParent(parent, oExp))
+        addNode(parents, uniqueName(parent), node);
+      else
+        unresolved.add(node);
+    }
+
+    private void addNode(Map map, String key, TreeNode node) {
+      List nodes = (List) map.get(key);
+      if (nodes == null) {
+        nodes = new ArrayList();
+        map.put(key, nodes);
+      }
+      nodes.add(node);
+    }
+
+    /**
+     * @return true, if any node contains a child of member
+     */
+    boolean containsChildOf(Member member, int iDim) {
+      List nodes = (List) parents.get(uniqueName(member));
+      if (nodes != null) {
+        for (Iterator iter = nodes.iterator(); iter.hasNext();) {
+          TreeNode node = (TreeNode) iter.next();
+          if (uti.checkParent(member, node.getReference()))
+            return true;
+        }
+      }
+      for (Iterator iter = unresolved.iterator(); iter.hasNext();) {
+        TreeNode node = (TreeNode) iter.next();
+        if (uti.checkParent(member, node.getReference()))
+          return true;
+      }
+      nodes = (List) children.get(uniqueName(member));
+      if (nodes != null) {
+        for (Iterator iter = nodes.iterator(); iter.hasNext();) {
+          TreeNode node = (TreeNode) iter.next();
+          if (isChildOfMemberInFunCall(node.getReference(), member, iDim))
+            return true;
+        }
+      }
+      for (Iterator iter = funCalls.iterator(); iter.hasNext();) {
+        TreeNode node = (TreeNode) iter.next();
+        if (isChildOfMemberInFunCall(node.getReference(), member, iDim))
+          return true;
+      }
+      return false;
+    }
+  } // NodeIndex
+
+  private String uniqueName(Member member) {
+    return uti.getMemberUniqueName(uti.objForMember(member));
+  }
+
 } //Quax
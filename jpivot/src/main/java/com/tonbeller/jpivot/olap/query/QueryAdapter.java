@@ -27,6 +27,7 @@ import com.tonbeller.jpivot.olap.model.Hierarchy;
 import com.tonbeller.jpivot.olap.model.Member;
 import com.tonbeller.jpivot.olap.model.Position;
 import com.tonbeller.jpivot.olap.model.Result;
+import com.tonbeller.jpivot.olap.navi.AxisPaging;
 import com.tonbeller.jpivot.olap.navi.CalcSet;
 import com.tonbeller.jpivot.olap.navi.SortRank;
 
@@ -44,6 +45,7 @@ public abstract class QueryAdapter {
   protected boolean axesSwapped = false;
   protected boolean genMDXHierarchize = false;
   protected SortRankBase sortMan = null;
+  protected AxisPagingBase pagingMan = null;
 
   /**
    * c'tor
@@ -55,6 +57,10 @@ public abstract class QueryAdapter {
     if (sortExt != null) {
       sortMan = (SortRankBase) sortExt;
     }
+    Extension pagingExt = model.getExtension(AxisPaging.ID);
+    if (pagingExt != null) {
+      pagingMan = (AxisPagingBase) pagingExt;
+    }
     axesSwapped = false;
   }
 
@@ -102,6 +108,12 @@ public abstract class QueryAdapter {
         List positions = axes[i].getPositions();
         quaxes[iASwap(i)].init(positions);
       } //AxisLoop
+      // the rows can only be paged, if the query is generated from the quaxes
+      if (pagingMan != null && pagingMan.getPageSize() > 0 && quaxes.length > 1) {
+        if (logger.isDebugEnabled())
+          logger.debug("generate the axes from quax for paging");
+        useQuax = true;
+      }
     } else {
       // hierarchize result if neccessary
       int iQuaxToSort = -1;
@@ -179,6 +191,24 @@ public abstract class QueryAdapter {
     }
   }
 
+  /**
+   * the rows can be paged, if they are generated from the Quax and the Quax
+   * does not collect members from the result
+   * @return true, if the row axis may be replaced by a page
+   */
+  protected boolean isPagingPossible() {
+    if (!useQuax || quaxes.length < 2)
+      return false;
+    Quax quax = quaxes[iASwap(1)];
+    if (quax.getPosTreeRoot() == null || quax.getGenerateMode() != CalcSet.SIMPLE)
+      return false;
+    for (int i = 0; i < quax.getNDimension(); i++) {
+      if (quax.isUnknownFunction(i))
+        return false;
+    }
+    return true;
+  }
+
   /**
    * extract members of hier from Result
    * @param hierIndex
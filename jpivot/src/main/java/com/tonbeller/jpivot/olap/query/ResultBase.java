@@ -16,15 +16,17 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 
+import org.apache.log4j.Logger;
+
 import com.tonbeller.jpivot.core.Model;
 import com.tonbeller.jpivot.olap.model.Axis;
 import com.tonbeller.jpivot.olap.model.Cell;
@@ -32,13 +34,21 @@ import com.tonbeller.jpivot.olap.model.Member;
 import com.tonbeller.jpivot.olap.model.Position;
 import com.tonbeller.jpivot.olap.model.Result;
 import com.tonbeller.jpivot.olap.model.Visitor;
-import com.tonbeller.jpivot.util.CubeIndexIterator;
 
 /**
  * base class for both Mondrian and XMLA result
  */
 public abstract class ResultBase implements Result {
 
+  static Logger logger = Logger.getLogger(ResultBase.class);
+
+  /**
+   * If true, the cells of Mondrian and XMLA results are held in a columnar
+   * CellStore instead of one Cell object per cell. This reduces the memory
+   * needed for big results. By default, the Cell objects are used.
+   */
+  public static final String COMPACT_CELLS_PROP = "com.tonbeller.jpivot.olap.compact.cells";
+
   private static String[] specialProps = { "arrow"};
 
   protected List axesList;
@@ -72,6 +82,14 @@ public abstract class ResultBase implements Result {
    */
   public abstract Axis[] getAxes();
 
+  /**
+   * @return true, if the cells should be held in a CellStore
+   * @see #COMPACT_CELLS_PROP
+   */
+  protected static boolean isCompactCells() {
+    return Boolean.getBoolean(COMPACT_CELLS_PROP);
+  }
+
   /**
    * Returns the slicer.
    * 
@@ -100,38 +118,15 @@ public abstract class ResultBase implements Result {
    * Products): if by Quax navigation (CA, Drink) USA.children is split into
    * {OR, WA) * Drink {CA} * { Drink + Drink.Children) CA would then come
    * later in the result. Therefore : MDX hierarchize is needed
+   * <p>
+   * The positions are sorted once, the cells are rearranged in place
+   * by the resulting permutation of the cell ordinals.
    */
   public void hierarchize(int iAxis) {
     List posList = ((Axis) axesList.get(iAxis)).getPositions();
-    int nDim = axesList.size();
-    int indexForAxis = nDim - 1 - iAxis;
-    int[] ni = new int[nDim];
-    int[] iFull = new int[nDim];
-    for (int i = 0; i < nDim; i++) {
-      ni[i] = ((Axis) axesList.get(i)).getPositions().size() - 1;
-    }
-    int[] iSlice = new int[nDim - 1];
-    CubeIndexIterator cubit = null;
-    if (nDim > 1) {
-      full2slice(ni, iSlice, iAxis);
-      cubit = new CubeIndexIterator(iSlice, false);
-    }
-
-    // assign the cells
-    // c00 c01 c02 ... c0n
-    // c10 c11 c12 ... c1n
-    // ...
-    // cm0 cm1 cm2 ... cmn
-    // cell ordinal of cell [i,k] = c[i*(n+1) +k]
-    // n+1 = position size of axis 0 (columns)
-    // m+1 = position size of axis 1 (rows)
-    // iAxis=0 position=0 : c00, c10, ... cm0
-    // iAxis=0 position=1 : c01, c11, ... cm1
-    // iAxis=1 position=0 : c00, c01, ... c0n
-    // iAxis=1 position=1 : c10, c11, ... c1n
-
-    // for each position of iAxis we will get the slice
-    //  of cells for the "other" axes
+    int nPos = posList.size();
+    if (nPos < 2)
+      return;
 
     int iPos = 0;
     int nDimension = 0;
@@ -140,56 +135,118 @@ public abstract class ResultBase implements Result {
       if (nDimension == 0)
         nDimension = pos.getMembers().length;
       pos.number = iPos;
-      if (pos.cellList == null)
-        pos.cellList = new ArrayList();
-      else
-        pos.cellList.clear();
-      if (nDim > 1) {
-        cubit.reset();
-        while (true) {
-          int[] iCurrent = cubit.next();
-          if (iCurrent == null)
-            break;
-          slice2full(iCurrent, iFull, indexForAxis, iPos);
-          int ii = lindex(iFull, ni);
-          pos.cellList.add(aCells.get(ii));
-        }
-      } else {
-        // nDim <= 1
-        pos.cellList.add(aCells.get(iPos));
-      }
     }
 
     // sort
-    posList = sortPosList(posList, 0, nDim);
+    List sorted = sortPosList(posList, 0, nDimension);
+
+    // the position permutation, new position i was position perm[i] before
+    int[] perm = new int[nPos];
+    boolean changed = false;
+    for (int i = 0; i < nPos; i++) {
+      perm[i] = ((PositionBase) sorted.get(i)).number;
+      if (perm[i] != i)
+        changed = true;
+    }
+    if (sorted != posList) {
+      for (int i = 0; i < nPos; i++)
+        posList.set(i, sorted.get(i));
+    }
+    if (!changed)
+      return;
 
-    // rewrite cell list
+    int stride = 1;
+    for (int i = 0; i < iAxis; i++)
+      stride *= ((Axis) axesList.get(i)).getPositions().size();
     int nc = aCells.size();
-    aCells.clear();
-    for (int i = 0; i < nc; i++)
-      aCells.add(null);
-    iPos = 0;
-    for (Iterator iter = posList.iterator(); iter.hasNext(); iPos++) {
-      PositionBase posBase = (PositionBase) iter.next();
-      if (nDim > 1) {
-        cubit.reset();
-        for (Iterator iterator = posBase.cellList.iterator(); iterator.hasNext();) {
-          Object cellObj = iterator.next();
-          int[] iCurrent = cubit.next();
-          if (iCurrent == null)
-            break;
-          slice2full(iCurrent, iFull, indexForAxis, iPos);
-          int ii = lindex(iFull, ni);
-          aCells.set(ii, cellObj);
-        }
-      } else {
-        // nDim <= 1
-        Object cellObj = posBase.cellList.get(0);
-        aCells.set(iPos, cellObj);
+    int[] source = cellSource(perm, stride, nc);
+
+    // rewrite cell list
+    if (aCells instanceof PermutableCellList)
+      ((PermutableCellList) aCells).permute(source);
+    else {
+      permute(aCells, source);
+      // cells moved in from beyond the cell limit
+      for (int i = 0; i < nc; i++) {
+        if (source[i] >= nc)
+          aCells.set(i, createMissingCell(source[i]));
+      }
+    }
+  }
+
+  /**
+   * creates an empty cell for an ordinal, that was not kept due to the cell
+   * limit but was moved into the kept cells by hierarchize.
+   * Needed by results, whose cell list is not a PermutableCellList.
+   * @param ordinal the cell ordinal in the complete result
+   */
+  protected Object createMissingCell(int ordinal) {
+    return null;
+  }
+
+  /**
+   * applies a position permutation to the cell ordinals. The cell ordinal is
+   * the sum of position * stride over all axes, the stride of axis 0 (columns)
+   * is 1, the stride of axis 1 (rows) is the number of columns etc.
+   * <p>
+   * If the cell list was truncated by the cell limit, <code>nc</code> is
+   * less than the product of the axis sizes. Then the cells beyond
+   * <code>nc</code> are dropped and a source ordinal <code>&gt;= nc</code>
+   * denotes a cell, that was not kept.
+   * @param perm new position i was position perm[i] before
+   * @param stride stride of the permuted axis
+   * @param nc number of cells
+   * @return cell ii gets the cell of source[ii]
+   */
+  static int[] cellSource(int[] perm, int stride, int nc) {
+    int[] source = new int[nc];
+    int block = stride * perm.length;
+    for (int outer = 0; outer < nc; outer += block) {
+      for (int i = 0; i < perm.length; i++) {
+        int target = outer + i * stride;
+        int from = outer + perm[i] * stride;
+        for (int inner = 0; inner < stride && target + inner < nc; inner++)
+          source[target + inner] = from + inner;
       }
-      posBase.cellList.clear();
     }
+    return source;
+  }
 
+  /**
+   * rearranges the list in place by following the cycles of the permutation,
+   * after the call element <code>i</code> is the element, that was
+   * <code>source[i]</code> before.
+   * Element <code>i</code> is set to null, if <code>source[i]</code> is
+   * beyond the list.
+   */
+  static void permute(List list, int[] source) {
+    int n = list.size();
+    for (int i = 0; i < source.length; i++) {
+      if (source[i] >= n) {
+        // not a permutation, cells were dropped
+        Object[] old = list.toArray();
+        for (int j = 0; j < source.length; j++)
+          list.set(j, source[j] < n ? old[source[j]] : null);
+        return;
+      }
+    }
+    boolean[] done = new boolean[source.length];
+    for (int i = 0; i < source.length; i++) {
+      if (done[i] || source[i] == i)
+        continue;
+      Object first = list.get(i);
+      int j = i;
+      while (true) {
+        done[j] = true;
+        int k = source[j];
+        if (k == i) {
+          list.set(j, first);
+          break;
+        }
+        list.set(j, list.get(k));
+        j = k;
+      }
+    }
   }
 
   /**
@@ -201,7 +258,8 @@ public abstract class ResultBase implements Result {
    */
   private List sortPosList(List posList, final int iDim, int nDim) {
 
-    printPosList(posList, new PrintWriter(System.out), "Start sortPosList " + iDim);
+    if (logger.isDebugEnabled())
+      printPosList(posList, "Start sortPosList " + iDim);
 
     if (posList.size() < 2)
       return posList;
@@ -242,28 +300,24 @@ public abstract class ResultBase implements Result {
 
     // second step
     // establish parent child dependencies
-    int i = 0;
-    Outerloop: for (Iterator iter = posList.iterator(); iter.hasNext(); i++) {
+    //  the parent of a position is the first position (level, original index)
+    //  of the parent member. The positions are sorted by level, so this links
+    //  the same parents as a scan of the next level for every position.
+    Map firstPos = new HashMap();
+    for (Iterator iter = posList.iterator(); iter.hasNext();) {
       PositionBase posb = (PositionBase) iter.next();
-      if (!iter.hasNext())
-        break;
       MDXMember m = (MDXMember) posb.getMembers()[iDim];
-      int iLevel = ((MDXLevel) m.getLevel()).getDepth();
-      ListIterator lit = posList.listIterator(i + 1);
-      InnerLoop: while (lit.hasNext()) {
-        PositionBase posb2 = (PositionBase) lit.next();
-        if (posb2.parent != null)
-          continue;
-        MDXMember m2 = (MDXMember) posb2.getMembers()[iDim];
-        int iLevel2 = ((MDXLevel) m2.getLevel()).getDepth();
-        if (iLevel2 <= iLevel)
-          continue InnerLoop;
-        if (iLevel2 > iLevel + 1)
-          break InnerLoop;
-        // here iLevel2 = iLevel +1
-        if (m.getUniqueName().equals(m2.getParentUniqueName()))
-          posb2.parent = posb;
+      String pUname = m.getParentUniqueName();
+      if (pUname != null) {
+        PositionBase parent = (PositionBase) firstPos.get(pUname);
+        if (parent != null) {
+          int iLevel = ((MDXLevel) parent.getMembers()[iDim].getLevel()).getDepth();
+          if (((MDXLevel) m.getLevel()).getDepth() == iLevel + 1)
+            posb.parent = parent;
+        }
       }
+      if (!firstPos.containsKey(m.getUniqueName()))
+        firstPos.put(m.getUniqueName(), posb);
     }
 
     // third step
@@ -347,7 +401,8 @@ public abstract class ResultBase implements Result {
       }
     });
 
-    printPosList(posList, new PrintWriter(System.out), "Step 3 sortPosList " + iDim);
+    if (logger.isDebugEnabled())
+      printPosList(posList, "Step 3 sortPosList " + iDim);
 
     // last step
     // sort sublists next hierarchy
@@ -379,7 +434,8 @@ public abstract class ResultBase implements Result {
     }
     newPosList.addAll(subList);
 
-    printPosList(newPosList, new PrintWriter(System.out), "End sortPosList " + iDim);
+    if (logger.isDebugEnabled())
+      printPosList(newPosList, "End sortPosList " + iDim);
 
     return newPosList;
   }
@@ -387,7 +443,9 @@ public abstract class ResultBase implements Result {
   /**
    * print position list for debugging
    */
-  private void printPosList(List posList, PrintWriter wout, String label) {
+  private void printPosList(List posList, String label) {
+    StringWriter sw = new StringWriter();
+    PrintWriter wout = new PrintWriter(sw);
     wout.println(label);
     int n = 0;
     for (Iterator iter = posList.iterator(); iter.hasNext(); n++) {
@@ -409,70 +467,7 @@ public abstract class ResultBase implements Result {
       wout.println(sb.toString());
     }
     wout.flush();
-  }
-
-  /**
-   * @param iFull
-   *            full index array
-   * @param iSlice
-   *            slice index array
-   * @param iAxis -
-   *            index beeing omitted
-   */
-  private void full2slice(int[] iFull, int[] iSlice, int iAxis) {
-    if (iSlice.length == 0)
-      return; // 1-dimensional
-    int j = 0;
-    for (int i = 0; i < iFull.length; i++) {
-      if (i != iAxis)
-        iSlice[j++] = iFull[i];
-    }
-  }
-
-  /**
-   * @param iFull
-   *            full index array
-   * @param iSlice
-   *            slice index array
-   * @param iAxis -
-   *            index beeing omitted
-   */
-  private void slice2full(int[] iSlice, int[] iFull, int iAxis, int iAxisVal) {
-    if (iSlice.length == 0) {
-      iFull[0] = iAxisVal;
-      return;
-    }
-
-    int j = 0;
-    for (int i = 0; i < iFull.length; i++) {
-      if (i != iAxis)
-        iFull[i] = iSlice[j++];
-      else
-        iFull[i] = iAxisVal;
-    }
-  }
-
-  /**
-   * linear index from index array
-   * 
-   * @param iar
-   * @return
-   */
-  private int lindex(int[] iar, int[] ni) {
-
-    // 3 dim sample
-    // c000 c001 ... c00n ck00 ck01 ... ck01
-    // c010 c011 ... c01n ---> ck10 ck11 ... ck1n
-    // ...
-    // c0m1 c0m2 ... c0mn ckm1 ckm2 ckmn
-
-    /* kk*(n+1)*(m+1) + mm*(n+1) +nn */
-
-    int k = iar[0];
-    for (int j = 1; j < iar.length; j++)
-      k = k * (ni[j - 1] + 1) + iar[j];
-
-    return k;
+    logger.debug(sw.toString());
   }
 
   /**
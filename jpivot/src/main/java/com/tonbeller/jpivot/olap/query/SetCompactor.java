@@ -0,0 +1,303 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ *
+ */
+package com.tonbeller.jpivot.olap.query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.tonbeller.jpivot.olap.model.Member;
+
+/**
+ * rewrites a generated axis set into a shorter expression, that returns the same tuples.
+ * <ul>
+ * <li>adjacent member sets of a Union chain are merged, the chain is balanced
+ * <li>all children of a parent become <code>parent.Children</code>
+ * <li>most children of a parent become <code>Except(parent.Children, {...})</code>
+ * <li>runs of adjacent siblings become a member range <code>first : last</code>
+ * </ul>
+ * Only the generated MDX is changed, the position tree of the Quax is not touched.
+ */
+public class SetCompactor {
+
+  /**
+   * if "false", the generated MDX is not compacted
+   */
+  public static final String COMPACT_PROP = "com.tonbeller.jpivot.olap.query.compact";
+
+  // shorter runs of siblings are kept as single members
+  static final int MIN_RUN = 3;
+
+  private QuaxUti uti;
+
+  // unique name of parent -> Siblings
+  private Map siblingsMap = new HashMap();
+
+  public SetCompactor(QuaxUti uti) {
+    this.uti = uti;
+  }
+
+  /**
+   * @return false, if compaction was switched off by {@link #COMPACT_PROP}
+   */
+  public static boolean isEnabled() {
+    return !"false".equals(System.getProperty(COMPACT_PROP));
+  }
+
+  /**
+   * @return the compacted expression or oExp, if it could not be compacted
+   */
+  public Object compact(Object oExp) {
+    if (oExp == null || !uti.isFunCall(oExp))
+      return oExp;
+    if (isUnion(oExp))
+      return compactUnion(oExp);
+    if (isMemberSet(oExp))
+      return compactMembers(args(oExp), oExp);
+    if (uti.isFunCallTo(oExp, "CrossJoin")) {
+      Object[] args = args(oExp);
+      boolean changed = false;
+      for (int i = 0; i < args.length; i++) {
+        Object arg = compact(args[i]);
+        changed |= arg != args[i];
+        args[i] = arg;
+      }
+      if (changed)
+        return uti.createFunCall(uti.funCallName(oExp), args, QuaxUti.FUNTYPE_FUNCTION);
+    }
+    return oExp;
+  }
+
+  /**
+   * merges the adjacent member sets of a Union chain and builds a balanced Union tree.
+   * Union is associative, so the order of the tuples is kept.
+   */
+  private Object compactUnion(Object oExp) {
+    List operands = new ArrayList();
+    flattenUnion(oExp, operands);
+    List sets = new ArrayList();
+    List members = new ArrayList();
+    Set uniqueNames = new HashSet();
+    for (int i = 0; i < operands.size(); i++) {
+      Object operand = operands.get(i);
+      if (uti.isMember(operand) || isMemberSet(operand)) {
+        Object[] args = uti.isMember(operand) ? new Object[] { operand} : args(operand);
+        for (int j = 0; j < args.length; j++) {
+          // Union removes duplicates
+          if (uniqueNames.add(uti.getMemberUniqueName(args[j])))
+            members.add(args[j]);
+        }
+      } else {
+        addMembers(sets, members, uniqueNames);
+        sets.add(compact(operand));
+      }
+    }
+    addMembers(sets, members, uniqueNames);
+    return union(sets, 0, sets.size());
+  }
+
+  private void addMembers(List sets, List members, Set uniqueNames) {
+    if (members.isEmpty())
+      return;
+    Object[] args = members.toArray();
+    Object set = uti.createFunCall("{}", args, QuaxUti.FUNTYPE_BRACES);
+    sets.add(compactMembers(args, set));
+    members.clear();
+    uniqueNames.clear();
+  }
+
+  private void flattenUnion(Object oExp, List operands) {
+    if (isUnion(oExp)) {
+      flattenUnion(uti.funCallArg(oExp, 0), operands);
+      flattenUnion(uti.funCallArg(oExp, 1), operands);
+    } else
+      operands.add(oExp);
+  }
+
+  private Object union(List sets, int from, int to) {
+    if (to - from == 1)
+      return sets.get(from);
+    int mid = (from + to) / 2;
+    return uti.createFunCall("Union", new Object[] { union(sets, from, mid), union(sets, mid, to)},
+        QuaxUti.FUNTYPE_FUNCTION);
+  }
+
+  /**
+   * compacts the runs of siblings in a member set
+   * @param members the members of set
+   * @param set the uncompacted set
+   * @return set, if nothing could be compacted
+   */
+  private Object compactMembers(Object[] members, Object set) {
+    int n = members.length;
+    if (n < MIN_RUN)
+      return set;
+    Member[] parents = new Member[n];
+    for (int i = 0; i < n; i++)
+      parents[i] = uti.getParentMember(members[i]);
+
+    List pieces = new ArrayList();
+    int i = 0;
+    while (i < n) {
+      int j = i + 1;
+      while (j < n && parents[i] != null && parents[i].equals(parents[j]))
+        ++j;
+      Siblings siblings = null;
+      if (j - i >= MIN_RUN)
+        siblings = getSiblings(parents[i]);
+      if (siblings == null) {
+        for (int k = i; k < j; k++)
+          pieces.add(members[k]);
+        i = j;
+        continue;
+      }
+      // split into parts with ascending position in parent.Children
+      int k = i;
+      while (k < j) {
+        int l = k + 1;
+        int index = siblings.indexOf(members[k]);
+        if (index < 0) {
+          pieces.add(members[k]);
+          k = l;
+          continue;
+        }
+        int next;
+        while (l < j && (next = siblings.indexOf(members[l])) > index) {
+          index = next;
+          ++l;
+        }
+        compactSiblings(parents[i], siblings, members, k, l, pieces);
+        k = l;
+      }
+      i = j;
+    }
+
+    if (pieces.size() == n)
+      return set;
+    if (pieces.size() == 1 && !uti.isMember(pieces.get(0)))
+      return pieces.get(0);
+    return uti.createFunCall("{}", pieces.toArray(), QuaxUti.FUNTYPE_BRACES);
+  }
+
+  /**
+   * adds the expression for members[from..to) to pieces. The members are children of
+   * parent in ascending order.
+   */
+  private void compactSiblings(Member parent, Siblings siblings, Object[] members, int from,
+      int to, List pieces) {
+    Object oParent = uti.objForMember(parent);
+    Object children = uti.createFunCall("Children", new Object[] { oParent},
+        QuaxUti.FUNTYPE_PROPERTY);
+    int n = siblings.children.length;
+    if (to - from == n) {
+      pieces.add(children);
+      return;
+    }
+
+    boolean[] contained = new boolean[n];
+    for (int i = from; i < to; i++)
+      contained[siblings.indexOf(members[i])] = true;
+    List present = runs(siblings.children, contained, true);
+    List missing = runs(siblings.children, contained, false);
+    if (missing.size() + 1 < present.size()) {
+      Object except = missing.size() == 1 && !uti.isMember(missing.get(0)) ? missing.get(0)
+          : uti.createFunCall("{}", missing.toArray(), QuaxUti.FUNTYPE_BRACES);
+      pieces.add(uti.createFunCall("Except", new Object[] { children, except},
+          QuaxUti.FUNTYPE_FUNCTION));
+    } else
+      pieces.addAll(present);
+  }
+
+  /**
+   * @return the children with contained[i] == flag as members and ranges
+   */
+  private List runs(Object[] children, boolean[] contained, boolean flag) {
+    List runs = new ArrayList();
+    int i = 0;
+    while (i < children.length) {
+      if (contained[i] != flag) {
+        ++i;
+        continue;
+      }
+      int j = i + 1;
+      while (j < children.length && contained[j] == flag)
+        ++j;
+      if (j - i >= MIN_RUN)
+        runs.add(uti.createFunCall(":", new Object[] { children[i], children[j - 1]},
+            QuaxUti.FUNTYPE_INFIX));
+      else
+        for (int k = i; k < j; k++)
+          runs.add(children[k]);
+      i = j;
+    }
+    return runs;
+  }
+
+  private Siblings getSiblings(Member parent) {
+    Object oParent = uti.objForMember(parent);
+    String key = uti.getMemberUniqueName(oParent);
+    Siblings siblings = (Siblings) siblingsMap.get(key);
+    if (siblings == null) {
+      Object[] children = uti.getChildren(oParent);
+      if (children == null)
+        return null;
+      siblings = new Siblings(children);
+      siblingsMap.put(key, siblings);
+    }
+    return siblings;
+  }
+
+  private boolean isUnion(Object oExp) {
+    return uti.isFunCallTo(oExp, "Union") && uti.funCallArgCount(oExp) == 2;
+  }
+
+  private boolean isMemberSet(Object oExp) {
+    if (!uti.isFunCallTo(oExp, "{}"))
+      return false;
+    for (int i = 0; i < uti.funCallArgCount(oExp); i++)
+      if (!uti.isMember(uti.funCallArg(oExp, i)))
+        return false;
+    return true;
+  }
+
+  private Object[] args(Object oFun) {
+    Object[] args = new Object[uti.funCallArgCount(oFun)];
+    for (int i = 0; i < args.length; i++)
+      args[i] = uti.funCallArg(oFun, i);
+    return args;
+  }
+
+  /**
+   * the children of a parent and their positions
+   */
+  private class Siblings {
+    Object[] children;
+    // unique name -> Integer
+    Map positions = new HashMap();
+
+    Siblings(Object[] children) {
+      this.children = children;
+      for (int i = 0; i < children.length; i++)
+        positions.put(uti.getMemberUniqueName(children[i]), new Integer(i));
+    }
+
+    int indexOf(Object oMember) {
+      Integer pos = (Integer) positions.get(uti.getMemberUniqueName(oMember));
+      return pos == null ? -1 : pos.intValue();
+    }
+  }
+
+} // SetCompactor
@@ -0,0 +1,69 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.tonbeller.jpivot.print;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.tonbeller.jpivot.olap.navi.DrillThroughRows;
+
+/**
+ * writes drill through rows as comma separated values (RFC 4180).
+ * Nothing is buffered except by the underlying writer.
+ */
+public class CsvRowWriter implements DrillThroughRows.RowWriter {
+  private Writer out;
+  private char separator;
+
+  public CsvRowWriter(Writer out, char separator) {
+    this.out = out;
+    this.separator = separator;
+  }
+
+  public void writeHeader(String[] columnTitles) throws IOException {
+    writeRow(columnTitles);
+  }
+
+  public void writeRow(Object[] values) throws IOException {
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0)
+        out.write(separator);
+      if (values[i] != null)
+        writeValue(values[i].toString());
+    }
+    out.write("\r\n");
+  }
+
+  private void writeValue(String s) throws IOException {
+    boolean quote = false;
+    for (int i = 0; i < s.length() && !quote; i++) {
+      char c = s.charAt(i);
+      quote = c == separator || c == '"' || c == '\r' || c == '\n';
+    }
+    if (!quote) {
+      out.write(s);
+      return;
+    }
+    out.write('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"')
+        out.write('"');
+      out.write(c);
+    }
+    out.write('"');
+  }
+
+  public void close() throws IOException {
+    out.flush();
+  }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.tonbeller.jpivot.print;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.apache.log4j.Logger;
+
+import com.tonbeller.jpivot.olap.navi.DrillThroughRows;
+import com.tonbeller.wcf.table.EditableTableComponent;
+import com.tonbeller.wcf.table.TableComponent;
+import com.tonbeller.wcf.table.TableModel;
+import com.tonbeller.wcf.table.TableRow;
+
+/**
+ * Exports the rows of the current drill through table as CSV or XLSX.
+ * The rows are written to the response while they are read from the database,
+ * if the table model supports that (see {@link DrillThroughRows}), so the memory
+ * does not depend on the number of rows. A slow client slows down the reading.
+ * <p>
+ * Expected HTTP GET Parameters:
+ *  - cube - the id of the olap model, the drill through table is stored
+ *           in the session as &lt;cube&gt;.drillthroughtable
+ *  - type - csv or xlsx, default csv
+ *  - filenamePre - (optional) - defaults to drillthrough, specifies the filename
+ *  				 the browser will use to name the output.
+ */
+public class DrillThroughExportServlet extends HttpServlet {
+  private static Logger logger = Logger.getLogger(DrillThroughExportServlet.class);
+
+  protected void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws ServletException, IOException {
+    String cube = request.getParameter("cube");
+    HttpSession session = request.getSession(false);
+    TableModel model = null;
+    if (cube != null && session != null)
+      model = getTableModel(session.getAttribute(cube + ".drillthroughtable"));
+    if (model == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND, "no drill through table");
+      return;
+    }
+
+    boolean xlsx = "xlsx".equals(request.getParameter("type"));
+    String filenamePre = safeFilename(request.getParameter("filenamePre"));
+    if (xlsx) {
+      response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+      response.setHeader("Content-Disposition", "attachment; filename=\"" + filenamePre + ".xlsx\"");
+    } else {
+      response.setContentType("text/csv; charset=UTF-8");
+      response.setHeader("Content-Disposition", "attachment; filename=\"" + filenamePre + ".csv\"");
+    }
+
+    OutputStream os = response.getOutputStream();
+    try {
+      if (xlsx) {
+        XlsxRowWriter writer = new XlsxRowWriter(os);
+        writeRows(model, writer);
+        writer.close();
+      } else {
+        CsvRowWriter writer = new CsvRowWriter(new BufferedWriter(new OutputStreamWriter(os,
+            "UTF-8")), ',');
+        writeRows(model, writer);
+        writer.close();
+      }
+      os.flush();
+    } catch (IOException e) {
+      // client has gone
+      logger.info("drill through export aborted: " + e.getMessage());
+    } catch (Exception e) {
+      logger.error("drill through export failed", e);
+      if (!response.isCommitted()) {
+        response.reset();
+        response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.toString());
+      }
+    }
+  }
+
+  protected void doPost(HttpServletRequest request, HttpServletResponse response)
+      throws ServletException, IOException {
+    doGet(request, response);
+  }
+
+  /**
+   * the filename is taken from the request, so only letters, digits, '.', '-'
+   * and '_' are passed into the header. Other characters are replaced by '_'.
+   */
+  static String safeFilename(String filenamePre) {
+    if (filenamePre == null || filenamePre.length() == 0)
+      return "drillthrough";
+    StringBuffer sb = new StringBuffer(Math.min(filenamePre.length(), 100));
+    for (int i = 0; i < filenamePre.length() && i < 100; i++) {
+      char c = filenamePre.charAt(i);
+      if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.'
+          || c == '-' || c == '_')
+        sb.append(c);
+      else
+        sb.append('_');
+    }
+    return sb.toString();
+  }
+
+  private TableModel getTableModel(Object tableComponent) {
+    if (tableComponent instanceof EditableTableComponent)
+      return ((EditableTableComponent) tableComponent).getTableComp().getModel();
+    if (tableComponent instanceof TableComponent)
+      return ((TableComponent) tableComponent).getModel();
+    return null;
+  }
+
+  /**
+   * streams the rows if the model supports it, otherwise copies them from the table model
+   */
+  private void writeRows(TableModel model, DrillThroughRows.RowWriter writer) throws Exception {
+    if (model instanceof DrillThroughRows) {
+      ((DrillThroughRows) model).writeRows(writer);
+      return;
+    }
+    int numCols = model.getColumnCount();
+    String[] titles = new String[numCols];
+    for (int i = 0; i < numCols; i++)
+      titles[i] = model.getColumnTitle(i);
+    writer.writeHeader(titles);
+    Object[] values = new Object[numCols];
+    int numRows = model.getRowCount();
+    for (int i = 0; i < numRows; i++) {
+      TableRow row = model.getRow(i);
+      for (int j = 0; j < numCols; j++)
+        values[j] = row.getValue(j);
+      writer.writeRow(values);
+    }
+  }
+
+  public String getServletInfo() {
+    return "Export drill through rows";
+  }
+
+}
@@ -10,13 +10,10 @@
  */
 package com.tonbeller.jpivot.print;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -28,7 +25,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamResult;
 
 import org.apache.fop.apps.Driver;
@@ -36,11 +34,12 @@ import org.apache.fop.apps.FOPException;
 import org.apache.fop.apps.Options;
 import org.apache.fop.configuration.Configuration;
 import org.apache.log4j.Logger;
-import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
 
 import com.tonbeller.jpivot.chart.ChartComponent;
+import com.tonbeller.jpivot.chart.ChartImageCache;
 import com.tonbeller.jpivot.table.TableComponent;
+import com.tonbeller.jpivot.table.TableXMLReader;
 import com.tonbeller.wcf.component.RendererParameters;
 import com.tonbeller.wcf.controller.RequestContext;
 import com.tonbeller.wcf.controller.RequestContextFactoryFinder;
@@ -98,6 +97,8 @@ public class PrintServlet extends HttpServlet {
     HttpServletRequest request = context.getRequest();
     HttpServletResponse response = context.getResponse();
     if (request.getParameter("cube") != null && request.getParameter("type") != null) {
+      // temp file of the chart image, deleted when FOP is done
+      File chartFile = null;
       try {
         String xslUri = null;
         String filename = null;
@@ -171,7 +172,12 @@ public class PrintServlet extends HttpServlet {
             	  if (chartFilename.indexOf("..") >= 0) {
             		  throw new ServletException("File '" + chartFilename + "' does not exist within temp directory.");
             	  }
-            	  File file = new File(System.getProperty("java.io.tmpdir"), chartFilename);
+            	  // the chart image is kept in memory, FOP needs a file
+            	  File file = ChartImageCache.instance().getFile(chartFilename);
+            	  if (file != null)
+            		  chartFile = file;
+            	  else
+            		  file = new File(System.getProperty("java.io.tmpdir"), chartFilename);
                   if (!file.exists()) {
                       throw new ServletException("File '" + file.getAbsolutePath() + "' does not exist.");
                   }
@@ -193,11 +199,10 @@ public class PrintServlet extends HttpServlet {
             // Some FOP-PDF versions require a complete URL, not a path
             //parameters.put("contextUrl", createContextURLValue(context));
 
+            // the table rows are rendered into the transformation one by one,
+            // the output goes directly to the response
             table.setDirty(true);
-            Document document = table.render(context);
-            table.setDirty(true);
-
-            DOMSource source = new DOMSource(document);
+            SAXSource source = new SAXSource(new TableXMLReader(table, context), new InputSource());
             // set up xml transformation
             Transformer transformer = XmlUtils.getTransformer(session, xslUri, xslCache);
             for (Iterator it = parameters.keySet().iterator(); it.hasNext();) {
@@ -205,35 +210,23 @@ public class PrintServlet extends HttpServlet {
               Object value = parameters.get(name);
               transformer.setParameter(name, value);
             }
-            StringWriter sw = new StringWriter();
-            StreamResult result = new StreamResult(sw);
-            //do transform
-            transformer.transform(source, result);
-            sw.flush();
 
             // if thisis XML, then we are done, so output xml file.
             if (type == XML) {
-              System.out.println("Writing XLS");
-              response.setContentLength(sw.toString().length());
-              out.write(sw.toString());
+              logger.info("Writing XLS");
+              transformer.transform(source, new StreamResult(out));
               RendererParameters.removeParameter(context.getRequest(), "mode", "excel", "request");
               // process FO to PDF
             } else {
-              // if this is PDF, then need to generate PDF from the FO xml
-              System.out.println("Creating PDF!");
-              try {
-                ByteArrayInputStream bain = new ByteArrayInputStream(sw.toString().getBytes("UTF-8"));
-                ByteArrayOutputStream baout = new ByteArrayOutputStream(16384);
-                convertFO2PDF(bain, baout);
-                final byte[] content = baout.toByteArray();
-                response.setContentLength(content.length);
-                outStream.write(content);
-                RendererParameters.removeParameter(context.getRequest(), "mode", "print", "request");
-                //convertXML2PDF(document.toString(), xslUri, outStream);
-              } catch (Exception e) {
-                e.printStackTrace();
-              }
+              // if this is PDF, then the FO events go directly into FOP
+              logger.info("Creating PDF");
+              Driver driver = new Driver();
+              driver.setRenderer(Driver.RENDER_PDF);
+              driver.setOutputStream(outStream);
+              transformer.transform(source, new SAXResult(driver.getContentHandler()));
+              RendererParameters.removeParameter(context.getRequest(), "mode", "print", "request");
             }
+            table.setDirty(true);
             //close output streams
             out.flush();
             out.close();
@@ -241,34 +234,19 @@ public class PrintServlet extends HttpServlet {
           }
         }
       } catch (Exception e) {
-        e.printStackTrace();
-      }
-    }
-  }
-
-  /**
-   * converts FO xml into PDF using the FOP processor
-   */
-  public void convertFO2PDF(ByteArrayInputStream bain, ByteArrayOutputStream baout) throws IOException, FOPException {
-
-    System.out.println("Construct driver");
-    Driver driver = new Driver();
-
-    System.out.println("Setup Renderer (output format)");
-    driver.setRenderer(Driver.RENDER_PDF);
-
-    try {
-      driver.setOutputStream(baout);
-      System.out.println("Setup input");
-      try {
-        driver.setInputSource(new InputSource(bain));
-
-        System.out.println("Process FO");
-        driver.run();
-        System.out.println("PDF file generation completed");
+        logger.error("export failed", e);
+        // the output is streamed, parts of it may have been sent already
+        if (!response.isCommitted()) {
+          response.reset();
+          response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Export failed");
+        } else {
+          // the container aborts the response, the client does not get a truncated file
+          throw new ServletException("export failed", e);
+        }
       } finally {
+        if (chartFile != null)
+          chartFile.delete();
       }
-    } finally {
     }
   }
 
@@ -0,0 +1,188 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.tonbeller.jpivot.print;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.tonbeller.jpivot.olap.navi.DrillThroughRows;
+
+/**
+ * writes drill through rows as an Office Open XML workbook (xlsx).
+ * The worksheet xml is written into the zip stream row by row, the parts
+ * that list the worksheets are written when the writer is closed.
+ * A new worksheet is started when a sheet is full.
+ */
+public class XlsxRowWriter implements DrillThroughRows.RowWriter {
+  /** rows per sheet including the header, Excel's limit */
+  public static final int MAX_SHEET_ROWS = 1048576;
+
+  private static final String NS_MAIN = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+  private static final String NS_REL = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+  private static final String NS_PKG_REL = "http://schemas.openxmlformats.org/package/2006/relationships";
+  private static final String REL_WORKSHEET = NS_REL + "/worksheet";
+
+  private ZipOutputStream zip;
+  private Writer out;
+  private String[] columnTitles;
+  private int sheetCount = 0;
+  private int sheetRows;
+  private int maxSheetRows;
+
+  public XlsxRowWriter(OutputStream os) throws IOException {
+    this(os, MAX_SHEET_ROWS);
+  }
+
+  XlsxRowWriter(OutputStream os, int maxSheetRows) throws IOException {
+    this.zip = new ZipOutputStream(os);
+    this.out = new BufferedWriter(new OutputStreamWriter(zip, "UTF-8"));
+    this.maxSheetRows = maxSheetRows;
+  }
+
+  public void writeHeader(String[] columnTitles) throws IOException {
+    this.columnTitles = columnTitles;
+    startSheet();
+  }
+
+  public void writeRow(Object[] values) throws IOException {
+    if (sheetRows >= maxSheetRows) {
+      endSheet();
+      startSheet();
+    }
+    out.write("<row>");
+    for (int i = 0; i < values.length; i++)
+      writeCell(values[i]);
+    out.write("</row>\n");
+    sheetRows++;
+  }
+
+  /**
+   * writes the workbook parts and finishes the zip stream.
+   * The underlying stream is not closed.
+   */
+  public void close() throws IOException {
+    if (sheetCount == 0)
+      writeHeader(new String[0]);
+    endSheet();
+
+    startEntry("xl/workbook.xml");
+    out.write("<workbook xmlns=\"" + NS_MAIN + "\" xmlns:r=\"" + NS_REL + "\"><sheets>");
+    for (int i = 1; i <= sheetCount; i++)
+      out.write("<sheet name=\"Sheet" + i + "\" sheetId=\"" + i + "\" r:id=\"rId" + i + "\"/>");
+    out.write("</sheets></workbook>");
+    endEntry();
+
+    startEntry("xl/_rels/workbook.xml.rels");
+    out.write("<Relationships xmlns=\"" + NS_PKG_REL + "\">");
+    for (int i = 1; i <= sheetCount; i++)
+      out.write("<Relationship Id=\"rId" + i + "\" Type=\"" + REL_WORKSHEET
+          + "\" Target=\"worksheets/sheet" + i + ".xml\"/>");
+    out.write("</Relationships>");
+    endEntry();
+
+    startEntry("_rels/.rels");
+    out.write("<Relationships xmlns=\"" + NS_PKG_REL + "\"><Relationship Id=\"rId1\" Type=\""
+        + NS_REL + "/officeDocument\" Target=\"xl/workbook.xml\"/></Relationships>");
+    endEntry();
+
+    startEntry("[Content_Types].xml");
+    out.write("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+        + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+        + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+        + "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>");
+    for (int i = 1; i <= sheetCount; i++)
+      out.write("<Override PartName=\"/xl/worksheets/sheet" + i
+          + ".xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+    out.write("</Types>");
+    endEntry();
+
+    zip.finish();
+  }
+
+  private void startSheet() throws IOException {
+    sheetCount++;
+    sheetRows = 0;
+    startEntry("xl/worksheets/sheet" + sheetCount + ".xml");
+    out.write("<worksheet xmlns=\"" + NS_MAIN + "\"><sheetData>\n");
+    if (columnTitles.length > 0)
+      writeRow(columnTitles);
+  }
+
+  private void endSheet() throws IOException {
+    out.write("</sheetData></worksheet>");
+    endEntry();
+  }
+
+  private void startEntry(String name) throws IOException {
+    zip.putNextEntry(new ZipEntry(name));
+    out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+  }
+
+  private void endEntry() throws IOException {
+    out.flush();
+    zip.closeEntry();
+  }
+
+  private void writeCell(Object value) throws IOException {
+    if (value == null) {
+      out.write("<c/>");
+    } else if (value instanceof Number && isFinite((Number) value)) {
+      out.write("<c><v>");
+      out.write(value.toString());
+      out.write("</v></c>");
+    } else if (value instanceof Boolean) {
+      out.write("<c t=\"b\"><v>");
+      out.write(((Boolean) value).booleanValue() ? "1" : "0");
+      out.write("</v></c>");
+    } else {
+      out.write("<c t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+      writeText(value.toString());
+      out.write("</t></is></c>");
+    }
+  }
+
+  private static boolean isFinite(Number n) {
+    double d = n.doubleValue();
+    return !Double.isNaN(d) && !Double.isInfinite(d);
+  }
+
+  private void writeText(String s) throws IOException {
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+      case '<':
+        out.write("&lt;");
+        break;
+      case '>':
+        out.write("&gt;");
+        break;
+      case '&':
+        out.write("&amp;");
+        break;
+      case '\t':
+      case '\n':
+      case '\r':
+        out.write(c);
+        break;
+      default:
+        // control characters are not allowed in xml
+        if (c >= 0x20)
+          out.write(c);
+      }
+    }
+  }
+
+}
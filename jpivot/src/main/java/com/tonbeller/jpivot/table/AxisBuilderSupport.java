@@ -23,6 +23,7 @@ import org.w3c.dom.Element;
 import com.tonbeller.jpivot.olap.model.Axis;
 import com.tonbeller.jpivot.olap.model.Displayable;
 import com.tonbeller.jpivot.olap.model.Member;
+import com.tonbeller.jpivot.olap.navi.AncestorCache;
 import com.tonbeller.jpivot.olap.navi.MemberTree;
 import com.tonbeller.jpivot.table.span.HierarchyHeaderFactory;
 import com.tonbeller.jpivot.table.span.LevelHeaderFactory;
@@ -44,6 +45,8 @@ public abstract class AxisBuilderSupport extends PartBuilderSupport implements A
   private static final Logger logger = Logger.getLogger(AxisBuilderSupport.class);
   
   protected SpanCalc spanCalc;
+  // spans of the last rendering, reused after expand/collapse
+  private SpanCalc previousSpanCalc;
   protected SpanBuilder spanBuilder;
   protected PropertySpanBuilder propertySpanBuilder;
   protected AxisHeaderBuilder axisHeaderBuilder;
@@ -73,6 +76,7 @@ public abstract class AxisBuilderSupport extends PartBuilderSupport implements A
     logger.info("destroy");
     propertySpanBuilder.destroy(session);
     propertySpanBuilder = null;
+    previousSpanCalc = null;
     super.destroy(session);
   }
 
@@ -85,11 +89,16 @@ public abstract class AxisBuilderSupport extends PartBuilderSupport implements A
       MemberTree tree = (MemberTree) table.getOlapModel().getExtension(MemberTree.ID);
       if (tree != null) {
         logger.info("adding LevelAxisDecorator");
-        axis = new LevelAxisDecorator(axis, tree);
+        axis = new LevelAxisDecorator(axis, AncestorCache.instance(table.getResult(), tree));
       }
     }
     logger.info("creating SpanCalc");
-    spanCalc = new SpanCalc(axis);
+    TableWindow window = getWindow();
+    if (window != null && window.isClipping()) {
+      int count = Math.min(window.getSize(), window.getTotal() - window.getStart());
+      spanCalc = new SpanCalc(axis, window.getStart(), count);
+    } else
+      spanCalc = new SpanCalc(axis);
 
     SpanConfigSupport scs = new SpanConfigSupport();
     scs.setDirection(Member.class, memberSpan);
@@ -106,6 +115,10 @@ public abstract class AxisBuilderSupport extends PartBuilderSupport implements A
       spanCalc.addHierarchyHeader(new LevelHeaderFactory(), true);
       break;
     }
+
+    if (window == null || !window.isClipping())
+      spanCalc.setPrevious(previousSpanCalc);
+    previousSpanCalc = null;
   }
 
   /**
@@ -223,6 +236,13 @@ public abstract class AxisBuilderSupport extends PartBuilderSupport implements A
    */
   protected abstract Axis getAxis();
 
+  /**
+   * returns the window of the axis that is rendered, or null if all positions are rendered
+   */
+  protected TableWindow getWindow() {
+    return null;
+  }
+
   public void startBuild(RequestContext context) {
     Axis axis = getAxis();
     if (axis != null)
@@ -234,10 +254,20 @@ public abstract class AxisBuilderSupport extends PartBuilderSupport implements A
   public void stopBuild() {
     spanBuilder.stopBuild();
     super.stopBuild();
-    // avoid memory leak
+    // keep only the spans of the last rendering
+    previousSpanCalc = spanCalc;
     spanCalc = null;
   }
 
+  /**
+   * the spans of the last rendering are not reused after the axis configuration has changed
+   */
+  protected void setDirty(boolean dirty) {
+    if (dirty)
+      previousSpanCalc = null;
+    super.setDirty(dirty);
+  }
+
   /**
    * only valid between startBuild() and stopBuild()
    */
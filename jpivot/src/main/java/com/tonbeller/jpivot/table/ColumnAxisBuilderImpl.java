@@ -54,4 +54,8 @@ public class ColumnAxisBuilderImpl extends AxisBuilderSupport implements ColumnA
   protected Axis getAxis() {
     return table.getColumnAxis();
   }
+
+  protected TableWindow getWindow() {
+    return table.isWindowing() ? table.getColumnWindow() : null;
+  }
 }
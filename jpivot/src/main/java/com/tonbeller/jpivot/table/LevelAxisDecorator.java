@@ -21,6 +21,7 @@ import com.tonbeller.jpivot.olap.model.Hierarchy;
 import com.tonbeller.jpivot.olap.model.Member;
 import com.tonbeller.jpivot.olap.model.Position;
 import com.tonbeller.jpivot.olap.model.Visitor;
+import com.tonbeller.jpivot.olap.navi.AncestorCache;
 import com.tonbeller.jpivot.olap.navi.MemberTree;
 
 /**
@@ -51,7 +52,7 @@ import com.tonbeller.jpivot.olap.navi.MemberTree;
 
 public class LevelAxisDecorator implements Axis {
   Axis axis;
-  MemberTree tree;
+  AncestorCache ancestors;
   int[] levelCount; 
   boolean[] skipAllMember;
   int totalLevelCount;
@@ -62,8 +63,15 @@ public class LevelAxisDecorator implements Axis {
    * Constructor for LevelAxisDecorator.
    */
   public LevelAxisDecorator(Axis axis, MemberTree tree) {
+    this(axis, new AncestorCache(tree));
+  }
+
+  /**
+   * creates an instance that looks up the parents in <code>ancestors</code>
+   */
+  public LevelAxisDecorator(Axis axis, AncestorCache ancestors) {
     this.axis = axis;
-    this.tree = tree;
+    this.ancestors = ancestors;
     computeLevelCount();
     makePositions();
   }
@@ -155,10 +163,9 @@ public class LevelAxisDecorator implements Axis {
     for (int i = 0; i < fillCount; i++)
       result[offset--] = member;
 
-    for (int i = 0; i < memberCount; i++) {
-      result[offset--] = member;
-      member = tree.getParent(member);
-    }
+    Member[] path = ancestors.getAncestors(member);
+    for (int i = 0; i < memberCount; i++)
+      result[offset--] = i < path.length ? path[i] : null;
   }
 
   /**
@@ -147,4 +147,8 @@ public class RowAxisBuilderImpl extends AxisBuilderSupport implements RowAxisBui
     return table.getRowAxis();
   }
 
+  protected TableWindow getWindow() {
+    return table.isWindowing() ? table.getRowWindow() : null;
+  }
+
 }
@@ -12,6 +12,7 @@
  */
 package com.tonbeller.jpivot.table;
 
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -28,20 +29,28 @@ import org.w3c.dom.CDATASection;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
 
 import com.tonbeller.jpivot.core.ModelChangeEvent;
 import com.tonbeller.jpivot.core.ModelChangeListener;
+import com.tonbeller.jpivot.olap.model.AsyncOlapModel;
 import com.tonbeller.jpivot.olap.model.Axis;
 import com.tonbeller.jpivot.olap.model.Cell;
 import com.tonbeller.jpivot.olap.model.Member;
 import com.tonbeller.jpivot.olap.model.OlapModel;
 import com.tonbeller.jpivot.olap.model.Position;
 import com.tonbeller.jpivot.olap.model.Result;
+import com.tonbeller.jpivot.olap.navi.AxisPaging;
 import com.tonbeller.jpivot.olap.navi.ClickableExtension;
+import com.tonbeller.jpivot.olap.navi.PageInfo;
 import com.tonbeller.jpivot.table.span.PropertyConfig;
+import com.tonbeller.jpivot.util.DomSaxWriter;
 import com.tonbeller.tbutils.res.Resources;
 import com.tonbeller.wcf.component.Component;
 import com.tonbeller.wcf.component.ComponentSupport;
+import com.tonbeller.wcf.component.RendererParameters;
 import com.tonbeller.wcf.controller.RequestContext;
 import com.tonbeller.wcf.controller.RequestListener;
 import com.tonbeller.wcf.utils.XmlUtils;
@@ -53,6 +62,19 @@ import com.tonbeller.wcf.utils.XmlUtils;
 public class TableComponent extends ComponentSupport implements ModelChangeListener {
   private static Logger logger = Logger.getLogger(TableComponent.class);
 
+  /**
+   * system property, number of rows that are rendered at once, default 0 = all rows.
+   * Buttons below the table move the window.
+   */
+  public static final String ROW_WINDOW_PROP = "com.tonbeller.jpivot.table.window.rows";
+
+  /**
+   * system property, number of columns that are rendered at once, default 0 = all columns
+   */
+  public static final String COLUMN_WINDOW_PROP = "com.tonbeller.jpivot.table.window.columns";
+
+  private static final String[] WINDOW_MOVES = new String[] { "first", "previous", "next", "last"};
+
   // configurable options from config.xml
   CellBuilder cellBuilder;
   CornerBuilder cornerBuilder;
@@ -79,6 +101,18 @@ public class TableComponent extends ComponentSupport implements ModelChangeListe
   int dimCount;
   /** valid between startBuild() and stopBuild() */   
   Element rootElement;
+  /** receives the rows while they are built, null if the DOM is kept */
+  DomSaxWriter rowWriter;
+
+  /** the user has cancelled the running query */
+  boolean queryCancelled = false;
+
+  TableWindow rowWindow = new TableWindow(Integer.getInteger(ROW_WINDOW_PROP, 0).intValue());
+  TableWindow columnWindow = new TableWindow(Integer.getInteger(COLUMN_WINDOW_PROP, 0).intValue());
+  /** valid between startBuild() and stopBuild() */   
+  boolean windowing;
+  /** the page of the rows, if the query is paged. Valid between startBuild() and stopBuild() */
+  PageInfo pageInfo;
 
   public TableComponent(String id, Component parent) {
     super(id, parent);
@@ -121,6 +155,84 @@ public class TableComponent extends ComponentSupport implements ModelChangeListe
     cellBuilder.initialize(context, this);
     cornerBuilder.initialize(context, this);
     slicerBuilder.initialize(context, this);
+
+    // buttons of the progress placeholder
+    getDispatcher().addRequestListener(getCancelId(), null, new RequestListener() {
+      public void request(RequestContext context) throws Exception {
+        AsyncOlapModel async = getAsyncModel();
+        if (async != null && async.isRunning()) {
+          async.cancel();
+          queryCancelled = true;
+        }
+      }
+    });
+    getDispatcher().addRequestListener(getRerunId(), null, new RequestListener() {
+      public void request(RequestContext context) throws Exception {
+        queryCancelled = false;
+      }
+    });
+
+    // buttons of the row and column windows
+    for (int i = 0; i < WINDOW_MOVES.length; i++) {
+      addWindowListener("rows", rowWindow, i);
+      addWindowListener("columns", columnWindow, i);
+      addPageListener(i);
+    }
+  }
+
+  /**
+   * the page buttons select the page of the query, the model is changed
+   */
+  private void addPageListener(final int move) {
+    getDispatcher().addRequestListener(getWindowId("page", move), null, new RequestListener() {
+      public void request(RequestContext context) throws Exception {
+        AxisPaging paging = (AxisPaging) olapModel.getExtension(AxisPaging.ID);
+        if (paging == null)
+          return;
+        switch (move) {
+        case 0:
+          paging.setPageIndex(0);
+          break;
+        case 1:
+          paging.setPageIndex(paging.getPageIndex() - 1);
+          break;
+        case 2:
+          paging.setPageIndex(paging.getPageIndex() + 1);
+          break;
+        default:
+          // the query adapter selects the last page
+          paging.setPageIndex(Integer.MAX_VALUE);
+          break;
+        }
+      }
+    });
+  }
+
+  private void addWindowListener(String axisName, final TableWindow window, final int move) {
+    getDispatcher().addRequestListener(getWindowId(axisName, move), null, new RequestListener() {
+      public void request(RequestContext context) throws Exception {
+        switch (move) {
+        case 0:
+          window.setStart(0);
+          break;
+        case 1:
+          window.move(-window.getSize());
+          break;
+        case 2:
+          window.move(window.getSize());
+          break;
+        default:
+          // clip() moves the window to the end of the axis
+          window.setStart(Integer.MAX_VALUE);
+          break;
+        }
+        setDirty(true);
+      }
+    });
+  }
+
+  private String getWindowId(String axisName, int move) {
+    return getId() + ".window." + axisName + "." + WINDOW_MOVES[move];
   }
 
   /**
@@ -229,6 +341,9 @@ public class TableComponent extends ComponentSupport implements ModelChangeListe
   public Document render(RequestContext context) throws Exception {
     logger.info("render");
     if (document == null) {
+      Document progress = checkProgress(context);
+      if (progress != null)
+        return progress;
       logger.info("creating document");
       long t1 = System.currentTimeMillis();
       document = XmlUtils.createDocument();
@@ -241,7 +356,126 @@ public class TableComponent extends ComponentSupport implements ModelChangeListe
     }
     return document;
   }
+
+  /**
+   * renders the table as SAX events, e.g. into an xsl transformation
+   * (see {@link TableXMLReader}). Unlike render(), the rows are not kept in a DOM,
+   * every row is written to the handler as soon as the builders have created it.
+   * An existing DOM is written as is. The query is not executed in the background,
+   * the caller (e.g. print or export) waits for the result.
+   * @param lexicalHandler receives CDATA sections, may be null
+   */
+  public void render(RequestContext context, ContentHandler handler, LexicalHandler lexicalHandler)
+      throws Exception {
+    logger.info("render SAX");
+    DomSaxWriter writer = new DomSaxWriter(handler, lexicalHandler);
+    writer.startDocument();
+    if (document != null) {
+      writer.write(document);
+    } else {
+      long t1 = System.currentTimeMillis();
+      // the builders create their elements with this document
+      document = XmlUtils.createDocument();
+      rowWriter = writer;
+      try {
+        render2(context);
+      } finally {
+        rowWriter = null;
+        setDirty(true);
+      }
+      if (logger.isInfoEnabled()) {
+        long t2 = System.currentTimeMillis();
+        logger.info("Streaming of Table took " + (t2 - t1) + " millisec");
+      }
+    }
+    writer.endDocument();
+  }
+
+  /**
+   * starts the query if asynchronous execution is enabled
+   * @return a placeholder if the query is still running, null if the result is available
+   */
+  private Document checkProgress(RequestContext context) throws Exception {
+    AsyncOlapModel async = getAsyncModel();
+    if (async != null && !async.isDone()) {
+      if (queryCancelled)
+        return renderProgress(async);
+      if (!async.isRunning())
+        async.submit(getUser(context));
+      long wait = Integer.getInteger(AsyncOlapModel.WAIT_PROP, AsyncOlapModel.WAIT_DEFAULT)
+          .intValue();
+      if (!async.waitFor(wait))
+        return renderProgress(async);
+    }
+    return null;
+  }
   
+  /**
+   * returns the asynchronous execution extension, if asynchronous execution is enabled
+   */
+  private AsyncOlapModel getAsyncModel() {
+    if (olapModel == null || !AsyncOlapModel.isEnabled())
+      return null;
+    return (AsyncOlapModel) olapModel.getExtension(AsyncOlapModel.ID);
+  }
+
+  private String getUser(RequestContext context) {
+    String user = context.getRequest().getRemoteUser();
+    if (user == null)
+      user = context.getSession().getId();
+    return user;
+  }
+
+  private String getCancelId() {
+    return getId() + ".cancel";
+  }
+
+  private String getRerunId() {
+    return getId() + ".rerun";
+  }
+
+  /**
+   * creates a placeholder, that is shown while the query is running.
+   * The placeholder is not cached, the next render() checks the query again.
+   */
+  private Document renderProgress(AsyncOlapModel async) {
+    Document doc = XmlUtils.createDocument();
+    Element root = doc.createElement("mdxtable");
+    Element progress = doc.createElement("progress");
+    if (queryCancelled) {
+      progress.setAttribute("message", getResourceString("table.query.cancelled",
+          "The query has been cancelled", null));
+      progress.setAttribute("id", getRerunId());
+      progress.setAttribute("label", getResourceString("table.query.rerun", "Run again", null));
+    } else {
+      Long seconds = new Long(async.getElapsedTime() / 1000);
+      progress.setAttribute("message", getResourceString("table.query.running",
+          "The query is running ({0} s)", seconds));
+      progress.setAttribute("id", getCancelId());
+      progress.setAttribute("label", getResourceString("table.query.cancel", "Cancel", null));
+      progress.setAttribute("refresh", "true");
+    }
+    root.appendChild(progress);
+    doc.appendChild(root);
+    return doc;
+  }
+
+  private String getResourceString(String key, String defaultPattern, Object arg) {
+    return getResourceString(key, defaultPattern, arg == null ? null : new Object[] { arg});
+  }
+
+  private String getResourceString(String key, String defaultPattern, Object[] args) {
+    String pattern;
+    try {
+      pattern = resources.getString(key);
+    } catch (MissingResourceException ex) {
+      pattern = defaultPattern;
+    }
+    if (args == null)
+      return pattern;
+    return MessageFormat.format(pattern, args);
+  }
+
   protected Result updateOlapModel() throws Exception {
     return olapModel.getResult();
   }
@@ -251,6 +485,7 @@ public class TableComponent extends ComponentSupport implements ModelChangeListe
     this.result = updateOlapModel();
     this.cellIterator = result.getCells().iterator();
     this.dimCount = result.getAxes().length;
+    initWindows(context);
 
     rootElement = document.createElement("mdxtable");
     Element head = append("head", rootElement);
@@ -258,33 +493,150 @@ public class TableComponent extends ComponentSupport implements ModelChangeListe
     
     startBuild(context);
 
+    if (rowWriter != null) {
+      rowWriter.startElement(rootElement);
+      rowWriter.startElement(head);
+    }
+
     switch (dimCount) {
       case 0 :
         logger.info("0-dim data");
-        buildRows0Dim(body);
         break;
       case 1 :
         logger.info("1-dim data");
         buildColumns1Dim(head);
-        buildRows1Dim(body);
         break;
       case 2 :
         logger.info("2-dim data");
         buildColumns2Dim(head);
-        buildRows2Dim(body);
         break;
       default :
         logger.error("more than 2 dimensions");
         throw new IllegalArgumentException("TableRenderer requires 0, 1 or 2 dimensional result");
     }
 
-    rootElement.appendChild(buildSlicer());
+    if (rowWriter != null) {
+      rowWriter.endElement(head);
+      rowWriter.startElement(body);
+    }
+
+    switch (dimCount) {
+      case 0 :
+        buildRows0Dim(body);
+        break;
+      case 1 :
+        buildRows1Dim(body);
+        break;
+      default :
+        buildRows2Dim(body);
+        break;
+    }
+
+    if (rowWriter != null)
+      rowWriter.endElement(body);
+
+    addRow(rootElement, buildSlicer());
+
+    if (windowing || pageInfo != null)
+      addRow(rootElement, buildWindow());
 
     stopBuild();
 
+    if (rowWriter != null)
+      rowWriter.endElement(rootElement);
+
     return rootElement;
   }
 
+  /**
+   * decides whether only a window of the rows and columns is rendered.
+   * Prints and exports (no actions) always contain the whole table.
+   */
+  private void initWindows(RequestContext context) {
+    windowing = false;
+    pageInfo = null;
+    if (!RendererParameters.isRenderActions(context))
+      return;
+    AxisPaging paging = (AxisPaging) olapModel.getExtension(AxisPaging.ID);
+    if (paging != null && dimCount > 1)
+      pageInfo = paging.getPageInfo();
+    if (dimCount > 0)
+      columnWindow.clip(result.getAxes()[0].getPositions().size());
+    if (dimCount > 1)
+      rowWindow.clip(result.getAxes()[1].getPositions().size());
+    windowing = (dimCount > 0 && columnWindow.isClipping())
+        || (dimCount > 1 && rowWindow.isClipping());
+  }
+
+  /**
+   * positions the cell iterator at the first cell of row <code>rowIndex</code> of the window
+   */
+  private void windowCells(int rowIndex) {
+    if (!windowing)
+      return;
+    int columnCount = result.getAxes()[0].getPositions().size();
+    int firstRow = dimCount > 1 ? rowWindow.first() : 0;
+    int start = (firstRow + rowIndex) * columnCount + columnWindow.first();
+    int end = start + columnAxisBuilder.getColumnCount();
+    cellIterator = result.getCells().subList(start, end).iterator();
+  }
+
+  /**
+   * creates the buttons that move the windows
+   */
+  private Element buildWindow() {
+    Element window = elem("window");
+    if (pageInfo != null)
+      buildPage(window);
+    if (dimCount > 1)
+      buildWindowAxis(window, "rows", rowWindow, "Rows {0} - {1} of {2}");
+    buildWindowAxis(window, "columns", columnWindow, "Columns {0} - {1} of {2}");
+    return window;
+  }
+
+  private void buildWindowAxis(Element parent, String axisName, TableWindow window, String defaultPattern) {
+    if (!window.isClipping())
+      return;
+    int first = window.getStart() + 1;
+    int last = Math.min(window.getStart() + window.getSize(), window.getTotal());
+    Element elem = append(axisName, parent);
+    elem.setAttribute("message", getResourceString("table.window." + axisName, defaultPattern,
+        new Object[] { new Integer(first), new Integer(last), new Integer(window.getTotal())}));
+    boolean[] enabled = new boolean[] { first > 1, first > 1, last < window.getTotal(), last < window.getTotal()};
+    String[] defaultLabels = new String[] { "|<", "<", ">", ">|"};
+    for (int i = 0; i < WINDOW_MOVES.length; i++) {
+      if (!enabled[i])
+        continue;
+      Element button = append("button", elem);
+      button.setAttribute("id", getWindowId(axisName, i));
+      button.setAttribute("label", getResourceString("table.window." + WINDOW_MOVES[i],
+          defaultLabels[i], (Object[]) null));
+    }
+  }
+
+  /**
+   * the buttons that select the page of the rows
+   */
+  private void buildPage(Element parent) {
+    AxisPaging paging = (AxisPaging) olapModel.getExtension(AxisPaging.ID);
+    int first = pageInfo.getPageIndex() * paging.getPageSize() + 1;
+    int last = Math.min(pageInfo.getPageNo() * paging.getPageSize(), paging.getRowCount());
+    Element elem = append("rows", parent);
+    elem.setAttribute("message", getResourceString("table.window.rows", "Rows {0} - {1} of {2}",
+        new Object[] { new Integer(first), new Integer(last), new Integer(paging.getRowCount())}));
+    boolean[] enabled = new boolean[] { first > 1, first > 1, last < paging.getRowCount(),
+        last < paging.getRowCount()};
+    String[] defaultLabels = new String[] { "|<", "<", ">", ">|"};
+    for (int i = 0; i < WINDOW_MOVES.length; i++) {
+      if (!enabled[i])
+        continue;
+      Element button = append("button", elem);
+      button.setAttribute("id", getWindowId("page", i));
+      button.setAttribute("label", getResourceString("table.window." + WINDOW_MOVES[i],
+          defaultLabels[i], (Object[]) null));
+    }
+  }
+
   private Element buildSlicer() {
     logger.info("buildSlicer");
     Element slicer = elem("slicer");
@@ -317,32 +669,36 @@ public class TableComponent extends ComponentSupport implements ModelChangeListe
 
   /* ---------------------- 0 dim ------------------------------- */
 
-  private void buildRows0Dim(Element parent) {
+  private void buildRows0Dim(Element parent) throws SAXException {
     logger.info("buildRows0Dim");
     // if result is empty, dont show anything
     if (!cellIterator.hasNext())
       return;
     
-    Element row = append("row", parent);
+    Element row = elem("row");
     Cell cell = (Cell) cellIterator.next();
     Element cellElem = cellBuilder.build(cell, true);
     row.appendChild(cellElem);
+    addRow(parent, row);
   }
 
   /* ---------------------- 1 dim ------------------------------- */
 
-  private void buildRows1Dim(Element parent) {
+  private void buildRows1Dim(Element parent) throws SAXException {
     logger.info("buildRows1Dim");
-    Element row = append("row", parent);
+    Element row = elem("row");
+    windowCells(0);
     buildCells(row, false);
+    addRow(parent, row);
   }
 
-  private void buildColumns1Dim(Element parent) {
+  private void buildColumns1Dim(Element parent) throws SAXException {
     logger.info("buildColumns1Dim");
     final int N = columnAxisBuilder.getRowCount();
     for (int i = 0; i < N; i++) {
-      Element row = append("row", parent);
+      Element row = elem("row");
       columnAxisBuilder.buildRow(row, i);
+      addRow(parent, row);
     }
   }
 
@@ -383,7 +739,7 @@ public class TableComponent extends ComponentSupport implements ModelChangeListe
    * </pre>
    */
 
-  private void buildColumns2Dim(Element parent) {
+  private void buildColumns2Dim(Element parent) throws SAXException {
     logger.info("enter buildColumns2Dim");
     int colAxisCount = columnAxisBuilder.getRowCount();
     int rowAxisCount = rowAxisBuilder.getHeaderRowCount();
@@ -397,12 +753,14 @@ public class TableComponent extends ComponentSupport implements ModelChangeListe
       logger.info("rowAxisCount > colAxisCount");
       // case 1
       int N = rowAxisCount - colAxisCount;
-      Element row = append("row", parent);
+      Element row = elem("row");
       rowAxisBuilder.buildHeaderRow(row, rowAxisIndex++);
       buildCornerElement(row, columnAxisBuilder.getColumnCount(), N);
+      addRow(parent, row);
       for (int i = 1; i < N; i++) {
-        row = append("row", parent);
+        row = elem("row");
         rowAxisBuilder.buildHeaderRow(row, rowAxisIndex++);
+        addRow(parent, row);
       }
       // number of rows left to add
       rowAxisCount -= N;
@@ -410,12 +768,14 @@ public class TableComponent extends ComponentSupport implements ModelChangeListe
       logger.info("colAxisCount > rowAxisCount");
       // case 2
       int N = colAxisCount - rowAxisCount;
-      Element row = append("row", parent);
+      Element row = elem("row");
       buildCornerElement(row, rowAxisBuilder.getColumnCount(), N);
       columnAxisBuilder.buildRow(row, colAxisIndex++);
+      addRow(parent, row);
       for (int i = 1; i < N; i++) {
-        row = append("row", parent);
+        row = elem("row");
         columnAxisBuilder.buildRow(row, colAxisIndex++);
+        addRow(parent, row);
       }
       // number of rows left to add
       colAxisCount -= N;
@@ -425,14 +785,15 @@ public class TableComponent extends ComponentSupport implements ModelChangeListe
     // case 3
     // assert(colAxisCount == rowAxisCount)
     for (int i = 0; i < colAxisCount; i++) {
-      Element row = append("row", parent);
+      Element row = elem("row");
       rowAxisBuilder.buildHeaderRow(row, rowAxisIndex++);
       columnAxisBuilder.buildRow(row, colAxisIndex++);
+      addRow(parent, row);
     }
     logger.info("leave buildColumns2Dim");
   }
 
-  private void buildRows2Dim(Element parent) {
+  private void buildRows2Dim(Element parent) throws SAXException {
     logger.info("enter buildRows2Dim");
     final int cellCountLimit = Integer.getInteger(
         com.tonbeller.jpivot.mondrian.MondrianModel.CELL_LIMIT_PROP,
@@ -440,6 +801,11 @@ public class TableComponent extends ComponentSupport implements ModelChangeListe
 
     final int nosRows = rowAxisBuilder.getRowCount();
     final int nosColumns = columnAxisBuilder.getColumnCount();
+    // the cell limit keeps the cells of complete rows, count the kept rows
+    //  from the first row of the result, the row window may be beyond them
+    final int columnCount = result.getAxes()[0].getPositions().size();
+    final int keptRows = (columnCount == 0) ? nosRows : result.getCells().size() / columnCount;
+    final int nr = windowing ? rowWindow.keptCount(nosRows, keptRows) : Math.min(nosRows, keptRows);
     if (logger.isDebugEnabled()) {
         StringBuffer buf = new StringBuffer();
         buf.append("buildRows2Dim: cellCountLimit=");
@@ -450,8 +816,7 @@ public class TableComponent extends ComponentSupport implements ModelChangeListe
         buf.append(nosRows);
         logger.debug(buf.toString());
     }
-    if ((cellCountLimit > 0) && (cellCountLimit < nosColumns*nosRows)) {
-        int nr = (cellCountLimit / nosColumns) + 1;
+    if (nr < nosRows) {
         if (logger.isDebugEnabled()) {
             StringBuffer buf = new StringBuffer();
             buf.append("buildRows2Dim: number of rows=");
@@ -461,19 +826,21 @@ public class TableComponent extends ComponentSupport implements ModelChangeListe
 
         for (int i = 0; i < nr; i++) {
           boolean even = (i % 2 == 0);
-          Element row = append("row", parent);
+          Element row = elem("row");
           rowAxisBuilder.buildRow(row, i);
+          windowCells(i);
           buildCells(row, even);
+          addRow(parent, row);
         }
 
-        Element row = append("row", parent);
+        Element row = elem("row");
         rowAxisBuilder.buildRow(row, nr);
         Element cellElem = elem("cellspan");
         String v = null;
         try {
             v = resources.getString("table.cell.limit", 
                                    new Integer(cellCountLimit),
-                                   new Integer(nosColumns*nosRows)
+                                   new Integer(columnCount * result.getAxes()[1].getPositions().size())
                                    );
         } catch (MissingResourceException ex) {
             v = "Too many cells (cell limit:" + cellCountLimit + ")";
@@ -481,14 +848,17 @@ public class TableComponent extends ComponentSupport implements ModelChangeListe
         cellElem.setAttribute("value", v);
         cellElem.setAttribute("colspan", Integer.toString(nosColumns));
         row.appendChild(cellElem);
+        addRow(parent, row);
 
     } else {
 
         for (int i = 0; i < nosRows; i++) {
           boolean even = (i % 2 == 0);
-          Element row = append("row", parent);
+          Element row = elem("row");
           rowAxisBuilder.buildRow(row, i);
+          windowCells(i);
           buildCells(row, even);
+          addRow(parent, row);
         }
 
     }
@@ -498,6 +868,16 @@ public class TableComponent extends ComponentSupport implements ModelChangeListe
 
   /* ---------------------- common ------------------------------- */
 
+  /**
+   * appends a completely built row to parent or writes it to the SAX handler
+   */
+  private void addRow(Element parent, Element row) throws SAXException {
+    if (rowWriter == null)
+      parent.appendChild(row);
+    else
+      rowWriter.write(row);
+  }
+
   private void buildCells(Element row, boolean even) {
     final int N = columnAxisBuilder.getColumnCount();
     for (int i = 0; i < N; i++) {
@@ -595,10 +975,12 @@ public class TableComponent extends ComponentSupport implements ModelChangeListe
   }
 
   public void modelChanged(ModelChangeEvent e) {
+    queryCancelled = false;
     setDirty(true);
   }
 
   public void structureChanged(ModelChangeEvent e) {
+    queryCancelled = false;
     setDirty(true);
   }
 
@@ -721,6 +1103,28 @@ public class TableComponent extends ComponentSupport implements ModelChangeListe
     return result.getAxes()[0];
   }
 
+  /**
+   * the rows that are rendered, if the window is enabled
+   */
+  public TableWindow getRowWindow() {
+    return rowWindow;
+  }
+
+  /**
+   * the columns that are rendered, if the window is enabled
+   */
+  public TableWindow getColumnWindow() {
+    return columnWindow;
+  }
+
+  /**
+   * true if only a window of the rows or columns is rendered.
+   * Valid between startBuild() and stopBuild()
+   */
+  public boolean isWindowing() {
+    return windowing;
+  }
+
   /**
    * returns the property config object that allows
    * to adjust visible properties
@@ -0,0 +1,106 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ * 
+ */
+package com.tonbeller.jpivot.table;
+
+/**
+ * A range of positions of an axis, that is rendered instead of the whole axis.
+ * A size of 0 disables the window, i.e. all positions are rendered.
+ */
+public class TableWindow {
+  int start;
+  int size;
+  /** number of positions of the axis, set by clip() */
+  int total;
+
+  public TableWindow(int size) {
+    this.size = size;
+  }
+
+  /**
+   * adjusts the start to the number of positions of the axis
+   * @return the number of positions in the window
+   */
+  int clip(int total) {
+    this.total = total;
+    if (size <= 0 || size >= total) {
+      start = 0;
+      return total;
+    }
+    if (start >= total)
+      start = Math.max(0, total - size);
+    if (start < 0)
+      start = 0;
+    return Math.min(size, total - start);
+  }
+
+  /**
+   * true if the axis has more positions than the window
+   */
+  boolean isClipping() {
+    return size > 0 && size < total;
+  }
+
+  /**
+   * index of the first rendered position, 0 if the window does not clip the axis
+   */
+  int first() {
+    return isClipping() ? start : 0;
+  }
+
+  /**
+   * number of positions of the window, whose cells are held by the result.
+   * The cell limit keeps the cells of the first <code>kept</code> positions
+   * of the last axis only, the window may be moved beyond them.
+   * @param count number of positions in the window
+   * @param kept number of positions, whose cells were kept
+   */
+  int keptCount(int count, int kept) {
+    return Math.max(0, Math.min(count, kept - first()));
+  }
+
+  /**
+   * moves the window by <code>delta</code> positions, start and end of the axis
+   * are handled by the next clip()
+   */
+  void move(int delta) {
+    start += delta;
+  }
+
+  public int getStart() {
+    return start;
+  }
+
+  public void setStart(int start) {
+    this.start = start;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public void setSize(int size) {
+    this.size = size;
+  }
+
+  public boolean isEnabled() {
+    return size > 0;
+  }
+
+  /**
+   * number of positions of the axis, valid after clip()
+   */
+  public int getTotal() {
+    return total;
+  }
+
+}
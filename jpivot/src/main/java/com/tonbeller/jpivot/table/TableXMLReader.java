@@ -0,0 +1,123 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ * 
+ */
+package com.tonbeller.jpivot.table;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.LexicalHandler;
+
+import com.tonbeller.wcf.controller.RequestContext;
+
+/**
+ * An XMLReader that "parses" a table component, i.e. renders the table as SAX events.
+ * Use it with a SAXSource to transform the table without building the DOM of its rows:
+ * <pre>
+ * transformer.transform(new SAXSource(new TableXMLReader(table, context), new InputSource()), result);
+ * </pre>
+ * @see TableComponent#render(RequestContext, ContentHandler, LexicalHandler)
+ */
+public class TableXMLReader implements XMLReader {
+  private static final String LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler";
+
+  private TableComponent table;
+  private RequestContext context;
+
+  private ContentHandler contentHandler;
+  private LexicalHandler lexicalHandler;
+  private DTDHandler dtdHandler;
+  private EntityResolver entityResolver;
+  private ErrorHandler errorHandler;
+
+  public TableXMLReader(TableComponent table, RequestContext context) {
+    this.table = table;
+    this.context = context;
+  }
+
+  public void parse(InputSource input) throws SAXException {
+    try {
+      table.render(context, contentHandler, lexicalHandler);
+    } catch (SAXException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new SAXException(e);
+    }
+  }
+
+  public void parse(String systemId) throws SAXException {
+    parse(new InputSource(systemId));
+  }
+
+  public boolean getFeature(String name) throws SAXNotRecognizedException {
+    if ("http://xml.org/sax/features/namespaces".equals(name))
+      return true;
+    if ("http://xml.org/sax/features/namespace-prefixes".equals(name))
+      return false;
+    throw new SAXNotRecognizedException(name);
+  }
+
+  public void setFeature(String name, boolean value) {
+    // the events do not depend on features
+  }
+
+  public Object getProperty(String name) throws SAXNotRecognizedException {
+    if (LEXICAL_HANDLER.equals(name))
+      return lexicalHandler;
+    throw new SAXNotRecognizedException(name);
+  }
+
+  public void setProperty(String name, Object value) throws SAXNotRecognizedException {
+    if (LEXICAL_HANDLER.equals(name))
+      lexicalHandler = (LexicalHandler) value;
+    else
+      throw new SAXNotRecognizedException(name);
+  }
+
+  public ContentHandler getContentHandler() {
+    return contentHandler;
+  }
+
+  public void setContentHandler(ContentHandler handler) {
+    this.contentHandler = handler;
+  }
+
+  public DTDHandler getDTDHandler() {
+    return dtdHandler;
+  }
+
+  public void setDTDHandler(DTDHandler handler) {
+    this.dtdHandler = handler;
+  }
+
+  public EntityResolver getEntityResolver() {
+    return entityResolver;
+  }
+
+  public void setEntityResolver(EntityResolver resolver) {
+    this.entityResolver = resolver;
+  }
+
+  public ErrorHandler getErrorHandler() {
+    return errorHandler;
+  }
+
+  public void setErrorHandler(ErrorHandler handler) {
+    this.errorHandler = handler;
+  }
+
+}
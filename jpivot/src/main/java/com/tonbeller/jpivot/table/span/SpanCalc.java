@@ -12,11 +12,13 @@
  */
 package com.tonbeller.jpivot.table.span;
 
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.log4j.Logger;
 
 import com.tonbeller.jpivot.olap.model.Axis;
+import com.tonbeller.jpivot.olap.model.Displayable;
 import com.tonbeller.jpivot.olap.model.Member;
 import com.tonbeller.jpivot.olap.model.Position;
 
@@ -25,7 +27,11 @@ import com.tonbeller.jpivot.olap.model.Position;
  * positions and hierarchies. For a row-axis, the positions are the rows, the hierarchies
  * are the columns, for a column-axis its vice versa. 
  * <p>
- * The cells of the matrix are <code>Span</code> instances.
+ * The cells of the matrix are <code>Span</code> instances. When created from an axis,
+ * the matrix is packed: the members are taken from the positions and the computed
+ * spans are stored in int arrays. <code>getSpan</code> creates a <code>Span</code>
+ * on request then. The matrix is unpacked to <code>Span</code> instances
+ * when <code>getSpans</code> is called, e.g. to add property or header spans.
  * 
  * @author av
  */
@@ -33,14 +39,34 @@ public class SpanCalc {
   private static final Logger logger = Logger.getLogger(SpanCalc.class);
   
   int positionCount, hierarchyCount;
-  // index order is spans[positionIndex][hierarchyIndex]
+  // index order is spans[positionIndex][hierarchyIndex], null while packed
   Span[][] spans;
 
+  // the packed matrix of an axis, members[positionIndex][hierarchyIndex]
+  Axis axis;
+  Position[] positions;
+  Member[][] members;
+
+  // the computed spans, index is positionIndex * hierarchyCount + hierarchyIndex.
+  // A positionSpan of 0 denotes a span that is not significant.
+  int[] positionSpans;
+  int[] hierarchySpans;
+  int[] indents;
+
+  // passed to the SpanConfig while packed
+  private Span[] configSpans;
+
   // true when spans have been calculated
   boolean initialized = false;
 
   SpanConfig config = new NoSpanConfig();
 
+  // true when the indent of the member spans has been computed from the whole axis
+  boolean indentPreset = false;
+
+  // spans of the previous rendering that are reused for unchanged positions
+  SpanCalc previous;
+
   /**
    * creates an instance
    */
@@ -52,45 +78,133 @@ public class SpanCalc {
    * creates an instance from an axis
    */
   public SpanCalc(Axis axis) {
-    positionCount = axis.getPositions().size();
-    if (positionCount > 0)
-      hierarchyCount = ((Position) axis.getPositions().get(0)).getMembers().length;
-    else
-      hierarchyCount = 0;
+    pack(axis, 0, axis.getPositions().size());
     if (logger.isInfoEnabled())
       logger.info("creating SpanCalc, positionCount = " + positionCount + ", hierarchyCount = " + hierarchyCount);
-    spans = new Span[positionCount][];
-    for (int i = 0; i < positionCount; i++)
-      spans[i] = new Span[hierarchyCount];
+  }
 
-    Iterator it = axis.getPositions().iterator();
-    for (int posIndex = 0; posIndex < positionCount; posIndex++) {
-      Position p = (Position) it.next();
-      createSpansFromAxis(axis, p, posIndex, spans[posIndex]);
+  /**
+   * creates an instance for a window of an axis, that contains <code>count</code>
+   * positions starting at <code>first</code>. The spans are computed for the
+   * window only, so a span that begins before the window is cut at the first
+   * window position. The indent of the members is relative to the whole axis.
+   */
+  public SpanCalc(Axis axis, int first, int count) {
+    pack(axis, first, count);
+    if (logger.isInfoEnabled())
+      logger.info("creating SpanCalc, window = " + first + "+" + positionCount + " of "
+          + axis.getPositions().size() + ", hierarchyCount = " + hierarchyCount);
+
+    // minimal root distance per hierarchy index of the whole axis
+    int[] minRootDistance = new int[hierarchyCount];
+    Arrays.fill(minRootDistance, Integer.MAX_VALUE);
+    List list = axis.getPositions();
+    for (int pi = 0; pi < list.size(); pi++) {
+      Member[] m = ((Position) list.get(pi)).getMembers();
+      for (int hi = 0; hi < hierarchyCount; hi++)
+        minRootDistance[hi] = Math.min(minRootDistance[hi], m[hi].getRootDistance());
+    }
+
+    indents = new int[positionCount * hierarchyCount];
+    for (int pi = 0; pi < positionCount; pi++)
+      for (int hi = 0; hi < hierarchyCount; hi++)
+        indents[pi * hierarchyCount + hi] = members[pi][hi].getRootDistance() - minRootDistance[hi];
+    indentPreset = true;
+  }
+
+  private void pack(Axis axis, int first, int count) {
+    this.axis = axis;
+    List list = axis.getPositions();
+    positionCount = count;
+    positions = new Position[count];
+    members = new Member[count][];
+    for (int pi = 0; pi < count; pi++) {
+      positions[pi] = (Position) list.get(first + pi);
+      members[pi] = positions[pi].getMembers();
     }
+    hierarchyCount = count > 0 ? members[0].length : 0;
   }
 
-  void createSpansFromAxis(Axis axis, Position position, int posIndex, Span[] spans) {
-    if (logger.isDebugEnabled())
-      logger.debug("creating Span for position " + posIndex);
-    Member[] members = position.getMembers();
-    for (int hierIndex = 0; hierIndex < hierarchyCount; hierIndex++) {
-      Member member = members[hierIndex];
-      spans[hierIndex] = new Span(axis, position, member);
+  /**
+   * returns the object of the span at positionIndex, hierarchyIndex
+   */
+  Displayable getObject(int pi, int hi) {
+    if (spans != null)
+      return spans[pi][hi].getObject();
+    return members[pi][hi];
+  }
+
+  /**
+   * returns a span that is passed to the SpanConfig. While packed, one of two
+   * reused instances is returned, that contains axis, position, object and index only.
+   */
+  Span getConfigSpan(int pi, int hi, int which) {
+    if (spans != null)
+      return spans[pi][hi];
+    if (configSpans == null)
+      configSpans = new Span[] { new Span(axis, null, null), new Span(axis, null, null)};
+    Span span = configSpans[which];
+    span.position = positions[pi];
+    span.object = members[pi][hi];
+    span.positionIndex = pi;
+    span.hierarchyIndex = hi;
+    return span;
+  }
+
+  /**
+   * creates the span at positionIndex, hierarchyIndex from the packed matrix
+   */
+  Span createSpan(int pi, int hi) {
+    Span span = new Span(axis, positions[pi], members[pi][hi]);
+    storeSpan(span, pi, hi);
+    return span;
+  }
+
+  /**
+   * copies the computed values into <code>span</code>
+   */
+  void storeSpan(Span span, int pi, int hi) {
+    int i = pi * hierarchyCount + hi;
+    span.positionIndex = pi;
+    span.hierarchyIndex = hi;
+    if (initialized) {
+      span.positionSpan = positionSpans[i];
+      span.hierarchySpan = hierarchySpans[i];
+      span.significant = positionSpans[i] > 0;
     }
+    if (indents != null)
+      span.indent = indents[i];
   }
 
   void initialize() {
     if (!initialized) {
-      positionCount = spans.length;
-      if (positionCount > 0)
-        hierarchyCount = spans[0].length;
-      else
-        hierarchyCount = 0;
-      initSpans();
-      calcSpans();
+      if (spans != null) {
+        positionCount = spans.length;
+        if (positionCount > 0)
+          hierarchyCount = spans[0].length;
+        else
+          hierarchyCount = 0;
+      }
+      int size = positionCount * hierarchyCount;
+      if (positionSpans == null || positionSpans.length != size) {
+        positionSpans = new int[size];
+        hierarchySpans = new int[size];
+      }
+      if (indents == null || indents.length != size)
+        indents = new int[size];
+      if (!reuseSpans()) {
+        initSpans();
+        calcSpans();
+      }
       calcIndent();
       initialized = true;
+      // the previous spans are no longer needed
+      previous = null;
+      if (spans != null) {
+        for (int pi = 0; pi < positionCount; pi++)
+          for (int hi = 0; hi < hierarchyCount; hi++)
+            storeSpan(spans[pi][hi], pi, hi);
+      }
     }
   }
 
@@ -98,11 +212,12 @@ public class SpanCalc {
    * initializes the spans to 1 column and 1 row.
    */
   void initSpans() {
-    for (int posIndex = 0; posIndex < positionCount; posIndex++) {
-      for (int hierIndex = 0; hierIndex < hierarchyCount; hierIndex++) {
-        spans[posIndex][hierIndex].initialize(posIndex, hierIndex);
-      }
-    }
+    initSpans(0, positionCount);
+  }
+
+  void initSpans(int start, int end) {
+    Arrays.fill(positionSpans, start * hierarchyCount, end * hierarchyCount, 1);
+    Arrays.fill(hierarchySpans, start * hierarchyCount, end * hierarchyCount, 1);
   }
 
   /**
@@ -116,34 +231,45 @@ public class SpanCalc {
    */
   boolean[][] forcePositionBreak;
 
+  // the range of positions that calcSpans computes, forcePositionBreak is relative to startPosition
+  int startPosition, endPosition;
+
   void calcSpans() {
+    calcSpans(0, positionCount);
+  }
+
+  /**
+   * computes the spans of the positions from <code>start</code> (inclusive)
+   * to <code>end</code> (exclusive). No span will extend beyond <code>end</code>.
+   */
+  void calcSpans(int start, int end) {
     logger.info("calcSpans");
-    forcePositionBreak = new boolean[positionCount][hierarchyCount];
+    startPosition = start;
+    endPosition = end;
+    forcePositionBreak = new boolean[end - start][hierarchyCount];
 
     for (int hierIndex = 0; hierIndex < hierarchyCount; hierIndex++) {
-      for (int posIndex = 0; posIndex < positionCount; posIndex++) {
-        Span span = spans[posIndex][hierIndex];
-
+      for (int posIndex = start; posIndex < end; posIndex++) {
         // if the span is already part of another, continue
-        if (!span.isSignificant())
+        if (positionSpans[posIndex * hierarchyCount + hierIndex] == 0)
           continue;
 
-        int dir = config.chooseSpanDirection(span);
+        int dir = config.chooseSpanDirection(getConfigSpan(posIndex, hierIndex, 0));
 
         if (dir == SpanConfig.HIERARCHY_SPAN) {
-          makeHierSpan(span, 1);
-          addForcePositionBreak(span);
+          makeHierSpan(posIndex, hierIndex, 1);
+          addForcePositionBreak(posIndex, hierIndex);
         } else if (dir == SpanConfig.POSITION_SPAN) {
-          makePosSpan(span, 1);
-          addForcePositionBreak(span);
+          makePosSpan(posIndex, hierIndex, 1);
+          addForcePositionBreak(posIndex, hierIndex);
         } else if (dir == SpanConfig.HIERARCHY_THEN_POSITION_SPAN) {
-          int count = makeHierSpan(span, 1);
-          makePosSpan(span, count);
-          addForcePositionBreak(span);
+          int count = makeHierSpan(posIndex, hierIndex, 1);
+          makePosSpan(posIndex, hierIndex, count);
+          addForcePositionBreak(posIndex, hierIndex);
         } else if (dir == SpanConfig.POSITION_THEN_HIERARCHY_SPAN) {
-          int count = makePosSpan(span, 1);
-          makeHierSpan(span, count);
-          addForcePositionBreak(span);
+          int count = makePosSpan(posIndex, hierIndex, 1);
+          makeHierSpan(posIndex, hierIndex, count);
+          addForcePositionBreak(posIndex, hierIndex);
         }
 
         // else do nothing because spans are initialized to 1/1 row/col
@@ -152,27 +278,23 @@ public class SpanCalc {
   }
 
   /** returns the number of hierarchy spans created */
-  int makeHierSpan(Span span, int posSpans) {
+  int makeHierSpan(int pi, int hierIndex, int posSpans) {
     logger.debug("makeHierSpan");
-    int pi = span.positionIndex;
+    Span span = getConfigSpan(pi, hierIndex, 0);
+    int spanIndex = pi * hierarchyCount + hierIndex;
     int spanCount = 1;
-    loop : for (int hi = span.hierarchyIndex + 1; hi < hierarchyCount; hi++) {
+    loop : for (int hi = hierIndex + 1; hi < hierarchyCount; hi++) {
       // check if all positions at hierarchy hi level are equal
       boolean equal = true;
-      for (int i = 0; i < posSpans; i++) {
-        Span s = spans[pi + i][hi];
-        equal = equal && config.equals(span, s);
-      }
+      for (int i = 0; equal && i < posSpans; i++)
+        equal = config.equals(span, getConfigSpan(pi + i, hi, 1));
 
       // add another row of spans      
       if (equal) {
-        span.hierarchySpan += 1;
+        hierarchySpans[spanIndex] += 1;
         spanCount += 1;
-        for (int i = 0; i < posSpans; i++) {
-          Span s = spans[pi + i][hi];
-          s.significant = false;
-          s.hierarchySpan = s.positionSpan = 0;
-        }
+        for (int i = 0; i < posSpans; i++)
+          clear((pi + i) * hierarchyCount + hi);
       } else
         break loop;
     }
@@ -180,43 +302,153 @@ public class SpanCalc {
   }
 
   /** returns the number of position spans created */
-  int makePosSpan(Span span, int hierSpans) {
+  int makePosSpan(int posIndex, int hi, int hierSpans) {
     logger.debug("makePosSpan");
-    int hi = span.hierarchyIndex;
+    Span span = getConfigSpan(posIndex, hi, 0);
+    int spanIndex = posIndex * hierarchyCount + hi;
     int spanCount = 1;
-    loop : for (int pi = span.positionIndex + 1; pi < positionCount; pi++) {
+    loop : for (int pi = posIndex + 1; pi < endPosition; pi++) {
       // artificial break?
-      if (forcePositionBreak[pi][hi])
+      if (forcePositionBreak[pi - startPosition][hi])
         break loop;
 
       // check if all hierarchies at position pi are equal
       boolean equal = true;
-      for (int i = 0; i < hierSpans; i++) {
-        Span s = spans[pi][hi + i];
-        equal = equal && config.equals(span, s);
-      }
+      for (int i = 0; equal && i < hierSpans; i++)
+        equal = config.equals(span, getConfigSpan(pi, hi + i, 1));
 
       // add another row of spans      
       if (equal) {
-        span.positionSpan += 1;
+        positionSpans[spanIndex] += 1;
         spanCount += 1;
-        for (int i = 0; i < hierSpans; i++) {
-          Span s = spans[pi][hi + i];
-          s.significant = false;
-          s.hierarchySpan = s.positionSpan = 0;
-        }
+        for (int i = 0; i < hierSpans; i++)
+          clear(pi * hierarchyCount + hi + i);
       } else
         break loop;
     }
     return spanCount;
   }
 
-  void addForcePositionBreak(Span span) {
+  /** marks a span as part of another span */
+  private void clear(int i) {
+    positionSpans[i] = 0;
+    hierarchySpans[i] = 0;
+  }
+
+  void addForcePositionBreak(int posIndex, int hierIndex) {
     // spans[pi][hi] == last element of span
-    int pi = span.positionIndex + span.positionSpan;
-    int hi = span.hierarchyIndex + span.hierarchySpan;
-    for (; pi < positionCount && hi < hierarchyCount; hi++)
-      forcePositionBreak[pi][hi] = true;
+    int spanIndex = posIndex * hierarchyCount + hierIndex;
+    int pi = posIndex + positionSpans[spanIndex];
+    int hi = hierIndex + hierarchySpans[spanIndex];
+    for (; pi < endPosition && hi < hierarchyCount; hi++)
+      forcePositionBreak[pi - startPosition][hi] = true;
+  }
+
+  /* --------------------------------------------------------------------- */
+
+  /**
+   * reuses the spans of the previous rendering for the unchanged positions at the
+   * beginning and at the end of the axis, e.g. after a member has been expanded. Only the
+   * positions in between are computed again. The range is extended to the next
+   * positions where all spans break, so spans crossing the changed
+   * positions are computed correctly.
+   * 
+   * @return false if nothing could be reused and all spans have to be computed
+   */
+  boolean reuseSpans() {
+    if (previous == null || !previous.initialized || previous.indentPreset || indentPreset
+        || previous.hierarchyCount != hierarchyCount || hierarchyCount == 0)
+      return false;
+    int oldCount = previous.positionCount;
+
+    // number of unchanged positions at the beginning and at the end
+    int maxEqual = Math.min(positionCount, oldCount);
+    int head = 0;
+    while (head < maxEqual && sameObjects(head, head))
+      head += 1;
+    int tail = 0;
+    while (tail < maxEqual - head && sameObjects(positionCount - 1 - tail, oldCount - 1 - tail))
+      tail += 1;
+    if (head == 0 && tail == 0)
+      return false;
+
+    // the last break in front of the first changed position
+    int start = head - 1;
+    while (start > 0 && !previous.isBreak(start))
+      start -= 1;
+    if (start < 0)
+      start = 0;
+
+    // the first break behind the last changed position, both positions
+    // around the break must be unchanged
+    int delta = positionCount - oldCount;
+    int end = positionCount;
+    for (int pi = oldCount - tail + 1; pi < oldCount; pi++) {
+      if (previous.isBreak(pi)) {
+        end = pi + delta;
+        break;
+      }
+    }
+
+    if (logger.isInfoEnabled())
+      logger.info("reusing spans, computing positions " + start + " to " + end + " of "
+          + positionCount);
+
+    // the break must be found in the new spans too
+    if (end < positionCount) {
+      initSpans(start, end + 1);
+      calcSpans(start, end + 1);
+      if (!isBreak(end)) {
+        initSpans(start, positionCount);
+        calcSpans(start, positionCount);
+        end = positionCount;
+      }
+    } else {
+      initSpans(start, end);
+      calcSpans(start, end);
+    }
+
+    copySpans(0, 0, start);
+    copySpans(end - delta, end, positionCount - end);
+    return true;
+  }
+
+  /**
+   * true if all spans break in front of position <code>pi</code>, i.e. no span
+   * of the positions before continues at <code>pi</code>.
+   */
+  boolean isBreak(int pi) {
+    if (positionSpans[pi * hierarchyCount] == 0)
+      return false;
+    // the span of the first hierarchy that ends in front of pi
+    int prev = pi - 1;
+    while (prev > 0 && positionSpans[prev * hierarchyCount] == 0)
+      prev -= 1;
+    return config.chooseSpanDirection(getConfigSpan(prev, 0, 0)) != SpanConfig.NO_SPAN;
+  }
+
+  /**
+   * true if the objects of position <code>pi</code> equal the objects of position
+   * <code>oldPi</code> of the previous rendering
+   */
+  boolean sameObjects(int pi, int oldPi) {
+    for (int hi = 0; hi < hierarchyCount; hi++) {
+      Object o1 = getObject(pi, hi);
+      Object o2 = previous.getObject(oldPi, hi);
+      if (o1 == null ? o2 != null : !o1.equals(o2))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * copies the computed spans of <code>count</code> unchanged positions of the previous rendering
+   */
+  void copySpans(int oldPi, int pi, int count) {
+    System.arraycopy(previous.positionSpans, oldPi * hierarchyCount, positionSpans, pi
+        * hierarchyCount, count * hierarchyCount);
+    System.arraycopy(previous.hierarchySpans, oldPi * hierarchyCount, hierarchySpans, pi
+        * hierarchyCount, count * hierarchyCount);
   }
 
   /* --------------------------------------------------------------------- */
@@ -249,23 +481,22 @@ public class SpanCalc {
 
     Span[][] header = new Span[1][hierarchyCount];
 
-    header[0][0] = shf.create(spans[0][0]);
+    header[0][0] = shf.create(getSpan(0, 0));
 
     for (int hi = 1; hi < hierarchyCount; hi++) {
       int pi;
       inner : for (pi = 0; pi < positionCount; pi++) {
-        Span curSpan = spans[pi][hi];
-        Span prevSpan = spans[pi][hi - 1];
+        Span curSpan = getConfigSpan(pi, hi, 0);
+        Span prevSpan = getConfigSpan(pi, hi - 1, 1);
         if (!config.equals(prevSpan, curSpan)) {
-          prevSpan = curSpan;
-          header[0][hi] = shf.create(curSpan);
+          header[0][hi] = shf.create(getSpan(pi, hi));
           break inner;
         }
       }
       if (pi == positionCount) {
         // throw new IllegalArgumentException("no header found");
         // create a non-significant header
-        header[0][hi] = shf.create(spans[0][hi]);
+        header[0][hi] = shf.create(getSpan(0, hi));
       }
     }
 
@@ -276,6 +507,7 @@ public class SpanCalc {
 
   public void addHierarchyHeader(SpanHeaderFactory shf, boolean removeDuplicates) {
     logger.info("addHierarchyHeader");
+    getSpans();
     boolean[] keep = new boolean[hierarchyCount * 2];
     createHeaderSpans(shf, keep);
     int newHierarchyCount = 0;
@@ -347,7 +579,9 @@ public class SpanCalc {
   public Span getSpan(int positionIndex, int hierarchyIndex) {
     if (!initialized)
       initialize();
-    return spans[positionIndex][hierarchyIndex];
+    if (spans != null)
+      return spans[positionIndex][hierarchyIndex];
+    return createSpan(positionIndex, hierarchyIndex);
   }
 
   /**
@@ -378,6 +612,16 @@ public class SpanCalc {
     return config;
   }
 
+  /**
+   * the spans of <code>previous</code> will be reused for all positions
+   * that have not changed. Only positions that have been added or removed, e.g. by expanding
+   * or collapsing a member, and their neighbours are computed again.
+   */
+  public void setPrevious(SpanCalc previous) {
+    this.previous = previous;
+    initialized = false;
+  }
+
   /**
    * Sets the config.
    * @param config The config to set
@@ -389,8 +633,20 @@ public class SpanCalc {
 
   /**
    * returns a matrix of spans[positionIndex][hierarchyIndex] for faster access.
+   * A packed matrix is unpacked to Span instances.
    */
   public Span[][] getSpans() {
+    if (spans == null) {
+      logger.info("unpacking spans");
+      spans = new Span[positionCount][hierarchyCount];
+      for (int pi = 0; pi < positionCount; pi++)
+        for (int hi = 0; hi < hierarchyCount; hi++)
+          spans[pi][hi] = createSpan(pi, hi);
+      axis = null;
+      positions = null;
+      members = null;
+      configSpans = null;
+    }
     return spans;
   }
 
@@ -399,6 +655,10 @@ public class SpanCalc {
    */
   public void setSpans(Span[][] spans) {
     this.spans = spans;
+    axis = null;
+    positions = null;
+    members = null;
+    configSpans = null;
     initialized = false;
   }
 
@@ -409,12 +669,23 @@ public class SpanCalc {
     logger.info("calcIndent");
     for (int hi = 0; hi < hierarchyCount; hi++) {
 
+      if (indentPreset) {
+        // member spans have been initialized with the indent of the whole axis
+        for (int pi = 0; pi < positionCount; pi++) {
+          if (!(getObject(pi, hi) instanceof Member))
+            indents[pi * hierarchyCount + hi] = 0;
+          else if (spans != null)
+            indents[pi * hierarchyCount + hi] = spans[pi][hi].getIndent();
+        }
+        continue;
+      }
+
       // find minimal root distance for this hierIndex
       int minRootDistance = Integer.MAX_VALUE;
       for (int pi = 0; pi < positionCount; pi++) {
-        Span s = spans[pi][hi];
-        if (s.isMember()) {
-          Member m = s.getMember();
+        Object o = getObject(pi, hi);
+        if (o instanceof Member) {
+          Member m = (Member) o;
           if (m.getRootDistance() < minRootDistance)
             minRootDistance = m.getRootDistance();
         }
@@ -422,12 +693,11 @@ public class SpanCalc {
 
       // set the indent for this hierIndex
       for (int pi = 0; pi < positionCount; pi++) {
-        Span s = spans[pi][hi];
-        if (s.isMember()) {
-          Member m = s.getMember();
-          s.setIndent(m.getRootDistance() - minRootDistance);
-        } else
-          s.setIndent(0);
+        Object o = getObject(pi, hi);
+        if (o instanceof Member)
+          indents[pi * hierarchyCount + hi] = ((Member) o).getRootDistance() - minRootDistance;
+        else
+          indents[pi * hierarchyCount + hi] = 0;
       }
     }
   }
@@ -443,8 +713,8 @@ public class SpanCalc {
     if (above.getHierarchyCount() != below.getHierarchyCount())
       throw new IllegalArgumentException("sizes dont match");
     final int HI = above.getHierarchyCount();
-    Span[][] a = above.spans;
-    Span[][] b = below.spans;
+    Span[][] a = above.getSpans();
+    Span[][] b = below.getSpans();
     Span[][] s = new Span[a.length + b.length][];
     for (int pi = 0; pi < a.length; pi++) {
       s[pi] = new Span[HI];
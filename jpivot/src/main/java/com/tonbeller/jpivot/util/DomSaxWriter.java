@@ -0,0 +1,105 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ * 
+ */
+package com.tonbeller.jpivot.util;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * writes DOM nodes as SAX events. Allows to write a document in parts,
+ * e.g. to start an element, write its children one by one while they are
+ * created and end the element later.
+ */
+public class DomSaxWriter {
+  private static final char[] EMPTY = new char[0];
+
+  private ContentHandler handler;
+  private LexicalHandler lexicalHandler;
+
+  public DomSaxWriter(ContentHandler handler, LexicalHandler lexicalHandler) {
+    this.handler = handler;
+    this.lexicalHandler = lexicalHandler;
+  }
+
+  public void startDocument() throws SAXException {
+    handler.startDocument();
+  }
+
+  public void endDocument() throws SAXException {
+    handler.endDocument();
+  }
+
+  /**
+   * writes the start tag of <code>elem</code> including its attributes, but not its children
+   */
+  public void startElement(Element elem) throws SAXException {
+    AttributesImpl atts = new AttributesImpl();
+    NamedNodeMap map = elem.getAttributes();
+    for (int i = 0; i < map.getLength(); i++) {
+      Attr attr = (Attr) map.item(i);
+      atts.addAttribute("", attr.getName(), attr.getName(), "CDATA", attr.getValue());
+    }
+    handler.startElement("", elem.getNodeName(), elem.getNodeName(), atts);
+  }
+
+  public void endElement(Element elem) throws SAXException {
+    handler.endElement("", elem.getNodeName(), elem.getNodeName());
+  }
+
+  /**
+   * writes <code>node</code> and all of its children
+   */
+  public void write(Node node) throws SAXException {
+    switch (node.getNodeType()) {
+    case Node.DOCUMENT_NODE:
+    case Node.DOCUMENT_FRAGMENT_NODE:
+      writeChildren(node);
+      break;
+    case Node.ELEMENT_NODE:
+      startElement((Element) node);
+      writeChildren(node);
+      endElement((Element) node);
+      break;
+    case Node.TEXT_NODE:
+      characters(node.getNodeValue());
+      break;
+    case Node.CDATA_SECTION_NODE:
+      if (lexicalHandler != null)
+        lexicalHandler.startCDATA();
+      characters(node.getNodeValue());
+      if (lexicalHandler != null)
+        lexicalHandler.endCDATA();
+      break;
+    default:
+      // comments, processing instructions etc are not used by jpivot
+      break;
+    }
+  }
+
+  private void writeChildren(Node node) throws SAXException {
+    for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling())
+      write(child);
+  }
+
+  private void characters(String s) throws SAXException {
+    char[] ch = s == null ? EMPTY : s.toCharArray();
+    handler.characters(ch, 0, ch.length);
+  }
+
+}
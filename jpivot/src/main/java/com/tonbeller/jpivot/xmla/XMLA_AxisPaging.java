@@ -0,0 +1,134 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ *
+ */
+package com.tonbeller.jpivot.xmla;
+
+import java.util.List;
+import java.util.Map;
+
+import com.tonbeller.jpivot.olap.mdxparse.CompoundId;
+import com.tonbeller.jpivot.olap.mdxparse.Exp;
+import com.tonbeller.jpivot.olap.mdxparse.FunCall;
+import com.tonbeller.jpivot.olap.mdxparse.Literal;
+import com.tonbeller.jpivot.olap.mdxparse.MemberProperty;
+import com.tonbeller.jpivot.olap.mdxparse.ParsedQuery;
+import com.tonbeller.jpivot.olap.mdxparse.QueryAxis;
+import com.tonbeller.jpivot.olap.model.OlapException;
+import com.tonbeller.jpivot.olap.model.QueryResultHandler;
+import com.tonbeller.jpivot.olap.query.AxisPagingBase;
+
+/**
+ * Implementation of the AxisPaging Extension for XMLA.
+ * The rows are counted by a calculated measure <code>Count(rows)</code>,
+ * that is the only column of the count query. The count query is parsed
+ * by a handler, that keeps the value of the single cell only. The empty rows
+ * of a NON EMPTY axis are removed by
+ * <code>Filter(rows, Count(columns, EXCLUDEEMPTY) &gt; 0)</code>.
+ */
+public class XMLA_AxisPaging extends AxisPagingBase {
+
+  static final String[] COUNT_MEMBER = new String[] { "[Measures]", "[JPivot Row Count]"};
+
+  private ParsedQuery getParsedQuery() {
+    XMLA_Model model = (XMLA_Model) getModel();
+    return ((XMLA_QueryAdapter) model.getQueryAdapter()).getParsedQuery();
+  }
+
+  protected String getUnpagedQuery() {
+    return getParsedQuery().toMdx();
+  }
+
+  protected boolean isNonEmptyRows() {
+    return getParsedQuery().getAxes()[1].isNonEmpty();
+  }
+
+  protected int countRows(boolean nonEmpty) throws OlapException {
+    ParsedQuery countQuery = (ParsedQuery) getParsedQuery().clone();
+    Exp rows = getRows(countQuery, nonEmpty);
+    countQuery.addFormula(COUNT_MEMBER, new FunCall("Count", new Exp[] { rows},
+        FunCall.TypeFunction), new MemberProperty[0]);
+    CompoundId id = new CompoundId(COUNT_MEMBER[0]);
+    id.append(COUNT_MEMBER[1]);
+    Exp columns = new FunCall("{}", new Exp[] { id}, FunCall.TypeBraces);
+    countQuery.setAxes(new QueryAxis[] { new QueryAxis(false, columns, "COLUMNS")});
+
+    XMLA_Model model = (XMLA_Model) getModel();
+    CountHandler handler = new CountHandler();
+    model.getSoap().executeQuery(countQuery.toMdx(), model.getCatalog(), handler);
+    if (handler.value instanceof Number)
+      return ((Number) handler.value).intValue();
+    return (int) Double.parseDouble(String.valueOf(handler.value));
+  }
+
+  protected void addSubsetToRows(int start, int count, boolean nonEmpty) {
+    ParsedQuery query = getParsedQuery();
+    Exp rows = getRows(query, nonEmpty);
+    query.getAxes()[1].setExp(new FunCall("Subset", new Exp[] { rows,
+        Literal.create(new Integer(start)), Literal.create(new Integer(count))},
+        FunCall.TypeFunction));
+  }
+
+  /**
+   * @return the set of the row axis, without the rows whose cells are all empty
+   * if nonEmpty is true
+   */
+  private Exp getRows(ParsedQuery query, boolean nonEmpty) {
+    Exp rows = query.getAxes()[1].getExp();
+    if (!nonEmpty)
+      return rows;
+    Exp columns = (Exp) query.getAxes()[0].getExp().clone();
+    Exp nonEmptyColumns = new FunCall("Count", new Exp[] { columns,
+        Literal.createSymbol("EXCLUDEEMPTY")}, FunCall.TypeFunction);
+    Exp condition = new FunCall(">", new Exp[] { nonEmptyColumns, Literal.zero},
+        FunCall.TypeInfix);
+    return new FunCall("Filter", new Exp[] { rows, condition}, FunCall.TypeFunction);
+  }
+
+  /**
+   * keeps the value of the first cell
+   */
+  static class CountHandler implements QueryResultHandler {
+    Object value;
+
+    public void handleAxisInfo(String axisName, int axisNumber) {
+    }
+
+    public void handleHierInfo(String hierName, int axisNumber, int number) {
+    }
+
+    public void handleAxis(String axisName, int axisOrdinal) {
+    }
+
+    public void handleTuple(int axisOrdinal, int positionOrdinal) {
+    }
+
+    public void handleMember(String uniqueName, String caption, String levUName,
+        String displayInfo, Map otherProps, int axisOrdinal, int positionOrdinal,
+        int memberOrdinal) {
+    }
+
+    public void handleCellData() {
+    }
+
+    public void handleCell(int iOrdinal, Object value, String fmtValue, String fontSize) {
+      if (iOrdinal == 0)
+        this.value = value;
+    }
+
+    public void setDrillHeader(Map header) {
+    }
+
+    public void setDrillRows(List rows) {
+    }
+  }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ *
+ */
+package com.tonbeller.jpivot.xmla;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Application wide cache of Discover responses.
+ * <p>
+ * The raw response of a Discover request is kept and parsed again on a hit, so
+ * the cached data can not be changed by a session. The key consists of URI,
+ * user, HTTP headers (role), request type, restrictions and properties
+ * (DataSourceInfo, Catalog). The least recently used entry is evicted,
+ * if the cache is full, and entries expire after a time to live.
+ *
+ * @see #SIZE_PROP
+ * @see #TTL_PROP
+ */
+public class XMLA_DiscoverCache {
+
+  /**
+   * max number of cached responses, 0 disables the cache
+   */
+  public static final String SIZE_PROP = "com.tonbeller.jpivot.xmla.discover.cache.size";
+  public static final Integer SIZE_DEFAULT = new Integer(1000);
+
+  /**
+   * time to live of a cached response in seconds
+   */
+  public static final String TTL_PROP = "com.tonbeller.jpivot.xmla.discover.cache.ttl";
+  public static final Integer TTL_DEFAULT = new Integer(600);
+
+  static Logger logger = Logger.getLogger(XMLA_DiscoverCache.class);
+
+  private static XMLA_DiscoverCache instance = new XMLA_DiscoverCache(Integer.getInteger(
+      SIZE_PROP, SIZE_DEFAULT).intValue(), 1000L * Integer.getInteger(TTL_PROP, TTL_DEFAULT)
+      .intValue());
+
+  private int maxSize;
+  private long ttl;
+  private Map entries;
+  private long hits = 0;
+  private long misses = 0;
+
+  /**
+   * cached response
+   */
+  static class Response {
+    String uri;
+    byte[] body;
+    String contentType;
+    long created = System.currentTimeMillis();
+
+    Response(String uri, byte[] body, String contentType) {
+      this.uri = uri;
+      this.body = body;
+      this.contentType = contentType;
+    }
+  }
+
+  /**
+   * @return the cache shared by all sessions
+   */
+  public static XMLA_DiscoverCache instance() {
+    return instance;
+  }
+
+  XMLA_DiscoverCache(int maxSize, long ttl) {
+    this.maxSize = maxSize;
+    this.ttl = ttl;
+    this.entries = new LinkedHashMap(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry eldest) {
+        return size() > XMLA_DiscoverCache.this.maxSize;
+      }
+    };
+  }
+
+  public boolean isEnabled() {
+    return maxSize > 0;
+  }
+
+  /**
+   * create the key of a Discover request
+   */
+  static String createKey(String uri, String user, String[][] headers, String request,
+      Map restrictions, Map properties) {
+    StringBuffer sb = new StringBuffer();
+    sb.append(uri).append('\n').append(user).append('\n');
+    if (headers != null) {
+      for (int i = 0; i < headers.length; i++)
+        sb.append(headers[i][0]).append('=').append(headers[i][1]).append(';');
+    }
+    sb.append('\n').append(request).append('\n');
+    if (restrictions != null)
+      sb.append(new TreeMap(restrictions));
+    sb.append('\n');
+    if (properties != null)
+      sb.append(new TreeMap(properties));
+    return sb.toString();
+  }
+
+  synchronized Response get(String key) {
+    if (!isEnabled())
+      return null;
+    Response r = (Response) entries.get(key);
+    if (r != null && System.currentTimeMillis() - r.created > ttl) {
+      entries.remove(key);
+      r = null;
+    }
+    if (r == null)
+      ++misses;
+    else
+      ++hits;
+    return r;
+  }
+
+  synchronized void put(String key, Response response) {
+    if (isEnabled())
+      entries.put(key, response);
+  }
+
+  /**
+   * removes all cached responses, e.g. after the cubes have been changed
+   */
+  public synchronized void invalidate() {
+    logger.info("invalidating " + entries.size() + " Discover responses");
+    entries.clear();
+  }
+
+  /**
+   * removes all cached responses of an XMLA server
+   */
+  public synchronized void invalidate(String uri) {
+    for (Iterator it = entries.values().iterator(); it.hasNext();) {
+      Response r = (Response) it.next();
+      if (r.uri.equals(uri))
+        it.remove();
+    }
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized String toString() {
+    return "XMLA_DiscoverCache size=" + entries.size() + " maxSize=" + maxSize + " ttl=" + ttl
+        + " hits=" + hits + " misses=" + misses;
+  }
+
+} // XMLA_DiscoverCache
@@ -9,8 +9,7 @@ package com.tonbeller.jpivot.xmla;
 
 
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -21,14 +20,28 @@ import com.tonbeller.wcf.table.AbstractTableModel;
 import com.tonbeller.wcf.table.DefaultTableRow;
 import com.tonbeller.wcf.table.TableRow;
 import com.tonbeller.jpivot.olap.model.Axis;
+import com.tonbeller.jpivot.olap.navi.DrillThroughRows;
 import com.tonbeller.jpivot.olap.model.*;
 /**
  * A wcf table model for drill through data,
  * requires an sql query and connection information to be set.
+ * The table rows are created from the drill through result, when they are requested.
+ * <p>
+ * Unlike the Mondrian drill through, the rowset is not paged: the server sends
+ * all rows with one response and they are kept in memory. The number of rows
+ * is therefore bounded by DRILLTHROUGH MAXROWS, see {@link #MAX_ROWS_PROP}.
  */
 
-public class XMLA_DrillThroughTableModel extends AbstractTableModel {
+public class XMLA_DrillThroughTableModel extends AbstractTableModel implements DrillThroughRows {
 	private static Logger logger = Logger.getLogger(XMLA_DrillThroughTableModel.class);
+
+	/**
+	 * system property limiting the number of rows returned by the server (DRILLTHROUGH MAXROWS),
+	 * default {@link #MAX_ROWS_DEFAULT}, 0 = unlimited
+	 */
+	public static final String MAX_ROWS_PROP = "com.tonbeller.jpivot.xmla.drillthrough.maxrows";
+	public static final Integer MAX_ROWS_DEFAULT = new Integer(10000);
+
 	private String title = "Drill Through Table";
 	private String caption = "";
 	private String dataSourceName;
@@ -66,6 +79,8 @@ public class XMLA_DrillThroughTableModel extends AbstractTableModel {
 	
 	private TableRow[] rows = new TableRow[0];
 	private String [] columnTitles = new String[0];
+	private List dataRows;
+	private Map headerMap;
 
 	public XMLA_DrillThroughTableModel() {
 	}
@@ -74,13 +89,16 @@ public class XMLA_DrillThroughTableModel extends AbstractTableModel {
 		if ( !ready ) {
 			executeQuery();
 		}
-		return rows.length;
+		return dataRows != null ? dataRows.size() : rows.length;
 	}
 
 	public TableRow getRow(int rowIndex) {
 		if ( !ready ) {
 			executeQuery();
 		}
+		if (dataRows != null) {
+			return createRow((Map) dataRows.get(rowIndex));
+		}
 		return rows[rowIndex];
 	}
 
@@ -115,9 +133,14 @@ public class XMLA_DrillThroughTableModel extends AbstractTableModel {
 	}
 
 	// create a drillthrough MDX to query the cube with
-	private String buildDrillThroughMdx(XMLA_Result res) {
+	String buildDrillThroughMdx(XMLA_Result res) {
 		Axis[] axes = res.getAxes();
-		StringBuffer mdxBuf  = new StringBuffer(" Drillthrough Select ");
+		StringBuffer mdxBuf  = new StringBuffer(" Drillthrough ");
+		int maxRows = Integer.getInteger(MAX_ROWS_PROP, MAX_ROWS_DEFAULT).intValue();
+		if (maxRows > 0) {
+			mdxBuf.append("Maxrows ").append(maxRows).append(" ");
+		}
+		mdxBuf.append("Select ");
 		int nXPositions =  axes[0].getPositions().size();
 		int posIdx = 0;
 		for (int i = 0; i < axes.length; i++) {
@@ -219,28 +242,16 @@ public class XMLA_DrillThroughTableModel extends AbstractTableModel {
 		    columnTitles[((Integer)e.getValue()).intValue()] = e.getKey().toString();
 		}
 
-		// populate rows
-		List dataRows   = drillResult.getDrillRows();
-		List tempRows = new ArrayList();
-		Iterator dataRowIt = dataRows.iterator();
-		while (dataRowIt.hasNext()) {
-			Object[] row = new Object[numCols];
-			Map columnMap = (HashMap)dataRowIt.next();
-			Set columnSet = columnMap.entrySet();
-			Iterator colSetIt = columnSet.iterator();
-			while (colSetIt.hasNext()) {
-				Map.Entry e = (Map.Entry) colSetIt.next();
-			    String value = e.getValue().toString();
-			    String colName = e.getKey().toString();
-			    int colNo = ((Integer)headerMap.get(colName)).intValue();
-				row[colNo] = value;
-			}
-			tempRows.add(new DefaultTableRow(row));
-		}
-		rows = (TableRow[]) tempRows.toArray(new TableRow[0]);
+		// rows are created on demand
+		this.headerMap = headerMap;
+		dataRows = drillResult.getDrillRows();
+		int maxRows = Integer.getInteger(MAX_ROWS_PROP, MAX_ROWS_DEFAULT).intValue();
+		if (maxRows > 0 && dataRows != null && dataRows.size() >= maxRows)
+			logger.info("drill through rows limited to " + maxRows);
 		} catch (Exception e) {
 		e.printStackTrace();
 		logger.error("?", e);
+		dataRows = null;
 		rows = new TableRow[1];
 		columnTitles = new String[1];
 		columnTitles[0] = "An error occured";
@@ -257,6 +268,44 @@ public class XMLA_DrillThroughTableModel extends AbstractTableModel {
 	}
 	ready = true;
 	}
+
+	/**
+	 * writes the rows of the drill through result without creating table rows
+	 */
+	public void writeRows(RowWriter writer) throws Exception {
+		if ( !ready ) {
+			executeQuery();
+		}
+		writer.writeHeader(columnTitles);
+		if (dataRows == null) {
+			writer.writeRow(new Object[] { rows[0].getValue(0)});
+			return;
+		}
+		Object[] row = new Object[columnTitles.length];
+		for (Iterator it = dataRows.iterator(); it.hasNext();) {
+			Arrays.fill(row, null);
+			fillRow((Map) it.next(), row);
+			writer.writeRow(row);
+		}
+	}
+
+	private TableRow createRow(Map columnMap) {
+		Object[] row = new Object[columnTitles.length];
+		fillRow(columnMap, row);
+		return new DefaultTableRow(row);
+	}
+
+	private void fillRow(Map columnMap, Object[] row) {
+		Set columnSet = columnMap.entrySet();
+		Iterator colSetIt = columnSet.iterator();
+		while (colSetIt.hasNext()) {
+			Map.Entry e = (Map.Entry) colSetIt.next();
+		    String value = e.getValue().toString();
+		    String colName = e.getKey().toString();
+		    int colNo = ((Integer)headerMap.get(colName)).intValue();
+			row[colNo] = value;
+		}
+	}
 	
 	/**
 	 * @return
@@ -0,0 +1,490 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ *
+ */
+package com.tonbeller.jpivot.xmla;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.log4j.Logger;
+
+import com.tonbeller.jpivot.olap.model.OlapException;
+import com.tonbeller.jpivot.olap.model.QueryResultHandler;
+
+/**
+ * Streaming parser for multidimensional XMLA ExecuteResponse messages.
+ * <p>
+ * Pulls the AxesInfo, Axes and CellData events directly from the
+ * response stream and feeds them into a QueryResultHandler,
+ * the same way XMLA_SOAP does for the SAAJ DOM. The reply is never
+ * held in memory as a whole, so memory consumption is proportional
+ * to the result and not to the size of the XML text.
+ * <p>
+ * The cell and byte limits are checked while the response arrives.
+ * If a slice of the last axis exceeds the cell limit or the response exceeds
+ * the byte limit, parsing is aborted with an OlapException. If the result exceeds
+ * the cell limit, parsing stops after the cells of the slices that are kept,
+ * see {@link #isTruncated()}.
+ */
+class XMLA_ExecuteParser {
+
+  static Logger logger = Logger.getLogger(XMLA_ExecuteParser.class);
+
+  private static final XMLInputFactory inputFactory = createInputFactory();
+
+  private final QueryResultHandler handler;
+
+  private final int cellLimit;
+  private final long byteLimit;
+
+  private boolean rootFound = false;
+  private boolean cellDataFound = false;
+  private boolean truncated = false;
+
+  private CountingInputStream counter = null;
+  private int nAxes = 0;
+  private int[] axisSizes = new int[0];
+
+  /**
+   * c'tor, the limits are read from the system properties
+   * @param handler receives the callbacks
+   */
+  XMLA_ExecuteParser(QueryResultHandler handler) {
+    this(handler, Integer.getInteger(XMLA_Model.CELL_LIMIT_PROP, 0).intValue(), Long.getLong(
+        XMLA_Model.BYTE_LIMIT_PROP, 0).longValue());
+  }
+
+  /**
+   * c'tor
+   * @param handler receives the callbacks
+   * @param cellLimit max number of cells, 0 = no limit
+   * @param byteLimit max size of the response, 0 = no limit
+   */
+  XMLA_ExecuteParser(QueryResultHandler handler, int cellLimit, long byteLimit) {
+    this.handler = handler;
+    this.cellLimit = cellLimit;
+    this.byteLimit = byteLimit;
+  }
+
+  /**
+   * @return true, if parsing stopped before the end of the response,
+   * because the remaining cells exceed the cell limit
+   */
+  boolean isTruncated() {
+    return truncated;
+  }
+
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    return factory;
+  }
+
+  /**
+   * parse the SOAP reply
+   * @param in the response stream, not closed by this method
+   * @throws OlapException on SOAP Fault or malformed response
+   */
+  void parse(InputStream in) throws OlapException {
+    XMLStreamReader reader = null;
+    if (byteLimit > 0) {
+      counter = new CountingInputStream(in);
+      in = counter;
+    }
+    try {
+      reader = inputFactory.createXMLStreamReader(in);
+      while (!truncated && reader.hasNext()) {
+        if (reader.next() != XMLStreamConstants.START_ELEMENT)
+          continue;
+        String lname = reader.getLocalName();
+        if (lname.equals("Fault"))
+          handleFault(reader);
+        else if (lname.equals("root")) {
+          rootFound = true;
+          parseRoot(reader);
+        }
+      }
+      if (!rootFound)
+        throw new OlapException("Excecute result has no root element");
+    } catch (XMLStreamException e) {
+      throw new OlapException(e);
+    } finally {
+      if (reader != null)
+        try {
+          reader.close();
+        } catch (XMLStreamException e) {
+          // log and ignore
+          logger.error("?", e);
+        }
+    }
+  }
+
+  /**
+   * process the children of &lt;root&gt;
+   */
+  private void parseRoot(XMLStreamReader reader) throws XMLStreamException, OlapException {
+    RootLoop: while (nextChild(reader)) {
+      String lname = reader.getLocalName();
+      if (lname.equals("OlapInfo"))
+        parseOlapInfo(reader);
+      else if (lname.equals("Axes"))
+        parseAxes(reader);
+      else if (lname.equals("CellData")) {
+        parseCellData(reader);
+        if (truncated)
+          return;
+      } else
+        skipElement(reader);
+    } // RootLoop
+    if (!cellDataFound) {
+      // no cells at all, let the handler create the empty cells anyway
+      handler.handleCellData();
+    }
+  }
+
+  /**
+   * determine axes from &lt;OlapInfo&gt;&lt;AxesInfo&gt;&lt;AxisInfo&gt;
+   */
+  private void parseOlapInfo(XMLStreamReader reader) throws XMLStreamException {
+    while (nextChild(reader)) {
+      if (!reader.getLocalName().equals("AxesInfo")) {
+        skipElement(reader);
+        continue;
+      }
+      int iOrdinal = 0;
+      AxisInfoLoop: while (nextChild(reader)) {
+        if (!reader.getLocalName().equals("AxisInfo")) {
+          skipElement(reader);
+          continue AxisInfoLoop;
+        }
+        String axisName = reader.getAttributeValue(null, "name");
+        int axisOrdinal;
+        if ("SlicerAxis".equals(axisName))
+          axisOrdinal = -1;
+        else
+          axisOrdinal = iOrdinal++;
+        nAxes = iOrdinal;
+
+        handler.handleAxisInfo(axisName, axisOrdinal);
+
+        // retrieve the hierarchies by <HierarchyInfo>
+        int hierNumber = 0;
+        HierInfoLoop: while (nextChild(reader)) {
+          if (reader.getLocalName().equals("HierarchyInfo")) {
+            String hierName = reader.getAttributeValue(null, "name");
+            handler.handleHierInfo(hierName, axisOrdinal, hierNumber++);
+          }
+          skipElement(reader);
+        } // HierInfoLoop
+      } // AxisInfoLoop
+    }
+  }
+
+  /**
+   * for each axis, get the positions (tuples)
+   */
+  private void parseAxes(XMLStreamReader reader) throws XMLStreamException, OlapException {
+    int iOrdinal = 0;
+    axisSizes = new int[nAxes];
+    AxisLoop: while (nextChild(reader)) {
+      if (!reader.getLocalName().equals("Axis")) {
+        skipElement(reader);
+        continue AxisLoop;
+      }
+      String axisName = reader.getAttributeValue(null, "name");
+      int axisOrdinal;
+      if ("SlicerAxis".equals(axisName))
+        axisOrdinal = -1;
+      else
+        axisOrdinal = iOrdinal++;
+
+      handler.handleAxis(axisName, axisOrdinal);
+
+      while (nextChild(reader)) {
+        if (reader.getLocalName().equals("Tuples"))
+          parseTuples(reader, axisOrdinal);
+        else
+          skipElement(reader);
+      }
+    } // AxisLoop
+  }
+
+  private void parseTuples(XMLStreamReader reader, int axisOrdinal) throws XMLStreamException,
+      OlapException {
+    // cells of a slice of the last axis, the slice grows with the axis
+    long sliceSize = 1;
+    boolean sliceAxis = axisOrdinal >= 0 && axisOrdinal < nAxes - 1;
+    for (int i = 0; sliceAxis && i < axisOrdinal; i++)
+      sliceSize *= axisSizes[i];
+    int positionOrdinal = 0;
+    TupleLoop: while (nextChild(reader)) {
+      if (!reader.getLocalName().equals("Tuple")) {
+        skipElement(reader);
+        continue TupleLoop;
+      }
+      handler.handleTuple(axisOrdinal, positionOrdinal);
+
+      int index = 0;
+      MemberLoop: while (nextChild(reader)) {
+        if (!reader.getLocalName().equals("Member")) {
+          skipElement(reader);
+          continue MemberLoop;
+        }
+        String uName = null;
+        String caption = null;
+        String levUname = null;
+        String displayInfo = null;
+        Map otherProps = new HashMap();
+        InnerLoop: while (nextChild(reader)) {
+          String enam = reader.getLocalName();
+          String value = readText(reader);
+          if (enam.equals("UName"))
+            uName = value;
+          else if (enam.equals("Caption"))
+            caption = value;
+          else if (enam.equals("LName"))
+            levUname = value;
+          else if (enam.equals("DisplayInfo"))
+            displayInfo = value;
+          else
+            otherProps.put(enam, value);
+        } // InnerLoop
+        handler.handleMember(uName, caption, levUname, displayInfo, otherProps, axisOrdinal,
+            positionOrdinal, index);
+        ++index;
+      } // MemberLoop
+
+      ++positionOrdinal;
+      checkBytes();
+      if (sliceAxis && cellLimit > 0 && sliceSize * positionOrdinal > cellLimit)
+        throw new OlapException("Can not display a single slice, exceeded cell limit("
+            + cellLimit + ")");
+    } // TupleLoop
+    if (axisOrdinal >= 0 && axisOrdinal < axisSizes.length)
+      axisSizes[axisOrdinal] = positionOrdinal;
+  }
+
+  /**
+   * loop over cells in result set
+   */
+  private void parseCellData(XMLStreamReader reader) throws XMLStreamException, OlapException {
+    cellDataFound = true;
+    handler.handleCellData(); // start cell loop
+    long nCells = 1;
+    for (int i = 0; i < axisSizes.length; i++)
+      nCells *= axisSizes[i];
+    long sliceSize = axisSizes.length == 0 ? 1 : nCells / Math.max(1,
+        axisSizes[axisSizes.length - 1]);
+    long maxCells = XMLA_Result.limitCells(nCells, sliceSize, cellLimit);
+    CellLoop: while (nextChild(reader)) {
+      if (!reader.getLocalName().equals("Cell")) {
+        skipElement(reader);
+        continue CellLoop;
+      }
+      String cellOrdinal = reader.getAttributeValue(null, "CellOrdinal");
+      if (cellOrdinal == null)
+        throw new OlapException("Excecute result has Cell without CellOrdinal");
+      int ordinal = Integer.parseInt(cellOrdinal);
+      if (ordinal >= maxCells) {
+        // the cells are ordered, the remaining ones are not needed
+        if (logger.isInfoEnabled())
+          logger.info("cell limit " + cellLimit + " exceeded, reading " + maxCells + " of "
+              + nCells + " cells");
+        truncated = true;
+        return;
+      }
+      checkBytes();
+      Object value = null;
+      String fmtValue = "";
+      String fontSize = null;
+      while (nextChild(reader)) {
+        String lname = reader.getLocalName();
+        if (lname.equals("Value")) {
+          String type = reader.getAttributeValue(XMLA_SOAP.XSI_URI, "type");
+          value = convertValue(type, readText(reader));
+        } else if (lname.equals("FmtValue")) {
+          fmtValue = readText(reader);
+          if (fmtValue == null)
+            fmtValue = "";
+        } else if (lname.equals("FontSize")) {
+          fontSize = readText(reader);
+        } else
+          skipElement(reader);
+      }
+      handler.handleCell(ordinal, value, fmtValue, fontSize);
+    } // CellLoop
+  }
+
+  /**
+   * @throws OlapException if more bytes than the byte limit were received
+   */
+  private void checkBytes() throws OlapException {
+    if (counter != null && counter.count > byteLimit)
+      throw new OlapException("Execute response exceeded byte limit(" + byteLimit + ")");
+  }
+
+  /**
+   * counts the bytes of the response
+   */
+  static class CountingInputStream extends FilterInputStream {
+    long count = 0;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0)
+        ++count;
+      return b;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0)
+        count += n;
+      return n;
+    }
+
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count += skipped;
+      return skipped;
+    }
+  }
+
+  /**
+   * convert the text of a &lt;Value&gt; according to its xsi:type
+   */
+  static Object convertValue(String type, String text) {
+    if (text == null)
+      return null;
+    if ("xsd:int".equals(type)) {
+      return new Long(text);
+    } else if ("xsd:double".equals(type)) {
+      return new Double(text);
+    } else if ("xsd:decimal".equals(type)) {
+      return new Double(text);
+    }
+    return text;
+  }
+
+  /**
+   * collect &lt;Fault&gt; information and throw
+   */
+  private void handleFault(XMLStreamReader reader) throws XMLStreamException, OlapException {
+    String faultCode = null;
+    String faultString = null;
+    String faultActor = null;
+    StringBuffer detailMsg = null;
+    while (nextChild(reader)) {
+      String lname = reader.getLocalName();
+      if (lname.equals("faultcode"))
+        faultCode = readText(reader);
+      else if (lname.equals("faultstring"))
+        faultString = readText(reader);
+      else if (lname.equals("faultactor"))
+        faultActor = readText(reader);
+      else if (lname.equals("detail")) {
+        detailMsg = new StringBuffer();
+        while (nextChild(reader)) {
+          for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (detailMsg.length() > 0)
+              detailMsg.append("; ");
+            detailMsg.append(reader.getAttributeLocalName(i));
+            detailMsg.append(" = ");
+            detailMsg.append(reader.getAttributeValue(i));
+          }
+          skipElement(reader);
+        }
+      } else
+        skipElement(reader);
+    }
+    String msg = "Soap Fault code=" + faultCode + " fault string=" + faultString
+        + " fault actor=" + faultActor;
+    if (detailMsg != null)
+      msg += "\ndetail:" + detailMsg;
+    throw new OlapException(msg);
+  }
+
+  /**
+   * advance to the next child element of the current element.
+   * @return false, if the end of the current element was reached
+   */
+  private static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT)
+        return true;
+      if (event == XMLStreamConstants.END_ELEMENT)
+        return false;
+    }
+    return false;
+  }
+
+  /**
+   * skip the current element including all of its children
+   */
+  private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0 && reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT)
+        ++depth;
+      else if (event == XMLStreamConstants.END_ELEMENT)
+        --depth;
+    }
+  }
+
+  /**
+   * read the text content of the current element, nested elements are skipped.
+   * @return the text or null, if the element has no text
+   */
+  private static String readText(XMLStreamReader reader) throws XMLStreamException {
+    StringBuffer sb = null;
+    int depth = 1;
+    while (depth > 0 && reader.hasNext()) {
+      int event = reader.next();
+      switch (event) {
+      case XMLStreamConstants.START_ELEMENT:
+        ++depth;
+        break;
+      case XMLStreamConstants.END_ELEMENT:
+        --depth;
+        break;
+      case XMLStreamConstants.CHARACTERS:
+      case XMLStreamConstants.CDATA:
+      case XMLStreamConstants.SPACE:
+        if (depth == 1) {
+          if (sb == null)
+            sb = new StringBuffer();
+          sb.append(reader.getText());
+        }
+        break;
+      }
+    }
+    return sb == null ? null : sb.toString();
+  }
+
+} // End XMLA_ExecuteParser
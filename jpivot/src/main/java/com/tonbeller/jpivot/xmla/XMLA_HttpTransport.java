@@ -0,0 +1,190 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ *
+ */
+package com.tonbeller.jpivot.xmla;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.xml.soap.MimeHeader;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Default transport, based on HttpURLConnection.
+ * <p>
+ * The connections are kept alive and pooled by the JDK, the pool size per
+ * server is set with the system property <code>http.maxConnections</code>.
+ * A connection is returned to the pool only, if the response has been
+ * read completely, so close() consumes the rest of the response.
+ * Compressed responses (gzip, deflate) are requested and decoded.
+ *
+ * @see #CONNECT_TIMEOUT_PROP
+ * @see #READ_TIMEOUT_PROP
+ * @see #COMPRESSION_PROP
+ */
+public class XMLA_HttpTransport implements XMLA_Transport {
+
+  /**
+   * connect timeout in milliseconds, 0 = infinite
+   */
+  public static final String CONNECT_TIMEOUT_PROP = "com.tonbeller.jpivot.xmla.connect.timeout";
+  public static final Integer CONNECT_TIMEOUT_DEFAULT = new Integer(30000);
+
+  /**
+   * read timeout in milliseconds, 0 = infinite (default). This is the max time
+   * the server may need to answer, so it limits the query execution time.
+   */
+  public static final String READ_TIMEOUT_PROP = "com.tonbeller.jpivot.xmla.read.timeout";
+  public static final Integer READ_TIMEOUT_DEFAULT = new Integer(0);
+
+  /**
+   * if "false", no compressed responses are requested
+   */
+  public static final String COMPRESSION_PROP = "com.tonbeller.jpivot.xmla.compression";
+
+  static Logger logger = Logger.getLogger(XMLA_HttpTransport.class);
+
+  private URL url;
+  private int connectTimeout;
+  private int readTimeout;
+  private boolean compression;
+
+  public XMLA_HttpTransport(String uri) throws IOException {
+    this.url = new URL(uri);
+    this.connectTimeout = Integer.getInteger(CONNECT_TIMEOUT_PROP, CONNECT_TIMEOUT_DEFAULT)
+        .intValue();
+    this.readTimeout = Integer.getInteger(READ_TIMEOUT_PROP, READ_TIMEOUT_DEFAULT).intValue();
+    this.compression = !"false".equalsIgnoreCase(System.getProperty(COMPRESSION_PROP));
+  }
+
+  public Exchange open(String user, String password) throws IOException {
+    HttpURLConnection con = (HttpURLConnection) url.openConnection();
+    con.setConnectTimeout(connectTimeout);
+    con.setReadTimeout(readTimeout);
+    con.setRequestMethod("POST");
+    con.setDoOutput(true);
+    con.setUseCaches(false);
+    con.setRequestProperty("Connection", "keep-alive");
+    if (compression)
+      con.setRequestProperty("Accept-Encoding", "gzip, deflate");
+    if (user != null && user.length() > 0) {
+      String auth = user + ":" + (password != null ? password : "");
+      con.setRequestProperty("Authorization", "Basic " + base64(auth.getBytes("UTF-8")));
+    }
+    return new HttpExchange(con);
+  }
+
+  static class HttpExchange implements Exchange {
+    private HttpURLConnection con;
+    private InputStream in = null;
+    private boolean aborted = false;
+
+    HttpExchange(HttpURLConnection con) {
+      this.con = con;
+    }
+
+    public int send(SOAPMessage msg) throws IOException, SOAPException {
+      Iterator it = msg.getMimeHeaders().getAllHeaders();
+      while (it.hasNext()) {
+        MimeHeader mh = (MimeHeader) it.next();
+        con.setRequestProperty(mh.getName(), mh.getValue());
+      }
+      OutputStream out = con.getOutputStream();
+      try {
+        msg.writeTo(out);
+      } finally {
+        out.close();
+      }
+      return con.getResponseCode();
+    }
+
+    public String getContentType() {
+      return con.getContentType();
+    }
+
+    public InputStream getInputStream() throws IOException {
+      if (in != null)
+        return in;
+      InputStream raw;
+      // a SOAP Fault comes with HTTP status 500
+      if (con.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST)
+        raw = con.getErrorStream();
+      else
+        raw = con.getInputStream();
+      if (raw == null)
+        return null;
+      String encoding = con.getContentEncoding();
+      if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding))
+        raw = new GZIPInputStream(raw);
+      else if ("deflate".equalsIgnoreCase(encoding))
+        raw = new InflaterInputStream(raw, new Inflater());
+      in = new BufferedInputStream(raw);
+      return in;
+    }
+
+    public void abort() {
+      aborted = true;
+      con.disconnect();
+    }
+
+    public void close() {
+      if (aborted)
+        return;
+      try {
+        InputStream is = getInputStream();
+        if (is != null) {
+          // consume the rest, so the connection can be reused
+          byte[] buf = new byte[4096];
+          while (is.read(buf) >= 0)
+            ;
+          is.close();
+        }
+      } catch (IOException e) {
+        // connection will not be reused
+        logger.debug("could not consume response", e);
+        con.disconnect();
+      }
+    }
+  }
+
+  private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+      .toCharArray();
+
+  /**
+   * base64 encoding for the basic authorization header
+   */
+  static String base64(byte[] bytes) {
+    StringBuffer sb = new StringBuffer((bytes.length + 2) / 3 * 4);
+    for (int i = 0; i < bytes.length; i += 3) {
+      int b0 = bytes[i] & 0xff;
+      int b1 = i + 1 < bytes.length ? bytes[i + 1] & 0xff : 0;
+      int b2 = i + 2 < bytes.length ? bytes[i + 2] & 0xff : 0;
+      sb.append(BASE64[b0 >> 2]);
+      sb.append(BASE64[((b0 & 0x03) << 4) | (b1 >> 4)]);
+      sb.append(i + 1 < bytes.length ? BASE64[((b1 & 0x0f) << 2) | (b2 >> 6)] : '=');
+      sb.append(i + 2 < bytes.length ? BASE64[b2 & 0x3f] : '=');
+    }
+    return sb.toString();
+  }
+
+} // XMLA_HttpTransport
@@ -14,9 +14,10 @@ package com.tonbeller.jpivot.xmla;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
@@ -31,6 +32,7 @@ import com.tonbeller.jpivot.olap.navi.MemberTree;
 import com.tonbeller.jpivot.util.StringUtil;
 import com.tonbeller.jpivot.olap.model.Position;
 import com.tonbeller.jpivot.olap.model.Result;
+import com.tonbeller.jpivot.olap.query.OccurrenceOrder;
 import com.tonbeller.jpivot.olap.query.Quax;
 import com.tonbeller.jpivot.olap.model.Axis;
 
@@ -68,7 +70,8 @@ public class XMLA_MemberTree extends ExtensionSupport implements MemberTree {
       return null; // should not occur
 
     
-    final List visibleRootMembers = new ArrayList();
+    // visible root members by first occurrence in result
+    OccurrenceOrder visibleRootMembers = new OccurrenceOrder();
     final List invisibleRootMembers = new ArrayList();
     
     Member[] rootMembers = new Member[0];
@@ -120,6 +123,9 @@ public class XMLA_MemberTree extends ExtensionSupport implements MemberTree {
               iAx = (iAx + 1) % 2;
             Axis axis = res.getAxes()[iAx];
             List positions = axis.getPositions();
+            prefetch(model, positions, iDim);
+            Set known = new HashSet(Arrays.asList(rootMembers));
+            known.addAll(aCalcMem);
             
             for (Iterator iter = positions.iterator(); iter.hasNext();) {
               Position pos = (Position) iter.next();
@@ -127,18 +133,10 @@ public class XMLA_MemberTree extends ExtensionSupport implements MemberTree {
               XMLA_Member mem = (XMLA_Member) posMembers[iDim];
               if (!(getParent(mem) == null))
                 continue; // ignore, not root
-              if (!visibleRootMembers.contains(mem))
-                visibleRootMembers.add(mem);
+              visibleRootMembers.add(mem);
               
               // Check if the result axis contains invisible members
-              boolean containsMember = false;
-              for (int i = 0; i < rootMembers.length; i++) {
-                  if (rootMembers[i].equals(mem)) {
-                      containsMember = true;
-                      break;
-                  }
-              }
-              if (!containsMember && !aCalcMem.contains(mem) && !invisibleRootMembers.contains(mem)) {
+              if (known.add(mem)) {
                   invisibleRootMembers.add(mem);
               }                      
             }
@@ -160,25 +158,39 @@ public class XMLA_MemberTree extends ExtensionSupport implements MemberTree {
     }        
   
     // If there is no query result, do not sort
-    if (visibleRootMembers.size() != 0) {
-        Arrays.sort(members, new Comparator() {
-          public int compare(Object arg0, Object arg1) {
-            Member m1 = (Member) arg0;
-            Member m2 = (Member) arg1;
-            int index1 = visibleRootMembers.indexOf(m1);
-            int index2 = visibleRootMembers.indexOf(m2);
-            if (index2 == -1)
-              return -1; // m2 is higher, unvisible to the end
-            if (index1 == -1)
-              return 1; // m1 is higher, unvisible to the end
-            return index1 - index2;
-          }
-        });
-    }
+    if (!visibleRootMembers.isEmpty())
+      visibleRootMembers.sort(members);
 
     return members;
   }
 
+  /**
+   * retrieves the parents of the axis members and the children of these
+   * parents in bulk, they are needed to display the tree
+   */
+  private void prefetch(XMLA_Model model, List positions, int iDim) {
+    if (!XMLA_Model.isPrefetch())
+      return;
+    List members = new ArrayList();
+    for (Iterator iter = positions.iterator(); iter.hasNext();) {
+      Position pos = (Position) iter.next();
+      members.add(pos.getMembers()[iDim]);
+    }
+    try {
+      model.prefetchMemberParents(members);
+      List parents = new ArrayList();
+      for (Iterator iter = members.iterator(); iter.hasNext();) {
+        XMLA_Member mem = (XMLA_Member) iter.next();
+        if (mem.isParentOk() && mem.getParent() != null)
+          parents.add(mem.getParent());
+      }
+      model.prefetchMemberChildren(parents);
+    } catch (OlapException e) {
+      // members will be retrieved one by one
+      logger.warn("prefetch failed", e);
+    }
+  }
+
   /**
    * @return true if the member has children
    */
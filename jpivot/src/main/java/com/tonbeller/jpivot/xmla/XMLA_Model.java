@@ -39,6 +39,8 @@ import com.tonbeller.jpivot.olap.mdxparse.Lexer;
 import com.tonbeller.jpivot.olap.mdxparse.Literal;
 import com.tonbeller.jpivot.olap.mdxparse.ParsedQuery;
 import com.tonbeller.jpivot.olap.mdxparse.parser;
+import com.tonbeller.jpivot.olap.model.Axis;
+import com.tonbeller.jpivot.olap.model.Cancelable;
 import com.tonbeller.jpivot.olap.model.Dimension;
 import com.tonbeller.jpivot.olap.model.Hierarchy;
 import com.tonbeller.jpivot.olap.model.Level;
@@ -47,6 +49,7 @@ import com.tonbeller.jpivot.olap.model.OlapDiscoverer;
 import com.tonbeller.jpivot.olap.model.OlapException;
 import com.tonbeller.jpivot.olap.model.OlapItem;
 import com.tonbeller.jpivot.olap.model.OlapModel;
+import com.tonbeller.jpivot.olap.model.Position;
 import com.tonbeller.jpivot.olap.model.Result;
 import com.tonbeller.jpivot.olap.navi.SortRank;
 import com.tonbeller.jpivot.olap.query.ExpBean;
@@ -59,10 +62,38 @@ import com.tonbeller.jpivot.util.TreeNode;
 /**
  * Model for XMLA
  */
-public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.QueryAdapterHolder {
+public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.QueryAdapterHolder,
+    Cancelable {
 
   static Logger logger = Logger.getLogger(XMLA_Model.class);
 
+  /**
+   * system property, if true the parents of the axis members are retrieved in bulk
+   * after a query has been executed, and the member tree retrieves the children
+   * of these parents in bulk. Default false.
+   */
+  public static final String PREFETCH_PROP = "com.tonbeller.jpivot.xmla.prefetch";
+
+  /**
+   * max cardinality of a level, that is retrieved in a single Discover request
+   * to prefetch the parents or children of many members. 0 disables the prefetch.
+   */
+  public static final String PREFETCH_LIMIT_PROP = "com.tonbeller.jpivot.xmla.prefetch.limit";
+  public static final Integer PREFETCH_LIMIT_DEFAULT = new Integer(1000);
+
+  /**
+   * max number of cells of a result, 0 = no limit. The same property as
+   * MondrianModel.CELL_LIMIT_PROP, the table renders the rows up to this limit.
+   * Only the slices of the last axis, that are needed to reach the limit, are read.
+   */
+  public static final String CELL_LIMIT_PROP = "com.tonbeller.jpivot.mondrian.cell.limit";
+
+  /**
+   * max size in bytes of an Execute response, 0 = no limit.
+   * The transfer is aborted, when the limit is exceeded.
+   */
+  public static final String BYTE_LIMIT_PROP = "com.tonbeller.jpivot.xmla.byte.limit";
+
   private String ID = null;
 
   private String uri = null; //"http://TBNTSRV3/XML4A/msxisapi.dll";
@@ -82,7 +113,12 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
   private List aHierarchies = new ArrayList();
   private List aLevels = new ArrayList();
   private List aMeasures = new ArrayList();
-  private List aMembers = new ArrayList();
+
+  // unique name indexes, the lists above keep the discover order
+  private Map hDimensions = new HashMap();
+  private Map hHierarchies = new HashMap();
+  private Map hLevels = new HashMap();
+  private Map hMembers = new HashMap();
 
   private XMLA_QueryAdapter queryAdapter = null;
 
@@ -216,11 +252,22 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
     // no exception gotten
     result = res;
 
+    prefetchAxisParents(res);
+
     queryAdapter.afterExecute(result);
 
     return result;
   }
-  
+
+  /**
+   * aborts the Execute request, that is currently running
+   * @see Cancelable#cancel()
+   */
+  public void cancel() {
+    if (soap != null)
+      soap.cancel();
+  }
+
   /**
    * get the result variable without any action
    *
@@ -345,14 +392,7 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
    * @return Dimension
    */
   XMLA_Dimension lookupDimByUName(String uName) {
-
-    for (Iterator iter = aDimensions.iterator(); iter.hasNext();) {
-      XMLA_Dimension dim = (XMLA_Dimension) iter.next();
-      if (dim.getUniqueName().equals(uName))
-        return dim;
-    }
-
-    return null;
+    return (XMLA_Dimension) hDimensions.get(uName);
   }
 
   /**
@@ -361,14 +401,7 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
    * @return Hierarchy
    */
   XMLA_Hierarchy lookupHierByUName(String uName) {
-
-    for (Iterator iter = aHierarchies.iterator(); iter.hasNext();) {
-      XMLA_Hierarchy hier = (XMLA_Hierarchy) iter.next();
-      if (hier.getUniqueName().equals(uName))
-        return hier;
-    }
-
-    return null;
+    return (XMLA_Hierarchy) hHierarchies.get(uName);
   }
 
   /**
@@ -377,14 +410,7 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
    * @return level
    */
   XMLA_Level lookupLevelByUName(String uName) {
-
-    for (Iterator iter = aLevels.iterator(); iter.hasNext();) {
-      XMLA_Level lev = (XMLA_Level) iter.next();
-      if (lev.getUniqueName().equals(uName))
-        return lev;
-    }
-
-    return null;
+    return (XMLA_Level) hLevels.get(uName);
   }
 
   /**
@@ -393,14 +419,7 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
    * @return Member
    */
   public Member lookupMemberByUName(String uName) {
-
-    for (Iterator iter = aMembers.iterator(); iter.hasNext();) {
-      XMLA_Member mem = (XMLA_Member) iter.next();
-      if (mem.getUniqueName().equals(uName))
-        return mem;
-    }
-
-    return null;
+    return (Member) hMembers.get(uName);
   }
 
   /**
@@ -423,14 +442,14 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
   /** add single member
    */
   void addMember(XMLA_Member mem) {
-    aMembers.add(mem);
+    hMembers.put(mem.getUniqueName(), mem);
   }
 
   /** remove single member
    */
   public void removeMember(XMLA_Member mem) {
-    if (aMembers.contains(mem))
-      aMembers.remove(mem);
+    if (hMembers.get(mem.getUniqueName()) == mem)
+      hMembers.remove(mem.getUniqueName());
   }
 
   /**
@@ -742,15 +761,9 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
     evaluateHiers(hiers);
 
     // now, as we got all hierarchies, assign them to the dimensions
-    // first, create HashMap of dimensions
-    HashMap hDim = new HashMap();
-    for (Iterator iter = aDimensions.iterator(); iter.hasNext();) {
-      XMLA_Dimension dim = (XMLA_Dimension) iter.next();
-      hDim.put(dim.getUniqueName(), dim);
-    }
     for (Iterator iter = aHierarchies.iterator(); iter.hasNext();) {
       XMLA_Hierarchy hier = (XMLA_Hierarchy) iter.next();
-      XMLA_Dimension dim = (XMLA_Dimension) hDim.get(hier.getDimUniqueName());
+      XMLA_Dimension dim = lookupDimByUName(hier.getDimUniqueName());
       if (dim != null) {
         dim.addHier(hier);
         hier.setDimension(dim);
@@ -762,15 +775,9 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
     evaluateLevels(levels);
 
     // now, as we got all Levels, assign them to the hierarchies
-    // first, create HashMap of dimensions
-    HashMap hHier = new HashMap();
-    for (Iterator iter = aHierarchies.iterator(); iter.hasNext();) {
-      XMLA_Hierarchy hier = (XMLA_Hierarchy) iter.next();
-      hHier.put(hier.getUniqueName(), hier);
-    }
     for (Iterator iter = aLevels.iterator(); iter.hasNext();) {
       XMLA_Level lev = (XMLA_Level) iter.next();
-      XMLA_Hierarchy hier = (XMLA_Hierarchy) hHier.get(lev.getHierUniqueName());
+      XMLA_Hierarchy hier = lookupHierByUName(lev.getHierUniqueName());
       if (hier != null) {
         hier.addLevel(lev);
         lev.setHierarchy(hier);
@@ -862,7 +869,7 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
    * Evaluate the result of Discovery MDSCHEMA_DIMENSIONS request
    * @param dims list of dimension items
    */
-  private void evaluateDimensions(List dims) {
+  void evaluateDimensions(List dims) {
 
     for (Iterator iter = dims.iterator(); iter.hasNext();) {
       OlapItem dimit = (OlapItem) iter.next();
@@ -905,6 +912,8 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
         dim.setVisible(str.equals("true"));
 
       aDimensions.add(dim);
+      if (!hDimensions.containsKey(dim.getUniqueName()))
+        hDimensions.put(dim.getUniqueName(), dim);
     }
 
   }
@@ -913,7 +922,7 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
    * Evaluate the result of Discovery MDSCHEMA_HIERARCHIES request
    * @param hiers list of olap items
    */
-  private void evaluateHiers(List hiers) {
+  void evaluateHiers(List hiers) {
 
     for (Iterator iter = hiers.iterator(); iter.hasNext();) {
       OlapItem hierit = (OlapItem) iter.next();
@@ -976,6 +985,8 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
         hier.setDimShared(str.equals("true"));
 
       aHierarchies.add(hier);
+      if (!hHierarchies.containsKey(hier.getUniqueName()))
+        hHierarchies.put(hier.getUniqueName(), hier);
     }
   }
 
@@ -983,7 +994,7 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
    * Evaluate the result of Discovery MDSCHEMA_LEVELS request
    * @param levels List of OlapItems
    */
-  private void evaluateLevels(List levels) {
+  void evaluateLevels(List levels) {
 
     for (Iterator iter = levels.iterator(); iter.hasNext();) {
       OlapItem levit = (OlapItem) iter.next();
@@ -1045,6 +1056,8 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
         lev.setUniqueNameSqlColumnName(str);
 
       aLevels.add(lev);
+      if (!hLevels.containsKey(lev.getUniqueName()))
+        hLevels.put(lev.getUniqueName(), lev);
     }
 
   }
@@ -1062,7 +1075,6 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
     ArrayList aNewMembers = new ArrayList();
     ArrayList aAllMembers = new ArrayList();
     evaluateMembers(mems, aNewMembers, aAllMembers);
-    aMembers.addAll(aNewMembers);
     level.setMembers(aAllMembers);
   }
 
@@ -1082,7 +1094,6 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
     // one level, properties are delivered
     evaluateMembers(mems, aNewMembers, aAllMembers);
 
-    aMembers.addAll(aNewMembers);
     // assign children 
     setMemberChildren(member, aAllMembers);
 
@@ -1134,7 +1145,6 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
     ArrayList aAllMembers = new ArrayList();
     // one level, properties are delivered
     evaluateMembers(mems, aNewMembers, aAllMembers);
-    aMembers.addAll(aNewMembers);
 
     // assign parent
     XMLA_Member pmem = (XMLA_Member) aAllMembers.get(0);
@@ -1180,7 +1190,6 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
      m.setParent((XMLA_Member) parent);
      }
      }
-     aMembers.addAll(aNewMembers);
      */
   }
 
@@ -1198,11 +1207,165 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
     ArrayList aNewMembers = new ArrayList();
     ArrayList aAllMembers = new ArrayList();
     evaluateMembers(mems, aNewMembers, aAllMembers);
-    aMembers.addAll(aNewMembers);
     XMLA_Member member = (XMLA_Member) this.lookupMemberByUName(uniqueName);
     if (member == null) { throw new OlapException("could not find member " + uniqueName); }
   }
 
+  /**
+   * the parents of the axis members are needed by the query adapter
+   * and the navigator, retrieve them in bulk
+   */
+  void prefetchAxisParents(XMLA_Result res) {
+    if (!isPrefetch())
+      return;
+    List members = new ArrayList();
+    Axis[] axes = res.getAxes();
+    for (int i = 0; i < axes.length; i++) {
+      for (Iterator iter = axes[i].getPositions().iterator(); iter.hasNext();) {
+        Member[] posMembers = ((Position) iter.next()).getMembers();
+        for (int j = 0; j < posMembers.length; j++)
+          members.add(posMembers[j]);
+      }
+    }
+    try {
+      prefetchMemberParents(members);
+    } catch (OlapException e) {
+      // members will be retrieved one by one
+      logger.warn("prefetch of member parents failed", e);
+    }
+  }
+
+  /**
+   * @return true, if the parents and children of the axis members are prefetched
+   * @see #PREFETCH_PROP
+   */
+  static boolean isPrefetch() {
+    return Boolean.getBoolean(PREFETCH_PROP);
+  }
+
+  /**
+   * retrieves the parents of many members at once. The members are grouped
+   * by level, for every level the parent level is retrieved in one request,
+   * instead of one request per member. Levels, whose cardinality exceeds
+   * {@link #PREFETCH_LIMIT_PROP}, are skipped, their members will retrieve
+   * their parent on demand.
+   * @param members collection of XMLA_Member, e.g. the members of an axis
+   * @throws OlapException
+   */
+  public void prefetchMemberParents(Collection members) throws OlapException {
+    Map byLevel = groupByLevel(members, false);
+    for (Iterator iter = byLevel.keySet().iterator(); iter.hasNext();) {
+      XMLA_Level level = (XMLA_Level) iter.next();
+      List group = (List) byLevel.get(level);
+      if (group.size() < 2 || !isPrefetchable(level) || !isPrefetchable(level.getParentLevel()))
+        continue;
+      if (logger.isDebugEnabled())
+        logger.debug("prefetch parents of " + group.size() + " members of " + level.getUniqueName());
+      // completes the members, so the parent unique name is known
+      for (Iterator it = group.iterator(); it.hasNext();) {
+        if (!((XMLA_Member) it.next()).isComplete()) {
+          level.getMembers();
+          break;
+        }
+      }
+      level.getParentLevel().getMembers();
+      for (Iterator it = group.iterator(); it.hasNext();) {
+        XMLA_Member member = (XMLA_Member) it.next();
+        String pUname = member.getParentUniqueName();
+        if (!member.isComplete())
+          continue;
+        if (pUname == null || pUname.length() == 0) {
+          member.setParent(null);
+          member.setParentOk(true);
+          continue;
+        }
+        XMLA_Member parent = (XMLA_Member) lookupMemberByUName(pUname);
+        if (parent != null) {
+          member.setParent(parent);
+          member.setParentOk(true);
+        }
+      }
+    }
+  }
+
+  /**
+   * retrieves the children of many members at once. The members are grouped
+   * by level, for every level the child level is retrieved in one request
+   * and its members are assigned to their parents. Levels, whose cardinality
+   * exceeds {@link #PREFETCH_LIMIT_PROP}, are skipped, their members will retrieve
+   * their children on demand.
+   * @param members collection of XMLA_Member, e.g. the visible nodes of the navigator
+   * @throws OlapException
+   */
+  public void prefetchMemberChildren(Collection members) throws OlapException {
+    Map byLevel = groupByLevel(members, true);
+    for (Iterator iter = byLevel.keySet().iterator(); iter.hasNext();) {
+      XMLA_Level level = (XMLA_Level) iter.next();
+      List group = (List) byLevel.get(level);
+      XMLA_Level childLevel = level.getChildLevel();
+      if (group.size() < 2 || !isPrefetchable(childLevel))
+        continue;
+      if (logger.isDebugEnabled())
+        logger.debug("prefetch children of " + group.size() + " members of "
+            + level.getUniqueName());
+      XMLA_Member[] mems = childLevel.getMembers();
+      Map children = new HashMap();
+      for (int i = 0; i < mems.length; i++) {
+        String pUname = mems[i].getParentUniqueName();
+        List list = (List) children.get(pUname);
+        if (list == null) {
+          list = new ArrayList();
+          children.put(pUname, list);
+        }
+        list.add(mems[i]);
+      }
+      for (Iterator it = group.iterator(); it.hasNext();) {
+        XMLA_Member member = (XMLA_Member) it.next();
+        List list = (List) children.get(member.getUniqueName());
+        assignChildren(member, list == null ? new ArrayList() : new ArrayList(list));
+      }
+    }
+  }
+
+  /**
+   * groups the members, whose parent (children) are not known yet, by level
+   */
+  private Map groupByLevel(Collection members, boolean children) {
+    Map byLevel = new HashMap();
+    for (Iterator iter = members.iterator(); iter.hasNext();) {
+      XMLA_Member member = (XMLA_Member) iter.next();
+      XMLA_Level level = (XMLA_Level) member.getLevel();
+      if (member.isCalculated() || level == null)
+        continue;
+      if (children) {
+        if (member.isChildrenOk() || level.getChildLevel() == null)
+          continue;
+      } else {
+        if (member.isParentOk() || level.getDepth() == 0 || level.getParentLevel() == null)
+          continue;
+      }
+      List group = (List) byLevel.get(level);
+      if (group == null) {
+        group = new ArrayList();
+        byLevel.put(level, group);
+      }
+      if (!group.contains(member))
+        group.add(member);
+    }
+    return byLevel;
+  }
+
+  /**
+   * @return true, if all members of the level may be retrieved at once
+   */
+  private boolean isPrefetchable(XMLA_Level level) {
+    if (level == null)
+      return false;
+    int limit = Integer.getInteger(PREFETCH_LIMIT_PROP, PREFETCH_LIMIT_DEFAULT).intValue();
+    // cardinality is 0, if unknown
+    return level.getCardinality() > 0 && level.getCardinality() <= limit;
+  }
+
   /**
    * assign children member
    * @param member
@@ -1217,6 +1380,10 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
         aChildren.add(mem); // mem is a child
     }
 
+    assignChildren(member, aChildren);
+  }
+
+  private void assignChildren(XMLA_Member member, ArrayList aChildren) {
     member.setChildren(aChildren);
     member.setChildrenOk(true);
 
@@ -1356,6 +1523,13 @@ public class XMLA_Model extends MdxOlapModel implements OlapModel, QueryAdapter.
     return catalog;
   }
 
+  /**
+   * @return the connection to the XMLA provider, null before initialize()
+   */
+  XMLA_SOAP getSoap() {
+    return soap;
+  }
+
   /**
    * Returns the uri.
    * @return String
@@ -111,7 +111,8 @@ public class XMLA_QueryAdapter extends QueryAdapter implements QuaxChangeListene
    * - the original query
    * - adding the drilldown groups 
    * - apply pending swap axes
-   * - apply pending sorts.
+   * - apply pending sorts
+   * - apply the page of the rows.
    *
    * Called from Model.getResult before the query is executed. 
    */
@@ -196,6 +197,10 @@ public class XMLA_QueryAdapter extends QueryAdapter implements QuaxChangeListene
       swapAxes();
     }
 
+    // page the rows after they were sorted and swapped
+    if (pagingMan != null)
+      pagingMan.addPagingToQuery(isPagingPossible());
+
     // add FONT_SIZE to cell properties, if neccessary
     // CELL PROPERTIES VALUE, FORMATTED_VALUE, FONT_SIZE
     Map cmpmap = ((XMLA_Model) model).getCalcMeasurePropMap();
@@ -17,10 +17,12 @@ import java.util.*;
 import org.apache.log4j.Logger;
 
 import com.tonbeller.jpivot.olap.model.Axis;
+import com.tonbeller.jpivot.olap.model.Cell;
 import com.tonbeller.jpivot.olap.model.OlapException;
 import com.tonbeller.jpivot.olap.model.QueryResultHandler;
 import com.tonbeller.jpivot.olap.model.impl.FormatStringParser;
 import com.tonbeller.jpivot.olap.model.impl.PropertyImpl;
+import com.tonbeller.jpivot.olap.query.CellStore;
 import com.tonbeller.jpivot.olap.query.ResultBase;
 import com.tonbeller.jpivot.xmla.XMLA_PropValAssign.ValAssign;
 
@@ -42,6 +44,7 @@ public class XMLA_Result extends ResultBase implements QueryResultHandler {
   private Map calcMeasurePos = new HashMap();
   private Map drillHeader;      
   private List drillRows; 
+  private CellStore cellStore = null; // compact cells, if enabled
   
 
   /**
@@ -65,6 +68,14 @@ public class XMLA_Result extends ResultBase implements QueryResultHandler {
   }
 }
 
+  /**
+   * c'tor for a result, that is filled by the caller
+   * through the QueryResultHandler methods
+   */
+  XMLA_Result(XMLA_Model model) {
+    super(model);
+  }
+
   /**
    * handle AxisInfo tag
    * @see com.tonbeller.bii.olap.model.QueryResultHandler#handleAxisInfo
@@ -229,13 +240,26 @@ public class XMLA_Result extends ResultBase implements QueryResultHandler {
    * @see com.tonbeller.bii.olap.model.QueryResultHandler#handleCellData()
    */
   public void handleCellData() {
-    int nCells = 1;
+    long nAllCells = 1;
+    int nPositions = 1;
     for (Iterator iter = axesList.iterator(); iter.hasNext();) {
       XMLA_Axis ax = (XMLA_Axis) iter.next();
-      int nPositions = ax.getPositions().size();
+      nPositions = ax.getPositions().size();
       if (nXPositions == 0)
         nXPositions = nPositions; // # positions on axis 0
-      nCells = nCells * nPositions;
+      nAllCells = nAllCells * nPositions;
+    }
+    // keep the slices of the last axis up to the cell limit, like MondrianResult
+    int cellLimit = Integer.getInteger(XMLA_Model.CELL_LIMIT_PROP, 0).intValue();
+    long sliceSize = nAllCells / Math.max(1, nPositions);
+    int nCells = (int) limitCells(nAllCells, sliceSize, cellLimit);
+    if (nCells < nAllCells && logger.isDebugEnabled())
+      logger.debug("handleCellData: cell limit adjusted nCells=" + nCells);
+    if (isCompactCells()) {
+      // empty cells are implicit in the store
+      cellStore = new XMLA_CellStore(nCells);
+      aCells = cellStore;
+      return;
     }
     // create all cells, as the XMLA result contains only nonempty cells
     for (int i = 0; i < nCells; i++) {
@@ -250,9 +274,18 @@ public class XMLA_Result extends ResultBase implements QueryResultHandler {
    */
   public void handleCell(int iOrdinal, Object value, String fmtValue, String fontSize) {
 
+    // beyond the cell limit
+    if (iOrdinal >= aCells.size())
+      return;
+
     XMLA_Cell cell = (XMLA_Cell) aCells.get(iOrdinal);
     cell.setValue(value);
-    cell.setFormattedValue(fmtValue, formatStringParser);
+    if (cellStore != null) {
+      FormatStringParser.Result res = formatStringParser.parse(cell, fmtValue);
+      cellStore.setFormattedValue(iOrdinal, res.getFormattedValue());
+      cellStore.addProperties(iOrdinal, res.getProperties());
+    } else
+      cell.setFormattedValue(fmtValue, formatStringParser);
     if (fontSize != null) {
       int iFontSize = Integer.parseInt(fontSize);
 
@@ -288,6 +321,77 @@ public class XMLA_Result extends ResultBase implements QueryResultHandler {
     }
   }
 
+  /**
+   * the cells beyond the cell limit were not retrieved, an empty cell
+   * is created, if hierarchize moves one of them into the kept cells.
+   * @see ResultBase#createMissingCell(int)
+   */
+  protected Object createMissingCell(int ordinal) {
+    return new XMLA_Cell(ordinal, (XMLA_Model) model);
+  }
+
+  /**
+   * If the cells exceed the limit, as many complete slices of the last axis are kept,
+   * as are needed to reach the limit.
+   * @param nCells the number of cells of the result
+   * @param sliceSize the number of cells of a slice of the last axis
+   * @param cellLimit the max number of cells, 0 = no limit
+   * @return the number of cells to keep
+   */
+  static long limitCells(long nCells, long sliceSize, int cellLimit) {
+    if (cellLimit <= 0 || nCells <= cellLimit)
+      return nCells;
+    return (cellLimit / sliceSize + 1) * sliceSize;
+  }
+
+  /**
+   * columnar cell storage, the cells are XMLA_Cell flyweights
+   */
+  private class XMLA_CellStore extends CellStore {
+    XMLA_CellStore(int size) {
+      super(size, "(null)");
+    }
+
+    protected Cell createCell(int index) {
+      return new CompactCell(this, index);
+    }
+  }
+
+  /**
+   * XMLA_Cell reading and writing its data from/to the cell store.
+   * The ordinal is the cell ordinal of the XMLA result,
+   * even if the cells were rearranged by hierarchize.
+   */
+  private class CompactCell extends XMLA_Cell {
+    private final CellStore store;
+    private final int index;
+
+    CompactCell(CellStore store, int index) {
+      super(store.getSourceOrdinal(index), (XMLA_Model) model);
+      this.store = store;
+      this.index = index;
+      formattedValue = store.getFormattedValue(index);
+      setPropertyList(store.getProperties(index));
+    }
+
+    public Object getValue() {
+      return store.getValue(index);
+    }
+
+    public void setValue(Object value) {
+      store.setValue(index, value);
+    }
+
+    public boolean isNull() {
+      return store.isNull(index);
+    }
+
+    public void addProperty(String prop, String value) {
+      store.addProperty(index, prop, value);
+      setPropertyList(store.getProperties(index));
+    }
+  }
+
   private XMLA_Axis lookupAxisByName(String name) {
 
     if (name.equals("SlicerAxis"))
@@ -12,6 +12,10 @@
  */
 package com.tonbeller.jpivot.xmla;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.net.MalformedURLException;
@@ -29,8 +33,6 @@ import javax.xml.soap.MimeHeaders;
 import javax.xml.soap.Name;
 import javax.xml.soap.Node;
 import javax.xml.soap.SOAPBody;
-import javax.xml.soap.SOAPConnection;
-import javax.xml.soap.SOAPConnectionFactory;
 import javax.xml.soap.SOAPElement;
 import javax.xml.soap.SOAPEnvelope;
 import javax.xml.soap.SOAPException;
@@ -59,10 +61,25 @@ public class XMLA_SOAP implements OlapDiscoverer {
   static final String XMLA_URI = "urn:schemas-microsoft-com:xml-analysis";
   static final String XSI_URI = "http://www.w3.org/2001/XMLSchema-instance";
 
+  /**
+   * If true (the default), Execute responses are parsed as a stream directly
+   * from the HTTP connection instead of being loaded into a SAAJ DOM first.
+   * Set to false to fall back to the DOM based processing.
+   */
+  public static final String STREAMING_PROP = "com.tonbeller.jpivot.xmla.streaming";
+
+  /**
+   * class name of the XMLA_Transport, default is XMLA_HttpTransport
+   */
+  public static final String TRANSPORT_PROP = "com.tonbeller.jpivot.xmla.transport";
+
   static Logger logger = Logger.getLogger(XMLA_SOAP.class);
 
-  private SOAPConnectionFactory scf = null;
+  // URI -> XMLA_Transport, shared by all models
+  private static Map transports = new HashMap();
+
   private MessageFactory mf = null;
+  private XMLA_Transport transport = null;
 
   private int provider = 0;
 
@@ -75,6 +92,11 @@ public class XMLA_SOAP implements OlapDiscoverer {
 
   //PCF : role
   private String[][] headers;
+
+  private boolean streaming = !"false".equalsIgnoreCase(System.getProperty(STREAMING_PROP));
+
+  // the running Execute request
+  private volatile XMLA_Transport.Exchange runningExchange = null;
   
   interface Rowhandler {
     void handleRow(SOAPElement eRow, SOAPEnvelope envelope);
@@ -135,7 +157,6 @@ public class XMLA_SOAP implements OlapDiscoverer {
    */
   private void init(String uri, String user, String password) throws OlapException {
     try {
-      scf = SOAPConnectionFactory.newInstance();
       mf = MessageFactory.newInstance();
     } catch (UnsupportedOperationException e) {
       throw new OlapException(e);
@@ -146,6 +167,7 @@ public class XMLA_SOAP implements OlapDiscoverer {
     this.uri = uri;
     this.user = user;
     this.password = password;
+    this.transport = getTransport(uri);
     try {
       url = new URL(uri);
     } catch (MalformedURLException e1) {
@@ -771,65 +793,213 @@ public class XMLA_SOAP implements OlapDiscoverer {
    */
   public void executeQuery(String query, String catalog, QueryResultHandler handler)
       throws OlapException {
+    if (streaming) {
+      long lTime = System.currentTimeMillis();
+      try {
+        SOAPMessage msg = createExecuteMessage(query, catalog);
+        callStreaming(msg, new XMLA_ExecuteParser(handler));
+      } catch (SOAPException se) {
+        throw new OlapException(se);
+      }
+      if (logger.isDebugEnabled())
+        logger.debug("Time for streaming Execute(ms)=" + (System.currentTimeMillis() - lTime));
+    } else
+      executeQueryDom(query, catalog, handler);
+  }
 
-    SOAPConnection connection = null;
-    SOAPMessage reply = null;
+  /**
+   * create the SOAP Execute request message
+   * @param query - MDX to be executed
+   * @param catalog
+   */
+  private SOAPMessage createExecuteMessage(String query, String catalog) throws SOAPException {
+    SOAPMessage msg = mf.createMessage();
 
-    try {
-      connection = scf.createConnection();
-      SOAPMessage msg = mf.createMessage();
+    MimeHeaders mh = msg.getMimeHeaders();
+    mh.setHeader("SOAPAction", "\"urn:schemas-microsoft-com:xml-analysis:Execute\"");
 
-      MimeHeaders mh = msg.getMimeHeaders();
-      mh.setHeader("SOAPAction", "\"urn:schemas-microsoft-com:xml-analysis:Execute\"");
+    //PCF : role
+    if (headers != null) {
+      for (int i = 0; i < headers.length; i++)
+        mh.setHeader(headers[i][0], headers[i][1]);
+    }
 
-      //PCF : role
-      if (headers != null) {
-    	  for (int i=0; i<headers.length; i++) 
-    	      mh.setHeader(headers[i][0], headers[i][1]);
-      }
-      
-      SOAPPart soapPart = msg.getSOAPPart();
-      SOAPEnvelope envelope = soapPart.getEnvelope();
-      SOAPBody body = envelope.getBody();
-      Name nEx = envelope.createName("Execute", "", XMLA_URI);
+    SOAPPart soapPart = msg.getSOAPPart();
+    SOAPEnvelope envelope = soapPart.getEnvelope();
+    SOAPBody body = envelope.getBody();
+    Name nEx = envelope.createName("Execute", "", XMLA_URI);
 
-      SOAPElement eEx = body.addChildElement(nEx);
+    SOAPElement eEx = body.addChildElement(nEx);
 
-      // add the parameters
+    // add the parameters
 
-      // COMMAND parameter
-      // <Command>
-      // <Statement>select [Measures].members on Columns from Sales</Statement>
-      // </Command>
-      Name nCom = envelope.createName("Command", "", XMLA_URI);
-      SOAPElement eCommand = eEx.addChildElement(nCom);
-      Name nSta = envelope.createName("Statement", "", XMLA_URI);
-      SOAPElement eStatement = eCommand.addChildElement(nSta);
-      eStatement.addTextNode(query);
-
-      // <Properties>
-      // <PropertyList>
-      //    <DataSourceInfo>Provider=MSOLAP;Data Source=local</DataSourceInfo>
-      //    <Catalog>Foodmart 2000</Catalog>
-      //    <Format>Multidimensional</Format>
-      //    <AxisFormat>TupleFormat</AxisFormat> oder "ClusterFormat"
-      // </PropertyList>
-      // </Properties>
-      Map paraList = new HashMap();
-      paraList.put("DataSourceInfo", dataSource);
-      paraList.put("Catalog", catalog);
-      paraList.put("Format", "Multidimensional");
-      paraList.put("AxisFormat", "TupleFormat");
-      addParameterList(envelope, eEx, "Properties", "PropertyList", paraList);
-      msg.saveChanges();
+    // COMMAND parameter
+    // <Command>
+    // <Statement>select [Measures].members on Columns from Sales</Statement>
+    // </Command>
+    Name nCom = envelope.createName("Command", "", XMLA_URI);
+    SOAPElement eCommand = eEx.addChildElement(nCom);
+    Name nSta = envelope.createName("Statement", "", XMLA_URI);
+    SOAPElement eStatement = eCommand.addChildElement(nSta);
+    eStatement.addTextNode(query);
 
-      if (logger.isDebugEnabled()) {
-          logger.debug("Query to Execute");
-          //reply.getSOAPPart().getContent().
-          logSoapMsg(msg);
+    // <Properties>
+    // <PropertyList>
+    //    <DataSourceInfo>Provider=MSOLAP;Data Source=local</DataSourceInfo>
+    //    <Catalog>Foodmart 2000</Catalog>
+    //    <Format>Multidimensional</Format>
+    //    <AxisFormat>TupleFormat</AxisFormat> oder "ClusterFormat"
+    // </PropertyList>
+    // </Properties>
+    Map paraList = new HashMap();
+    paraList.put("DataSourceInfo", dataSource);
+    paraList.put("Catalog", catalog);
+    paraList.put("Format", "Multidimensional");
+    paraList.put("AxisFormat", "TupleFormat");
+    addParameterList(envelope, eEx, "Properties", "PropertyList", paraList);
+    msg.saveChanges();
+
+    if (logger.isDebugEnabled()) {
+      logger.debug("Query to Execute");
+      logSoapMsg(msg);
+    }
+    return msg;
+  }
+
+  /**
+   * @return the transport for <code>uri</code>, shared by all models
+   */
+  static XMLA_Transport getTransport(String uri) throws OlapException {
+    synchronized (transports) {
+      XMLA_Transport t = (XMLA_Transport) transports.get(uri);
+      if (t == null) {
+        String className = System.getProperty(TRANSPORT_PROP);
+        try {
+          if (className == null || className.length() == 0)
+            t = new XMLA_HttpTransport(uri);
+          else
+            t = (XMLA_Transport) Class.forName(className).getConstructor(
+                new Class[] { String.class}).newInstance(new Object[] { uri});
+        } catch (Exception e) {
+          throw new OlapException("could not create XMLA transport for " + uri, e);
         }
+        transports.put(uri, t);
+      }
+      return t;
+    }
+  }
+
+  /**
+   * post the request and let the parser process the reply directly from
+   * the HTTP response stream, without building a SAAJ DOM.
+   */
+  private void callStreaming(SOAPMessage msg, XMLA_ExecuteParser parser) throws OlapException,
+      SOAPException {
+    XMLA_Transport.Exchange exchange = null;
+    boolean complete = false;
+    try {
+      exchange = transport.open(user, password);
+      runningExchange = exchange;
+      int status = exchange.send(msg);
+      InputStream in = exchange.getInputStream();
+      if (in == null)
+        throw new OlapException("Execute failed: HTTP status " + status);
+      parser.parse(in);
+      complete = !parser.isTruncated();
+    } catch (IOException e) {
+      throw new OlapException(e);
+    } finally {
+      runningExchange = null;
+      if (exchange != null) {
+        // do not read the rest of a truncated or failed response
+        if (!complete)
+          exchange.abort();
+        exchange.close();
+      }
+    }
+  }
+
+  /**
+   * post the request and return the reply as SAAJ message
+   */
+  private SOAPMessage call(SOAPMessage msg) throws OlapException, SOAPException {
+    return createMessage(callRaw(msg));
+  }
+
+  /**
+   * create the SAAJ message from a raw reply
+   */
+  private SOAPMessage createMessage(XMLA_DiscoverCache.Response response) throws OlapException,
+      SOAPException {
+    MimeHeaders mh = new MimeHeaders();
+    mh.addHeader("Content-Type", response.contentType);
+    try {
+      return mf.createMessage(mh, new ByteArrayInputStream(response.body));
+    } catch (IOException e) {
+      throw new OlapException(e);
+    }
+  }
+
+  /**
+   * post the request and read the complete reply
+   */
+  private XMLA_DiscoverCache.Response callRaw(SOAPMessage msg) throws OlapException,
+      SOAPException {
+    XMLA_Transport.Exchange exchange = null;
+    try {
+      exchange = transport.open(user, password);
+      int status = exchange.send(msg);
+      InputStream in = exchange.getInputStream();
+      String contentType = exchange.getContentType();
+      if (in == null || contentType == null || contentType.toLowerCase().indexOf("xml") < 0)
+        throw new OlapException("XMLA request failed: HTTP status " + status);
+
+      // read the response completely, so the connection can be reused
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      byte[] buf = new byte[8192];
+      int n;
+      while ((n = in.read(buf)) >= 0)
+        bos.write(buf, 0, n);
+
+      return new XMLA_DiscoverCache.Response(uri, bos.toByteArray(), contentType);
+    } catch (IOException e) {
+      throw new OlapException(e);
+    } finally {
+      if (exchange != null)
+        exchange.close();
+    }
+  }
+
+  /**
+   * aborts a running Execute request by closing its connection.
+   * Works only for streaming requests.
+   */
+  public void cancel() {
+    XMLA_Transport.Exchange exchange = runningExchange;
+    if (exchange != null) {
+      logger.info("cancel Execute request");
+      exchange.abort();
+    }
+  }
+
+  /**
+   * Execute query, process the reply as SAAJ DOM
+   * @param query - MDX to be executed
+   * @param catalog
+   * @param handler Callback handler
+   * @throws OlapException
+   */
+  private void executeQueryDom(String query, String catalog, QueryResultHandler handler)
+      throws OlapException {
+
+    SOAPMessage reply = null;
+
+    try {
+      SOAPMessage msg = createExecuteMessage(query, catalog);
+      SOAPEnvelope envelope = msg.getSOAPPart().getEnvelope();
+
       // run the call
-      reply = connection.call(msg, url);
+      reply = call(msg);
       if (logger.isDebugEnabled()) {
         logger.debug("Reply from Execute");
         //reply.getSOAPPart().getContent().
@@ -1031,14 +1201,6 @@ public class XMLA_SOAP implements OlapDiscoverer {
 
     } catch (SOAPException se) {
       throw new OlapException(se);
-    } finally {
-      if (connection != null)
-        try {
-          connection.close();
-        } catch (SOAPException e) {
-          // log and ignore 
-          logger.error("?", e);
-        }
     }
 
   }
@@ -1047,11 +1209,9 @@ public class XMLA_SOAP implements OlapDiscoverer {
   public void executeDrillQuery(String query, String catalog, QueryResultHandler handler)
   throws OlapException {
 
-  SOAPConnection connection = null;
   SOAPMessage reply = null;
 
   try {
-    connection = scf.createConnection();
     SOAPMessage msg = mf.createMessage();
 
     MimeHeaders mh = msg.getMimeHeaders();
@@ -1091,7 +1251,7 @@ public class XMLA_SOAP implements OlapDiscoverer {
     addParameterList(envelope, eEx, "Properties", "PropertyList", paraList);
     msg.saveChanges();
   
-    reply = connection.call(msg, url);
+    reply = call(msg);
     if (logger.isDebugEnabled()) {
       logger.debug("Reply from Execute");
       //reply.getSOAPPart().getContent().
@@ -1166,14 +1326,6 @@ public class XMLA_SOAP implements OlapDiscoverer {
   
   } catch (SOAPException se) {
     throw new OlapException(se);
-  } finally {
-    if (connection != null)
-      try {
-        connection.close();
-      } catch (SOAPException e) {
-        // log and ignore 
-        logger.error("?", e);
-      }
   }
 
 }
@@ -1388,8 +1540,6 @@ public class XMLA_SOAP implements OlapDiscoverer {
       throws OlapException {
 
     try {
-      SOAPConnection connection = scf.createConnection();
-
       SOAPMessage msg = mf.createMessage();
 
       MimeHeaders mh = msg.getMimeHeaders();
@@ -1425,8 +1575,20 @@ public class XMLA_SOAP implements OlapDiscoverer {
         logSoapMsg(msg);
       }
 
-      // run the call
-      SOAPMessage reply = connection.call(msg, url);
+      // run the call, unless the reply is cached
+      XMLA_DiscoverCache cache = XMLA_DiscoverCache.instance();
+      String key = null;
+      XMLA_DiscoverCache.Response response = null;
+      if (cache.isEnabled()) {
+        key = XMLA_DiscoverCache.createKey(uri, user, headers, request, restrictions, properties);
+        response = cache.get(key);
+        if (response != null && logger.isDebugEnabled())
+          logger.debug("Discover Response for " + request + " from cache");
+      }
+      boolean cached = response != null;
+      if (!cached)
+        response = callRaw(msg);
+      SOAPMessage reply = createMessage(response);
 
       if (logger.isDebugEnabled()) {
         logger.debug("Discover Response for " + request);
@@ -1434,6 +1596,8 @@ public class XMLA_SOAP implements OlapDiscoverer {
       }
 
       errorCheck(reply);
+      if (key != null && !cached)
+        cache.put(key, response);
 
       SOAPElement eRoot = findDiscoverRoot(reply);
 
@@ -1446,7 +1610,6 @@ public class XMLA_SOAP implements OlapDiscoverer {
 
       } // RowLoop
 
-      connection.close();
     } catch (UnsupportedOperationException e) {
       throw new OlapException(e);
     } catch (SOAPException e) {
@@ -1727,5 +1890,19 @@ public String[][] getHeaders() {
 public void setHeaders(String[][] headers) {
 	this.headers = headers;
 }
+
+  /**
+   * @return true, if Execute responses are parsed as a stream
+   */
+  public boolean isStreaming() {
+    return streaming;
+  }
+
+  /**
+   * @param streaming false to process Execute responses as SAAJ DOM
+   */
+  public void setStreaming(boolean streaming) {
+    this.streaming = streaming;
+  }
   
 } // End XMLA_SOAP
@@ -0,0 +1,71 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ *
+ */
+package com.tonbeller.jpivot.xmla;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+
+/**
+ * Sends the SOAP requests of XMLA_SOAP to the XMLA server.
+ * <p>
+ * One transport is shared by all models, that use the same URI.
+ * The implementation is configured with {@link XMLA_SOAP#TRANSPORT_PROP}
+ * and must have a public c'tor with the URI as only String parameter.
+ *
+ * @see XMLA_HttpTransport
+ */
+public interface XMLA_Transport {
+
+  /**
+   * A single request / response exchange
+   */
+  interface Exchange {
+
+    /**
+     * sends the request and waits for the response header
+     * @return the HTTP status of the response
+     */
+    int send(SOAPMessage msg) throws IOException, SOAPException;
+
+    /**
+     * @return the content type of the response
+     */
+    String getContentType();
+
+    /**
+     * @return the uncompressed response body, also for an error status. May be null.
+     */
+    InputStream getInputStream() throws IOException;
+
+    /**
+     * aborts the exchange from another thread
+     */
+    void abort();
+
+    /**
+     * releases the exchange, the connection may be reused for the next request
+     */
+    void close();
+  }
+
+  /**
+   * create a new exchange
+   * @param user user for basic authentication or null
+   * @param password password for basic authentication or null
+   */
+  Exchange open(String user, String password) throws IOException;
+
+}
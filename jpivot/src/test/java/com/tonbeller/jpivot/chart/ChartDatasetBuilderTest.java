@@ -0,0 +1,93 @@
+package com.tonbeller.jpivot.chart;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.jfree.data.category.DefaultCategoryDataset;
+
+import com.tonbeller.jpivot.olap.model.Cell;
+import com.tonbeller.jpivot.olap.model.Result;
+import com.tonbeller.jpivot.olap.navi.AncestorCache;
+import com.tonbeller.jpivot.test.olap.TestMemberTree;
+import com.tonbeller.jpivot.test.olap.TestOlapModel;
+
+public class ChartDatasetBuilderTest extends TestCase {
+
+  Result result;
+  int colCount;
+  int rowCount;
+
+  protected void setUp() throws Exception {
+    result = new TestOlapModel().getResult();
+    colCount = result.getAxes()[0].getPositions().size();
+    rowCount = result.getAxes()[1].getPositions().size();
+  }
+
+  protected void tearDown() {
+    System.getProperties().remove(ChartDatasetBuilder.MAX_SERIES_PROP);
+    System.getProperties().remove(ChartDatasetBuilder.MAX_CATEGORIES_PROP);
+    System.getProperties().remove(ChartDatasetBuilder.REDUCE_PROP);
+  }
+
+  public void test2dim() {
+    ChartDatasetBuilder builder = newBuilder();
+    DefaultCategoryDataset dataset = builder.build2dimDataset(result);
+    assertEquals(colCount, dataset.getRowCount());
+    assertEquals(rowCount, dataset.getColumnCount());
+    List cells = result.getCells();
+    for (int i = 0; i < colCount; i++) {
+      for (int k = 0; k < rowCount; k++) {
+        assertEquals(k * colCount + i, builder.getCellIndex(i, k));
+        assertEquals(((Cell) cells.get(k * colCount + i)).getValue(), dataset.getValue(i, k));
+      }
+    }
+  }
+
+  public void test1dim() {
+    ChartDatasetBuilder builder = newBuilder();
+    DefaultCategoryDataset dataset = builder.build1dimDataset(result);
+    assertEquals(1, dataset.getRowCount());
+    assertEquals(colCount, dataset.getColumnCount());
+    for (int k = 0; k < colCount; k++) {
+      assertEquals(k, builder.getCellIndex(0, k));
+      assertEquals(((Cell) result.getCells().get(k)).getValue(), dataset.getValue(0, k));
+    }
+  }
+
+  public void testSample() {
+    System.setProperty(ChartDatasetBuilder.MAX_CATEGORIES_PROP, "2");
+    ChartDatasetBuilder builder = newBuilder();
+    DefaultCategoryDataset dataset = builder.build2dimDataset(result);
+    assertEquals(colCount, dataset.getRowCount());
+    assertEquals(2, dataset.getColumnCount());
+    assertEquals(0 * colCount + 1, builder.getCellIndex(1, 0));
+    int row = rowCount / 2;
+    assertEquals(row * colCount + 1, builder.getCellIndex(1, 1));
+    assertEquals(((Cell) result.getCells().get(row * colCount + 1)).getValue(), dataset
+        .getValue(1, 1));
+  }
+
+  public void testAggregate() {
+    System.setProperty(ChartDatasetBuilder.MAX_SERIES_PROP, "2");
+    System.setProperty(ChartDatasetBuilder.REDUCE_PROP, "aggregate");
+    ChartDatasetBuilder builder = newBuilder();
+    DefaultCategoryDataset dataset = builder.build2dimDataset(result);
+    assertEquals(2, dataset.getRowCount());
+    assertEquals(ChartDatasetBuilder.OTHERS, dataset.getRowKey(1));
+    List cells = result.getCells();
+    for (int k = 0; k < rowCount; k++) {
+      assertEquals(k * colCount, builder.getCellIndex(0, k));
+      assertEquals(-1, builder.getCellIndex(1, k));
+      double sum = 0;
+      for (int i = 1; i < colCount; i++)
+        sum += ((Number) ((Cell) cells.get(k * colCount + i)).getValue()).doubleValue();
+      assertEquals(sum, dataset.getValue(1, k).doubleValue(), 1e-6);
+    }
+  }
+
+  private ChartDatasetBuilder newBuilder() {
+    return new ChartDatasetBuilder(new AncestorCache(new TestMemberTree()));
+  }
+
+}
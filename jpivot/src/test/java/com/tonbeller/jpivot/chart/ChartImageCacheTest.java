@@ -0,0 +1,75 @@
+package com.tonbeller.jpivot.chart;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+public class ChartImageCacheTest extends TestCase {
+
+  public void testLookup() {
+    ChartImageCache cache = new ChartImageCache(1000);
+    Object r1 = new Object();
+    Object r2 = new Object();
+    String name = cache.createName();
+    ChartImageCache.Image image = cache.put(r1, "bar", name, new byte[10], "<map/>");
+    assertSame(image, cache.get(name));
+    assertSame(image, cache.lookup(r1, "bar"));
+    assertNull(cache.lookup(r1, "pie"));
+    assertNull(cache.lookup(r2, "bar"));
+    assertEquals("\"" + name + "\"", image.getETag());
+  }
+
+  public void testEviction() {
+    ChartImageCache cache = new ChartImageCache(250);
+    Object result = new Object();
+    String[] names = new String[3];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = cache.createName();
+      cache.put(result, "c" + i, names[i], new byte[100], "");
+    }
+    // the least recently used image is removed
+    assertNull(cache.get(names[0]));
+    assertNull(cache.lookup(result, "c0"));
+    assertNotNull(cache.get(names[1]));
+    assertEquals(200, cache.getSize());
+
+    // names[1] was used, so names[2] is removed now
+    cache.put(result, "c3", cache.createName(), new byte[100], "");
+    assertNotNull(cache.get(names[1]));
+    assertNull(cache.get(names[2]));
+
+    // a single large image is kept
+    String large = cache.createName();
+    cache.put(result, "c4", large, new byte[1000], "");
+    assertNotNull(cache.get(large));
+    assertEquals(1000, cache.getSize());
+  }
+
+  public void testPin() throws Exception {
+    ChartImageCache cache = new ChartImageCache(250);
+    Object result = new Object();
+    Object owner = new Object();
+    ChartImageCache.Image pinned = cache.put(result, "c0", cache.createName(), new byte[100], "");
+    cache.pin(owner, pinned);
+    for (int i = 1; i < 4; i++)
+      cache.put(result, "c" + i, cache.createName(), new byte[100], "");
+    // the shown image is kept, although it was used least recently
+    assertSame(pinned, cache.get(pinned.getName()));
+    assertEquals(200, cache.getSize());
+
+    // another image is shown, the old one may be removed
+    ChartImageCache.Image next = cache.put(result, "c4", cache.createName(), new byte[100], "");
+    cache.pin(owner, next);
+    cache.put(result, "c5", cache.createName(), new byte[100], "");
+    assertNull(cache.get(pinned.getName()));
+
+    // a removed image is added again when it is pinned
+    cache.pin(owner, pinned);
+    assertSame(pinned, cache.get(pinned.getName()));
+
+    File file = cache.getFile(pinned.getName());
+    assertEquals(100, file.length());
+    assertTrue(file.delete());
+  }
+
+}
@@ -0,0 +1,275 @@
+package com.tonbeller.jpivot.mondrian;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import junit.framework.TestCase;
+
+import com.tonbeller.jpivot.olap.navi.DrillThroughRows;
+import com.tonbeller.wcf.table.TableRow;
+
+/**
+ * runs the paged drill through against an in memory JDBC data source
+ */
+public class MondrianDrillThroughTableModelTest extends TestCase {
+
+  static final String SQL = "select id, name from drill";
+
+  public MondrianDrillThroughTableModelTest(String arg0) {
+    super(arg0);
+  }
+
+  protected void tearDown() throws Exception {
+    System.getProperties().remove(MondrianDrillThroughTableModel.PAGE_CACHE_PROP);
+  }
+
+  public void testPageBoundaries() {
+    FakeDatabase db = new FakeDatabase(7, true);
+    MondrianDrillThroughTableModel tm = createModel(db, 3);
+    assertEquals(2, tm.getColumnCount());
+    assertEquals("ID", tm.getColumnTitle(0));
+    assertEquals(1, db.queries.size());
+    assertRow(tm.getRow(0), 0);
+    assertRow(tm.getRow(2), 2);
+    assertEquals(1, db.queries.size());
+    // the first row of the second page
+    assertRow(tm.getRow(3), 3);
+    assertEquals(2, db.queries.size());
+    assertRow(tm.getRow(5), 5);
+    assertEquals(2, db.queries.size());
+    // the statement stops after the last row of the page
+    assertEquals(new Integer(3), db.maxRows.get(0));
+    assertEquals(new Integer(6), db.maxRows.get(1));
+    assertEquals(new Integer(3), db.fetchSizes.get(1));
+  }
+
+  public void testShortLastPage() {
+    FakeDatabase db = new FakeDatabase(7, true);
+    MondrianDrillThroughTableModel tm = createModel(db, 3);
+    assertRow(tm.getRow(6), 6);
+    // the short page tells the row count, count(*) is not needed
+    assertEquals(7, tm.getRowCount());
+    assertFalse(db.queries.contains(countSql()));
+  }
+
+  public void testEmptyLastPage() {
+    FakeDatabase db = new FakeDatabase(7, true);
+    MondrianDrillThroughTableModel tm = createModel(db, 3);
+    assertEquals(7, tm.getRowCount());
+    // a row has been deleted since count(*), the last page is empty
+    db.nRows = 6;
+    TableRow row = tm.getRow(6);
+    assertNull(row.getValue(0));
+    assertNull(row.getValue(1));
+    assertEquals(6, tm.getRowCount());
+  }
+
+  public void testLazyCount() {
+    FakeDatabase db = new FakeDatabase(7, true);
+    MondrianDrillThroughTableModel tm = createModel(db, 3);
+    assertRow(tm.getRow(0), 0);
+    assertFalse(db.queries.contains(countSql()));
+    assertEquals(7, tm.getRowCount());
+    assertTrue(db.queries.contains(countSql()));
+    int n = db.queries.size();
+    assertEquals(7, tm.getRowCount());
+    assertEquals(n, db.queries.size());
+  }
+
+  public void testCountWithoutSubquery() {
+    FakeDatabase db = new FakeDatabase(7, false);
+    MondrianDrillThroughTableModel tm = createModel(db, 3);
+    assertEquals(7, tm.getRowCount());
+    assertEquals(SQL, db.queries.get(db.queries.size() - 1));
+  }
+
+  public void testPageCache() {
+    System.setProperty(MondrianDrillThroughTableModel.PAGE_CACHE_PROP, "1");
+    FakeDatabase db = new FakeDatabase(7, true);
+    MondrianDrillThroughTableModel tm = createModel(db, 3);
+    assertRow(tm.getRow(3), 3);
+    int n = db.queries.size();
+    assertRow(tm.getRow(4), 4);
+    assertEquals(n, db.queries.size());
+    // page 0 has been evicted by page 1
+    assertRow(tm.getRow(0), 0);
+    assertEquals(n + 1, db.queries.size());
+  }
+
+  public void testNotPaged() {
+    FakeDatabase db = new FakeDatabase(7, true);
+    MondrianDrillThroughTableModel tm = createModel(db, 0);
+    assertEquals(7, tm.getRowCount());
+    assertRow(tm.getRow(6), 6);
+    assertEquals(1, db.queries.size());
+  }
+
+  public void testEmptyResult() {
+    FakeDatabase db = new FakeDatabase(0, true);
+    MondrianDrillThroughTableModel tm = createModel(db, 3);
+    assertEquals(2, tm.getColumnCount());
+    assertEquals(0, tm.getRowCount());
+    assertFalse(db.queries.contains(countSql()));
+  }
+
+  public void testWriteRows() throws Exception {
+    FakeDatabase db = new FakeDatabase(7, true);
+    MondrianDrillThroughTableModel tm = createModel(db, 3);
+    final List values = new ArrayList();
+    tm.writeRows(new DrillThroughRows.RowWriter() {
+      public void writeHeader(String[] columnTitles) {
+        assertEquals(2, columnTitles.length);
+      }
+
+      public void writeRow(Object[] row) {
+        values.add(row[0]);
+      }
+    });
+    assertEquals(7, values.size());
+    assertEquals(new Integer(6), values.get(6));
+    assertEquals(Integer.MAX_VALUE, ((Integer) db.maxRows.get(0)).intValue());
+  }
+
+  private MondrianDrillThroughTableModel createModel(FakeDatabase db, int pageSize) {
+    MondrianDrillThroughTableModel tm = new MondrianDrillThroughTableModel();
+    tm.setExternalDataSource(db.createDataSource());
+    tm.setSql(SQL);
+    tm.setPageSize(pageSize);
+    return tm;
+  }
+
+  private static String countSql() {
+    return "select count(*) from (" + SQL + ") drill";
+  }
+
+  private static void assertRow(TableRow row, int i) {
+    assertEquals(new Integer(i), row.getValue(0));
+    assertEquals("row " + i, row.getValue(1));
+  }
+
+  /**
+   * a table of <code>nRows</code> rows (i, "row " + i).
+   * Records the queries and the max rows / fetch size of the statements.
+   */
+  static class FakeDatabase {
+    int nRows;
+    boolean countSupported;
+    List queries = new ArrayList();
+    List maxRows = new ArrayList();
+    List fetchSizes = new ArrayList();
+
+    FakeDatabase(int nRows, boolean countSupported) {
+      this.nRows = nRows;
+      this.countSupported = countSupported;
+    }
+
+    DataSource createDataSource() {
+      return (DataSource) proxy(DataSource.class, new InvocationHandler() {
+        public Object invoke(Object proxy, Method method, Object[] args) {
+          if (method.getName().equals("getConnection"))
+            return createConnection();
+          throw new UnsupportedOperationException(method.getName());
+        }
+      });
+    }
+
+    Connection createConnection() {
+      return (Connection) proxy(Connection.class, new InvocationHandler() {
+        public Object invoke(Object proxy, Method method, Object[] args) {
+          if (method.getName().equals("createStatement"))
+            return createStatement();
+          if (method.getName().equals("close"))
+            return null;
+          throw new UnsupportedOperationException(method.getName());
+        }
+      });
+    }
+
+    Statement createStatement() {
+      return (Statement) proxy(Statement.class, new InvocationHandler() {
+        int max = 0;
+        int fetch = 0;
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+          String name = method.getName();
+          if (name.equals("setMaxRows")) {
+            max = ((Integer) args[0]).intValue();
+            return null;
+          }
+          if (name.equals("setFetchSize")) {
+            fetch = ((Integer) args[0]).intValue();
+            return null;
+          }
+          if (name.equals("close"))
+            return null;
+          if (name.equals("executeQuery")) {
+            String sql = (String) args[0];
+            queries.add(sql);
+            if (sql.equals(countSql())) {
+              if (!countSupported)
+                throw new SQLException("subquery not supported");
+              return createResultSet(new Object[][] { { new Integer(nRows)}});
+            }
+            maxRows.add(new Integer(max > 0 ? max : Integer.MAX_VALUE));
+            fetchSizes.add(new Integer(fetch));
+            int n = max > 0 ? Math.min(max, nRows) : nRows;
+            Object[][] data = new Object[n][];
+            for (int i = 0; i < n; i++)
+              data[i] = new Object[] { new Integer(i), "row " + i};
+            return createResultSet(data);
+          }
+          throw new UnsupportedOperationException(name);
+        }
+      });
+    }
+
+    ResultSet createResultSet(final Object[][] data) {
+      return (ResultSet) proxy(ResultSet.class, new InvocationHandler() {
+        int row = -1;
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+          String name = method.getName();
+          if (name.equals("next"))
+            return Boolean.valueOf(++row < data.length);
+          if (name.equals("getObject"))
+            return data[row][((Integer) args[0]).intValue() - 1];
+          if (name.equals("getInt"))
+            return data[row][((Integer) args[0]).intValue() - 1];
+          if (name.equals("getMetaData"))
+            return createMetaData();
+          if (name.equals("close"))
+            return null;
+          throw new UnsupportedOperationException(name);
+        }
+      });
+    }
+
+    ResultSetMetaData createMetaData() {
+      return (ResultSetMetaData) proxy(ResultSetMetaData.class, new InvocationHandler() {
+        public Object invoke(Object proxy, Method method, Object[] args) {
+          String name = method.getName();
+          if (name.equals("getColumnCount"))
+            return new Integer(2);
+          if (name.equals("getColumnName"))
+            return ((Integer) args[0]).intValue() == 1 ? "ID" : "NAME";
+          throw new UnsupportedOperationException(name);
+        }
+      });
+    }
+
+    static Object proxy(Class iface, InvocationHandler handler) {
+      return Proxy.newProxyInstance(FakeDatabase.class.getClassLoader(), new Class[] { iface}, handler);
+    }
+  }
+
+}
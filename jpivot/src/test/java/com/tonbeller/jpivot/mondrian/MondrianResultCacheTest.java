@@ -0,0 +1,237 @@
+package com.tonbeller.jpivot.mondrian;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import junit.framework.TestCase;
+
+import mondrian.olap.Result;
+
+import com.tonbeller.jpivot.olap.model.OlapException;
+
+public class MondrianResultCacheTest extends TestCase {
+
+  public MondrianResultCacheTest(String arg0) {
+    super(arg0);
+  }
+
+  static Result dummyResult() {
+    return (Result) Proxy.newProxyInstance(Result.class.getClassLoader(),
+        new Class[] { Result.class}, new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            throw new UnsupportedOperationException();
+          }
+        });
+  }
+
+  public void testNormalize() {
+    assertEquals("select {[Measures].[Unit  Sales]} on columns from [Sales]",
+        MondrianResultCache.normalize(" select\n  {[Measures].[Unit  Sales]}\ton columns\r\nfrom [Sales] "));
+    assertEquals(MondrianResultCache.createKey("c", null, null, "a  b"),
+        MondrianResultCache.createKey("c", null, null, "a\nb"));
+  }
+
+  public void testHitMiss() {
+    MondrianResultCache cache = new MondrianResultCache(10, 60000, true);
+    Object role = new Object();
+    Object key = MondrianResultCache.createKey("c", role, null, "mdx");
+    Result result = dummyResult();
+    assertNull(cache.get(key));
+    cache.put(key, result);
+    assertSame(result, cache.get(MondrianResultCache.createKey("c", role, null, "mdx")));
+    // other role does not see the result
+    assertNull(cache.get(MondrianResultCache.createKey("c", new Object(), null, "mdx")));
+    assertEquals(1, cache.getHits());
+    assertEquals(2, cache.getMisses());
+
+    cache.invalidate("c");
+    assertNull(cache.get(key));
+    assertEquals(1, cache.getInvalidations());
+  }
+
+  /**
+   * every connection has its own union role, the role names are compared
+   */
+  public void testRoleNames() {
+    MondrianResultCache cache = new MondrianResultCache(10, 60000, true);
+    Result result = dummyResult();
+    cache.put(MondrianResultCache.createKey("c;Role=A,B", "A,B", null, "mdx"), result);
+    assertSame(result, cache.get(MondrianResultCache.createKey("c;Role=A,B", new String("A,B"),
+        null, "mdx")));
+    assertNull(cache.get(MondrianResultCache.createKey("c;Role=A,B", "A", null, "mdx")));
+    assertNull(cache.get(MondrianResultCache.createKey("c;Role=A,B", null, null, "mdx")));
+    assertNull(cache.get(MondrianResultCache.createKey("d;Role=A,B", "A,B", null, "mdx")));
+  }
+
+  public void testEvictionAndTTL() throws Exception {
+    MondrianResultCache cache = new MondrianResultCache(2, 60000, true);
+    for (int i = 0; i < 3; i++)
+      cache.put(MondrianResultCache.createKey("c", null, null, "q" + i), dummyResult());
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getEvictions());
+    assertNull(cache.get(MondrianResultCache.createKey("c", null, null, "q0")));
+
+    cache = new MondrianResultCache(2, 0, true);
+    Object key = MondrianResultCache.createKey("c", null, null, "q");
+    cache.put(key, dummyResult());
+    Thread.sleep(5);
+    assertNull(cache.get(key));
+    assertEquals(1, cache.getExpirations());
+  }
+
+  public void testCoalesce() throws Exception {
+    final MondrianResultCache cache = new MondrianResultCache(0, 60000, true);
+    final Object key = MondrianResultCache.createKey("c", null, null, "q");
+    final Result result = dummyResult();
+    final Object lock = new Object();
+    final int[] executions = new int[1];
+    final Result[] results = new Result[3];
+    Thread[] threads = new Thread[3];
+    for (int i = 0; i < threads.length; i++) {
+      final int n = i;
+      threads[i] = new Thread() {
+        public void run() {
+          try {
+            results[n] = cache.execute(key, new MondrianResultCache.Execution() {
+              public Result execute() {
+                synchronized (lock) {
+                  ++executions[0];
+                  try {
+                    lock.wait(2000);
+                  } catch (InterruptedException e) {
+                  }
+                }
+                return result;
+              }
+
+              public void cancel() {
+              }
+            });
+          } catch (Exception e) {
+            fail(e.toString());
+          }
+        }
+      };
+      threads[i].start();
+    }
+    while (cache.getExecutions() + cache.getCoalesced() < threads.length)
+      Thread.sleep(5);
+    synchronized (lock) {
+      lock.notifyAll();
+    }
+    for (int i = 0; i < threads.length; i++) {
+      threads[i].join();
+      assertSame(result, results[i]);
+    }
+    assertEquals(1, executions[0]);
+    assertEquals(1, cache.getExecutions());
+    assertEquals(2, cache.getCoalesced());
+  }
+
+  /**
+   * blocks until it is released or cancelled
+   */
+  static class BlockingExecution implements MondrianResultCache.Execution {
+    Result result = dummyResult();
+    boolean released = false;
+    boolean cancelled = false;
+
+    public synchronized Result execute() {
+      while (!released && !cancelled) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      if (cancelled)
+        throw new RuntimeException("cancelled");
+      return result;
+    }
+
+    public synchronized void release() {
+      released = true;
+      notifyAll();
+    }
+
+    public synchronized void cancel() {
+      cancelled = true;
+      notifyAll();
+    }
+  }
+
+  /**
+   * runs cache.execute() in a thread, keeps the result or the exception
+   */
+  static class Session extends Thread {
+    MondrianResultCache cache;
+    Object key;
+    MondrianResultCache.Execution execution;
+    Object outcome;
+
+    Session(MondrianResultCache cache, Object key, MondrianResultCache.Execution execution) {
+      this.cache = cache;
+      this.key = key;
+      this.execution = execution;
+      start();
+    }
+
+    public void run() {
+      try {
+        outcome = cache.execute(key, execution);
+      } catch (Exception e) {
+        outcome = e;
+      }
+    }
+  }
+
+  public void testCancel() throws Exception {
+    MondrianResultCache cache = new MondrianResultCache(0, 60000, true);
+    Object key = MondrianResultCache.createKey("c", null, null, "q");
+    BlockingExecution e1 = new BlockingExecution();
+    BlockingExecution e2 = new BlockingExecution();
+    BlockingExecution e3 = new BlockingExecution();
+    Session s1 = new Session(cache, key, e1);
+    while (cache.getExecutions() < 1)
+      Thread.sleep(5);
+    Session s2 = new Session(cache, key, e2);
+    Session s3 = new Session(cache, key, e3);
+    while (cache.getCoalesced() < 2)
+      Thread.sleep(5);
+
+    // a waiting session stops waiting
+    assertTrue(cache.cancel(e2));
+    s2.join(5000);
+    assertTrue(s2.outcome instanceof OlapException);
+    // the leader detaches, the query runs on for s3
+    assertTrue(cache.cancel(e1));
+    assertFalse(e1.cancelled);
+    e1.release();
+    s1.join(5000);
+    s3.join(5000);
+    assertTrue(s1.outcome instanceof OlapException);
+    assertSame(e1.result, s3.outcome);
+    assertFalse(cache.cancel(e1));
+
+    // the last session cancels the query
+    BlockingExecution e4 = new BlockingExecution();
+    Session s4 = new Session(cache, key, e4);
+    while (cache.getExecutions() < 2)
+      Thread.sleep(5);
+    assertTrue(cache.cancel(e4));
+    s4.join(5000);
+    assertTrue(e4.cancelled);
+    // the exception of the cancelled Mondrian query
+    assertTrue(s4.outcome instanceof RuntimeException);
+  }
+
+  public void testDisabled() {
+    MondrianResultCache cache = new MondrianResultCache(0, 60000, true);
+    Object key = MondrianResultCache.createKey("c", null, null, "q");
+    cache.put(key, dummyResult());
+    assertFalse(cache.isEnabled());
+    assertNull(cache.get(key));
+  }
+
+}
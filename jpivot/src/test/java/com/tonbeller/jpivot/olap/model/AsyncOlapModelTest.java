@@ -0,0 +1,230 @@
+package com.tonbeller.jpivot.olap.model;
+
+import junit.framework.TestCase;
+
+import com.tonbeller.jpivot.core.ExtensionSupport;
+import com.tonbeller.jpivot.olap.navi.NonEmpty;
+import com.tonbeller.jpivot.test.olap.TestOlapModel;
+
+public class AsyncOlapModelTest extends TestCase {
+
+  public AsyncOlapModelTest(String arg0) {
+    super(arg0);
+  }
+
+  /**
+   * a model, whose query blocks until it is released or cancelled
+   */
+  static class SlowModel extends TestOlapModel implements Cancelable {
+    boolean released = false;
+    boolean cancelled = false;
+    boolean started = false;
+    boolean interruptible = true;
+    boolean inQuery = false;
+
+    public synchronized Result getResult() throws OlapException {
+      started = true;
+      inQuery = true;
+      notifyAll();
+      try {
+        while (!released && !cancelled) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            if (interruptible)
+              throw new OlapException(e);
+          }
+        }
+        if (cancelled)
+          throw new OlapException("cancelled");
+        return super.getResult();
+      } finally {
+        inQuery = false;
+      }
+    }
+
+    synchronized boolean isInQuery() {
+      return inQuery;
+    }
+
+    synchronized void awaitStarted() throws InterruptedException {
+      while (!started)
+        wait();
+    }
+
+    synchronized void release() {
+      released = true;
+      notifyAll();
+    }
+
+    public synchronized void cancel() {
+      cancelled = true;
+      notifyAll();
+    }
+  }
+
+  public void testSubmit() throws Exception {
+    SlowModel slow = new SlowModel();
+    AsyncOlapModel async = new AsyncOlapModel();
+    async.decorate(slow);
+    async.submit("user");
+    assertTrue(async.isRunning());
+    assertFalse(async.waitFor(50));
+    assertTrue(async.getElapsedTime() >= 0);
+    slow.release();
+    assertTrue(async.waitFor(5000));
+    assertTrue(async.isDone());
+    assertNotNull(async.getResult());
+    assertFalse(async.isDone());
+  }
+
+  public void testCancel() throws Exception {
+    SlowModel slow = new SlowModel();
+    AsyncOlapModel async = new AsyncOlapModel();
+    async.decorate(slow);
+    async.submit("user");
+    async.cancel();
+    assertTrue(slow.cancelled);
+    assertFalse(async.isRunning());
+  }
+
+  /**
+   * the navigation changes the model only after the query was cancelled
+   */
+  static class TestNonEmpty extends ExtensionSupport implements NonEmpty {
+    SlowModel slow;
+    boolean nonEmpty = false;
+    boolean changedDuringQuery = false;
+
+    TestNonEmpty(SlowModel slow) {
+      this.slow = slow;
+      setId(ID);
+    }
+
+    public boolean isNonEmpty() {
+      return nonEmpty;
+    }
+
+    public void setNonEmpty(boolean nonEmpty) {
+      if (slow.isInQuery())
+        changedDuringQuery = true;
+      this.nonEmpty = nonEmpty;
+    }
+  }
+
+  public void testCancelBeforeChange() throws Exception {
+    // ignores the cancel, so only the wait for the worker protects the change
+    final SlowModel slow = new SlowModel() {
+      public void cancel() {
+      }
+    };
+    slow.interruptible = false;
+    TestNonEmpty ext = new TestNonEmpty(slow);
+    slow.addExtension(ext);
+    AsyncOlapModel async = new AsyncOlapModel();
+    async.decorate(slow);
+    async.submit("navigating");
+    slow.awaitStarted();
+
+    final NonEmpty nonEmpty = (NonEmpty) async.getExtension(NonEmpty.ID);
+    assertSame(nonEmpty, async.getExtension(NonEmpty.ID));
+    // reading does not cancel the query
+    assertFalse(nonEmpty.isNonEmpty());
+    assertTrue(async.isRunning());
+
+    Thread navigator = new Thread() {
+      public void run() {
+        nonEmpty.setNonEmpty(true);
+      }
+    };
+    navigator.start();
+    navigator.join(100);
+    assertTrue(navigator.isAlive());
+    assertFalse(ext.nonEmpty);
+
+    slow.release();
+    navigator.join(5000);
+    assertFalse(navigator.isAlive());
+    assertTrue(ext.nonEmpty);
+    assertFalse(ext.changedDuringQuery);
+    assertFalse(async.isRunning());
+    assertFalse(async.isDone());
+  }
+
+  public void testUserLimit() throws Exception {
+    SlowModel[] slow = new SlowModel[3];
+    AsyncOlapModel[] async = new AsyncOlapModel[3];
+    for (int i = 0; i < slow.length; i++) {
+      slow[i] = new SlowModel();
+      async[i] = new AsyncOlapModel();
+      async[i].decorate(slow[i]);
+    }
+    async[0].submit("limited");
+    async[1].submit("limited");
+    try {
+      async[2].submit("limited");
+      fail("OlapException expected");
+    } catch (OlapException e) {
+      // expected, default limit is 2
+    }
+    slow[0].release();
+    assertTrue(async[0].waitFor(5000));
+    async[0].getResult();
+    // wait for the slot to be released
+    for (int i = 0; i < 100 && !trySubmit(async[2]); i++)
+      Thread.sleep(10);
+    assertTrue(async[2].isRunning());
+    async[1].cancel();
+    async[2].cancel();
+  }
+
+  public void testCancelWaitsForWorker() throws Exception {
+    // ignores the cancel, like a Mondrian query that has already been executed
+    final SlowModel slow = new SlowModel() {
+      public void cancel() {
+      }
+    };
+    slow.interruptible = false;
+    final AsyncOlapModel async = new AsyncOlapModel();
+    async.decorate(slow);
+    async.submit("waiting");
+    slow.awaitStarted();
+    Thread canceller = new Thread() {
+      public void run() {
+        async.cancel();
+      }
+    };
+    canceller.start();
+    canceller.join(100);
+    assertTrue(canceller.isAlive());
+
+    // the worker still holds the slot of the user
+    SlowModel other = new SlowModel();
+    AsyncOlapModel async2 = new AsyncOlapModel();
+    async2.decorate(other);
+    async2.submit("waiting");
+    AsyncOlapModel async3 = new AsyncOlapModel();
+    async3.decorate(new SlowModel());
+    assertFalse(trySubmit(async3, "waiting"));
+
+    slow.release();
+    canceller.join(5000);
+    assertFalse(canceller.isAlive());
+    assertFalse(async.isRunning());
+    assertFalse(async.isDone());
+    async2.cancel();
+  }
+
+  private boolean trySubmit(AsyncOlapModel async) {
+    return trySubmit(async, "limited");
+  }
+
+  private boolean trySubmit(AsyncOlapModel async, String user) {
+    try {
+      async.submit(user);
+      return true;
+    } catch (OlapException e) {
+      return false;
+    }
+  }
+}
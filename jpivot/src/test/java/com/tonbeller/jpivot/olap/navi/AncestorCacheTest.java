@@ -0,0 +1,56 @@
+package com.tonbeller.jpivot.olap.navi;
+
+import junit.framework.TestCase;
+
+import com.tonbeller.jpivot.olap.model.Member;
+import com.tonbeller.jpivot.olap.model.Result;
+import com.tonbeller.jpivot.olap.model.impl.ResultImpl;
+import com.tonbeller.jpivot.test.olap.DimensionBuilder;
+import com.tonbeller.jpivot.test.olap.TestDimension;
+import com.tonbeller.jpivot.test.olap.TestHierarchy;
+import com.tonbeller.jpivot.test.olap.TestMember;
+import com.tonbeller.jpivot.test.olap.TestMemberTree;
+
+public class AncestorCacheTest extends TestCase {
+
+  static class CountingMemberTree extends TestMemberTree {
+    int count = 0;
+    public Member getParent(Member member) {
+      count += 1;
+      return super.getParent(member);
+    }
+  }
+
+  public void testAncestors() {
+    TestDimension dim = new DimensionBuilder().build("A", new String[] { "B", "C", "D"},
+        new int[] { 2, 3, 2});
+    TestMember root = ((TestHierarchy) dim.getHierarchies()[0]).getRootMembers()[0];
+    TestMember child = (TestMember) root.getChildMember().get(1);
+    TestMember grandChild = (TestMember) child.getChildMember().get(0);
+
+    CountingMemberTree tree = new CountingMemberTree();
+    AncestorCache cache = new AncestorCache(tree);
+    Member[] path = cache.getAncestors(grandChild);
+    assertEquals(3, path.length);
+    assertSame(grandChild, path[0]);
+    assertSame(child, path[1]);
+    assertSame(root, path[2]);
+    assertEquals(3, tree.count);
+
+    // the parents have been cached
+    assertSame(root, cache.getParent(child));
+    assertNull(cache.getParent(root));
+    assertSame(path, cache.getAncestors(grandChild));
+    cache.getAncestors((TestMember) child.getChildMember().get(1));
+    assertEquals(4, tree.count);
+  }
+
+  public void testInstance() {
+    TestMemberTree tree = new TestMemberTree();
+    Result r1 = new ResultImpl();
+    Result r2 = new ResultImpl();
+    assertSame(AncestorCache.instance(r1, tree), AncestorCache.instance(r1, tree));
+    assertNotSame(AncestorCache.instance(r1, tree), AncestorCache.instance(r2, tree));
+  }
+
+}
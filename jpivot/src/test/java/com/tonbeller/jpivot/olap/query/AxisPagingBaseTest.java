@@ -0,0 +1,137 @@
+package com.tonbeller.jpivot.olap.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.tonbeller.jpivot.olap.navi.PageInfo;
+import com.tonbeller.jpivot.test.olap.TestOlapModel;
+
+public class AxisPagingBaseTest extends TestCase {
+
+  public AxisPagingBaseTest(String arg0) {
+    super(arg0);
+  }
+
+  /**
+   * records the counts and the subsets instead of changing a query
+   */
+  static class TestPaging extends AxisPagingBase {
+    String query = "q1";
+    int rows = 250;
+    int nonEmptyRows = 120;
+    boolean nonEmpty = false;
+    int counts = 0;
+    List subsets = new ArrayList();
+
+    protected String getUnpagedQuery() {
+      return nonEmpty ? "non empty " + query : query;
+    }
+
+    protected boolean isNonEmptyRows() {
+      return nonEmpty;
+    }
+
+    protected int countRows(boolean nonEmpty) throws Exception {
+      ++counts;
+      if (rows < 0)
+        throw new IllegalStateException("count failed");
+      return nonEmpty ? nonEmptyRows : rows;
+    }
+
+    protected void addSubsetToRows(int start, int count, boolean nonEmpty) {
+      subsets.add(start + "," + count + (nonEmpty ? ",non empty" : ""));
+    }
+  }
+
+  private TestPaging createPaging(int pageSize) {
+    TestPaging paging = new TestPaging();
+    paging.setModel(new TestOlapModel());
+    paging.setPageSize(pageSize);
+    return paging;
+  }
+
+  public void testPages() {
+    TestPaging paging = createPaging(100);
+    paging.addPagingToQuery(true);
+    assertEquals("0,100", paging.subsets.get(0));
+    PageInfo page = paging.getPageInfo();
+    assertEquals(1, page.getPageNo());
+    assertEquals(3, page.getPageCount());
+    assertEquals("1", page.getFirstShort());
+    assertEquals("100", page.getLastShort());
+
+    paging.setPageIndex(2);
+    paging.addPagingToQuery(true);
+    assertEquals("200,100", paging.subsets.get(1));
+    page = paging.getPageInfo();
+    assertEquals("201", page.getFirstShort());
+    assertEquals("250", page.getLastShort());
+    // the rows are counted once per query
+    assertEquals(1, paging.counts);
+    assertEquals(250, paging.getRowCount());
+  }
+
+  public void testLastPage() {
+    TestPaging paging = createPaging(100);
+    paging.setPageIndex(Integer.MAX_VALUE);
+    paging.addPagingToQuery(true);
+    assertEquals("200,100", paging.subsets.get(0));
+
+    // the axis shrinks, e.g. after a collapse
+    paging.query = "q2";
+    paging.rows = 150;
+    paging.addPagingToQuery(true);
+    assertEquals("100,100", paging.subsets.get(1));
+    assertEquals(2, paging.counts);
+    assertEquals(1, paging.getPageIndex());
+  }
+
+  public void testNonEmpty() {
+    TestPaging paging = createPaging(100);
+    paging.nonEmpty = true;
+    paging.setPageIndex(Integer.MAX_VALUE);
+    paging.addPagingToQuery(true);
+    // the page is taken from the non empty rows
+    assertEquals("100,100,non empty", paging.subsets.get(0));
+    assertEquals(120, paging.getRowCount());
+    PageInfo page = paging.getPageInfo();
+    assertEquals(2, page.getPageCount());
+    assertEquals("120", page.getLastShort());
+
+    // NON EMPTY turned off, the rows are counted again
+    paging.nonEmpty = false;
+    paging.addPagingToQuery(true);
+    assertEquals("100,100", paging.subsets.get(1));
+    assertEquals(250, paging.getRowCount());
+    assertEquals(2, paging.counts);
+  }
+
+  public void testNotPaged() {
+    TestPaging paging = createPaging(0);
+    paging.addPagingToQuery(true);
+    assertNull(paging.getPageInfo());
+    assertEquals(0, paging.counts);
+
+    // a single page
+    paging = createPaging(300);
+    paging.addPagingToQuery(true);
+    assertNull(paging.getPageInfo());
+    assertTrue(paging.subsets.isEmpty());
+
+    // the rows depend on the result
+    paging = createPaging(100);
+    paging.addPagingToQuery(false);
+    assertNull(paging.getPageInfo());
+    assertEquals(0, paging.counts);
+
+    // the count query failed
+    paging = createPaging(100);
+    paging.rows = -1;
+    paging.addPagingToQuery(true);
+    assertNull(paging.getPageInfo());
+    assertTrue(paging.subsets.isEmpty());
+  }
+
+}
@@ -0,0 +1,111 @@
+package com.tonbeller.jpivot.olap.query;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import com.tonbeller.jpivot.olap.model.Cell;
+import com.tonbeller.jpivot.olap.model.impl.PropertyImpl;
+
+public class CellStoreTest extends TestCase {
+
+  public CellStoreTest(String arg0) {
+    super(arg0);
+  }
+
+  static class TestStore extends CellStore {
+    TestStore(int size) {
+      super(size, "(null)");
+    }
+
+    protected Cell createCell(int index) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  public void testValues() {
+    CellStore store = new TestStore(6);
+    store.setValue(0, new Double(1.5));
+    store.setValue(1, new Long(42));
+    store.setValue(2, new Integer(7));
+    store.setValue(3, new BigDecimal("1.25"));
+    store.setValue(4, "text");
+
+    assertEquals(new Double(1.5), store.getValue(0));
+    assertEquals(new Long(42), store.getValue(1));
+    assertEquals(new Integer(7), store.getValue(2));
+    assertEquals(new BigDecimal("1.25"), store.getValue(3));
+    assertEquals("text", store.getValue(4));
+    assertNull(store.getValue(5));
+    assertTrue(store.isNull(5));
+    assertFalse(store.isNull(4));
+    assertEquals(42d, store.getDoubleValue(1), 0);
+    assertTrue(Double.isNaN(store.getDoubleValue(4)));
+
+    store.setValue(4, null);
+    assertTrue(store.isNull(4));
+  }
+
+  public void testFormattedValues() {
+    CellStore store = new TestStore(4);
+    store.setFormattedValue(0, "1,000");
+    store.setFormattedValue(1, "2,000");
+    store.setFormattedValue(2, new String("1,000"));
+    assertEquals("1,000", store.getFormattedValue(0));
+    assertEquals("2,000", store.getFormattedValue(1));
+    assertEquals("1,000", store.getFormattedValue(2));
+    assertEquals("(null)", store.getFormattedValue(3));
+    assertEquals(2, store.getFormattedValueCount());
+  }
+
+  public void testPermute() {
+    CellStore store = new TestStore(3);
+    for (int i = 0; i < 3; i++) {
+      store.setValue(i, new Double(i));
+      store.setFormattedValue(i, "v" + i);
+    }
+    PropertyImpl prop = new PropertyImpl();
+    prop.setName("arrow");
+    prop.setValue("up");
+    store.addProperties(2, Collections.singletonList(prop));
+
+    store.permute(new int[] { 2, 0, 1});
+    assertEquals(new Double(2), store.getValue(0));
+    assertEquals("v0", store.getFormattedValue(1));
+    assertEquals(1, store.getProperties(0).size());
+    assertNull(store.getProperties(2));
+    assertEquals(2, store.getSourceOrdinal(0));
+
+    // a second permutation keeps track of the original ordinals
+    store.permute(new int[] { 1, 2, 0});
+    assertEquals(0, store.getSourceOrdinal(0));
+    assertEquals(1, store.getSourceOrdinal(1));
+    assertEquals(2, store.getSourceOrdinal(2));
+    assertEquals("v2", store.getFormattedValue(2));
+  }
+
+  public void testPermuteBeyondSize() {
+    // the cells 4 and 5 of the complete result were not kept
+    CellStore store = new TestStore(4);
+    for (int i = 0; i < 4; i++)
+      store.setValue(i, new Double(i));
+    store.permute(new int[] { 4, 5, 0, 1});
+    assertTrue(store.isNull(0));
+    assertTrue(store.isNull(1));
+    assertEquals("(null)", store.getFormattedValue(0));
+    assertEquals(4, store.getSourceOrdinal(0));
+    assertEquals(5, store.getSourceOrdinal(1));
+    assertEquals(new Double(0), store.getValue(2));
+    assertEquals(1, store.getSourceOrdinal(3));
+  }
+
+  public void testAddProperty() {
+    CellStore store = new TestStore(1);
+    store.addProperty(0, "style", "red");
+    store.addProperty(0, "STYLE", "green");
+    assertEquals(1, store.getProperties(0).size());
+    assertEquals("green", ((PropertyImpl) store.getProperties(0).get(0)).getValue());
+  }
+
+}
@@ -0,0 +1,198 @@
+package com.tonbeller.jpivot.olap.query;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.tonbeller.jpivot.olap.model.Axis;
+import com.tonbeller.jpivot.olap.model.Member;
+import com.tonbeller.jpivot.olap.model.OlapException;
+import com.tonbeller.jpivot.olap.model.impl.AxisImpl;
+import com.tonbeller.jpivot.olap.model.impl.LevelImpl;
+import com.tonbeller.jpivot.olap.model.impl.MemberImpl;
+
+/**
+ * Micro benchmark for ResultBase.hierarchize.
+ * Builds synthetic 2 and 3 dimensional results, whose row axis contains
+ * all product families followed by all items, and hierarchizes the rows.
+ * The cell rearrangement, that was used before (a list of cell ordinals
+ * per position and a copy of the cell list), is compared with the
+ * in place permutation on the same row permutation.
+ * <p>
+ * Run with <code>java com.tonbeller.jpivot.olap.query.HierarchizeBenchmark</code>
+ */
+public class HierarchizeBenchmark {
+
+  // columns, families, items per family, pages
+  static final int[][] SIZES = new int[][] { { 20, 100, 50, 1}, { 20, 400, 50, 1},
+      { 10, 100, 20, 10}, { 10, 200, 20, 20}};
+
+  public static void main(String[] args) {
+    run(false); // warm up
+    run(true);
+  }
+
+  private static void run(boolean print) {
+    for (int i = 0; i < SIZES.length; i++) {
+      int[] size = SIZES[i];
+      BenchResult result = createResult(size[0], size[1], size[2], size[3]);
+      List original = new ArrayList(result.getAxes()[1].getPositions());
+
+      long t0 = System.currentTimeMillis();
+      result.hierarchize(1);
+      long hierarchized = System.currentTimeMillis() - t0;
+
+      // the permutation of the rows, that hierarchize has computed
+      List rows = result.getAxes()[1].getPositions();
+      int[] perm = new int[rows.size()];
+      for (int j = 0; j < perm.length; j++)
+        perm[j] = original.indexOf(rows.get(j));
+
+      List cells = createCells(result.getCells().size());
+      t0 = System.currentTimeMillis();
+      ResultBase.permute(cells, ResultBase.cellSource(perm, size[0], cells.size()));
+      long permuted = System.currentTimeMillis() - t0;
+
+      List legacyCells = createCells(cells.size());
+      t0 = System.currentTimeMillis();
+      legacyRearrange(legacyCells, size[0], rows.size(), size[3], perm);
+      long legacy = System.currentTimeMillis() - t0;
+
+      if (print)
+        System.out.println((size[3] > 1 ? "3D" : "2D") + " cells=" + cells.size() + " rows="
+            + rows.size() + " hierarchize incl. sort(ms)=" + hierarchized
+            + " cell permutation(ms)=" + permuted + " legacy cell rearrangement(ms)=" + legacy
+            + (cells.equals(result.getCells()) && legacyCells.equals(cells) ? ""
+                : " RESULTS DIFFER"));
+    }
+  }
+
+  /**
+   * the cell rearrangement of the former hierarchize
+   */
+  private static void legacyRearrange(List cells, int nCols, int nRows, int nPages, int[] perm) {
+    // cell ordinals for every row
+    List[] cellLists = new List[nRows];
+    for (int row = 0; row < nRows; row++) {
+      cellLists[row] = new ArrayList();
+      for (int page = 0; page < nPages; page++)
+        for (int col = 0; col < nCols; col++)
+          cellLists[row].add(new Integer((page * nRows + row) * nCols + col));
+    }
+    int[] source = new int[cells.size()];
+    for (int row = 0; row < nRows; row++) {
+      Iterator it = cellLists[perm[row]].iterator();
+      for (int page = 0; page < nPages; page++)
+        for (int col = 0; col < nCols; col++)
+          source[(page * nRows + row) * nCols + col] = ((Integer) it.next()).intValue();
+    }
+    List oldCells = new ArrayList(cells);
+    for (int i = 0; i < source.length; i++)
+      cells.set(i, oldCells.get(source[i]));
+  }
+
+  private static BenchResult createResult(int nCols, int nFamilies, int nItems, int nPages) {
+    BenchLevel[] levels = new BenchLevel[] { new BenchLevel(0), new BenchLevel(1)};
+    BenchResult result = new BenchResult();
+
+    AxisImpl cols = new AxisImpl();
+    for (int i = 0; i < nCols; i++)
+      cols.addPosition(new BenchPosition(new BenchMember("[M" + i + "]", null, levels[0])));
+    result.add(cols);
+
+    // families first, then the items, as Union(families, Descendants(...)) returns
+    AxisImpl rows = new AxisImpl();
+    BenchMember[] families = new BenchMember[nFamilies];
+    for (int i = 0; i < nFamilies; i++) {
+      families[i] = new BenchMember("[F" + i + "]", null, levels[0]);
+      rows.addPosition(new BenchPosition(families[i]));
+    }
+    for (int i = 0; i < nFamilies; i++)
+      for (int j = 0; j < nItems; j++)
+        rows.addPosition(new BenchPosition(new BenchMember("[F" + i + "].[I" + j + "]",
+            families[i], levels[1])));
+    result.add(rows);
+
+    if (nPages > 1) {
+      AxisImpl pages = new AxisImpl();
+      for (int i = 0; i < nPages; i++)
+        pages.addPosition(new BenchPosition(new BenchMember("[P" + i + "]", null, levels[0])));
+      result.add(pages);
+    }
+
+    result.getCells().addAll(createCells(nCols * rows.getPositions().size() * nPages));
+    return result;
+  }
+
+  private static List createCells(int n) {
+    List cells = new ArrayList(n);
+    for (int i = 0; i < n; i++)
+      cells.add(new Integer(i));
+    return cells;
+  }
+
+  static class BenchResult extends ResultBase {
+    BenchResult() {
+      super(null);
+    }
+
+    void add(Axis axis) {
+      axesList.add(axis);
+    }
+
+    public Axis[] getAxes() {
+      return (Axis[]) axesList.toArray(new Axis[axesList.size()]);
+    }
+  }
+
+  static class BenchPosition extends PositionBase {
+    BenchPosition(Member member) {
+      members = new Member[] { member};
+    }
+  }
+
+  static class BenchLevel extends LevelImpl implements MDXLevel {
+    int depth;
+
+    BenchLevel(int depth) {
+      this.depth = depth;
+    }
+
+    public int getDepth() {
+      return depth;
+    }
+
+    public boolean isAll() {
+      return false;
+    }
+
+    public boolean hasChildLevel() {
+      return depth == 0;
+    }
+  }
+
+  static class BenchMember extends MemberImpl implements MDXMember {
+    String uniqueName;
+    BenchMember parent;
+
+    BenchMember(String uniqueName, BenchMember parent, BenchLevel level) {
+      this.uniqueName = uniqueName;
+      this.parent = parent;
+      setLevel(level);
+      setLabel(uniqueName);
+    }
+
+    public String getUniqueName() {
+      return uniqueName;
+    }
+
+    public Member getParent() throws OlapException {
+      return parent;
+    }
+
+    public String getParentUniqueName() {
+      return parent == null ? null : parent.getUniqueName();
+    }
+  }
+
+} // HierarchizeBenchmark
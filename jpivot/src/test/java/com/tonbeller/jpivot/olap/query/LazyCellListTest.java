@@ -0,0 +1,91 @@
+package com.tonbeller.jpivot.olap.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class LazyCellListTest extends TestCase {
+
+  public LazyCellListTest(String arg0) {
+    super(arg0);
+  }
+
+  /**
+   * the cells are the strings "c" + ordinal, every creation is recorded
+   */
+  static class TestList extends LazyCellList {
+    List created = new ArrayList();
+
+    TestList(int size, int cacheSize) {
+      super(size, cacheSize);
+    }
+
+    protected Object createCell(int ordinal) {
+      created.add(new Integer(ordinal));
+      return new String("c" + ordinal);
+    }
+  }
+
+  public void testGet() {
+    TestList list = new TestList(5, 10);
+    assertEquals(5, list.size());
+    assertEquals("c3", list.get(3));
+    assertSame(list.get(3), list.get(3));
+    assertEquals(1, list.created.size());
+    try {
+      list.get(5);
+      fail("IndexOutOfBoundsException expected");
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+
+  public void testEviction() {
+    TestList list = new TestList(10, 3);
+    Object c0 = list.get(0);
+    list.get(1);
+    list.get(2);
+    // 0 is the most recently used
+    list.get(0);
+    list.get(3);
+    assertEquals(3, list.getCacheSize());
+    assertEquals(4, list.created.size());
+    assertSame(c0, list.get(0));
+
+    // 1 was evicted and is created again
+    list.get(1);
+    assertEquals(5, list.created.size());
+    assertEquals(new Integer(1), list.created.get(4));
+    assertEquals(3, list.getCacheSize());
+  }
+
+  public void testPermute() {
+    TestList list = new TestList(3, 10);
+    list.get(0);
+    list.permute(new int[] { 2, 0, 1});
+    assertEquals(2, list.getSourceOrdinal(0));
+    assertEquals(0, list.getSourceOrdinal(1));
+    // the cache is cleared
+    assertEquals(0, list.getCacheSize());
+    assertEquals("c2", list.get(0));
+    assertEquals("c1", list.get(2));
+
+    // a second permutation keeps track of the original ordinals
+    list.permute(new int[] { 1, 2, 0});
+    assertEquals(0, list.getSourceOrdinal(0));
+    assertEquals(1, list.getSourceOrdinal(1));
+    assertEquals(2, list.getSourceOrdinal(2));
+    assertEquals("c0", list.get(0));
+  }
+
+  public void testPermuteBeyondSize() {
+    // the cell limit kept 4 of 6 cells
+    TestList list = new TestList(4, 10);
+    list.permute(new int[] { 4, 5, 0, 1});
+    assertEquals(4, list.getSourceOrdinal(0));
+    assertEquals("c5", list.get(1));
+    assertEquals("c1", list.get(3));
+  }
+
+}
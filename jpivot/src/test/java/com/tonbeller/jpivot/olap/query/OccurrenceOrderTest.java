@@ -0,0 +1,121 @@
+package com.tonbeller.jpivot.olap.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * the order of the member tree children, compared to the previous
+ * order by <code>List.indexOf</code>
+ */
+public class OccurrenceOrderTest extends TestCase {
+
+  public OccurrenceOrderTest(String arg0) {
+    super(arg0);
+  }
+
+  public void testOccurrence() {
+    String[] members = { "a", "b", "c", "d", "e"};
+    OccurrenceOrder order = createOrder(new String[] { "d", "b", "d", "a"});
+    order.sort(members);
+    assertEquals(Arrays.asList(new String[] { "d", "b", "a", "c", "e"}), Arrays.asList(members));
+  }
+
+  public void testNotInResult() {
+    // children 0..19, the result contains 15, 3 and 8 only
+    String[] members = new String[20];
+    for (int i = 0; i < members.length; i++)
+      members[i] = "m" + i;
+    OccurrenceOrder order = createOrder(new String[] { "m15", "m3", "m8"});
+    order.sort(members);
+    assertEquals("m15", members[0]);
+    assertEquals("m3", members[1]);
+    assertEquals("m8", members[2]);
+    // the others keep their original order
+    int prev = -1;
+    for (int i = 3; i < members.length; i++) {
+      int k = Integer.parseInt(members[i].substring(1));
+      assertTrue(k > prev);
+      assertTrue(k != 15 && k != 3 && k != 8);
+      prev = k;
+    }
+  }
+
+  public void testSameAsPrevious() {
+    Random random = new Random(4711);
+    for (int n = 0; n < 50; n++) {
+      List names = new ArrayList();
+      for (int i = 0; i < 30; i++)
+        names.add("m" + i);
+      String[] members = (String[]) names.toArray(new String[0]);
+      Collections.shuffle(names, random);
+      // every child occurs, some of them twice
+      List occurrence = new ArrayList(names);
+      occurrence.addAll(names.subList(0, 10));
+      Collections.shuffle(occurrence.subList(20, occurrence.size()), random);
+
+      String[] expected = (String[]) members.clone();
+      Arrays.sort(expected, previousComparator(occurrence));
+      OccurrenceOrder order = createOrder((String[]) occurrence.toArray(new String[0]));
+      order.sort(members);
+      assertEquals(Arrays.asList(expected), Arrays.asList(members));
+    }
+  }
+
+  public void testSameAsPreviousNotInResult() {
+    // a single child missing, the previous comparator is consistent then
+    String[] members = { "a", "b", "c", "d", "e"};
+    List occurrence = Arrays.asList(new String[] { "e", "a", "d", "b"});
+    String[] expected = (String[]) members.clone();
+    Arrays.sort(expected, previousComparator(occurrence));
+    OccurrenceOrder order = createOrder((String[]) occurrence.toArray(new String[0]));
+    order.sort(members);
+    assertEquals(Arrays.asList(expected), Arrays.asList(members));
+    assertEquals("c", members[4]);
+  }
+
+  public void testEmpty() {
+    OccurrenceOrder order = new OccurrenceOrder();
+    assertTrue(order.isEmpty());
+    String[] members = { "c", "a", "b"};
+    order.sort(members);
+    assertEquals(Arrays.asList(new String[] { "c", "a", "b"}), Arrays.asList(members));
+    order.add("a");
+    assertFalse(order.isEmpty());
+  }
+
+  private static OccurrenceOrder createOrder(String[] occurrence) {
+    OccurrenceOrder order = new OccurrenceOrder();
+    for (int i = 0; i < occurrence.length; i++)
+      order.add(occurrence[i]);
+    return order;
+  }
+
+  /**
+   * the comparator, that the member trees used before
+   */
+  private static Comparator previousComparator(final List visibleMembers) {
+    final List distinct = new ArrayList();
+    for (int i = 0; i < visibleMembers.size(); i++) {
+      if (!distinct.contains(visibleMembers.get(i)))
+        distinct.add(visibleMembers.get(i));
+    }
+    return new Comparator() {
+      public int compare(Object arg0, Object arg1) {
+        int index1 = distinct.indexOf(arg0);
+        int index2 = distinct.indexOf(arg1);
+        if (index2 == -1)
+          return -1; // m2 is higher, unvisible to the end
+        if (index1 == -1)
+          return 1; // m1 is higher, unvisible to the end
+        return index1 - index2;
+      }
+    };
+  }
+
+}
@@ -0,0 +1,176 @@
+package com.tonbeller.jpivot.olap.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.tonbeller.jpivot.olap.model.Member;
+import com.tonbeller.jpivot.olap.model.impl.AxisImpl;
+import com.tonbeller.jpivot.olap.query.HierarchizeBenchmark.BenchLevel;
+import com.tonbeller.jpivot.olap.query.HierarchizeBenchmark.BenchMember;
+import com.tonbeller.jpivot.olap.query.HierarchizeBenchmark.BenchPosition;
+import com.tonbeller.jpivot.olap.query.HierarchizeBenchmark.BenchResult;
+
+public class ResultBaseTest extends TestCase {
+
+  BenchLevel[] levels = new BenchLevel[] { new BenchLevel(0), new BenchLevel(1),
+      new BenchLevel(2)};
+
+  public ResultBaseTest(String arg0) {
+    super(arg0);
+  }
+
+  public void testCellSource() {
+    // 2 columns, rows 0 1 2 become 2 0 1
+    int[] source = ResultBase.cellSource(new int[] { 2, 0, 1}, 2, 6);
+    assertTrue(Arrays.equals(new int[] { 4, 5, 0, 1, 2, 3}, source));
+  }
+
+  public void testCellSourceTruncated() {
+    // the cell limit kept the first 2 of 3 rows
+    int[] source = ResultBase.cellSource(new int[] { 2, 0, 1}, 2, 4);
+    assertTrue(Arrays.equals(new int[] { 4, 5, 0, 1}, source));
+    // 2 pages of 3 rows, 1 cell of the second page kept
+    source = ResultBase.cellSource(new int[] { 2, 0, 1}, 1, 4);
+    assertTrue(Arrays.equals(new int[] { 2, 0, 1, 5}, source));
+  }
+
+  public void testPermuteTruncated() {
+    List cells = new ArrayList(Arrays.asList(new Object[] { "c0", "c1", "c2", "c3"}));
+    ResultBase.permute(cells, new int[] { 4, 5, 0, 1});
+    assertEquals(Arrays.asList(new Object[] { null, null, "c0", "c1"}), cells);
+  }
+
+  public void testHierarchizeTruncated() {
+    final List missing = new ArrayList();
+    BenchResult result = new BenchResult() {
+      protected Object createMissingCell(int ordinal) {
+        missing.add(new Integer(ordinal));
+        return "missing" + ordinal;
+      }
+    };
+    AxisImpl cols = new AxisImpl();
+    cols.addPosition(new BenchPosition(new BenchMember("[M0]", null, levels[0])));
+    cols.addPosition(new BenchPosition(new BenchMember("[M1]", null, levels[0])));
+    result.add(cols);
+    BenchMember f0 = new BenchMember("[F0]", null, levels[0]);
+    BenchMember f1 = new BenchMember("[F1]", null, levels[0]);
+    result.add(createAxis(new Member[] { f0, f1, new BenchMember("[F0].[I0]", f0, levels[1]),
+        new BenchMember("[F1].[I0]", f1, levels[1])}));
+    // the cell limit kept the first 2 of 4 rows
+    for (int i = 0; i < 4; i++)
+      result.getCells().add("c" + i);
+
+    result.hierarchize(1);
+
+    assertEquals("[F0]", label(result, 0));
+    assertEquals("[F0].[I0]", label(result, 1));
+    assertEquals("[F1]", label(result, 2));
+    assertEquals("[F1].[I0]", label(result, 3));
+    assertEquals(Arrays.asList(new Object[] { "c0", "c1", "missing4", "missing5"}), result
+        .getCells());
+    assertEquals(2, missing.size());
+  }
+
+  /**
+   * the parent of a position is linked by a map of the first position of
+   * every member, the former implementation scanned the positions of the
+   * next level. Both must link the same parents.
+   */
+  public void testParentLinks() {
+    BenchMember f0 = new BenchMember("[F0]", null, levels[0]);
+    BenchMember f1 = new BenchMember("[F1]", null, levels[0]);
+    BenchMember f0i0 = new BenchMember("[F0].[I0]", f0, levels[1]);
+    BenchMember f0i1 = new BenchMember("[F0].[I1]", f0, levels[1]);
+    BenchMember f1i0 = new BenchMember("[F1].[I0]", f1, levels[1]);
+    BenchMember f1i0s0 = new BenchMember("[F1].[I0].[S0]", f1i0, levels[2]);
+    // F0 occurs twice, [F0].[I1] has no position of its own
+    BenchMember f0i1s0 = new BenchMember("[F0].[I1].[S0]", f0i1, levels[2]);
+    BenchResult result = new BenchResult();
+    result.add(createAxis(new Member[] { f1i0s0, f0, f0i0, f1, f0, f1i0, f0i1s0, f1i0s0}));
+    List positions = result.getAxes()[0].getPositions();
+    List original = new ArrayList(positions);
+
+    result.hierarchize(0);
+
+    Map parents = new HashMap();
+    for (Iterator it = positions.iterator(); it.hasNext();) {
+      PositionBase pos = (PositionBase) it.next();
+      parents.put(pos, pos.parent);
+    }
+    // parents of the first position of F0 and F1, not the second F0
+    assertSame(original.get(1), parents.get(original.get(2)));
+    assertSame(original.get(3), parents.get(original.get(5)));
+    assertSame(original.get(5), parents.get(original.get(0)));
+    assertSame(original.get(5), parents.get(original.get(7)));
+    assertNull(parents.get(original.get(4)));
+    assertNull(parents.get(original.get(6)));
+
+    legacyLinkParents(positions);
+    for (Iterator it = positions.iterator(); it.hasNext();) {
+      PositionBase pos = (PositionBase) it.next();
+      assertSame(pos.getMembers()[0].getLabel(), parents.get(pos), pos.parent);
+    }
+  }
+
+  /**
+   * the parent linking of the former sortPosList
+   */
+  private void legacyLinkParents(List positions) {
+    List posList = new ArrayList(positions);
+    Collections.sort(posList, new Comparator() {
+      public int compare(Object o1, Object o2) {
+        PositionBase pos1 = (PositionBase) o1;
+        PositionBase pos2 = (PositionBase) o2;
+        int level1 = ((MDXLevel) pos1.getMembers()[0].getLevel()).getDepth();
+        int level2 = ((MDXLevel) pos2.getMembers()[0].getLevel()).getDepth();
+        if (level1 == level2)
+          return pos1.number - pos2.number;
+        return level1 - level2;
+      }
+    });
+    for (Iterator it = posList.iterator(); it.hasNext();)
+      ((PositionBase) it.next()).parent = null;
+    int i = 0;
+    for (Iterator iter = posList.iterator(); iter.hasNext(); i++) {
+      PositionBase posb = (PositionBase) iter.next();
+      MDXMember m = (MDXMember) posb.getMembers()[0];
+      int iLevel = ((MDXLevel) m.getLevel()).getDepth();
+      ListIterator lit = posList.listIterator(i + 1);
+      while (lit.hasNext()) {
+        PositionBase posb2 = (PositionBase) lit.next();
+        if (posb2.parent != null)
+          continue;
+        MDXMember m2 = (MDXMember) posb2.getMembers()[0];
+        int iLevel2 = ((MDXLevel) m2.getLevel()).getDepth();
+        if (iLevel2 <= iLevel)
+          continue;
+        if (iLevel2 > iLevel + 1)
+          break;
+        if (m.getUniqueName().equals(m2.getParentUniqueName()))
+          posb2.parent = posb;
+      }
+    }
+  }
+
+  private AxisImpl createAxis(Member[] members) {
+    AxisImpl axis = new AxisImpl();
+    for (int i = 0; i < members.length; i++)
+      axis.addPosition(new BenchPosition(members[i]));
+    return axis;
+  }
+
+  private String label(BenchResult result, int row) {
+    PositionBase pos = (PositionBase) result.getAxes()[1].getPositions().get(row);
+    return pos.getMembers()[0].getLabel();
+  }
+
+}
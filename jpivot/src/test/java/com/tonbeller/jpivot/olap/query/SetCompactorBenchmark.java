@@ -0,0 +1,83 @@
+package com.tonbeller.jpivot.olap.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.tonbeller.jpivot.olap.mdxparse.Exp;
+import com.tonbeller.jpivot.olap.mdxparse.FunCall;
+import com.tonbeller.jpivot.olap.model.OlapException;
+import com.tonbeller.jpivot.xmla.OfflineModel;
+import com.tonbeller.jpivot.xmla.XMLA_Level;
+import com.tonbeller.jpivot.xmla.XMLA_Member;
+import com.tonbeller.jpivot.xmla.XMLA_QuaxUti;
+
+/**
+ * Micro benchmark for the MDX compaction.
+ * Builds the sets, that Quax generates for a large product dimension,
+ * and compares the size of the MDX before and after compaction.
+ * The time of the compaction is measured, the execution time of the
+ * query depends on the OLAP server and is not part of this benchmark.
+ * <p>
+ * Run with <code>java com.tonbeller.jpivot.olap.query.SetCompactorBenchmark</code>
+ */
+public class SetCompactorBenchmark {
+
+  static final int[] FAMILIES = new int[] { 20, 100, 500 };
+  static final int ITEMS = 50;
+
+  public static void main(String[] args) throws OlapException {
+    run(false); // warm up
+    run(true);
+  }
+
+  private static void run(boolean print) throws OlapException {
+    for (int i = 0; i < FAMILIES.length; i++) {
+      OfflineModel model = new OfflineModel();
+      XMLA_Level[] levels = model.createLevels("[Product]", 3);
+      XMLA_Member all = model.createMember("[Product].[All]", levels[0], null);
+      XMLA_Member[][] items = new XMLA_Member[FAMILIES[i]][ITEMS];
+      for (int j = 0; j < FAMILIES[i]; j++) {
+        XMLA_Member family = model.createMember("[Product].[All].[F" + j + "]", levels[1], all);
+        for (int k = 0; k < ITEMS; k++)
+          items[j][k] = model.createMember("[Product].[All].[F" + j + "].[I" + k + "]",
+              levels[2], family);
+      }
+
+      // Level.Members after a collapse of the first family
+      List members = new ArrayList();
+      for (int j = 1; j < items.length; j++)
+        members.addAll(Arrays.asList(items[j]));
+      measure(print, "collapsed level", set(members));
+
+      // every family expanded, one item removed from each
+      Exp exp = null;
+      for (int j = 0; j < items.length; j++) {
+        members = new ArrayList(Arrays.asList(items[j]));
+        members.remove(j % ITEMS);
+        Exp set = set(members);
+        exp = exp == null ? set : new FunCall("Union", new Exp[] { exp, set}, FunCall.TypeFunction);
+      }
+      measure(print, "union of members", exp);
+    }
+  }
+
+  private static void measure(boolean print, String name, Exp exp) throws OlapException {
+    long t0 = System.currentTimeMillis();
+    Exp compact = (Exp) new SetCompactor(new XMLA_QuaxUti()).compact(exp);
+    long compacted = System.currentTimeMillis() - t0;
+    String mdx = exp.toMdx();
+    String compactMdx = compact.toMdx();
+    boolean equal = SetCompactorTest.evaluate(exp).equals(SetCompactorTest.evaluate(compact));
+    if (print)
+      System.out.println(name + ": mdx length=" + mdx.length() + " compacted mdx length="
+          + compactMdx.length() + " compaction(ms)=" + compacted
+          + (equal ? "" : " RESULTS DIFFER"));
+  }
+
+  private static Exp set(List members) {
+    return new FunCall("{}", (Exp[]) members.toArray(new Exp[members.size()]),
+        FunCall.TypeBraces);
+  }
+
+} // SetCompactorBenchmark
@@ -0,0 +1,226 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * Copyright (C) 2003-2004 TONBELLER AG.
+ * All Rights Reserved.
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ *
+ *
+ */
+package com.tonbeller.jpivot.olap.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.tonbeller.jpivot.olap.mdxparse.Exp;
+import com.tonbeller.jpivot.olap.mdxparse.FunCall;
+import com.tonbeller.jpivot.olap.model.OlapException;
+import com.tonbeller.jpivot.util.TreeNode;
+import com.tonbeller.jpivot.xmla.OfflineModel;
+import com.tonbeller.jpivot.xmla.XMLA_Hierarchy;
+import com.tonbeller.jpivot.xmla.XMLA_Level;
+import com.tonbeller.jpivot.xmla.XMLA_Member;
+import com.tonbeller.jpivot.xmla.XMLA_QuaxUti;
+
+/**
+ * compacts the sets of a product hierarchy with families and items.
+ * The members are created by the offline XMLA model.
+ */
+public class SetCompactorTest extends TestCase {
+
+  static final int FAMILIES = 5;
+  static final int ITEMS = 10;
+
+  XMLA_Member all;
+  XMLA_Member[] families;
+  XMLA_Member[][] items;
+  XMLA_QuaxUti uti = new XMLA_QuaxUti();
+
+  public SetCompactorTest(String arg0) {
+    super(arg0);
+  }
+
+  protected void setUp() throws Exception {
+    OfflineModel model = new OfflineModel();
+    XMLA_Level[] levels = model.createLevels("[Product]", 3);
+    all = model.createMember("[Product].[All]", levels[0], null);
+    families = new XMLA_Member[FAMILIES];
+    items = new XMLA_Member[FAMILIES][ITEMS];
+    for (int i = 0; i < FAMILIES; i++) {
+      families[i] = model.createMember("[Product].[All].[F" + i + "]", levels[1], all);
+      for (int j = 0; j < ITEMS; j++)
+        items[i][j] = model.createMember("[Product].[All].[F" + i + "].[I" + j + "]",
+            levels[2], families[i]);
+    }
+  }
+
+  public void testChildren() throws Exception {
+    Exp set = set(items[1], 0, ITEMS);
+    Exp compact = check(set);
+    assertEquals("[Product].[All].[F1].Children", compact.toMdx());
+  }
+
+  public void testExcept() throws Exception {
+    List members = new ArrayList(Arrays.asList(items[2]));
+    members.remove(7);
+    members.remove(3);
+    Exp compact = check(set(members));
+    assertEquals("Except([Product].[All].[F2].Children, {[Product].[All].[F2].[I3], "
+        + "[Product].[All].[F2].[I7]})", compact.toMdx());
+  }
+
+  public void testRange() throws Exception {
+    List members = new ArrayList();
+    members.add(families[4]);
+    members.addAll(Arrays.asList(items[3]).subList(2, 7));
+    members.add(items[3][0]);
+    Exp compact = check(set(members));
+    assertEquals("{[Product].[All].[F4], [Product].[All].[F3].[I2] : [Product].[All].[F3].[I6], "
+        + "[Product].[All].[F3].[I0]}", compact.toMdx());
+  }
+
+  public void testUnion() throws Exception {
+    Exp union = union(set(items[0], 0, 4), set(items[0], 2, ITEMS));
+    union = union(union, children(families[1]));
+    union = union(union, set(items[2], 0, 1));
+    Exp compact = check(union);
+    assertEquals("Union([Product].[All].[F0].Children, Union([Product].[All].[F1].Children, "
+        + "{[Product].[All].[F2].[I0]}))", compact.toMdx());
+  }
+
+  public void testNotCompacted() throws Exception {
+    Exp set = new FunCall("{}", new Exp[] { items[0][3], items[0][1], items[0][2]},
+        FunCall.TypeBraces);
+    assertSame(set, new SetCompactor(uti).compact(set));
+    set = set(items[0], 4, 6);
+    assertSame(set, new SetCompactor(uti).compact(set));
+  }
+
+  /**
+   * random sets and unions must return the same members
+   */
+  public void testRandom() throws Exception {
+    Random random = new Random(4711);
+    for (int i = 0; i < 200; i++) {
+      Exp exp = null;
+      int nSets = 1 + random.nextInt(4);
+      for (int j = 0; j < nSets; j++) {
+        Exp set;
+        if (random.nextInt(5) == 0)
+          set = children(families[random.nextInt(FAMILIES)]);
+        else {
+          List members = new ArrayList();
+          int n = 1 + random.nextInt(2 * ITEMS);
+          for (int k = 0; k < n; k++) {
+            XMLA_Member[] siblings = random.nextInt(8) == 0 ? families : items[random
+                .nextInt(FAMILIES)];
+            members.add(siblings[random.nextInt(siblings.length)]);
+          }
+          set = set(members);
+        }
+        exp = exp == null ? set : union(exp, set);
+      }
+      check(exp);
+    }
+  }
+
+  public void testExpGenerator() throws Exception {
+    TreeNode root = new TreeNode(null);
+    for (int i = 0; i < ITEMS; i++)
+      root.addChildNode(new TreeNode(items[0][i]));
+    root.addChildNode(new TreeNode(children(families[1])));
+    root.addChildNode(new TreeNode(items[2][5]));
+
+    ExpGenerator generator = new ExpGenerator(uti);
+    generator.init(root, new XMLA_Hierarchy[] { (XMLA_Hierarchy) all.getHierarchy()});
+    Exp exp = (Exp) generator.genExp();
+    assertEquals("Union([Product].[All].[F0].Children, Union([Product].[All].[F1].Children, "
+        + "{[Product].[All].[F2].[I5]}))", exp.toMdx());
+
+    System.setProperty(SetCompactor.COMPACT_PROP, "false");
+    try {
+      generator = new ExpGenerator(uti);
+      generator.init(root, new XMLA_Hierarchy[] { (XMLA_Hierarchy) all.getHierarchy()});
+      Exp uncompacted = (Exp) generator.genExp();
+      assertEquals(evaluate(uncompacted), evaluate(exp));
+      assertTrue(exp.toMdx().length() < uncompacted.toMdx().length());
+    } finally {
+      System.getProperties().remove(SetCompactor.COMPACT_PROP);
+    }
+  }
+
+  /**
+   * compacts exp and asserts, that the result has the same members
+   */
+  private Exp check(Exp exp) throws OlapException {
+    Exp compact = (Exp) new SetCompactor(uti).compact(exp);
+    assertEquals(exp.toMdx(), evaluate(exp), evaluate(compact));
+    assertTrue(compact.toMdx().length() <= exp.toMdx().length());
+    return compact;
+  }
+
+  /**
+   * evaluates the set functions, that are generated by Quax and SetCompactor
+   * @return the unique names of the members
+   */
+  static List evaluate(Exp exp) throws OlapException {
+    List list = new ArrayList();
+    if (exp instanceof XMLA_Member) {
+      list.add(((XMLA_Member) exp).getUniqueName());
+      return list;
+    }
+    FunCall f = (FunCall) exp;
+    Exp[] args = f.getArgs();
+    if (f.isCallTo("{}")) {
+      for (int i = 0; i < args.length; i++)
+        list.addAll(evaluate(args[i]));
+    } else if (f.isCallTo("Children")) {
+      XMLA_Member[] children = ((XMLA_Member) args[0]).getChildren();
+      for (int i = 0; i < children.length; i++)
+        list.add(children[i].getUniqueName());
+    } else if (f.isCallTo(":")) {
+      XMLA_Member first = (XMLA_Member) args[0];
+      XMLA_Member last = (XMLA_Member) args[1];
+      List siblings = evaluate(new FunCall("Children", new Exp[] { (XMLA_Member) first
+          .getParent()}, FunCall.TypeProperty));
+      list.addAll(siblings.subList(siblings.indexOf(first.getUniqueName()), siblings
+          .indexOf(last.getUniqueName()) + 1));
+    } else if (f.isCallTo("Except")) {
+      list.addAll(evaluate(args[0]));
+      list.removeAll(evaluate(args[1]));
+    } else if (f.isCallTo("Union")) {
+      Set union = new LinkedHashSet(evaluate(args[0]));
+      union.addAll(evaluate(args[1]));
+      list.addAll(union);
+    } else
+      fail("unexpected function " + f.getFunction());
+    return list;
+  }
+
+  private Exp set(XMLA_Member[] members, int from, int to) {
+    return set(Arrays.asList(members).subList(from, to));
+  }
+
+  private Exp set(List members) {
+    return new FunCall("{}", (Exp[]) members.toArray(new Exp[members.size()]),
+        FunCall.TypeBraces);
+  }
+
+  private Exp union(Exp set1, Exp set2) {
+    return new FunCall("Union", new Exp[] { set1, set2}, FunCall.TypeFunction);
+  }
+
+  private Exp children(XMLA_Member member) {
+    return new FunCall("Children", new Exp[] { member}, FunCall.TypeProperty);
+  }
+
+}
@@ -0,0 +1,72 @@
+package com.tonbeller.jpivot.print;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import junit.framework.TestCase;
+
+public class RowWriterTest extends TestCase {
+
+  public RowWriterTest(String name) {
+    super(name);
+  }
+
+  public void testCsv() throws Exception {
+    StringWriter sw = new StringWriter();
+    CsvRowWriter w = new CsvRowWriter(sw, ',');
+    w.writeHeader(new String[] { "a", "b,c"});
+    w.writeRow(new Object[] { "say \"hi\"", null});
+    w.writeRow(new Object[] { new Integer(1), "x\ny"});
+    w.close();
+    assertEquals("a,\"b,c\"\r\n\"say \"\"hi\"\"\",\r\n1,\"x\ny\"\r\n", sw.toString());
+  }
+
+  public void testXlsx() throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    XlsxRowWriter w = new XlsxRowWriter(bos, 3);
+    w.writeHeader(new String[] { "name", "value"});
+    for (int i = 0; i < 5; i++)
+      w.writeRow(new Object[] { "<r" + i + ">", new Double(i)});
+    w.close();
+
+    Map entries = readZip(bos.toByteArray());
+    // header + 2 rows per sheet
+    assertNotNull(entries.get("xl/worksheets/sheet3.xml"));
+    assertNull(entries.get("xl/worksheets/sheet4.xml"));
+    String sheet1 = (String) entries.get("xl/worksheets/sheet1.xml");
+    assertTrue(sheet1.indexOf("<t xml:space=\"preserve\">name</t>") > 0);
+    assertTrue(sheet1.indexOf("&lt;r1&gt;") > 0);
+    assertTrue(sheet1.indexOf("<v>1.0</v>") > 0);
+    String sheet3 = (String) entries.get("xl/worksheets/sheet3.xml");
+    assertTrue(sheet3.indexOf("name") > 0);
+    assertTrue(sheet3.indexOf("&lt;r4&gt;") > 0);
+    String workbook = (String) entries.get("xl/workbook.xml");
+    assertTrue(workbook.indexOf("r:id=\"rId3\"") > 0);
+    assertTrue(((String) entries.get("[Content_Types].xml")).indexOf("/xl/worksheets/sheet3.xml") > 0);
+    assertNotNull(entries.get("_rels/.rels"));
+    assertNotNull(entries.get("xl/_rels/workbook.xml.rels"));
+  }
+
+  private Map readZip(byte[] bytes) throws Exception {
+    Map entries = new HashMap();
+    ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(bytes));
+    ZipEntry entry;
+    while ((entry = zis.getNextEntry()) != null) {
+      Reader r = new InputStreamReader(zis, "UTF-8");
+      StringWriter sw = new StringWriter();
+      char[] buf = new char[1024];
+      int n;
+      while ((n = r.read(buf)) > 0)
+        sw.write(buf, 0, n);
+      entries.put(entry.getName(), sw.toString());
+    }
+    return entries;
+  }
+}
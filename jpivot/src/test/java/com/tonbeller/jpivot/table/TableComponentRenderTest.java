@@ -0,0 +1,210 @@
+package com.tonbeller.jpivot.table;
+
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Node;
+
+import com.tonbeller.jpivot.core.ModelFactory;
+import com.tonbeller.jpivot.olap.model.Member;
+import com.tonbeller.jpivot.olap.model.Position;
+import com.tonbeller.jpivot.olap.navi.DrillExpandMember;
+import com.tonbeller.jpivot.tags.TestOlapModelTag;
+import com.tonbeller.jpivot.test.olap.TestOlapModel;
+import com.tonbeller.wcf.controller.RequestContext;
+import com.tonbeller.wcf.controller.RequestContextFactoryFinder;
+
+/**
+ * renders the table as DOM and as SAX events, the documents must be equal
+ */
+public class TableComponentRenderTest extends TestCase {
+
+  TestOlapModel model;
+  TableComponent table;
+  RequestContext context;
+
+  public TableComponentRenderTest(String arg0) {
+    super(arg0);
+  }
+
+  protected void setUp() throws Exception {
+    URL url = TestOlapModelTag.class.getResource("/com/tonbeller/jpivot/test/olap/config.xml");
+    model = (TestOlapModel) ModelFactory.instance(url);
+    context = RequestContextFactoryFinder.createContext(createRequest(), createResponse(), true);
+    table = TableComponentFactory.instance("table", TableComponent.class.getResource("config.xml"),
+        model);
+    table.initialize(context);
+  }
+
+  protected void tearDown() throws Exception {
+    context.invalidate();
+  }
+
+  public void testSaxEqualsDom() throws Exception {
+    checkSaxEqualsDom();
+  }
+
+  public void testSaxEqualsDomExpanded() throws Exception {
+    DrillExpandMember de = (DrillExpandMember) model.getExtension(DrillExpandMember.ID);
+    Position p = (Position) model.getResult().getAxes()[1].getPositions().get(0);
+    Member m = p.getMembers()[0];
+    de.expand(m);
+    checkSaxEqualsDom();
+  }
+
+  /**
+   * an existing document is written as is
+   */
+  public void testSaxWritesDocument() throws Exception {
+    String dom = toString(table.render(context));
+    assertEquals(dom, renderSax());
+  }
+
+  private void checkSaxEqualsDom() throws Exception {
+    table.setDirty(true);
+    String dom = toString(table.render(context));
+    table.setDirty(true);
+    String sax = renderSax();
+    assertTrue(dom.indexOf("<cell") > 0);
+    assertEquals(dom, sax);
+  }
+
+  /**
+   * serializes the SAX events like {@link #toString(Node)} serializes the DOM
+   */
+  private String renderSax() throws Exception {
+    SAXTransformerFactory tf = (SAXTransformerFactory) TransformerFactory.newInstance();
+    TransformerHandler handler = tf.newTransformerHandler();
+    handler.getTransformer().setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+    StringWriter sw = new StringWriter();
+    handler.setResult(new StreamResult(sw));
+    table.render(context, handler, handler);
+    return sw.toString();
+  }
+
+  private static String toString(Node node) throws Exception {
+    Transformer t = TransformerFactory.newInstance().newTransformer();
+    t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+    StringWriter sw = new StringWriter();
+    t.transform(new DOMSource(node), new StreamResult(sw));
+    return sw.toString();
+  }
+
+  private HttpServletRequest createRequest() {
+    final Map attributes = new HashMap();
+    final HttpSession session = createSession();
+    return (HttpServletRequest) proxy(HttpServletRequest.class, new Attributes(attributes) {
+      Object invoke(String name, Object[] args) {
+        if (name.equals("getSession"))
+          return session;
+        if (name.equals("getLocale"))
+          return Locale.US;
+        if (name.equals("getParameterMap"))
+          return Collections.EMPTY_MAP;
+        if (name.equals("getParameterNames") || name.equals("getHeaderNames")
+            || name.equals("getLocales"))
+          return Collections.enumeration(Collections.EMPTY_LIST);
+        if (name.equals("getContextPath") || name.equals("getServletPath"))
+          return "";
+        return null;
+      }
+    });
+  }
+
+  private HttpSession createSession() {
+    final ServletContext servletContext = (ServletContext) proxy(ServletContext.class,
+        new Attributes(new HashMap()));
+    return (HttpSession) proxy(HttpSession.class, new Attributes(new HashMap()) {
+      Object invoke(String name, Object[] args) {
+        if (name.equals("getServletContext"))
+          return servletContext;
+        if (name.equals("getId"))
+          return "session";
+        return null;
+      }
+    });
+  }
+
+  private HttpServletResponse createResponse() {
+    return (HttpServletResponse) proxy(HttpServletResponse.class, new Attributes(new HashMap()) {
+      Object invoke(String name, Object[] args) {
+        if (name.startsWith("encode"))
+          return args[0];
+        return null;
+      }
+    });
+  }
+
+  private static Object proxy(Class iface, InvocationHandler handler) {
+    return Proxy.newProxyInstance(TableComponentRenderTest.class.getClassLoader(),
+        new Class[] { iface}, handler);
+  }
+
+  /**
+   * servlet object with attributes. The other methods return null, 0 or false
+   */
+  static class Attributes implements InvocationHandler {
+    Map attributes;
+
+    Attributes(Map attributes) {
+      this.attributes = attributes;
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      String name = method.getName();
+      if (name.equals("getAttribute"))
+        return attributes.get(args[0]);
+      if (name.equals("setAttribute")) {
+        attributes.put(args[0], args[1]);
+        return null;
+      }
+      if (name.equals("removeAttribute")) {
+        attributes.remove(args[0]);
+        return null;
+      }
+      if (name.equals("getAttributeNames"))
+        return Collections.enumeration(attributes.keySet());
+      if (name.equals("hashCode"))
+        return new Integer(System.identityHashCode(proxy));
+      if (name.equals("equals"))
+        return Boolean.valueOf(proxy == args[0]);
+      Object value = invoke(name, args);
+      if (value != null)
+        return value;
+      Class type = method.getReturnType();
+      if (type == Boolean.TYPE)
+        return Boolean.FALSE;
+      if (type == Integer.TYPE)
+        return new Integer(0);
+      if (type == Long.TYPE)
+        return new Long(0);
+      return null;
+    }
+
+    Object invoke(String name, Object[] args) {
+      return null;
+    }
+  }
+
+}
@@ -0,0 +1,70 @@
+package com.tonbeller.jpivot.table;
+
+import junit.framework.TestCase;
+
+public class TableWindowTest extends TestCase {
+
+  public TableWindowTest(String arg0) {
+    super(arg0);
+  }
+
+  public void testClip() {
+    TableWindow window = new TableWindow(10);
+    assertEquals(10, window.clip(100));
+    assertTrue(window.isClipping());
+    window.move(95);
+    assertEquals(5, window.clip(100));
+    assertEquals(95, window.getStart());
+    window.move(10);
+    assertEquals(10, window.clip(100));
+    assertEquals(90, window.getStart());
+    window.move(-200);
+    window.clip(100);
+    assertEquals(0, window.getStart());
+  }
+
+  public void testDisabled() {
+    TableWindow window = new TableWindow(0);
+    assertEquals(100, window.clip(100));
+    assertFalse(window.isClipping());
+    assertEquals(0, window.first());
+  }
+
+  /**
+   * the cell limit kept the cells of the first 30 of 100 rows
+   */
+  public void testKeptCount() {
+    TableWindow window = new TableWindow(20);
+    int count = window.clip(100);
+    assertEquals(20, window.keptCount(count, 30));
+
+    // the window contains the last kept rows
+    window.move(20);
+    count = window.clip(100);
+    assertEquals(20, window.first());
+    assertEquals(10, window.keptCount(count, 30));
+
+    // the window was moved past the kept rows
+    window.move(20);
+    count = window.clip(100);
+    assertEquals(40, window.first());
+    assertEquals(0, window.keptCount(count, 30));
+    window.move(1000);
+    count = window.clip(100);
+    assertEquals(0, window.keptCount(count, 30));
+  }
+
+  /**
+   * a window, that is larger than the axis, starts at the first position
+   */
+  public void testNotClipping() {
+    TableWindow window = new TableWindow(20);
+    window.clip(100);
+    window.move(5);
+    assertEquals(10, window.clip(10));
+    assertFalse(window.isClipping());
+    assertEquals(0, window.first());
+    assertEquals(10, window.keptCount(10, 30));
+  }
+
+}
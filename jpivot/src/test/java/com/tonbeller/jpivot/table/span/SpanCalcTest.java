@@ -190,10 +190,10 @@ public class SpanCalcTest extends TestCase {
   void checkPlausibility(SpanCalc sc) {
     sc.initialize();
     // equal size
-    Span[][] spans = sc.spans;
-    int length = sc.spans[0].length;
-    for (int i = 1; i < sc.spans.length; i++)
-      assertEquals("spans[" + i + "].length: ", length, sc.spans[i].length);
+    Span[][] spans = sc.getSpans();
+    int length = spans[0].length;
+    for (int i = 1; i < spans.length; i++)
+      assertEquals("spans[" + i + "].length: ", length, spans[i].length);
       
     int[] sumPos = new int[sc.getHierarchyCount()];
     int[] sumHier = new int[sc.getPositionCount()];
@@ -232,6 +232,87 @@ public class SpanCalcTest extends TestCase {
     checkPlausibility(new SpanCalc(createAxis2()));
     checkPlausibility(createTriangle());
   }
+
+  /**
+   * window of 4 positions of axis1, starting at C0 Y1.
+   * The span of C0 is cut at the window start, the indent is relative to B0.
+   */
+  public void testWindow() {
+    SpanCalc sc = new SpanCalc(createAxis1(), 3, 4);
+    SpanConfigSupport scs = new SpanConfigSupport();
+    scs.setDirection(Member.class, SpanConfig.POSITION_SPAN);
+    sc.setConfig(scs);
+    checkPlausibility(sc);
+    assertEquals(4, sc.getPositionCount());
+    assertEquals("C[0]", sc.getSpan(0, 0).getMember().getLabel());
+    check(sc, 0, 0, true, 1, 1);
+    check(sc, 1, 0, true, 2, 1);
+    check(sc, 2, 0, false, 0, 0);
+    check(sc, 3, 0, true, 1, 1);
+    assertEquals(1, sc.getSpan(0, 0).getIndent());
+    assertEquals(0, sc.getSpan(0, 1).getIndent());
+  }
+
+  /**
+   * expands and collapses members of A and compares the spans, that reuse the
+   * previous spans, with the spans that are computed from scratch.
+   */
+  public void testReusePrevious() {
+    int[] dirs = new int[] { SpanConfig.NO_SPAN, SpanConfig.POSITION_SPAN,
+        SpanConfig.HIERARCHY_THEN_POSITION_SPAN, SpanConfig.POSITION_THEN_HIERARCHY_SPAN};
+    // visible children of the members of B
+    boolean[][] states = new boolean[][] { { true, false, false, false}, { true, false, true, false},
+        { false, false, true, false}, { false, true, true, true}, { false, false, false, false},
+        { false, false, false, true}};
+    for (int d = 0; d < dirs.length; d++) {
+      DimensionBuilder db = new DimensionBuilder();
+      TestDimension dim1 = db.build("A", new String[]{"B", "C"}, new int[]{4, 3});
+      TestMember[] members = ((TestHierarchy) dim1.getHierarchies()[0]).getRootMembers();
+      TestDimension dim2 = db.build("X", new String[]{"Y"}, new int[]{2});
+      TestDimension dims[] = new TestDimension[]{ dim1, dim2 };
+
+      SpanCalc previous = null;
+      for (int i = 0; i < states.length; i++) {
+        for (int m = 0; m < members.length; m++)
+          for (Iterator it = members[m].getChildMember().iterator(); it.hasNext(); )
+            ((TestMember)it.next()).setVisible(states[i][m]);
+        Axis axis = TestOlapModelUtils.createAxis(dims);
+        SpanCalc expected = createReuseSpanCalc(axis, dirs[d]);
+        SpanCalc sc = createReuseSpanCalc(axis, dirs[d]);
+        sc.setPrevious(previous);
+        assertSameSpans(expected, sc);
+        previous = sc;
+      }
+    }
+  }
+
+  SpanCalc createReuseSpanCalc(Axis axis, int dir) {
+    SpanCalc sc = new SpanCalc(axis);
+    SpanConfigSupport scs = new SpanConfigSupport();
+    scs.setDirection(Member.class, dir);
+    sc.setConfig(scs);
+    return sc;
+  }
+
+  void assertSameSpans(SpanCalc expected, SpanCalc sc) {
+    assertEquals(expected.getPositionCount(), sc.getPositionCount());
+    assertEquals(expected.getHierarchyCount(), sc.getHierarchyCount());
+    for (int pi = 0; pi < sc.getPositionCount(); pi++) {
+      for (int hi = 0; hi < sc.getHierarchyCount(); hi++) {
+        Span s1 = expected.getSpan(pi, hi);
+        Span s2 = sc.getSpan(pi, hi);
+        String msg = "span[" + pi + "][" + hi + "]: ";
+        assertEquals(msg, s1.getObject(), s2.getObject());
+        assertEquals(msg, s1.getPosition(), s2.getPosition());
+        assertEquals(msg, s1.isSignificant(), s2.isSignificant());
+        assertEquals(msg, s1.getPositionSpan(), s2.getPositionSpan());
+        assertEquals(msg, s1.getHierarchySpan(), s2.getHierarchySpan());
+        assertEquals(msg, s1.getPositionIndex(), s2.getPositionIndex());
+        assertEquals(msg, s1.getHierarchyIndex(), s2.getHierarchyIndex());
+        assertEquals(msg, s1.getIndent(), s2.getIndent());
+      }
+    }
+  }
   
   /**
    * NO_SPAN for a and NO_SPAN for b
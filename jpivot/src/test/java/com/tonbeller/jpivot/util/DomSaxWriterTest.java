@@ -0,0 +1,86 @@
+package com.tonbeller.jpivot.util;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+public class DomSaxWriterTest extends TestCase {
+
+  static final String XML = "<mdxtable a=\"1\"><head><row><cell b=\"x &amp; y\">c</cell></row></head>"
+      + "<body><row><cell><![CDATA[<b>cdata</b>]]></cell><cell/></row></body></mdxtable>";
+
+  public DomSaxWriterTest(String arg0) {
+    super(arg0);
+  }
+
+  public void testWrite() throws Exception {
+    Document doc = parse(XML);
+    TransformerHandler handler = createHandler();
+    StringWriter sw = new StringWriter();
+    handler.setResult(new StreamResult(sw));
+    DomSaxWriter writer = new DomSaxWriter(handler, handler);
+    writer.startDocument();
+    writer.write(doc);
+    writer.endDocument();
+    assertEquals(toString(doc), sw.toString());
+  }
+
+  /**
+   * writes the rows of the body one by one, like the table component does
+   */
+  public void testWriteInParts() throws Exception {
+    Document doc = parse(XML);
+    TransformerHandler handler = createHandler();
+    StringWriter sw = new StringWriter();
+    handler.setResult(new StreamResult(sw));
+    DomSaxWriter writer = new DomSaxWriter(handler, handler);
+    writer.startDocument();
+    Element root = doc.getDocumentElement();
+    writer.startElement(root);
+    writer.write(root.getFirstChild());
+    Element body = (Element) root.getLastChild();
+    writer.startElement(body);
+    for (Node row = body.getFirstChild(); row != null; row = row.getNextSibling())
+      writer.write(row);
+    writer.endElement(body);
+    writer.endElement(root);
+    writer.endDocument();
+    assertEquals(toString(doc), sw.toString());
+  }
+
+  private static TransformerHandler createHandler() throws Exception {
+    TransformerHandler handler = ((SAXTransformerFactory) TransformerFactory.newInstance())
+        .newTransformerHandler();
+    handler.getTransformer().setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+    return handler;
+  }
+
+  private static Document parse(String xml) throws Exception {
+    return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(
+        new InputSource(new StringReader(xml)));
+  }
+
+  private static String toString(Node node) throws Exception {
+    Transformer t = TransformerFactory.newInstance().newTransformer();
+    t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+    StringWriter sw = new StringWriter();
+    t.transform(new DOMSource(node), new StreamResult(sw));
+    return sw.toString();
+  }
+
+}
@@ -0,0 +1,49 @@
+package com.tonbeller.jpivot.xmla;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class DiscoverCacheTest extends TestCase {
+
+  public DiscoverCacheTest(String arg0) {
+    super(arg0);
+  }
+
+  public void testKey() {
+    Map r1 = new HashMap();
+    r1.put("CATALOG_NAME", "FoodMart");
+    r1.put("CUBE_NAME", "Sales");
+    Map r2 = new HashMap();
+    r2.put("CUBE_NAME", "Sales");
+    r2.put("CATALOG_NAME", "FoodMart");
+    String k1 = XMLA_DiscoverCache.createKey("http://x", "u", null, "MDSCHEMA_LEVELS", r1, null);
+    String k2 = XMLA_DiscoverCache.createKey("http://x", "u", null, "MDSCHEMA_LEVELS", r2, null);
+    assertEquals(k1, k2);
+    String k3 = XMLA_DiscoverCache.createKey("http://x", "u", new String[][] { { "Role",
+        "Admin"}}, "MDSCHEMA_LEVELS", r2, null);
+    assertFalse(k1.equals(k3));
+  }
+
+  public void testCache() throws Exception {
+    XMLA_DiscoverCache cache = new XMLA_DiscoverCache(2, 60000);
+    XMLA_DiscoverCache.Response r = new XMLA_DiscoverCache.Response("http://x", new byte[0],
+        "text/xml");
+    assertNull(cache.get("a"));
+    cache.put("a", r);
+    cache.put("b", r);
+    assertSame(r, cache.get("a"));
+    cache.put("c", r);
+    // b was least recently used
+    assertNull(cache.get("b"));
+    assertEquals(2, cache.size());
+    cache.invalidate("http://x");
+    assertEquals(0, cache.size());
+
+    cache = new XMLA_DiscoverCache(2, 0);
+    cache.put("a", r);
+    Thread.sleep(5);
+    assertNull(cache.get("a"));
+  }
+}
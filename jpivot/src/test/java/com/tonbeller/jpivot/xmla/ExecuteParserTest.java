@@ -0,0 +1,228 @@
+package com.tonbeller.jpivot.xmla;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.tonbeller.jpivot.olap.model.OlapException;
+import com.tonbeller.jpivot.olap.model.QueryResultHandler;
+
+/**
+ * parses canned ExecuteResponse messages with the streaming parser
+ */
+public class ExecuteParserTest extends TestCase {
+
+  static final String ENVELOPE_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+      + "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+      + "<SOAP-ENV:Body>";
+
+  static final String ENVELOPE_END = "</SOAP-ENV:Body></SOAP-ENV:Envelope>";
+
+  static final String RESPONSE = ENVELOPE_START
+      + "<m:ExecuteResponse xmlns:m=\"urn:schemas-microsoft-com:xml-analysis\"><m:return>"
+      + "<root xmlns=\"urn:schemas-microsoft-com:xml-analysis:mddataset\""
+      + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">"
+      + "<OlapInfo><CubeInfo><Cube><CubeName>Sales</CubeName></Cube></CubeInfo>"
+      + "<AxesInfo>"
+      + "<AxisInfo name=\"Axis0\"><HierarchyInfo name=\"Measures\"><UName name=\"x\"/></HierarchyInfo></AxisInfo>"
+      + "<AxisInfo name=\"Axis1\"><HierarchyInfo name=\"Product\"/><HierarchyInfo name=\"Time\"/></AxisInfo>"
+      + "<AxisInfo name=\"SlicerAxis\"><HierarchyInfo name=\"Store\"/></AxisInfo>"
+      + "</AxesInfo><CellInfo><Value name=\"VALUE\"/></CellInfo></OlapInfo>"
+      + "<Axes>"
+      + "<Axis name=\"Axis0\"><Tuples>"
+      + "<Tuple><Member Hierarchy=\"Measures\"><UName>[Measures].[Unit Sales]</UName>"
+      + "<Caption>Unit Sales</Caption><LName>[Measures].[MeasuresLevel]</LName><LNum>0</LNum>"
+      + "<DisplayInfo>0</DisplayInfo></Member></Tuple>"
+      + "</Tuples></Axis>"
+      + "<Axis name=\"Axis1\"><Tuples>"
+      + "<Tuple><Member><UName>[Product].[All]</UName><Caption>All</Caption></Member>"
+      + "<Member><UName>[Time].[1997]</UName><Caption>1997</Caption></Member></Tuple>"
+      + "<Tuple><Member><UName>[Product].[Food]</UName><Caption>Food</Caption></Member>"
+      + "<Member><UName>[Time].[1997]</UName><Caption>1997</Caption></Member></Tuple>"
+      + "</Tuples></Axis>"
+      + "<Axis name=\"SlicerAxis\"><Tuples><Tuple><Member><UName>[Store].[All]</UName></Member>"
+      + "</Tuple></Tuples></Axis>"
+      + "</Axes>"
+      + "<CellData>"
+      + "<Cell CellOrdinal=\"0\"><Value xsi:type=\"xsd:double\">266773</Value>"
+      + "<FmtValue>266,773</FmtValue><FontSize>8</FontSize></Cell>"
+      + "<Cell CellOrdinal=\"1\"><Value xsi:type=\"xsd:int\">191940</Value></Cell>"
+      + "</CellData>"
+      + "</root></m:return></m:ExecuteResponse>" + ENVELOPE_END;
+
+  static final String FAULT = ENVELOPE_START
+      + "<SOAP-ENV:Fault><faultcode>XMLAnalysisError.0xc10b0011</faultcode>"
+      + "<faultstring>Syntax error</faultstring><faultactor>Mondrian</faultactor>"
+      + "<detail><Error ErrorCode=\"3238658066\" Description=\"bad\"/></detail>"
+      + "</SOAP-ENV:Fault>" + ENVELOPE_END;
+
+  public ExecuteParserTest(String arg0) {
+    super(arg0);
+  }
+
+  public void testParse() throws Exception {
+    RecordingHandler handler = new RecordingHandler();
+    new XMLA_ExecuteParser(handler).parse(new ByteArrayInputStream(RESPONSE.getBytes("UTF-8")));
+    String[] expected = new String[] {
+        "axisInfo Axis0 0", "hierInfo Measures 0 0",
+        "axisInfo Axis1 1", "hierInfo Product 1 0", "hierInfo Time 1 1",
+        "axisInfo SlicerAxis -1", "hierInfo Store -1 0",
+        "axis Axis0 0", "tuple 0 0",
+        "member [Measures].[Unit Sales] Unit Sales [Measures].[MeasuresLevel] 0 {LNum=0} 0 0 0",
+        "axis Axis1 1", "tuple 1 0",
+        "member [Product].[All] All null null {} 1 0 0",
+        "member [Time].[1997] 1997 null null {} 1 0 1", "tuple 1 1",
+        "member [Product].[Food] Food null null {} 1 1 0",
+        "member [Time].[1997] 1997 null null {} 1 1 1",
+        "axis SlicerAxis -1", "tuple -1 0",
+        "member [Store].[All] null null null {} -1 0 0",
+        "cellData",
+        "cell 0 java.lang.Double 266773.0 266,773 8",
+        "cell 1 java.lang.Long 191940  null" };
+    assertEquals(expected.length, handler.events.size());
+    for (int i = 0; i < expected.length; i++)
+      assertEquals(expected[i], handler.events.get(i));
+  }
+
+  public void testFault() throws Exception {
+    try {
+      new XMLA_ExecuteParser(new RecordingHandler()).parse(new ByteArrayInputStream(FAULT
+          .getBytes("UTF-8")));
+      fail("OlapException expected");
+    } catch (OlapException e) {
+      String msg = e.getMessage();
+      assertTrue(msg, msg.indexOf("code=XMLAnalysisError.0xc10b0011") >= 0);
+      assertTrue(msg, msg.indexOf("fault string=Syntax error") >= 0);
+      assertTrue(msg, msg.indexOf("Description = bad") >= 0);
+    }
+  }
+
+  public void testNoRoot() throws Exception {
+    try {
+      String xml = ENVELOPE_START + ENVELOPE_END;
+      new XMLA_ExecuteParser(new RecordingHandler()).parse(new ByteArrayInputStream(xml
+          .getBytes("UTF-8")));
+      fail("OlapException expected");
+    } catch (OlapException e) {
+      // expected
+    }
+  }
+
+  public void testCellLimit() throws Exception {
+    RecordingHandler handler = new RecordingHandler();
+    XMLA_ExecuteParser parser = new XMLA_ExecuteParser(handler, 7, 0);
+    parser.parse(new ByteArrayInputStream(response(3, 10).getBytes("UTF-8")));
+    // 3 complete rows
+    assertTrue(parser.isTruncated());
+    assertEquals("cell 8 java.lang.Long 8  null", handler.events.get(handler.events.size() - 1));
+    assertEquals(9, XMLA_Result.limitCells(30, 3, 7));
+
+    // within the limit
+    handler = new RecordingHandler();
+    parser = new XMLA_ExecuteParser(handler, 30, 0);
+    parser.parse(new ByteArrayInputStream(response(3, 10).getBytes("UTF-8")));
+    assertFalse(parser.isTruncated());
+    assertEquals("cell 29 java.lang.Long 29  null", handler.events.get(handler.events.size() - 1));
+  }
+
+  public void testSliceLimit() throws Exception {
+    RecordingHandler handler = new RecordingHandler();
+    try {
+      new XMLA_ExecuteParser(handler, 5, 0).parse(new ByteArrayInputStream(response(10, 2)
+          .getBytes("UTF-8")));
+      fail("OlapException expected");
+    } catch (OlapException e) {
+      // aborted while the columns arrive
+      assertTrue(handler.events.contains("tuple 0 5"));
+      assertFalse(handler.events.contains("tuple 0 6"));
+      assertFalse(handler.events.contains("cellData"));
+    }
+  }
+
+  public void testByteLimit() throws Exception {
+    RecordingHandler handler = new RecordingHandler();
+    try {
+      new XMLA_ExecuteParser(handler, 0, 10000).parse(new ByteArrayInputStream(response(10,
+          1000).getBytes("UTF-8")));
+      fail("OlapException expected");
+    } catch (OlapException e) {
+      assertFalse(handler.events.contains("cellData"));
+    }
+  }
+
+  /**
+   * a response with columns * rows cells, the value of a cell is its ordinal
+   */
+  private static String response(int columns, int rows) {
+    StringBuffer sb = new StringBuffer(ENVELOPE_START);
+    sb.append("<m:ExecuteResponse xmlns:m=\"urn:schemas-microsoft-com:xml-analysis\"><m:return>");
+    sb.append("<root xmlns=\"urn:schemas-microsoft-com:xml-analysis:mddataset\"");
+    sb.append(" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">");
+    sb.append("<OlapInfo><AxesInfo>");
+    sb.append("<AxisInfo name=\"Axis0\"><HierarchyInfo name=\"Measures\"/></AxisInfo>");
+    sb.append("<AxisInfo name=\"Axis1\"><HierarchyInfo name=\"Product\"/></AxisInfo>");
+    sb.append("</AxesInfo></OlapInfo><Axes>");
+    appendAxis(sb, "Axis0", "[Measures].[M", columns);
+    appendAxis(sb, "Axis1", "[Product].[P", rows);
+    sb.append("</Axes><CellData>");
+    for (int i = 0; i < columns * rows; i++)
+      sb.append("<Cell CellOrdinal=\"" + i + "\"><Value xsi:type=\"xsd:int\">" + i
+          + "</Value></Cell>");
+    sb.append("</CellData></root></m:return></m:ExecuteResponse>");
+    sb.append(ENVELOPE_END);
+    return sb.toString();
+  }
+
+  private static void appendAxis(StringBuffer sb, String name, String prefix, int size) {
+    sb.append("<Axis name=\"" + name + "\"><Tuples>");
+    for (int i = 0; i < size; i++)
+      sb.append("<Tuple><Member><UName>" + prefix + i + "]</UName></Member></Tuple>");
+    sb.append("</Tuples></Axis>");
+  }
+
+  static class RecordingHandler implements QueryResultHandler {
+    List events = new ArrayList();
+
+    public void handleAxisInfo(String axisName, int axisNumber) {
+      events.add("axisInfo " + axisName + " " + axisNumber);
+    }
+
+    public void handleHierInfo(String hierName, int axisNumber, int number) {
+      events.add("hierInfo " + hierName + " " + axisNumber + " " + number);
+    }
+
+    public void handleAxis(String axisName, int axisOrdinal) {
+      events.add("axis " + axisName + " " + axisOrdinal);
+    }
+
+    public void handleTuple(int axisOrdinal, int positionOrdinal) {
+      events.add("tuple " + axisOrdinal + " " + positionOrdinal);
+    }
+
+    public void handleMember(String uniqueName, String caption, String levUName,
+        String displayInfo, Map otherProps, int axisOrdinal, int positionOrdinal,
+        int memberOrdinal) {
+      events.add("member " + uniqueName + " " + caption + " " + levUName + " " + displayInfo
+          + " " + otherProps + " " + axisOrdinal + " " + positionOrdinal + " " + memberOrdinal);
+    }
+
+    public void handleCellData() {
+      events.add("cellData");
+    }
+
+    public void handleCell(int iOrdinal, Object value, String fmtValue, String fontSize) {
+      events.add("cell " + iOrdinal + " " + value.getClass().getName() + " " + value + " "
+          + fmtValue + " " + fontSize);
+    }
+
+    public void setDrillHeader(Map header) {
+    }
+
+    public void setDrillRows(List rows) {
+    }
+  }
+
+} // ExecuteParserTest
@@ -0,0 +1,83 @@
+package com.tonbeller.jpivot.xmla;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPMessage;
+
+import junit.framework.TestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * runs XMLA_HttpTransport against a local HTTP server
+ */
+public class HttpTransportTest extends TestCase {
+
+  static final String REPLY = "<?xml version=\"1.0\"?><reply>ok</reply>";
+
+  HttpServer server;
+  String authorization;
+  String acceptEncoding;
+
+  public HttpTransportTest(String arg0) {
+    super(arg0);
+  }
+
+  protected void setUp() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/xmla", new HttpHandler() {
+      public void handle(HttpExchange ex) throws IOException {
+        authorization = ex.getRequestHeaders().getFirst("Authorization");
+        acceptEncoding = ex.getRequestHeaders().getFirst("Accept-Encoding");
+        InputStream in = ex.getRequestBody();
+        while (in.read() >= 0)
+          ;
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        GZIPOutputStream gz = new GZIPOutputStream(bos);
+        gz.write(REPLY.getBytes("UTF-8"));
+        gz.close();
+        ex.getResponseHeaders().add("Content-Type", "text/xml");
+        ex.getResponseHeaders().add("Content-Encoding", "gzip");
+        ex.sendResponseHeaders(200, bos.size());
+        OutputStream out = ex.getResponseBody();
+        out.write(bos.toByteArray());
+        out.close();
+      }
+    });
+    server.start();
+  }
+
+  protected void tearDown() throws Exception {
+    server.stop(0);
+  }
+
+  public void testGzip() throws Exception {
+    String uri = "http://127.0.0.1:" + server.getAddress().getPort() + "/xmla";
+    XMLA_Transport transport = new XMLA_HttpTransport(uri);
+    SOAPMessage msg = MessageFactory.newInstance().createMessage();
+    msg.getSOAPPart().getEnvelope().getBody().addChildElement("Discover", "", XMLA_SOAP.XMLA_URI);
+    msg.saveChanges();
+    for (int i = 0; i < 2; i++) {
+      XMLA_Transport.Exchange exchange = transport.open("Aladdin", "open sesame");
+      assertEquals(200, exchange.send(msg));
+      InputStream in = exchange.getInputStream();
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      int c;
+      while ((c = in.read()) >= 0)
+        bos.write(c);
+      exchange.close();
+      assertEquals(REPLY, bos.toString("UTF-8"));
+      assertEquals("Basic QWxhZGRpbjpvcGVuIHNlc2FtZQ==", authorization);
+      assertTrue(acceptEncoding.indexOf("gzip") >= 0);
+    }
+  }
+
+}
@@ -0,0 +1,87 @@
+package com.tonbeller.jpivot.xmla;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.tonbeller.jpivot.olap.model.OlapException;
+
+/**
+ * Micro benchmark for the member registry of XMLA_Model.
+ * Fills the row axis of an XMLA_Result through the QueryResultHandler methods,
+ * every member of every tuple is looked up by unique name in member caches of
+ * different sizes. The linear scan, that was used before the registry was
+ * hash indexed, is measured on a sample and extrapolated.
+ * <p>
+ * Run with <code>java com.tonbeller.jpivot.xmla.MemberLookupBenchmark</code>
+ */
+public class MemberLookupBenchmark {
+
+  static final int[] CACHE_SIZES = new int[] { 10000, 100000, 1000000 };
+  static final int TUPLES = 100000;
+  static final int LINEAR_SAMPLE = 200;
+
+  public static void main(String[] args) throws OlapException {
+    Random random = new Random(4711);
+    for (int i = 0; i < CACHE_SIZES.length; i++) {
+      int size = CACHE_SIZES[i];
+      OfflineModel model = new OfflineModel();
+      XMLA_Level[] measureLevels = model.createLevels("[Measures]", 1);
+      model.createMember("[Measures].[Sales]", measureLevels[0], null);
+      XMLA_Level[] levels = model.createLevels("[Customers]", 1);
+      List members = new ArrayList(size);
+      for (int j = 0; j < size; j++)
+        members.add(new XMLA_Member(model, "[Customers].[C" + j + "]", "C" + j, levels[0], false));
+
+      String[] rows = new String[TUPLES];
+      for (int j = 0; j < TUPLES; j++)
+        rows[j] = "[Customers].[C" + random.nextInt(size) + "]";
+
+      long t0 = System.currentTimeMillis();
+      XMLA_Result result = new XMLA_Result(model);
+      result.handleAxisInfo("Axis0", 0);
+      result.handleHierInfo("[Measures]", 0, 0);
+      result.handleAxisInfo("Axis1", 1);
+      result.handleHierInfo("[Customers]", 1, 0);
+      addAxis(result, "Axis0", 0, new String[] { "[Measures].[Sales]"}, measureLevels[0]);
+      addAxis(result, "Axis1", 1, rows, levels[0]);
+      long hashed = System.currentTimeMillis() - t0;
+      int positions = result.getAxes()[1].getPositions().size();
+
+      t0 = System.currentTimeMillis();
+      int found = 0;
+      for (int j = 0; j < LINEAR_SAMPLE; j++) {
+        if (linearLookup(members, rows[j]) != null)
+          ++found;
+      }
+      long linear = (System.currentTimeMillis() - t0) * TUPLES / LINEAR_SAMPLE;
+
+      System.out.println("members=" + size + " tuples=" + TUPLES + " positions=" + positions
+          + " handleMember(ms)=" + hashed + " linear lookup, extrapolated(ms)=" + linear);
+    }
+  }
+
+  private static void addAxis(XMLA_Result result, String axisName, int axisOrdinal,
+      String[] uNames, XMLA_Level level) {
+    Map otherProps = new HashMap();
+    result.handleAxis(axisName, axisOrdinal);
+    for (int i = 0; i < uNames.length; i++) {
+      result.handleTuple(axisOrdinal, i);
+      result.handleMember(uNames[i], uNames[i], level.getUniqueName(), null, otherProps,
+          axisOrdinal, i, 0);
+    }
+  }
+
+  private static XMLA_Member linearLookup(List members, String uName) {
+    for (Iterator iter = members.iterator(); iter.hasNext();) {
+      XMLA_Member mem = (XMLA_Member) iter.next();
+      if (mem.getUniqueName().equals(uName))
+        return mem;
+    }
+    return null;
+  }
+
+} // MemberLookupBenchmark
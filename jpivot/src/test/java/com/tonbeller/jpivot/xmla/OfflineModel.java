@@ -0,0 +1,68 @@
+package com.tonbeller.jpivot.xmla;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.tonbeller.jpivot.olap.model.OlapException;
+
+/**
+ * XMLA model without SOAP connection for unit tests and benchmarks.
+ * The levels and members are created by the test.
+ */
+public class OfflineModel extends XMLA_Model {
+
+  public boolean isMicrosoft() {
+    return false;
+  }
+
+  public boolean isSAP() {
+    return false;
+  }
+
+  public boolean isMondrian() {
+    return true;
+  }
+
+  /**
+   * creates a dimension with a single hierarchy of <code>depth</code> levels
+   */
+  public XMLA_Level[] createLevels(String uName, int depth) {
+    XMLA_Dimension dim = new XMLA_Dimension();
+    dim.setUniqueName(uName);
+    XMLA_Hierarchy hier = new XMLA_Hierarchy(this);
+    hier.setUniqueName(uName);
+    hier.setDimension(dim);
+    XMLA_Level[] levels = new XMLA_Level[depth];
+    for (int i = 0; i < depth; i++) {
+      levels[i] = new XMLA_Level(this);
+      levels[i].setUniqueName(uName + ".[L" + i + "]");
+      levels[i].setHierarchy(hier);
+      levels[i].setNumber(i);
+      if (i > 0) {
+        levels[i].setParentLevel(levels[i - 1]);
+        levels[i - 1].setChildLevel(levels[i]);
+      }
+    }
+    return levels;
+  }
+
+  /**
+   * creates a member and adds it to the children of its parent
+   */
+  public XMLA_Member createMember(String uName, XMLA_Level level, XMLA_Member parent)
+      throws OlapException {
+    XMLA_Member member = new XMLA_Member(this, uName, uName, level, false);
+    member.complete(uName, 1, 0, parent == null ? null : parent.getUniqueName(), 0, level
+        .getDepth() - 1, false, false, null);
+    member.setParent(parent);
+    member.setChildren(new ArrayList());
+    member.setChildrenOk(true);
+    if (parent != null) {
+      ArrayList children = new ArrayList(Arrays.asList(parent.getChildren()));
+      children.add(member);
+      parent.setChildren(children);
+    }
+    return member;
+  }
+
+}
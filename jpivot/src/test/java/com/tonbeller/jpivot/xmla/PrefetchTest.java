@@ -0,0 +1,178 @@
+package com.tonbeller.jpivot.xmla;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.tonbeller.jpivot.olap.model.OlapException;
+
+/**
+ * bulk retrieval of member parents and children. The model counts the
+ * Discover requests for a level and for the parent / children of a single member.
+ */
+public class PrefetchTest extends TestCase {
+
+  PrefetchModel model;
+  XMLA_Level[] productLevels;
+  XMLA_Member[] families;
+  XMLA_Member[] items;
+
+  public PrefetchTest(String arg0) {
+    super(arg0);
+  }
+
+  static class PrefetchModel extends OfflineModel {
+    // level -> members on the server
+    Map levelMembers = new HashMap();
+    List levelRequests = new ArrayList();
+    int memberRequests = 0;
+
+    public XMLA_Member createMember(String uName, XMLA_Level level, XMLA_Member parent)
+        throws OlapException {
+      XMLA_Member member = super.createMember(uName, level, parent);
+      List list = (List) levelMembers.get(level);
+      if (list == null) {
+        list = new ArrayList();
+        levelMembers.put(level, list);
+      }
+      list.add(member);
+      return member;
+    }
+
+    void completeLevel(XMLA_Level level) {
+      levelRequests.add(level);
+      level.setMembers(new ArrayList((List) levelMembers.get(level)));
+    }
+
+    void retrieveMemberParent(XMLA_Member member) {
+      memberRequests += 1;
+      member.setParent((XMLA_Member) lookupMemberByUName(member.getParentUniqueName()));
+    }
+
+    void retrieveMemberChildren(XMLA_Member member) {
+      memberRequests += 1;
+      ArrayList children = new ArrayList();
+      XMLA_Level childLevel = ((XMLA_Level) member.getLevel()).getChildLevel();
+      List list = (List) levelMembers.get(childLevel);
+      for (int i = 0; i < list.size(); i++) {
+        XMLA_Member child = (XMLA_Member) list.get(i);
+        if (member.getUniqueName().equals(child.getParentUniqueName()))
+          children.add(child);
+      }
+      member.setChildren(children);
+      member.setChildrenOk(true);
+    }
+  }
+
+  protected void setUp() throws Exception {
+    model = new PrefetchModel();
+    XMLA_Level[] measureLevels = model.createLevels("[Measures]", 1);
+    model.createMember("[Measures].[Sales]", measureLevels[0], null);
+    productLevels = model.createLevels("[Product]", 2);
+    families = new XMLA_Member[2];
+    items = new XMLA_Member[4];
+    for (int i = 0; i < families.length; i++) {
+      families[i] = model.createMember("[Product].[F" + i + "]", productLevels[0], null);
+      for (int j = 0; j < 2; j++)
+        items[2 * i + j] = model.createMember("[Product].[F" + i + "].[I" + j + "]",
+            productLevels[1], families[i]);
+    }
+    productLevels[0].setCardinality(families.length);
+    productLevels[1].setCardinality(items.length);
+    // nothing has been retrieved yet
+    for (int i = 0; i < families.length; i++)
+      families[i].setChildrenOk(false);
+    for (int i = 0; i < items.length; i++) {
+      items[i].setParentOk(false);
+      items[i].setChildrenOk(false);
+    }
+  }
+
+  protected void tearDown() throws Exception {
+    System.getProperties().remove(XMLA_Model.PREFETCH_PROP);
+    System.getProperties().remove(XMLA_Model.PREFETCH_LIMIT_PROP);
+  }
+
+  public void testParents() throws Exception {
+    model.prefetchMemberParents(Arrays.asList(items));
+    assertEquals(Arrays.asList(new Object[] { productLevels[0]}), model.levelRequests);
+    for (int i = 0; i < items.length; i++) {
+      assertTrue(items[i].isParentOk());
+      assertSame(families[i / 2], items[i].getParent());
+    }
+    assertEquals(0, model.memberRequests);
+  }
+
+  public void testChildren() throws Exception {
+    model.prefetchMemberChildren(Arrays.asList(families));
+    assertEquals(Arrays.asList(new Object[] { productLevels[1]}), model.levelRequests);
+    for (int i = 0; i < families.length; i++) {
+      assertTrue(families[i].isChildrenOk());
+      XMLA_Member[] children = families[i].getChildren();
+      assertEquals(2, children.length);
+      assertSame(items[2 * i], children[0]);
+      assertSame(items[2 * i + 1], children[1]);
+      assertSame(families[i], children[0].getParent());
+    }
+    assertEquals(0, model.memberRequests);
+  }
+
+  /**
+   * a level with more members than the limit is not retrieved,
+   * the members retrieve their children one by one
+   */
+  public void testLimit() throws Exception {
+    System.setProperty(XMLA_Model.PREFETCH_LIMIT_PROP, "3");
+    model.prefetchMemberChildren(Arrays.asList(families));
+    assertTrue(model.levelRequests.isEmpty());
+    assertFalse(families[0].isChildrenOk());
+    assertEquals(2, families[0].getChildren().length);
+    assertEquals(1, model.memberRequests);
+  }
+
+  public void testAxisOffByDefault() throws Exception {
+    model.prefetchAxisParents(createAxisResult());
+    assertTrue(model.levelRequests.isEmpty());
+    for (int i = 0; i < items.length; i++)
+      assertFalse(items[i].isParentOk());
+  }
+
+  public void testAxis() throws Exception {
+    System.setProperty(XMLA_Model.PREFETCH_PROP, "true");
+    model.prefetchAxisParents(createAxisResult());
+    assertEquals(Arrays.asList(new Object[] { productLevels[0]}), model.levelRequests);
+    for (int i = 0; i < items.length; i++)
+      assertSame(families[i / 2], items[i].getParent());
+    assertEquals(0, model.memberRequests);
+  }
+
+  /**
+   * [Measures].[Sales] on columns, the items on rows
+   */
+  private XMLA_Result createAxisResult() {
+    XMLA_Result result = new XMLA_Result(model);
+    result.handleAxisInfo("Axis0", 0);
+    result.handleHierInfo("[Measures]", 0, 0);
+    result.handleAxisInfo("Axis1", 1);
+    result.handleHierInfo("[Product]", 1, 0);
+    addAxis(result, "Axis0", 0, new XMLA_Member[] { (XMLA_Member) model
+        .lookupMemberByUName("[Measures].[Sales]")});
+    addAxis(result, "Axis1", 1, items);
+    return result;
+  }
+
+  private void addAxis(XMLA_Result result, String axisName, int axisOrdinal, XMLA_Member[] members) {
+    result.handleAxis(axisName, axisOrdinal);
+    for (int i = 0; i < members.length; i++) {
+      String uName = members[i].getUniqueName();
+      result.handleTuple(axisOrdinal, i);
+      result.handleMember(uName, uName, ((XMLA_Level) members[i].getLevel()).getUniqueName(),
+          null, new HashMap(), axisOrdinal, i, 0);
+    }
+  }
+
+}
@@ -0,0 +1,101 @@
+package com.tonbeller.jpivot.xmla;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.tonbeller.jpivot.olap.mdxparse.Exp;
+import com.tonbeller.jpivot.olap.mdxparse.FunCall;
+import com.tonbeller.jpivot.olap.model.Member;
+import com.tonbeller.jpivot.olap.model.OlapException;
+import com.tonbeller.jpivot.olap.query.Quax;
+import com.tonbeller.jpivot.util.TreeNode;
+
+/**
+ * Micro benchmark for the expand/collapse checks of Quax.
+ * Simulates the table rendering, that asks canExpand and canCollapse for every
+ * member of every position, on an axis where the "All" member and all
+ * product families are expanded. The position tree walk is compared with
+ * the position tree index.
+ * <p>
+ * Run with <code>java com.tonbeller.jpivot.xmla.QuaxIndexBenchmark</code>
+ */
+public class QuaxIndexBenchmark {
+
+  static final int[] FAMILIES = new int[] { 10, 50, 200 };
+  static final int ITEMS = 25;
+
+  public static void main(String[] args) throws OlapException {
+    for (int i = 0; i < FAMILIES.length; i++) {
+      OfflineModel model = new OfflineModel();
+      XMLA_Level[] prodLevels = model.createLevels("[Product]", 3);
+      XMLA_Level[] measureLevels = model.createLevels("[Measures]", 1);
+
+      XMLA_Member m1 = model.createMember("[Measures].[Sales]", measureLevels[0], null);
+      XMLA_Member m2 = model.createMember("[Measures].[Cost]", measureLevels[0], null);
+      Exp measures = new FunCall("{}", new Exp[] { m1, m2}, FunCall.TypeBraces);
+
+      // All, All.Children and the children of every family
+      XMLA_Member all = model.createMember("[Product].[All]", prodLevels[0], null);
+      List positions = new ArrayList();
+      positions.add(all);
+      TreeNode root = new TreeNode(null);
+      addNode(root, all, measures);
+      addNode(root, new FunCall("Children", new Exp[] { all}, FunCall.TypeProperty), measures);
+      for (int j = 0; j < FAMILIES[i]; j++) {
+        XMLA_Member family = model.createMember("[Product].[All].[F" + j + "]", prodLevels[1],
+            all);
+        positions.add(family);
+        for (int k = 0; k < ITEMS; k++)
+          positions.add(model.createMember("[Product].[All].[F" + j + "].[I" + k + "]",
+              prodLevels[2], family));
+        addNode(root, new FunCall("Children", new Exp[] { family}, FunCall.TypeProperty),
+            measures);
+      }
+
+      Quax quax = new Quax(0);
+      quax.setUti(new XMLA_QuaxUti());
+      quax.setPosTreeRoot(root, true);
+
+      System.setProperty(Quax.INDEX_PROP, "false");
+      quax.changed(null, false);
+      long t0 = System.currentTimeMillis();
+      String walk = render(quax, positions, m1);
+      long walked = System.currentTimeMillis() - t0;
+
+      System.setProperty(Quax.INDEX_PROP, "true");
+      quax.changed(null, false);
+      t0 = System.currentTimeMillis();
+      String index = render(quax, positions, m1);
+      long indexed = System.currentTimeMillis() - t0;
+
+      System.out.println("positions=" + positions.size() + " tree walk(ms)=" + walked
+          + " index(ms)=" + indexed + (walk.equals(index) ? "" : " RESULTS DIFFER"));
+    }
+  }
+
+  /**
+   * the checks of the table rendering for every position
+   * @return the results, to compare both implementations
+   */
+  private static String render(Quax quax, List positions, Member measure) {
+    StringBuffer sb = new StringBuffer();
+    for (Iterator iter = positions.iterator(); iter.hasNext();) {
+      Member m = (Member) iter.next();
+      Member[] path = new Member[] { m};
+      sb.append(quax.canExpand(path) ? 'E' : '-');
+      sb.append(quax.canCollapse(path) ? 'C' : '-');
+      sb.append(quax.canExpand(new Member[] { m, measure}) ? 'e' : '-');
+      sb.append(quax.canExpand(m) ? 'x' : '-');
+      sb.append(quax.canCollapse(m) ? 'c' : '-');
+    }
+    return sb.toString();
+  }
+
+  private static void addNode(TreeNode root, Exp exp, Exp measures) {
+    TreeNode node = new TreeNode(exp);
+    root.addChildNode(node);
+    node.addChildNode(new TreeNode(measures));
+  }
+
+} // QuaxIndexBenchmark
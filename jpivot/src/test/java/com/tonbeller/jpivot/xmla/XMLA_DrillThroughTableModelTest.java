@@ -0,0 +1,176 @@
+package com.tonbeller.jpivot.xmla;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.tonbeller.jpivot.olap.model.OlapException;
+import com.tonbeller.jpivot.olap.model.Result;
+import com.tonbeller.jpivot.olap.navi.DrillThroughRows;
+import com.tonbeller.wcf.table.TableRow;
+
+/**
+ * runs the drill through table model on a rowset, that has been filled by the test
+ */
+public class XMLA_DrillThroughTableModelTest extends TestCase {
+
+  OfflineModel model;
+  XMLA_Result cubeResult;
+  XMLA_Result drillResult;
+  boolean failing;
+
+  public XMLA_DrillThroughTableModelTest(String arg0) {
+    super(arg0);
+  }
+
+  protected void setUp() throws Exception {
+    model = new OfflineModel() {
+      public synchronized Result getResult() throws OlapException {
+        if (failing)
+          throw new OlapException("execute failed");
+        return cubeResult;
+      }
+    };
+    XMLA_Level[] measureLevels = model.createLevels("[Measures]", 1);
+    XMLA_Level[] productLevels = model.createLevels("[Product]", 1);
+    XMLA_Level[] timeLevels = model.createLevels("[Time]", 1);
+    model.createMember("[Measures].[Sales]", measureLevels[0], null);
+    model.createMember("[Product].[P0]", productLevels[0], null);
+    model.createMember("[Product].[P1]", productLevels[0], null);
+    model.createMember("[Time].[1997]", timeLevels[0], null);
+
+    cubeResult = new XMLA_Result(model);
+    addAxisInfo(cubeResult, "Axis0", 0, "[Measures]");
+    addAxisInfo(cubeResult, "Axis1", 1, "[Product]");
+    addAxisInfo(cubeResult, "SlicerAxis", -1, "[Time]");
+    addAxis(cubeResult, "Axis0", 0, new String[] { "[Measures].[Sales]"});
+    addAxis(cubeResult, "Axis1", 1, new String[] { "[Product].[P0]", "[Product].[P1]"});
+    addAxis(cubeResult, "SlicerAxis", -1, new String[] { "[Time].[1997]"});
+
+    drillResult = new XMLA_Result(model);
+    Map header = new HashMap();
+    header.put("A", new Integer(0));
+    header.put("B", new Integer(1));
+    header.put("C", new Integer(2));
+    drillResult.setDrillHeader(header);
+    List rows = new ArrayList();
+    for (int i = 0; i < 5; i++) {
+      Map row = new HashMap();
+      row.put("A", "a" + i);
+      // the server omits empty columns
+      if (i % 2 == 0)
+        row.put("B", "b" + i);
+      row.put("C", "c" + i);
+      rows.add(row);
+    }
+    drillResult.setDrillRows(rows);
+  }
+
+  protected void tearDown() throws Exception {
+    System.getProperties().remove(XMLA_DrillThroughTableModel.MAX_ROWS_PROP);
+  }
+
+  public void testMaxRows() {
+    XMLA_DrillThroughTableModel tm = createTableModel(1);
+    String mdx = tm.buildDrillThroughMdx(cubeResult);
+    assertTrue(mdx, mdx.startsWith(" Drillthrough Maxrows "
+        + XMLA_DrillThroughTableModel.MAX_ROWS_DEFAULT + " Select "));
+    System.setProperty(XMLA_DrillThroughTableModel.MAX_ROWS_PROP, "3");
+    mdx = tm.buildDrillThroughMdx(cubeResult);
+    assertTrue(mdx, mdx.startsWith(" Drillthrough Maxrows 3 Select "));
+    System.setProperty(XMLA_DrillThroughTableModel.MAX_ROWS_PROP, "0");
+    mdx = tm.buildDrillThroughMdx(cubeResult);
+    assertTrue(mdx, mdx.startsWith(" Drillthrough Select "));
+  }
+
+  public void testCellCoordinates() {
+    // ordinal 1 is the cell of [P1]
+    String mdx = createTableModel(1).buildDrillThroughMdx(cubeResult);
+    assertTrue(mdx, mdx.indexOf("{([Measures].[Sales])} on Columns") > 0);
+    assertTrue(mdx, mdx.indexOf("{([Product].[P1])} on Rows") > 0);
+    assertTrue(mdx, mdx.endsWith(" Where ( [Time].[1997])"));
+  }
+
+  public void testRows() {
+    XMLA_DrillThroughTableModel tm = createTableModel(0);
+    assertEquals(3, tm.getColumnCount());
+    assertEquals("A", tm.getColumnTitle(0));
+    assertEquals("C", tm.getColumnTitle(2));
+    assertEquals(5, tm.getRowCount());
+    TableRow row = tm.getRow(0);
+    assertEquals("a0", row.getValue(0));
+    assertEquals("b0", row.getValue(1));
+    assertEquals("c0", row.getValue(2));
+    row = tm.getRow(4);
+    assertEquals("a4", row.getValue(0));
+    row = tm.getRow(1);
+    assertEquals("a1", row.getValue(0));
+    assertNull(row.getValue(1));
+    assertEquals("c1", row.getValue(2));
+  }
+
+  public void testEmptyRowset() {
+    drillResult.setDrillRows(new ArrayList());
+    XMLA_DrillThroughTableModel tm = createTableModel(0);
+    assertEquals(3, tm.getColumnCount());
+    assertEquals(0, tm.getRowCount());
+  }
+
+  public void testError() {
+    failing = true;
+    XMLA_DrillThroughTableModel tm = createTableModel(0);
+    assertEquals(1, tm.getRowCount());
+    assertEquals(1, tm.getColumnCount());
+    assertTrue(String.valueOf(tm.getRow(0).getValue(0)).indexOf("execute failed") >= 0);
+  }
+
+  public void testWriteRows() throws Exception {
+    XMLA_DrillThroughTableModel tm = createTableModel(0);
+    final List values = new ArrayList();
+    tm.writeRows(new DrillThroughRows.RowWriter() {
+      public void writeHeader(String[] columnTitles) {
+        assertEquals(3, columnTitles.length);
+        assertEquals("B", columnTitles[1]);
+      }
+
+      public void writeRow(Object[] row) {
+        values.add(row[1]);
+      }
+    });
+    assertEquals(5, values.size());
+    assertEquals("b0", values.get(0));
+    // the reused values array does not keep the column of the previous row
+    assertNull(values.get(1));
+  }
+
+  private XMLA_DrillThroughTableModel createTableModel(int cellOrdinal) {
+    XMLA_DrillThroughTableModel tm = new XMLA_DrillThroughTableModel();
+    tm.setModel(model);
+    tm.setCellOrdinal(cellOrdinal);
+    tm.drillModel = new OfflineModel() {
+      public synchronized Result getDrillResult() {
+        return drillResult;
+      }
+    };
+    return tm;
+  }
+
+  private void addAxisInfo(XMLA_Result result, String axisName, int axisOrdinal, String hier) {
+    result.handleAxisInfo(axisName, axisOrdinal);
+    result.handleHierInfo(hier, axisOrdinal, 0);
+  }
+
+  private void addAxis(XMLA_Result result, String axisName, int axisOrdinal, String[] uNames) {
+    result.handleAxis(axisName, axisOrdinal);
+    for (int i = 0; i < uNames.length; i++) {
+      XMLA_Member member = (XMLA_Member) model.lookupMemberByUName(uNames[i]);
+      result.handleTuple(axisOrdinal, i);
+      result.handleMember(uNames[i], uNames[i], ((XMLA_Level) member.getLevel())
+          .getUniqueName(), null, new HashMap(), axisOrdinal, i, 0);
+    }
+  }
+
+}
@@ -0,0 +1,104 @@
+package com.tonbeller.jpivot.xmla;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.tonbeller.jpivot.olap.model.OlapItem;
+
+/**
+ * the unique name indexes of the dimensions, hierarchies, levels and members of XMLA_Model
+ */
+public class XMLA_ModelIndexTest extends TestCase {
+
+  OfflineModel model;
+
+  public XMLA_ModelIndexTest(String arg0) {
+    super(arg0);
+  }
+
+  protected void setUp() throws Exception {
+    model = new OfflineModel();
+  }
+
+  public void testDimensions() {
+    List items = new ArrayList();
+    items.add(createItem(OlapItem.TYPE_DIMENSION, "[Product]", "Product"));
+    items.add(createItem(OlapItem.TYPE_DIMENSION, "[Time]", "Time"));
+    // the first one wins
+    items.add(createItem(OlapItem.TYPE_DIMENSION, "[Product]", "Duplicate"));
+    model.evaluateDimensions(items);
+    assertEquals("Product", model.lookupDimByUName("[Product]").getCaption());
+    assertEquals("Time", model.lookupDimByUName("[Time]").getCaption());
+    assertNull(model.lookupDimByUName("[Store]"));
+  }
+
+  public void testHierarchies() {
+    List items = new ArrayList();
+    items.add(createItem(OlapItem.TYPE_HIERARCHY, "[Time]", "Time"));
+    items.add(createItem(OlapItem.TYPE_HIERARCHY, "[Time.Weekly]", "Weekly"));
+    items.add(createItem(OlapItem.TYPE_HIERARCHY, "[Time]", "Duplicate"));
+    model.evaluateHiers(items);
+    assertEquals("Time", model.lookupHierByUName("[Time]").getCaption());
+    assertEquals("Weekly", model.lookupHierByUName("[Time.Weekly]").getCaption());
+    assertNull(model.lookupHierByUName("[Time.Fiscal]"));
+  }
+
+  public void testLevels() {
+    List items = new ArrayList();
+    items.add(createItem(OlapItem.TYPE_LEVEL, "[Time].[Year]", "Year"));
+    items.add(createItem(OlapItem.TYPE_LEVEL, "[Time].[Month]", "Month"));
+    items.add(createItem(OlapItem.TYPE_LEVEL, "[Time].[Year]", "Duplicate"));
+    model.evaluateLevels(items);
+    assertEquals("Year", model.lookupLevelByUName("[Time].[Year]").getCaption());
+    assertEquals("Month", model.lookupLevelByUName("[Time].[Month]").getCaption());
+    assertNull(model.lookupLevelByUName("[Time].[Day]"));
+  }
+
+  public void testMembers() {
+    XMLA_Level[] levels = model.createLevels("[Product]", 1);
+    XMLA_Member m0 = new XMLA_Member(model, "[Product].[M0]", "M0", levels[0], false);
+    XMLA_Member m1 = new XMLA_Member(model, "[Product].[M1]", "M1", levels[0], false);
+    assertSame(m0, model.lookupMemberByUName("[Product].[M0]"));
+    assertSame(m1, model.lookupMemberByUName("[Product].[M1]"));
+    assertNull(model.lookupMemberByUName("[Product].[M2]"));
+  }
+
+  public void testDuplicateMember() {
+    XMLA_Level[] levels = model.createLevels("[Product]", 1);
+    XMLA_Member m0 = new XMLA_Member(model, "[Product].[M0]", "M0", levels[0], false);
+    try {
+      new XMLA_Member(model, "[Product].[M0]", "Duplicate", levels[0], false);
+      fail("IllegalArgumentException expected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertSame(m0, model.lookupMemberByUName("[Product].[M0]"));
+  }
+
+  public void testRemoveMember() {
+    XMLA_Level[] levels = model.createLevels("[Product]", 1);
+    XMLA_Member m0 = new XMLA_Member(model, "[Product].[M0]", "M0", levels[0], false);
+    XMLA_Member m1 = new XMLA_Member(model, "[Product].[M1]", "M1", levels[0], false);
+    model.removeMember(m0);
+    assertNull(model.lookupMemberByUName("[Product].[M0]"));
+    assertSame(m1, model.lookupMemberByUName("[Product].[M1]"));
+
+    // a member with the same name can be created again
+    XMLA_Member m0a = new XMLA_Member(model, "[Product].[M0]", "M0", levels[0], false);
+    assertSame(m0a, model.lookupMemberByUName("[Product].[M0]"));
+    // removing the old instance does not remove the new one
+    model.removeMember(m0);
+    assertSame(m0a, model.lookupMemberByUName("[Product].[M0]"));
+  }
+
+  private static OlapItem createItem(int type, String uniqueName, String caption) {
+    XMLA_OlapItem item = new XMLA_OlapItem(type);
+    item.setUniqueName(uniqueName);
+    item.setName(caption);
+    item.setCaption(caption);
+    return item;
+  }
+
+}
@@ -0,0 +1,116 @@
+package com.tonbeller.jpivot.xmla;
+
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.tonbeller.jpivot.olap.model.Member;
+import com.tonbeller.jpivot.olap.model.Position;
+import com.tonbeller.jpivot.olap.query.ResultBase;
+
+/**
+ * fills XMLA results through the QueryResultHandler methods
+ */
+public class XMLA_ResultTest extends TestCase {
+
+  OfflineModel model;
+  XMLA_Level[] measureLevels;
+  XMLA_Level[] productLevels;
+
+  public XMLA_ResultTest(String arg0) {
+    super(arg0);
+  }
+
+  protected void setUp() throws Exception {
+    model = new OfflineModel();
+    measureLevels = model.createLevels("[Measures]", 1);
+    productLevels = model.createLevels("[Product]", 2);
+    model.createMember("[Measures].[Sales]", measureLevels[0], null);
+    model.createMember("[Measures].[Cost]", measureLevels[0], null);
+    XMLA_Member f0 = model.createMember("[Product].[F0]", productLevels[0], null);
+    XMLA_Member f1 = model.createMember("[Product].[F1]", productLevels[0], null);
+    model.createMember("[Product].[F0].[I0]", productLevels[1], f0);
+    model.createMember("[Product].[F1].[I0]", productLevels[1], f1);
+  }
+
+  protected void tearDown() throws Exception {
+    System.getProperties().remove(XMLA_Model.CELL_LIMIT_PROP);
+    System.getProperties().remove(ResultBase.COMPACT_CELLS_PROP);
+  }
+
+  public void testHierarchizeTruncated() throws Exception {
+    checkHierarchizeTruncated();
+  }
+
+  public void testHierarchizeTruncatedCompact() throws Exception {
+    System.setProperty(ResultBase.COMPACT_CELLS_PROP, "true");
+    checkHierarchizeTruncated();
+  }
+
+  /**
+   * 2 measures on columns, families followed by their items on rows.
+   * The cell limit keeps the first 2 of 4 rows, hierarchize moves
+   * the item of the first family into the kept rows.
+   */
+  private void checkHierarchizeTruncated() throws Exception {
+    System.setProperty(XMLA_Model.CELL_LIMIT_PROP, "3");
+    XMLA_Result result = createResult(new String[] { "[Measures].[Sales]", "[Measures].[Cost]"},
+        new String[] { "[Product].[F0]", "[Product].[F1]", "[Product].[F0].[I0]",
+            "[Product].[F1].[I0]"});
+    List cells = result.getCells();
+    assertEquals(4, cells.size());
+
+    result.hierarchize(1);
+
+    List rows = result.getAxes()[1].getPositions();
+    assertEquals("[Product].[F0]", uniqueName(rows, 0));
+    assertEquals("[Product].[F0].[I0]", uniqueName(rows, 1));
+    assertEquals("[Product].[F1]", uniqueName(rows, 2));
+    assertEquals("[Product].[F1].[I0]", uniqueName(rows, 3));
+
+    cells = result.getCells();
+    assertEquals(4, cells.size());
+    assertEquals(new Double(0), ((XMLA_Cell) cells.get(0)).getValue());
+    assertEquals(new Double(1), ((XMLA_Cell) cells.get(1)).getValue());
+    // the cells of [F0].[I0] were not kept
+    assertTrue(((XMLA_Cell) cells.get(2)).isNull());
+    assertTrue(((XMLA_Cell) cells.get(3)).isNull());
+    assertEquals(4, ((XMLA_Cell) cells.get(2)).getOrdinal());
+    assertEquals(5, ((XMLA_Cell) cells.get(3)).getOrdinal());
+  }
+
+  /**
+   * creates a result of 2 axes, the value of a cell is its ordinal
+   */
+  private XMLA_Result createResult(String[] columns, String[] rows) {
+    XMLA_Result result = new XMLA_Result(model);
+    result.handleAxisInfo("Axis0", 0);
+    result.handleHierInfo("[Measures]", 0, 0);
+    result.handleAxisInfo("Axis1", 1);
+    result.handleHierInfo("[Product]", 1, 0);
+    addAxis(result, "Axis0", 0, columns);
+    addAxis(result, "Axis1", 1, rows);
+    result.handleCellData();
+    int nCells = columns.length * rows.length;
+    for (int i = 0; i < nCells; i++)
+      result.handleCell(i, new Double(i), String.valueOf(i), null);
+    return result;
+  }
+
+  private void addAxis(XMLA_Result result, String axisName, int axisOrdinal, String[] uNames) {
+    result.handleAxis(axisName, axisOrdinal);
+    for (int i = 0; i < uNames.length; i++) {
+      XMLA_Member member = (XMLA_Member) model.lookupMemberByUName(uNames[i]);
+      result.handleTuple(axisOrdinal, i);
+      result.handleMember(uNames[i], uNames[i], ((XMLA_Level) member.getLevel())
+          .getUniqueName(), null, new HashMap(), axisOrdinal, i, 0);
+    }
+  }
+
+  private String uniqueName(List positions, int i) {
+    Member[] members = ((Position) positions.get(i)).getMembers();
+    return ((XMLA_Member) members[0]).getUniqueName();
+  }
+
+}